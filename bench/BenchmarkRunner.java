@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.util.Locale;
+
+// -------------------------------------------------------------------------
+/**
+ * BenchmarkRunner times benchmarks the way JMH does, without needing JMH on
+ * the class path: every benchmark runs a few warmup iterations that are
+ * thrown away so the JIT settles, then several measured iterations. Only
+ * run() is timed; setUp() prepares each iteration, for example by copying
+ * an input file that run() consumes.
+ *
+ * Each result line gives the benchmark, its parameters and the throughput
+ * as mean and standard deviation over the measured iterations, in units
+ * per second. A benchmark reports its own units, such as records or bytes.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class BenchmarkRunner {
+
+    // -------------------------------------------------------------------------
+    /**
+     * One benchmark iteration.
+     */
+    public interface Benchmark {
+        // ----------------------------------------------------------
+        /**
+         * Prepares an iteration. Not timed.
+         *
+         * @throws IOException
+         *             if the preparation fails
+         */
+        default void setUp() throws IOException {
+            // Nothing to prepare by default
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Runs the timed part of an iteration.
+         *
+         * @return the number of units processed, such as records or bytes
+         * @throws IOException
+         *             if the benchmark fails
+         */
+        long run() throws IOException;
+    }
+
+    // ~ Fields ................................................................
+    /**
+     * Number of iterations run before measuring.
+     */
+    private int warmupIterations;
+
+    /**
+     * Number of measured iterations.
+     */
+    private int measuredIterations;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new BenchmarkRunner object.
+     *
+     * @param warmupIterations
+     *            number of iterations run before measuring
+     * @param measuredIterations
+     *            number of measured iterations, at least 1
+     */
+    public BenchmarkRunner(int warmupIterations, int measuredIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Runs a benchmark and prints its throughput.
+     *
+     * @param name
+     *            the name of the benchmark
+     * @param params
+     *            the parameters, printed next to the name
+     * @param unit
+     *            what run() counts, for example "records"
+     * @param benchmark
+     *            the benchmark
+     * @return the mean throughput in units per second
+     * @throws IOException
+     *             if the benchmark fails
+     */
+    public double measure(
+        String name,
+        String params,
+        String unit,
+        Benchmark benchmark)
+        throws IOException {
+        return measure(name, params, unit, 1, benchmark);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Runs a benchmark that counts in a smaller unit than it reports, for
+     * example one that counts bytes and reports megabytes, and prints its
+     * throughput.
+     *
+     * @param name
+     *            the name of the benchmark
+     * @param params
+     *            the parameters, printed next to the name
+     * @param unit
+     *            the reported unit, for example "MB"
+     * @param unitSize
+     *            how many of the counted units make one reported unit
+     * @param benchmark
+     *            the benchmark
+     * @return the mean throughput in reported units per second
+     * @throws IOException
+     *             if the benchmark fails
+     */
+    public double measure(
+        String name,
+        String params,
+        String unit,
+        double unitSize,
+        Benchmark benchmark)
+        throws IOException {
+        for (int i = 0; i < warmupIterations; i++) {
+            benchmark.setUp();
+            benchmark.run();
+        }
+
+        double[] rates = new double[measuredIterations];
+        for (int i = 0; i < measuredIterations; i++) {
+            benchmark.setUp();
+            long start = System.nanoTime();
+            long units = benchmark.run();
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            rates[i] = units / unitSize * 1e9 / elapsed;
+        }
+
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate / rates.length;
+        }
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean) / rates.length;
+        }
+        System.out.println(String.format(Locale.ROOT,
+            "%-28s %-36s %14.1f +- %10.1f %s/s", name, params, mean, Math
+                .sqrt(variance), unit));
+        return mean;
+    }
+}
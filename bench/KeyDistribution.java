@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// -------------------------------------------------------------------------
+/**
+ * KeyDistribution describes the keys of a benchmark input. Every input is
+ * generated by ByteFile, which writes uniformly random keys; the other
+ * distributions then rewrite the keys in place and keep ByteFile's IDs.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public enum KeyDistribution {
+    /**
+     * Uniformly random keys, exactly as ByteFile writes them.
+     */
+    UNIFORM,
+
+    /**
+     * Ascending keys, the best case for replacement selection.
+     */
+    SORTED,
+
+    /**
+     * Descending keys, the worst case for replacement selection.
+     */
+    REVERSED,
+
+    /**
+     * Random keys drawn from only 16 values, so most keys are duplicates.
+     */
+    FEW_UNIQUE;
+
+    // ----------------------------------------------------------
+    /**
+     * Parses a distribution name as given on the command line, ignoring
+     * case.
+     *
+     * @param name
+     *            the distribution name, for example "sorted"
+     * @return the distribution
+     * @throws IllegalArgumentException
+     *             if there is no distribution with that name
+     */
+    public static KeyDistribution parse(String name) {
+        for (KeyDistribution distribution : values()) {
+            if (distribution.name().equalsIgnoreCase(name.trim())) {
+                return distribution;
+            }
+        }
+        throw new IllegalArgumentException("Unknown key distribution: "
+            + name);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Writes an input file with this distribution.
+     *
+     * @param filename
+     *            the file to write
+     * @param blocks
+     *            the size of the file in blocks
+     * @param seed
+     *            the seed of the random generator
+     * @throws IOException
+     *             if the file can not be written
+     */
+    public void generate(String filename, int blocks, long seed)
+        throws IOException {
+        Random rng = new Random(seed);
+        new ByteFile(filename, blocks).writeRandomRecords(rng);
+        if (this == UNIFORM) {
+            return;
+        }
+
+        FileParser parser = new FileParser(filename);
+        ByteBuffer block = ByteBuffer.allocate(ByteFile.BYTES_PER_BLOCK);
+        long records = (long)blocks * ByteFile.RECORDS_PER_BLOCK;
+        long record = 0;
+        for (int b = 0; b < blocks; b++) {
+            long position = (long)b * ByteFile.BYTES_PER_BLOCK;
+            block.clear();
+            parser.readBlock(block, position);
+            for (int r = 0; r < ByteFile.RECORDS_PER_BLOCK; r++) {
+                block.putDouble(r * ByteFile.BYTES_PER_RECORD + Long.BYTES,
+                    key(record++, records, rng));
+            }
+            block.flip();
+            parser.writeBlock(block, position);
+        }
+        parser.close();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the key of one record.
+     *
+     * @param record
+     *            the index of the record in the file
+     * @param records
+     *            the number of records in the file
+     * @param rng
+     *            the random generator
+     * @return the key
+     */
+    private double key(long record, long records, Random rng) {
+        switch (this) {
+            case SORTED:
+                return record;
+            case REVERSED:
+                return records - record;
+            case FEW_UNIQUE:
+                return rng.nextInt(16);
+            default:
+                return rng.nextDouble() * 1e100;
+        }
+    }
+}
@@ -0,0 +1,611 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// -------------------------------------------------------------------------
+/**
+ * SortBenchmarks measures the parts of the sort that decide its speed:
+ * <ul>
+ * <li>heap: MinHeap and RecordHeap insert/removeMin and modify
+ * throughput</li>
+ * <li>runs: run generation records/sec and run length, replacement
+ * selection against radix load-sort-store</li>
+ * <li>merge: merge records/sec at different fan-ins</li>
+ * <li>io: FileParser read and write bytes/sec per I/O mode</li>
+ * </ul>
+ * Inputs are generated through ByteFile and parameterized by size in blocks
+ * and by key distribution. The bench folder is a second source folder of the
+ * project, so an Eclipse build puts the benchmarks in bin next to the sort.
+ * Run it from the project directory, for example
+ *
+ * <pre>
+ * java -cp bin:lib/student.jar SortBenchmarks merge
+ *     --blocks=1000,10000 --dist=uniform,sorted --fan-in=2,16,128
+ * </pre>
+ *
+ * Without group names every group runs. Other options are --warmup=N and
+ * --iterations=N for the iteration counts, --heap-blocks=N for the heap and
+ * sorter size of run generation and --dir=PATH for the scratch files.
+ * The scratch files are deleted when the benchmarks end, even if one fails.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class SortBenchmarks {
+    // ~ Fields ................................................................
+    /**
+     * Seed of every generated input, so runs are comparable.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * The logger of the merge plan, held so its level sticks.
+     */
+    private static final Logger MERGE_LOGGER = Logger.getLogger(
+        ReplacementSelection.class.getName());
+
+    /**
+     * Bytes in a megabyte, the unit of the I/O benchmarks.
+     */
+    private static final double MEGABYTE = 1 << 20;
+
+    /**
+     * Input sizes in blocks.
+     */
+    private int[] blockCounts = { 100, 1000 };
+
+    /**
+     * Key distributions of the inputs.
+     */
+    private KeyDistribution[] distributions = { KeyDistribution.UNIFORM };
+
+    /**
+     * Fan-ins of the merge benchmark.
+     */
+    private int[] fanIns = { 2, 8, 64 };
+
+    /**
+     * Heap and sorter size of run generation, in blocks.
+     */
+    private int heapBlocks = 8;
+
+    /**
+     * Directory for scratch files.
+     */
+    private File dir = new File(".");
+
+    /**
+     * Every scratch file handed out, deleted when the benchmarks end.
+     */
+    private Set<File> scratchFiles = new LinkedHashSet<>();
+
+    /**
+     * The harness.
+     */
+    private BenchmarkRunner runner = new BenchmarkRunner(2, 5);
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Runs the benchmark groups named on the command line.
+     *
+     * @param args
+     *            group names and options
+     * @throws IOException
+     *             if a benchmark fails
+     */
+    public static void main(String[] args) throws IOException {
+        // The merge plan is logged at INFO on every merge
+        MERGE_LOGGER.setLevel(Level.WARNING);
+
+        SortBenchmarks benchmarks = new SortBenchmarks();
+        List<String> groups = new ArrayList<>();
+        int warmup = 2;
+        int iterations = 5;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--blocks=")) {
+                benchmarks.blockCounts = parseInts(value);
+            }
+            else if (arg.startsWith("--dist=")) {
+                String[] names = value.split(",");
+                benchmarks.distributions = new KeyDistribution[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    benchmarks.distributions[i] = KeyDistribution.parse(
+                        names[i]);
+                }
+            }
+            else if (arg.startsWith("--fan-in=")) {
+                benchmarks.fanIns = parseInts(value);
+            }
+            else if (arg.startsWith("--heap-blocks=")) {
+                benchmarks.heapBlocks = Integer.parseInt(value);
+            }
+            else if (arg.startsWith("--dir=")) {
+                benchmarks.dir = new File(value);
+            }
+            else if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(value);
+            }
+            else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(value);
+            }
+            else {
+                groups.add(arg);
+            }
+        }
+        benchmarks.runner = new BenchmarkRunner(warmup, iterations);
+        if (groups.isEmpty()) {
+            groups = Arrays.asList("heap", "runs", "merge", "io");
+        }
+
+        try {
+            for (String group : groups) {
+                switch (group) {
+                    case "heap":
+                        benchmarks.heapBenchmarks();
+                        break;
+                    case "runs":
+                        benchmarks.runBenchmarks();
+                        break;
+                    case "merge":
+                        benchmarks.mergeBenchmarks();
+                        break;
+                    case "io":
+                        benchmarks.ioBenchmarks();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown benchmark "
+                            + "group: " + group);
+                }
+            }
+        }
+        finally {
+            benchmarks.deleteScratchFiles();
+        }
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Measures heap operations on the records of every input.
+     *
+     * @throws IOException
+     *             if an input can not be generated
+     */
+    private void heapBenchmarks() throws IOException {
+        for (int blocks : blockCounts) {
+            for (KeyDistribution distribution : distributions) {
+                File input = input(blocks, distribution);
+                int n = blocks * ByteFile.RECORDS_PER_BLOCK;
+                long[] ids = new long[n];
+                double[] keys = new double[n];
+                loadRecords(input, ids, keys);
+                // RecordHeap compares the normalized keys of the layout
+                long[] sortKeys = new long[n];
+                for (int i = 0; i < n; i++) {
+                    sortKeys[i] = RecordLayout.DEFAULT.key(ids[i], Double
+                        .doubleToRawLongBits(keys[i]));
+                }
+                String params = params(blocks, distribution);
+
+                runner.measure("MinHeap.insert+removeMin", params, "ops",
+                    () -> {
+                        Record[] array = new Record[n];
+                        MinHeap<Record> heap = new MinHeap<>(array, 0, n);
+                        for (int i = 0; i < n; i++) {
+                            heap.insert(new Record(ids[i], keys[i], 0));
+                        }
+                        while (heap.heapSize() > 0) {
+                            heap.removeMin();
+                        }
+                        return 2L * n;
+                    });
+                runner.measure("MinHeap.modify", params, "ops", () -> {
+                    Record[] array = new Record[n];
+                    for (int i = 0; i < n; i++) {
+                        array[i] = new Record(ids[i], keys[i], 0);
+                    }
+                    MinHeap<Record> heap = new MinHeap<>(array, n, n);
+                    Random rng = new Random(SEED);
+                    for (int i = 0; i < n; i++) {
+                        int j = rng.nextInt(n);
+                        heap.modify(rng.nextInt(n), new Record(ids[j],
+                            keys[j], 0));
+                    }
+                    return n;
+                });
+                runner.measure("RecordHeap.insert+removeMin", params, "ops",
+                    () -> {
+                        RecordHeap heap = new RecordHeap(n);
+                        for (int i = 0; i < n; i++) {
+                            heap.insert(ids[i], sortKeys[i], 0);
+                        }
+                        while (heap.heapSize() > 0) {
+                            heap.removeMin();
+                        }
+                        return 2L * n;
+                    });
+                runner.measure("RecordHeap.modify", params, "ops", () -> {
+                    RecordHeap heap = new RecordHeap(n);
+                    for (int i = 0; i < n; i++) {
+                        heap.set(i, ids[i], sortKeys[i], 0);
+                    }
+                    heap.setHeapSize(n);
+                    heap.buildHeap();
+                    Random rng = new Random(SEED);
+                    for (int i = 0; i < n; i++) {
+                        int j = rng.nextInt(n);
+                        heap.modify(rng.nextInt(n), ids[j], sortKeys[j], 0);
+                    }
+                    return n;
+                });
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Measures run generation on every input, with the heap and with the
+     * radix sorter, and prints the runs it produced.
+     *
+     * @throws IOException
+     *             if a benchmark fails
+     */
+    private void runBenchmarks() throws IOException {
+        MemoryBudget budget = new MemoryBudget();
+        int records = heapBlocks * ByteFile.RECORDS_PER_BLOCK;
+        for (int blocks : blockCounts) {
+            for (KeyDistribution distribution : distributions) {
+                File input = input(blocks, distribution);
+                String params = params(blocks, distribution) + " heap="
+                    + heapBlocks;
+                for (SortAlgorithm algorithm : SortAlgorithm.values()) {
+                    RunGeneration generation = new RunGeneration(input,
+                        budget, records, algorithm);
+                    runner.measure("runs." + algorithm.name().toLowerCase(),
+                        params, "records", generation);
+                    System.out.println(String.format(Locale.ROOT,
+                        "%-28s %-36s %d runs, mean length %.1f blocks", "",
+                        "", generation.runCount, (double)blocks
+                            / Math.max(1, generation.runCount)));
+                }
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Measures a single merge pass of as many runs as the fan-in on every
+     * input.
+     *
+     * @throws IOException
+     *             if a benchmark fails
+     */
+    private void mergeBenchmarks() throws IOException {
+        for (int blocks : blockCounts) {
+            for (KeyDistribution distribution : distributions) {
+                File input = input(blocks, distribution);
+                long records = (long)blocks * ByteFile.RECORDS_PER_BLOCK;
+                for (int fanIn : fanIns) {
+                    // Radix load-sort-store cuts the input into fanIn runs
+                    File runs = scratch("merge-runs.bin");
+                    Files.copy(input.toPath(), runs.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                    int runRecords = (int)((records + fanIn - 1) / fanIn);
+                    FileParser runParser = new FileParser(runs.getPath());
+                    RunCatalog catalog = new RunCatalog();
+                    BlockWriter writer = new BlockWriter(runParser,
+                        ByteFile.BYTES_PER_BLOCK, 0);
+                    new LoadSortStoreGenerator(new RadixSorter(runRecords),
+                        runParser, 0, runParser.getFile().length(), 0,
+                        ByteBuffer.allocate(ByteFile.BYTES_PER_BLOCK), writer,
+                        catalog).call();
+                    writer.close();
+                    runParser.close();
+
+                    runner.measure("merge", params(blocks, distribution)
+                        + " fanIn=" + fanIn, "records", new Merge(runs,
+                            catalog, fanIn));
+                }
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Measures sequential FileParser writes and reads of every input size
+     * in every I/O mode. The file is usually in the page cache, so this
+     * measures the I/O path more than the disk.
+     *
+     * @throws IOException
+     *             if a benchmark fails
+     */
+    private void ioBenchmarks() throws IOException {
+        for (int blocks : blockCounts) {
+            File input = input(blocks, KeyDistribution.UNIFORM);
+            long bytes = input.length();
+            for (IOMode mode : IOMode.values()) {
+                String params = "blocks=" + blocks + " io=" + mode.name()
+                    .toLowerCase();
+                File copy = scratch("io.bin");
+                runner.measure("FileParser.write", params, "MB", MEGABYTE,
+                    () -> {
+                        FileParser parser = new FileParser(copy.getPath(),
+                            mode);
+                        parser.getFile().setLength(0);
+                        ByteBuffer block = ByteBuffer.allocate(
+                            ByteFile.BYTES_PER_BLOCK);
+                        for (long pos = 0; pos < bytes; pos += block
+                            .capacity()) {
+                            block.clear();
+                            parser.writeBlock(block, pos);
+                        }
+                        parser.close();
+                        return bytes;
+                    });
+                runner.measure("FileParser.read", params, "MB", MEGABYTE,
+                    () -> {
+                        FileParser parser = new FileParser(input.getPath(),
+                            mode);
+                        ByteBuffer scratch = ByteBuffer.allocate(
+                            ByteFile.BYTES_PER_BLOCK);
+                        long total = 0;
+                        ByteBuffer view = parser.nextView(scratch);
+                        while (view.hasRemaining()) {
+                            total += view.remaining();
+                            view = parser.nextView(scratch);
+                        }
+                        parser.close();
+                        return total;
+                    });
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns a generated input, generating it on first use.
+     *
+     * @param blocks
+     *            the size in blocks
+     * @param distribution
+     *            the key distribution
+     * @return the input file
+     * @throws IOException
+     *             if the input can not be generated
+     */
+    private File input(int blocks, KeyDistribution distribution)
+        throws IOException {
+        File file = scratch("input-" + distribution.name().toLowerCase() + "-"
+            + blocks + ".bin");
+        if (file.length() != (long)blocks * ByteFile.BYTES_PER_BLOCK) {
+            distribution.generate(file.getPath(), blocks, SEED);
+        }
+        return file;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns a file in the scratch directory.
+     *
+     * @param name
+     *            the file name
+     * @return the file
+     */
+    private File scratch(String name) {
+        File file = new File(dir, "bench-" + name);
+        scratchFiles.add(file);
+        return file;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Deletes every scratch file the benchmarks created.
+     */
+    private void deleteScratchFiles() {
+        for (File file : scratchFiles) {
+            if (file.exists() && !file.delete()) {
+                System.err.println("Could not delete " + file);
+            }
+        }
+        scratchFiles.clear();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Formats the input parameters of a result line.
+     *
+     * @param blocks
+     *            the size in blocks
+     * @param distribution
+     *            the key distribution
+     * @return the parameters
+     */
+    private static String params(int blocks, KeyDistribution distribution) {
+        return "blocks=" + blocks + " dist=" + distribution.name()
+            .toLowerCase();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Reads every record of a file into arrays.
+     *
+     * @param file
+     *            the file
+     * @param ids
+     *            receives the record IDs
+     * @param keys
+     *            receives the keys
+     * @throws IOException
+     *             if the file can not be read
+     */
+    private static void loadRecords(File file, long[] ids, double[] keys)
+        throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = data.getLong();
+            keys[i] = data.getDouble();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Parses a comma separated list of numbers.
+     *
+     * @param list
+     *            the list
+     * @return the numbers
+     */
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    // -------------------------------------------------------------------------
+    /**
+     * Run generation through ReplacementSelection on a fresh copy of the
+     * input, which it consumes.
+     */
+    private class RunGeneration implements BenchmarkRunner.Benchmark {
+        private File input;
+        private MemoryBudget budget;
+        private int records;
+        private SortAlgorithm algorithm;
+        private FileParser inputParser;
+        private FileParser runParser;
+        private int runCount;
+
+        /**
+         * Creates a new RunGeneration.
+         *
+         * @param input
+         *            the input to copy
+         * @param budget
+         *            the budget sizing the buffers
+         * @param records
+         *            the heap or sorter size
+         * @param algorithm
+         *            the sort algorithm
+         */
+        RunGeneration(
+            File input,
+            MemoryBudget budget,
+            int records,
+            SortAlgorithm algorithm) {
+            this.input = input;
+            this.budget = budget;
+            this.records = records;
+            this.algorithm = algorithm;
+        }
+
+
+        @Override
+        public void setUp() throws IOException {
+            File copy = scratch("runs-input.bin");
+            Files.copy(input.toPath(), copy.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+            inputParser = new FileParser(copy.getPath());
+            runParser = new FileParser(scratch("runs.bin").getPath());
+            runParser.getFile().setLength(0);
+        }
+
+
+        @Override
+        public long run() throws IOException {
+            ReplacementSelection selection = new ReplacementSelection(
+                (algorithm == SortAlgorithm.HEAP)
+                    ? new RecordHeap(records)
+                    : null, new byte[budget.getInputBufferBytes()], budget
+                        .getOutputBufferBytes(), budget.getMergeFanIn());
+            if (algorithm == SortAlgorithm.RADIX) {
+                selection.setRadixSorter(new RadixSorter(records));
+            }
+            long length = inputParser.getFile().length();
+            runCount = selection.performReplacementSelection(inputParser,
+                runParser).size();
+            inputParser.close();
+            return length / ByteFile.BYTES_PER_RECORD;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    /**
+     * One merge pass through ReplacementSelection on a fresh copy of the
+     * runs, which the merge replaces with its result.
+     */
+    private class Merge implements BenchmarkRunner.Benchmark {
+        private File runs;
+        private RunCatalog catalog;
+        private int fanIn;
+        private FileParser runParser;
+        private FileParser mergeParser;
+
+        /**
+         * Creates a new Merge.
+         *
+         * @param runs
+         *            the file holding the runs
+         * @param catalog
+         *            the runs in the file
+         * @param fanIn
+         *            the fan-in, at least the number of runs
+         */
+        Merge(File runs, RunCatalog catalog, int fanIn) {
+            this.runs = runs;
+            this.catalog = catalog;
+            this.fanIn = fanIn;
+        }
+
+
+        @Override
+        public void setUp() throws IOException {
+            File copy = scratch("merge-input.bin");
+            Files.copy(runs.toPath(), copy.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+            runParser = new FileParser(copy.getPath());
+            mergeParser = new FileParser(scratch("merge-output.bin")
+                .getPath());
+            mergeParser.getFile().setLength(0);
+        }
+
+
+        @Override
+        public long run() throws IOException {
+            ReplacementSelection selection = new ReplacementSelection(null,
+                new byte[ByteFile.BYTES_PER_BLOCK], ByteFile.BYTES_PER_BLOCK,
+                Math.max(2, fanIn));
+            long length = runParser.getFile().length();
+            selection.recursiveMultiwayMerge(runParser, mergeParser, catalog
+                .toRunList());
+            runParser.close();
+            mergeParser.close();
+            return length / ByteFile.BYTES_PER_RECORD;
+        }
+    }
+}
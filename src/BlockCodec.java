@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * BlockCodec compresses the records of one block of an intermediate run.
+ * Runs between run generation and the final merge pass are only ever read
+ * front to back by the merge, so they can be stored encoded, which saves
+ * bytes on every pass that writes and reads them. The sorted output is
+ * always written raw.
+ *
+ * A codec only encodes record payloads; RunFrames wraps every encoded block
+ * in a frame with a header that gives the record count and the encoded
+ * length. Codecs hold no state between calls and may be shared by threads.
+ *
+ * Codec names as given on the command line:
+ *
+ * <pre>
+ * none       records are stored raw, the default
+ * delta      keys as varint deltas of their order-preserving bits
+ * xor        keys as varints of the XOR with the key before
+ * delta+zip  delta, then deflate
+ * xor+zip    xor, then deflate
+ * </pre>
+ *
+ * Both varint codecs store record IDs as zigzag varint deltas.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public interface BlockCodec {
+    /**
+     * Name of the setting that stores records raw.
+     */
+    String NONE = "none";
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of the codec as given on the command line.
+     *
+     * @return the name
+     */
+    String getName();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Encodes the records between position and limit of a buffer into
+     * another buffer, from its position on. Both positions are left past
+     * the bytes used.
+     *
+     * @param records
+     *            whole records
+     * @param out
+     *            the buffer the encoded bytes go to
+     * @return false if out was too small, in which case the caller stores
+     *         the records raw
+     */
+    boolean encode(ByteBuffer records, ByteBuffer out);
+
+
+    // ----------------------------------------------------------
+    /**
+     * Decodes records encoded by encode().
+     *
+     * @param in
+     *            the encoded bytes, between position and limit
+     * @param count
+     *            the number of records encoded
+     * @param out
+     *            the buffer the records go to, with room for all of them
+     * @throws IOException
+     *             if the bytes are not a valid encoding of count records
+     */
+    void decode(ByteBuffer in, int count, ByteBuffer out) throws IOException;
+
+
+    // ----------------------------------------------------------
+    /**
+     * Looks up a codec by name, ignoring case.
+     *
+     * @param name
+     *            the codec name, for example "delta+zip"
+     * @return the codec, or null for "none"
+     * @throws IllegalArgumentException
+     *             if there is no codec with that name
+     */
+    static BlockCodec forName(String name) {
+        String codec = name.trim().toLowerCase();
+        if (codec.equals(NONE)) {
+            return null;
+        }
+        boolean zip = codec.endsWith(DeflateCodec.SUFFIX);
+        if (zip) {
+            codec = codec.substring(0, codec.length() - DeflateCodec.SUFFIX
+                .length());
+        }
+        BlockCodec inner;
+        if (codec.equals(VarintCodec.DELTA)) {
+            inner = new VarintCodec(false);
+        }
+        else if (codec.equals(VarintCodec.XOR)) {
+            inner = new VarintCodec(true);
+        }
+        else {
+            throw new IllegalArgumentException("Unknown codec: " + name);
+        }
+        return zip ? new DeflateCodec(inner) : inner;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of a codec, or "none" for null.
+     *
+     * @param codec
+     *            the codec, or null
+     * @return the name
+     */
+    static String nameOf(BlockCodec codec) {
+        return (codec == null) ? NONE : codec.getName();
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * BlockIndex is a sparse index over a sorted file: the key of the first
+ * record of every Nth block. Entry i belongs to file position i * stride, so
+ * positions are not stored. A lookup binary-searches the entries and only
+ * has to read the blocks between two entries.
+ *
+ * The index is filled while the sorted file is written: a BlockWriter with
+ * an index hands every buffer to record(), which picks out the records that
+ * start an indexed block. Writers of different key ranges fill different
+ * entries, so they can share one index; the entries are read only after the
+ * writers are done.
+ *
+ * The sidecar file holds the stride, the length of the data file, the
+ * number of entries and then every entry's key.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class BlockIndex {
+    // ~ Fields ................................................................
+    /**
+     * Suffix appended to the name of a sorted file to name its index.
+     */
+    public static final String SUFFIX = ".idx";
+
+    /**
+     * Bytes between two indexed positions, a whole number of blocks.
+     */
+    private long stride;
+
+    /**
+     * Length of the indexed file.
+     */
+    private long dataLength;
+
+    /**
+     * Key of the record at every indexed position.
+     */
+    private double[] keys;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty BlockIndex object for a file of known length.
+     *
+     * @param dataLength
+     *            length of the file to index
+     * @param blocksPerEntry
+     *            number of blocks between indexed positions
+     */
+    public BlockIndex(long dataLength, int blocksPerEntry) {
+        this.stride = (long)blocksPerEntry * ByteFile.BYTES_PER_BLOCK;
+        this.dataLength = dataLength;
+        this.keys = new double[(int)((dataLength + stride - 1) / stride)];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new BlockIndex object from its parts.
+     *
+     * @param stride
+     *            bytes between indexed positions
+     * @param dataLength
+     *            length of the indexed file
+     * @param keys
+     *            key at every indexed position
+     */
+    private BlockIndex(long stride, long dataLength, double[] keys) {
+        this.stride = stride;
+        this.dataLength = dataLength;
+        this.keys = keys;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Reads an index from its sidecar file.
+     *
+     * @param path
+     *            the sidecar file
+     * @return the index
+     * @throws IOException
+     *             if the file can not be read
+     */
+    public static BlockIndex read(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(path)))) {
+            long stride = in.readLong();
+            long dataLength = in.readLong();
+            double[] keys = new double[in.readInt()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = in.readDouble();
+            }
+            return new BlockIndex(stride, dataLength, keys);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Writes the index to its sidecar file.
+     *
+     * @param path
+     *            the sidecar file
+     * @throws IOException
+     *             if the file can not be written
+     */
+    public void write(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeLong(stride);
+            out.writeLong(dataLength);
+            out.writeInt(keys.length);
+            for (double key : keys) {
+                out.writeDouble(key);
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Records the indexed keys in a buffer about to be written. The data
+     * runs from the start of the buffer to its position.
+     *
+     * @param buffer
+     *            the filled buffer
+     * @param position
+     *            the file position of the first byte of the buffer
+     */
+    public void record(ByteBuffer buffer, long position) {
+        long end = Math.min(position + buffer.position(), dataLength);
+        long first = (position + stride - 1) / stride * stride;
+        for (long p = first; p < end; p += stride) {
+            // The key follows the 8 byte record ID
+            keys[(int)(p / stride)] = buffer.getDouble((int)(p - position)
+                + Long.BYTES);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Fills the index from a sorted file that was written without it, by
+     * reading the first record of every indexed block.
+     *
+     * @param parser
+     *            the sorted file
+     * @throws IOException
+     *             if the file can not be read
+     */
+    public void fill(FileParser parser) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(ByteFile.BYTES_PER_RECORD);
+        for (int i = 0; i < keys.length; i++) {
+            record.clear();
+            if (parser.readBlock(record, i * stride) < record.capacity()) {
+                throw new IOException(parser.getFileName()
+                    + " is shorter than its index");
+            }
+            // The key follows the 8 byte record ID
+            keys[i] = record.getDouble(Long.BYTES);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the position to start scanning from for the first record whose
+     * key is not smaller than the given key: the last indexed position whose
+     * key is smaller, since equal keys may start in the block before.
+     *
+     * @param key
+     *            the key to look for
+     * @return the file position to scan from
+     */
+    public long scanStart(double key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(keys[mid], key) < 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return Math.max(0, low - 1) * stride;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of bytes between indexed positions.
+     *
+     * @return the stride
+     */
+    public long getStride() {
+        return stride;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the length of the indexed file.
+     *
+     * @return the length in bytes
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of indexed positions.
+     *
+     * @return the entry count
+     */
+    public int size() {
+        return keys.length;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the key at an indexed position.
+     *
+     * @param entry
+     *            the entry number
+     * @return the key of the record at entry * stride
+     */
+    public double getKey(int entry) {
+        return keys[entry];
+    }
+}
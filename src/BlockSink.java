@@ -0,0 +1,36 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * BlockSink is what a BlockWriter writes to: a file, or the output stream
+ * of ExternalSorter. Writes name the position they belong at; a stream can
+ * only take them in order and without gaps.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public interface BlockSink {
+    // ----------------------------------------------------------
+    /**
+     * Writes the bytes of a buffer between its position and limit at the
+     * given position.
+     *
+     * @param buffer
+     *            the data to write
+     * @param position
+     *            the position to write to
+     * @throws IOException
+     *             if the write fails
+     */
+    void writeBlock(ByteBuffer buffer, long position) throws IOException;
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns a name for the sink in messages.
+     *
+     * @return the name
+     */
+    String getFileName();
+}
@@ -0,0 +1,390 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// -------------------------------------------------------------------------
+/**
+ * BlockWriter writes full output buffers behind the back of the sorting
+ * thread. The sorting thread fills a buffer from acquire(), hands it over
+ * with submit() together with the file position it belongs at, and carries
+ * on with the next free buffer while a dedicated writer thread flushes the
+ * full one.
+ *
+ * The pool holds depth + 1 buffers, so at most depth full buffers wait for
+ * the writer. When all of them are waiting, acquire() blocks until the
+ * writer catches up, which keeps memory bounded. Every write is positional,
+ * so the positions the caller computes (and the Run offsets built from them)
+ * are exact no matter when the writer gets to them. flush() waits until
+ * everything submitted is on the file and reports any write error.
+ *
+ * With depth 0 there is no writer thread and submit() writes right away.
+ *
+ * A writer producing a sorted file can fill a BlockIndex on the way: every
+ * submitted buffer is shown to the index first.
+ *
+ * A writer with a BlockCodec writes intermediate runs encoded: submit()
+ * turns the records into frames (see RunFrames) on the calling thread and
+ * returns how many bytes they take, which is where the next buffer goes.
+ * Pool buffers have room for the frames of a full buffer. Such a writer
+ * must not fill an index, whose positions count raw records.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class BlockWriter {
+
+    // -------------------------------------------------------------------------
+    /**
+     * A full buffer waiting to be written.
+     */
+    private static class PendingWrite {
+        private ByteBuffer buffer;
+        private long position;
+
+        /**
+         * Creates a new PendingWrite.
+         *
+         * @param buffer
+         *            the data, between position and limit
+         * @param position
+         *            the file position to write it to
+         */
+        PendingWrite(ByteBuffer buffer, long position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+    }
+
+    // ~ Fields ................................................................
+    /**
+     * Marks the end of the write queue.
+     */
+    private static final PendingWrite STOP = new PendingWrite(null, -1);
+
+    /**
+     * The file or stream the buffers are written to.
+     */
+    private BlockSink target;
+
+    /**
+     * Buffers ready to be filled.
+     */
+    private BlockingQueue<ByteBuffer> freeBuffers;
+
+    /**
+     * Full buffers waiting for the writer thread, or null without one.
+     */
+    private BlockingQueue<PendingWrite> writeQueue;
+
+    /**
+     * The writer thread, or null when writes are synchronous.
+     */
+    private Thread writerThread;
+
+    /**
+     * Number of submitted buffers not yet written.
+     */
+    private int outstanding;
+
+    /**
+     * The first error the writer thread ran into, which may be a runtime
+     * error of the target.
+     */
+    private Throwable failure;
+
+    /**
+     * Index filled from the submitted buffers, or null.
+     */
+    private BlockIndex index;
+
+    /**
+     * Size of the records part of each buffer.
+     */
+    private int bufferBytes;
+
+    /**
+     * Codec encoding the submitted records, or null to write them raw.
+     */
+    private BlockCodec codec;
+
+    /**
+     * Layout giving the first key of every frame the codec writes.
+     */
+    private RecordLayout layout = RecordLayout.DEFAULT;
+
+    /**
+     * Spare buffer the frames of a submitted buffer are encoded into, which
+     * then takes the place of the submitted one.
+     */
+    private ByteBuffer frameBuffer;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new BlockWriter object and starts its writer thread.
+     *
+     * @param target
+     *            the file or stream to write to
+     * @param bufferBytes
+     *            the size of each buffer
+     * @param depth
+     *            how many full buffers may wait for the writer, 0 for
+     *            synchronous writes
+     */
+    public BlockWriter(BlockSink target, int bufferBytes, int depth) {
+        this(target, bufferBytes, depth, null);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new BlockWriter object that encodes what it writes and
+     * starts its writer thread.
+     *
+     * @param target
+     *            the file or stream to write to
+     * @param bufferBytes
+     *            the size of each buffer
+     * @param depth
+     *            how many full buffers may wait for the writer, 0 for
+     *            synchronous writes
+     * @param codec
+     *            the codec, or null to write records raw
+     */
+    public BlockWriter(
+        BlockSink target,
+        int bufferBytes,
+        int depth,
+        BlockCodec codec) {
+        this.target = target;
+        this.bufferBytes = bufferBytes;
+        this.codec = codec;
+        int capacity = (codec == null)
+            ? bufferBytes
+            : RunFrames.maxFramedBytes(bufferBytes);
+        this.freeBuffers = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i <= depth; i++) {
+            freeBuffers.add(ByteBuffer.allocate(capacity));
+        }
+        if (codec != null) {
+            this.frameBuffer = ByteBuffer.allocate(capacity);
+        }
+        if (depth > 0) {
+            this.writeQueue = new ArrayBlockingQueue<>(depth + 1);
+            this.writerThread = new Thread(this::writeLoop, "block-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets an index to fill from every buffer submitted from now on.
+     *
+     * @param blockIndex
+     *            the index, or null for none
+     */
+    public void setIndex(BlockIndex blockIndex) {
+        this.index = blockIndex;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the layout of the records, which gives the frames their keys.
+     *
+     * @param recordLayout
+     *            the layout
+     */
+    public void setLayout(RecordLayout recordLayout) {
+        this.layout = recordLayout;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns an empty buffer to fill, waiting for the writer if every
+     * buffer is full.
+     *
+     * @return a cleared buffer
+     * @throws IOException
+     *             if an earlier write failed or the wait is interrupted
+     */
+    public ByteBuffer acquire() throws IOException {
+        checkFailure();
+        try {
+            ByteBuffer buffer = freeBuffers.take();
+            buffer.limit(bufferBytes);
+            return buffer;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a "
+                + "free output buffer");
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Hands a filled buffer over for writing. The bytes from the start of
+     * the buffer to its position are written at the given file position,
+     * encoded if the writer has a codec. The buffer must not be touched
+     * afterwards.
+     *
+     * @param buffer
+     *            a buffer from acquire()
+     * @param position
+     *            the file position of the first byte
+     * @return the number of bytes written to the file
+     * @throws IOException
+     *             if this or an earlier write failed
+     */
+    public int submit(ByteBuffer buffer, long position) throws IOException {
+        if (index != null) {
+            index.record(buffer, position);
+        }
+        buffer.flip();
+        if (codec != null) {
+            // The frames go out and the records buffer is the next spare
+            ByteBuffer frames = frameBuffer;
+            frames.clear();
+            RunFrames.encode(codec, layout, buffer, frames);
+            frames.flip();
+            frameBuffer = buffer;
+            buffer = frames;
+        }
+        int bytes = buffer.remaining();
+        if (writeQueue == null) {
+            target.writeBlock(buffer, position);
+            buffer.clear();
+            freeBuffers.add(buffer);
+            return bytes;
+        }
+        checkFailure();
+        synchronized (this) {
+            outstanding++;
+        }
+        try {
+            writeQueue.put(new PendingWrite(buffer, position));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted submitting a block");
+        }
+        return bytes;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Waits until every submitted buffer is written.
+     *
+     * @throws IOException
+     *             if a write failed or the wait is interrupted
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            while (outstanding > 0 && failure == null) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted flushing "
+                        + target.getFileName());
+                }
+            }
+        }
+        checkFailure();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Flushes and stops the writer thread. The target file stays open.
+     *
+     * @throws IOException
+     *             if a write failed
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            if (writerThread != null) {
+                // After a failure the queue may still be full. The writer
+                // keeps draining it, so the stop mark always gets in.
+                try {
+                    writeQueue.put(STOP);
+                    writerThread.join();
+                }
+                catch (InterruptedException e) {
+                    writerThread.interrupt();
+                    Thread.currentThread().interrupt();
+                }
+                writerThread = null;
+            }
+        }
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Body of the writer thread: writes queued buffers in order and returns
+     * them to the pool. After the first error the remaining buffers are
+     * returned unwritten, so no one waits on them.
+     */
+    private void writeLoop() {
+        while (true) {
+            PendingWrite write;
+            try {
+                write = writeQueue.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (write == STOP) {
+                return;
+            }
+            try {
+                if (failure == null) {
+                    target.writeBlock(write.buffer, write.position);
+                }
+            }
+            catch (Throwable e) {
+                synchronized (this) {
+                    failure = e;
+                }
+            }
+            finally {
+                write.buffer.clear();
+                freeBuffers.add(write.buffer);
+                synchronized (this) {
+                    outstanding--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Rethrows the writer thread's error on the sorting thread.
+     *
+     * @throws IOException
+     *             the error, if there was one
+     */
+    private synchronized void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-behind to " + target.getFileName()
+                + " failed", failure);
+        }
+    }
+}
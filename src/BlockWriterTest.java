@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import student.TestCase;
+
+/**
+ * Test class for the BlockWriter class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class BlockWriterTest extends TestCase {
+    private static final int BUFFER = 64;
+    private static final int BUFFERS = 20;
+
+    /**
+     * A sink in memory that fails at a given write.
+     */
+    private static class MemorySink implements BlockSink {
+        private byte[] data = new byte[BUFFER * BUFFERS];
+        private int writes;
+        private int failAt;
+        private RuntimeException runtimeError;
+
+        /**
+         * Creates a new MemorySink.
+         *
+         * @param failAt
+         *            the number of the write that fails, or -1 for none
+         * @param runtimeError
+         *            the error the failing write throws, or null for an
+         *            IOException
+         */
+        MemorySink(int failAt, RuntimeException runtimeError) {
+            this.failAt = failAt;
+            this.runtimeError = runtimeError;
+        }
+
+
+        @Override
+        public void writeBlock(ByteBuffer buffer, long position)
+            throws IOException {
+            if (writes++ == failAt) {
+                if (runtimeError != null) {
+                    throw runtimeError;
+                }
+                throw new IOException("disk full");
+            }
+            buffer.get(data, (int)position, buffer.remaining());
+        }
+
+
+        @Override
+        public String getFileName() {
+            return "memory";
+        }
+    }
+
+    /**
+     * Tests that buffers written behind land at their positions, whatever
+     * order the writer gets to them in
+     *
+     * @throws IOException
+     */
+    public void testWritesBehind() throws IOException {
+        MemorySink sink = new MemorySink(-1, null);
+        BlockWriter writer = new BlockWriter(sink, BUFFER, 2);
+        // Written back to front
+        for (int i = BUFFERS - 1; i >= 0; i--) {
+            writer.submit(fill(writer.acquire(), i), (long)i * BUFFER);
+        }
+        writer.close();
+        for (int i = 0; i < sink.data.length; i++) {
+            assertEquals((byte)(i / BUFFER), sink.data[i]);
+        }
+    }
+
+
+    /**
+     * Tests that a failed write is reported and that the writer still
+     * closes, with buffers waiting behind the failed one
+     *
+     * @throws IOException
+     */
+    public void testFailingSink() throws IOException {
+        assertFailure(new MemorySink(1, null), IOException.class);
+    }
+
+
+    /**
+     * Tests that a runtime error of the sink is reported like a failed
+     * write instead of stopping the writer thread
+     *
+     * @throws IOException
+     */
+    public void testRuntimeErrorInSink() throws IOException {
+        assertFailure(new MemorySink(1, new IllegalStateException("bug")),
+            IllegalStateException.class);
+    }
+
+
+    /**
+     * Submits every buffer to a writer over a failing sink and checks that
+     * flush and close report the error.
+     *
+     * @param sink
+     *            the sink
+     * @param cause
+     *            the error the sink throws
+     * @throws IOException
+     */
+    private void assertFailure(MemorySink sink, Class<?> cause)
+        throws IOException {
+        BlockWriter writer = new BlockWriter(sink, BUFFER, 3);
+        int submitted = 0;
+        try {
+            for (int i = 0; i < BUFFERS; i++) {
+                writer.submit(fill(writer.acquire(), i), (long)i * BUFFER);
+                submitted++;
+            }
+            writer.flush();
+            fail("the failed write was not reported");
+        }
+        catch (IOException e) {
+            assertTrue(cause.isInstance(e.getCause()));
+        }
+        assertTrue(submitted > 1);
+        try {
+            writer.close();
+            fail("close did not report the failed write");
+        }
+        catch (IOException e) {
+            assertTrue(cause.isInstance(e.getCause()));
+        }
+        // Nothing after the failed write was written
+        assertEquals(0, sink.data[sink.data.length - 1]);
+    }
+
+
+    /**
+     * Fills a buffer with a byte value.
+     *
+     * @param buffer
+     *            the buffer
+     * @param value
+     *            the value
+     * @return the buffer
+     */
+    private ByteBuffer fill(ByteBuffer buffer, int value) {
+        while (buffer.hasRemaining()) {
+            buffer.put((byte)value);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// -------------------------------------------------------------------------
+/**
+ * ChannelBlockSink lets a BlockWriter write to a stream, such as a pipe or
+ * a socket. A stream can not seek, so every write has to start where the
+ * one before it ended. A single-threaded merge writes its output that way;
+ * the writer thread of a BlockWriter keeps the order of the buffers.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class ChannelBlockSink implements BlockSink {
+    // ~ Fields ................................................................
+    /**
+     * The stream.
+     */
+    private WritableByteChannel channel;
+
+    /**
+     * Number of bytes written so far, the position of the next write.
+     */
+    private long position;
+
+    /**
+     * Counters of the bytes written.
+     */
+    private IOStats stats;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new ChannelBlockSink object.
+     *
+     * @param channel
+     *            the stream, blocking
+     * @param name
+     *            a name for the stream in messages and metrics
+     */
+    public ChannelBlockSink(WritableByteChannel channel, String name) {
+        this.channel = channel;
+        this.stats = new IOStats(name);
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Writes a buffer to the stream.
+     *
+     * @param buffer
+     *            the data to write
+     * @param writePosition
+     *            the position to write to, which must be where the last
+     *            write ended
+     * @throws IOException
+     *             if the write fails or is out of order
+     */
+    @Override
+    public void writeBlock(ByteBuffer buffer, long writePosition)
+        throws IOException {
+        if (writePosition != position) {
+            throw new IOException("Write to " + stats.getFileName() + " at "
+                + writePosition + ", the stream is at " + position);
+        }
+        int bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        stats.recordWrite(position, bytes);
+        position += bytes;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of the stream.
+     *
+     * @return the name
+     */
+    @Override
+    public String getFileName() {
+        return stats.getFileName();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many bytes have been written.
+     *
+     * @return the number of bytes
+     */
+    public long getPosition() {
+        return position;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the counters of the bytes written.
+     *
+     * @return the counters
+     */
+    public IOStats getStats() {
+        return stats;
+    }
+}
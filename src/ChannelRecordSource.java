@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// -------------------------------------------------------------------------
+/**
+ * ChannelRecordSource serves the reads of run generation from a stream,
+ * such as a pipe or a socket. A stream can not seek, so every read has to
+ * start where the one before it ended, which holds for a single run
+ * generator. The channel has to be blocking.
+ *
+ * Reads return whole records: a read waits for the stream until it has the
+ * bytes asked for or the stream ends, and a stream that ends inside a
+ * record is an error.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class ChannelRecordSource implements RecordSource {
+    // ~ Fields ................................................................
+    /**
+     * The stream.
+     */
+    private ReadableByteChannel channel;
+
+    /**
+     * Number of bytes read so far, the position of the next read.
+     */
+    private long position;
+
+    /**
+     * Counters of the bytes read.
+     */
+    private IOStats stats;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new ChannelRecordSource object.
+     *
+     * @param channel
+     *            the stream, blocking
+     * @param name
+     *            a name for the stream in messages and metrics
+     */
+    public ChannelRecordSource(ReadableByteChannel channel, String name) {
+        this.channel = channel;
+        this.stats = new IOStats(name);
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Reads the next bytes of the stream into the scratch buffer.
+     *
+     * @param readPosition
+     *            the position to read from, which must be where the last
+     *            read ended
+     * @param length
+     *            the number of bytes wanted, whole records
+     * @param scratch
+     *            a buffer of at least length bytes
+     * @return the scratch buffer with the bytes read, fewer than length only
+     *         at the end of the stream
+     * @throws IOException
+     *             if the read fails, is out of order or the stream ends
+     *             inside a record
+     */
+    @Override
+    public ByteBuffer readView(
+        long readPosition,
+        int length,
+        ByteBuffer scratch)
+        throws IOException {
+        if (readPosition != position) {
+            throw new IOException("Read of " + stats.getFileName() + " at "
+                + readPosition + ", the stream is at " + position);
+        }
+        scratch.clear();
+        scratch.limit(length);
+        while (scratch.hasRemaining() && channel.read(scratch) >= 0) {
+            // Pipes hand over what they have; wait for the rest
+        }
+        scratch.flip();
+        if (scratch.remaining() % ByteFile.BYTES_PER_RECORD != 0) {
+            throw new IOException(stats.getFileName() + " ends inside a "
+                + "record, after " + (position + scratch.remaining())
+                + " bytes");
+        }
+        stats.recordRead(position, scratch.remaining());
+        position += scratch.remaining();
+        return scratch;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many bytes have been read.
+     *
+     * @return the number of bytes
+     */
+    public long getPosition() {
+        return position;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the counters of the bytes read.
+     *
+     * @return the counters
+     */
+    public IOStats getStats() {
+        return stats;
+    }
+}
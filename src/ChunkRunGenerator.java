@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+// -------------------------------------------------------------------------
+/**
+ * ChunkRunGenerator is implemented by the classes that turn one chunk of
+ * the input file into sorted runs. Each one writes its runs over the span of
+ * the run file its chunk occupies in the input file and records them in a
+ * shared RunCatalog, so generators on different chunks can run at the same
+ * time.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public interface ChunkRunGenerator extends Callable<Integer> {
+    // ----------------------------------------------------------
+    /**
+     * Generates the runs of the chunk. The runs are handed to a writer,
+     * which the caller has to flush before reading them.
+     *
+     * @return the number of runs generated
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    @Override
+    Integer call() throws IOException;
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the combiner of records with equal keys within a run. Runs then
+     * may take less of the span than the chunk.
+     *
+     * @param combiner
+     *            the combiner, or null to keep every record
+     */
+    void setCombiner(RecordCombiner combiner);
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the sampler shown the key of every record of the chunk.
+     *
+     * @param sampler
+     *            the sampler, not shared with other generators, or null
+     */
+    void setSampler(KeySampler sampler);
+}
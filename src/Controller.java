@@ -1,6 +1,12 @@
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
 
 /**
  * Controller class controls processes including initializing, sorting, and
@@ -24,14 +30,21 @@ public class Controller {
     private byte[] inputBuffer;
 
     /**
-     * Buffer for writing output data blocks to the output file.
+     * RecordHeap structure to manage records during sorting.
      */
-    private byte[] outputBuffer;
+    private RecordHeap minHeap;
 
     /**
-     * MinHeap structure to manage Record objects during sorting.
+     * RadixSorter used instead of the heap, or null when sorting with the
+     * heap.
      */
-    private MinHeap<Record> minHeap;
+    private RadixSorter radixSorter;
+
+    /**
+     * TopKSelector used instead of both when the top records fit in memory,
+     * or null.
+     */
+    private TopKSelector topKSelector;
 
     /**
      * FileParser instance for parsing and reading data from the input file.
@@ -48,9 +61,32 @@ public class Controller {
      */
     private FileParser mergeFileParser;
 
+    /**
+     * Files the sorted records are split between by key range, or null to
+     * sort the input in place.
+     */
+    private FileParser[] shardFiles;
+
+    /**
+     * The options of this sort, including the memory budget that sizes the
+     * heap and the buffers.
+     */
+    private SortOptions options;
+
+    /**
+     * Counters and timers of this sort, published through JMX.
+     */
+    private SortMetrics metrics;
+
+    /**
+     * Logger for problems that do not stop the sort.
+     */
+    private static final Logger LOGGER = Logger.getLogger(Controller.class
+        .getName());
+
     // ----------------------------------------------------------
     /**
-     * Create a new Controller object.
+     * Create a new Controller object with the default options.
      * 
      * @param inputFilename
      *            the inputFilename, the path
@@ -58,34 +94,108 @@ public class Controller {
      * @throws IOException
      */
     public Controller(String inputFilename) throws IOException {
-        // Initialize buffers for reading and writing blocks
-        this.inputBuffer = new byte[ByteFile.BYTES_PER_BLOCK];
-        this.outputBuffer = new byte[ByteFile.BYTES_PER_BLOCK];
+        this(inputFilename, new SortOptions());
+    }
 
-        // Initialize the input file parser to read the binary file
-        this.fileParser = new FileParser(inputFilename);
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new Controller object.
+     * 
+     * @param inputFilename
+     *            the inputFilename, the path
+     *            string
+     * @param options
+     *            the options of the sort
+     * @throws IOException
+     */
+    public Controller(String inputFilename, SortOptions options)
+        throws IOException {
+        this.options = options;
+        MemoryBudget budget = options.getBudget();
+
+        // Initialize the buffer for reading blocks. Output buffers belong to
+        // the write-behind pool of each phase.
+        this.inputBuffer = new byte[budget.getInputBufferBytes()];
+
+        // Initialize the input file parser to read the binary file. Direct
+        // I/O is for the scratch files only: the input, which ends up
+        // holding the sorted records, stays on the page cache.
+        IOMode dataMode = (options.getIOMode() == IOMode.DIRECT)
+            ? IOMode.CHANNEL
+            : options.getIOMode();
+        this.fileParser = new FileParser(inputFilename, dataMode);
 
         // Define filenames for intermediate runs and merged results
-        String intermediateRunFilename = "intermediateRuns.bin";
-        String mergeResultFilename = "mergedResult.bin";
+        String intermediateRunFilename = options.getRunFileName();
+        String mergeResultFilename = options.getMergeFileName();
 
         // Initialize the file parsers for writing the sorted output and merged
         // data
-        this.runFileParser = new FileParser(intermediateRunFilename);
-        this.mergeFileParser = new FileParser(mergeResultFilename);
+        this.runFileParser = new FileParser(intermediateRunFilename, options
+            .getIOMode());
+        this.mergeFileParser = new FileParser(mergeResultFilename, options
+            .getIOMode());
+
+        // Initialize RecordHeap, or the RadixSorter replacing it, with the
+        // capacity the budget leaves for it, shared between the run
+        // generation threads. Top records that fit in a heap of their own
+        // are selected without either. None of them is allocated larger
+        // than the input.
+        int inputRecords = inputRecords(fileParser.getFile().length());
+        long topK = options.getTopK();
+        if (topK > 0 && topK <= budget.getHeapRecords(1)) {
+            this.topKSelector = new TopKSelector((int)Math.min(topK,
+                inputRecords), options.getLayout());
+        }
+        else if (options.getSortAlgorithm() == SortAlgorithm.RADIX) {
+            this.radixSorter = new RadixSorter(Math.min(inputRecords, budget
+                .getRadixRecords(options.getRunThreads())));
+        }
+        else {
+            this.minHeap = new RecordHeap(Math.min(inputRecords, budget
+                .getHeapRecords(options.getRunThreads())));
+        }
 
-        // Initialize MinHeap with capacity for 8 blocks of records
-        Record[] emptyHeapArray = new Record[ByteFile.RECORDS_PER_BLOCK * 8];
-        this.minHeap = new MinHeap<>(emptyHeapArray, 0,
-            ByteFile.RECORDS_PER_BLOCK * 8);
+        // Initialize ReplacementSelection with the input buffer, minHeap
+        // and the buffer sizes and depths of the options
+        this.replacementSelection = ExternalSorter.newReplacementSelection(
+            options, minHeap, radixSorter, inputBuffer);
 
-        // Populate heap with initial blocks of records
-        this.initializeHeap();
+        // Every file counts its own I/O; the metrics collect the rest
+        this.metrics = new SortMetrics();
+        metrics.addFile(fileParser.getStats());
+        metrics.addFile(runFileParser.getStats());
+        metrics.addFile(mergeFileParser.getStats());
+        replacementSelection.setMetrics(metrics);
 
-        // Initialize ReplacementSelection with input and output buffers, and
-        // minHeap
-        this.replacementSelection = new ReplacementSelection(minHeap,
-            inputBuffer, outputBuffer);
+        // Shards start empty, whatever an earlier sort left in them. They
+        // replace the input, which the sort leaves empty.
+        if (options.getShards() > 0) {
+            LOGGER.warning("Sorting " + inputFilename + " into "
+                + options.getShards() + " shards named "
+                + options.getShardName(0) + " and on; " + inputFilename
+                + " is left empty");
+            this.shardFiles = new FileParser[options.getShards()];
+            for (int i = 0; i < shardFiles.length; i++) {
+                shardFiles[i] = new FileParser(options.getShardName(i),
+                    dataMode);
+                shardFiles[i].resize(0);
+                metrics.addFile(shardFiles[i].getStats());
+            }
+            replacementSelection.setShards(shardFiles);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the counters and timers of this sort.
+     * 
+     * @return the metrics
+     */
+    public SortMetrics getMetrics() {
+        return metrics;
     }
 
 
@@ -96,26 +206,38 @@ public class Controller {
      * @throws IOException
      */
     private void initializeHeap() throws IOException {
-        // Define a buffer to hold 8 blocks of data
-        byte[] largeInputBuffer = new byte[ByteFile.BYTES_PER_BLOCK * 8];
-        // Use FileParser to read the first 8 blocks directly into the buffer
-        if (fileParser.getFile().getFilePointer() == 0) { // Start from the
-                                                          // beginning
-            fileParser.getFile().readFully(largeInputBuffer);
+        // Fill the heap, or take the whole file if it is smaller than the heap
+        int records = (int)Math.min(minHeap.capacity(), fileParser.getFile()
+            .length() / ByteFile.BYTES_PER_RECORD);
+        if (fileParser.getFile().getFilePointer() != 0) {
+            // Only a fresh input is loaded
+            records = 0;
         }
 
-        // Wrap the buffer in a ByteBuffer for easy data access
-        ByteBuffer byteBuffer = ByteBuffer.wrap(largeInputBuffer);
-
-        // Iterate over each record in the buffer and add to the heap
-        for (int rec = 0; rec < ByteFile.RECORDS_PER_BLOCK * 8; rec++) {
-            long recID = byteBuffer.getLong(); // Read 8 bytes for recID
-            double key = byteBuffer.getDouble(); // Read 8 bytes for key
+        // Read through the input buffer so a large heap needs no extra copy
+        ByteBuffer scratch = ByteBuffer.wrap(inputBuffer);
+        int rec = 0;
+        while (rec < records) {
+            int bytes = Math.min(inputBuffer.length, (records - rec)
+                * ByteFile.BYTES_PER_RECORD);
+            // View the records, from the mapping in mapped mode
+            ByteBuffer byteBuffer = fileParser.readView((long)rec
+                * ByteFile.BYTES_PER_RECORD, bytes, scratch);
 
-            // Create and insert the record into the minHeap
-            Record record = new Record(recID, key, -1);
-            minHeap.insert(record);
+            // Store every record in the heap arrays, then heapify once
+            RecordLayout layout = options.getLayout();
+            while (byteBuffer.hasRemaining()) {
+                long word0 = byteBuffer.getLong();
+                long word1 = byteBuffer.getLong();
+                minHeap.set(rec, layout.payload(word0, word1), layout.key(
+                    word0, word1), -1);
+                rec++;
+            }
         }
+        // Replacement selection continues sequentially after the heap
+        fileParser.getFile().seek((long)records * ByteFile.BYTES_PER_RECORD);
+        minHeap.setHeapSize(records);
+        minHeap.buildHeap();
     }
 
 
@@ -126,56 +248,369 @@ public class Controller {
      * @throws IOException
      */
     public void performSorting() throws IOException {
-        if (fileParser.getFile().length() <= ByteFile.BYTES_PER_BLOCK * 8) {
+        try {
+            metrics.register();
+        }
+        catch (JMException e) {
+            // The sort does not depend on being watched
+            LOGGER.log(Level.WARNING, "Sort metrics not published", e);
+        }
+
+        // A resumed sort goes on from the runs its manifest kept. Runs cut
+        // short for a top-K sort or combined do not add up to the input, so
+        // such a sort keeps no manifest.
+        long topK = options.getTopK();
+        boolean combining = options.getCombiner() != null;
+        String manifestPath = fileParser.getFileName() + RunManifest.SUFFIX;
+        RunManifest manifest = null;
+        if (options.isResume() && (topK > 0 || combining)) {
+            LOGGER.warning("A top-K or combining sort can not be resumed, "
+                + "sorting from the start");
+        }
+        else if (options.isResume()) {
+            manifest = readManifest(manifestPath);
+        }
+        long inputLength = (manifest != null)
+            ? manifest.getInputLength()
+            : fileParser.getFile().length();
+        RecordLayout layout = (manifest != null)
+            ? manifest.getLayout()
+            : options.getLayout();
+        metrics.setRecordsProcessed(inputLength / ByteFile.BYTES_PER_RECORD);
+        long outputLength = inputLength;
+        if (topK > 0) {
+            outputLength = Math.min(inputLength, topK
+                * ByteFile.BYTES_PER_RECORD);
+        }
+
+        // The index of the sorted file is filled while it is written. It
+        // looks up the default key, so other keys get no index, and there
+        // is no single sorted file to index with shards. Combined output
+        // has its length known only at the end and is indexed then.
+        BlockIndex index = null;
+        if (options.getIndexBlocks() > 0 && layout.isDefault()
+            && shardFiles == null) {
+            index = new BlockIndex(outputLength, options.getIndexBlocks());
+        }
+        replacementSelection.setBlockIndex(combining ? null : index);
+
+        // A fresh sort first looks for what the input already has sorted.
+        // Only a sorted input is of use to an in-memory sort.
+        boolean inMemory = inputLength <= (long)inMemoryCapacity()
+            * ByteFile.BYTES_PER_RECORD;
+        DLList naturalRuns = new DLList();
+        if (manifest == null && topKSelector == null && !combining) {
+            metrics.beginPhase("presortedness scan");
+            long minRecords = inMemory
+                ? inputLength / ByteFile.BYTES_PER_RECORD
+                : inMemoryCapacity();
+            NaturalRunScanner scanner = new NaturalRunScanner(layout);
+            // The shards are split by the keys the scan reads, if the
+            // natural runs are kept
+            scanner.setSampler(replacementSelection.getSample());
+            naturalRuns = scanner.scan(fileParser, inputLength, minRecords,
+                ByteBuffer.wrap(inputBuffer));
+        }
+        boolean sorted = naturalRuns.size() == 1 && naturalRuns.get(0)
+            .getLength() == inputLength;
+
+        if (manifest != null) {
+            metrics.beginPhase("resume");
+            DLList runs = restoreRuns(manifest);
+            replacementSelection.setManifest(manifest);
+            // The runs are read back with the codec and key they were
+            // written with
+            replacementSelection.setCodec(manifest.getCodec());
+            replacementSelection.setLayout(layout);
+            metrics.beginPhase("merge");
+            replacementSelection.recursiveMultiwayMerge(fileParser,
+                mergeFileParser, runs);
+            if (index != null) {
+                // Passes before the crash wrote without the index
+                index.fill(fileParser);
+            }
+        }
+        else if (topKSelector != null) {
+            // One scan keeps the top records, which replace the input
+            metrics.beginPhase("top-k selection");
+            replacementSelection.selectTopK(topKSelector, fileParser,
+                inputLength, fileParser);
+            fileParser.resize(outputLength);
+        }
+        else if (sorted) {
+            // The scan verified the order, nothing has to be written
+            LOGGER.info("Input is already sorted");
+            if (outputLength < inputLength) {
+                fileParser.resize(outputLength);
+            }
+            if (index != null) {
+                index.fill(fileParser);
+            }
+            splitIntoShards();
+        }
+        else if (inMemory) {
+            metrics.beginPhase("in-memory sort");
+            if (minHeap != null) {
+                // Populate heap with every record of the file
+                this.initializeHeap();
+            }
             replacementSelection.inMemorySort(fileParser);
+            splitIntoShards();
         }
         else {
             // Phase 1: Perform Replacement Selection Sort to create initial
-            // sorted
-            // runs
-            DLList initialRuns = replacementSelection
-                .performReplacementSelection(fileParser, runFileParser);
+            // sorted runs, on each run generation thread. The manifest
+            // keeps them from then on, so a crash can be resumed.
+            RunManifest newManifest = null;
+            if (topK > 0) {
+                // Only the top records of every run are merged
+                replacementSelection.setRecordLimit(topK);
+            }
+            else if (!combining) {
+                newManifest = new RunManifest(manifestPath, inputLength);
+                newManifest.setLayout(layout);
+                replacementSelection.setManifest(newManifest);
+            }
+            metrics.beginPhase("run generation");
+            DLList initialRuns;
+            boolean singleWorker = false;
+            try {
+                if (options.getWorkers() > 1) {
+                    // Worker processes sort the slices of the input into raw
+                    // runs, which take the place of the natural runs
+                    SortCoordinator coordinator = new SortCoordinator(options);
+                    coordinator.setManifest(newManifest);
+                    coordinator.setMetrics(metrics);
+                    initialRuns = coordinator.generateRuns(fileParser,
+                        runFileParser);
+                    replacementSelection.setCodec(null);
+                    singleWorker = initialRuns.size() == 1;
+                    if (replacementSelection.getSample() != null) {
+                        // Shards are split by samples of the runs instead
+                        replacementSelection.getSample().clear();
+                    }
+                }
+                else {
+                    initialRuns = replacementSelection
+                        .performReplacementSelection(fileParser, runFileParser,
+                            naturalRuns);
+                }
+            }
+            finally {
+                // A failed run generation leaves the journal open
+                if (newManifest != null) {
+                    newManifest.close();
+                }
+            }
 
             // Phase 2: Perform Recursive Multiway Merge to sort all runs into
             // one
             // sorted file
             // Perform recursive multiway merge on the initial runs until there
-            // is only one run left
-            runFileParser = new FileParser("intermediateRuns.bin");
-            replacementSelection.recursiveMultiwayMerge(runFileParser,
+            // is only one run left. Replacement selection moved the runs into
+            // the input file, so that is where the merge reads them from.
+            metrics.beginPhase("merge");
+            replacementSelection.recursiveMultiwayMerge(fileParser,
                 mergeFileParser, initialRuns);
+            if (index != null && singleWorker) {
+                // The run of a single worker needed no merge to index it
+                index.fill(fileParser);
+            }
         }
+        if (index != null) {
+            metrics.beginPhase("index");
+            if (combining) {
+                index = new BlockIndex(fileParser.getFile().length(), options
+                    .getIndexBlocks());
+                index.fill(fileParser);
+            }
+            index.write(fileParser.getFileName() + BlockIndex.SUFFIX);
+        }
+        else {
+            // An index left by an earlier sort no longer matches the file
+            Files.deleteIfExists(Paths.get(fileParser.getFileName()
+                + BlockIndex.SUFFIX));
+        }
+        // The sorted file is complete, there is nothing left to resume
+        Files.deleteIfExists(Paths.get(manifestPath));
+        if (shardFiles != null) {
+            // The shards are the output and the input only holds the runs
+            // of the last pass, so it is emptied rather than left looking
+            // like a sorted file (see SortOptions.setShards())
+            fileParser.resize(0);
+        }
+        metrics.beginPhase("report");
         this.report();
+        metrics.endPhase();
+        if (options.getMetricsPath() != null) {
+            metrics.writeJson(options.getMetricsPath());
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Splits the input, sorted in place as a single run, between the
+     * shards, if there are any.
+     * 
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private void splitIntoShards() throws IOException {
+        if (shardFiles == null) {
+            return;
+        }
+        metrics.beginPhase("sharding");
+        long length = fileParser.getFile().length();
+        DLList sortedRun = new DLList();
+        sortedRun.add(new Run(0, length, length, 0));
+        // The sorted input is raw, whatever the codec of runs would be
+        replacementSelection.setCodec(null);
+        replacementSelection.recursiveMultiwayMerge(fileParser,
+            mergeFileParser, sortedRun);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many records an input of the given length holds, rounded
+     * up to whole blocks.
+     * 
+     * @param length
+     *            the length of the input in bytes
+     * @return the number of records, at least one block
+     */
+    private static int inputRecords(long length) {
+        long blocks = (length + ByteFile.BYTES_PER_BLOCK - 1)
+            / ByteFile.BYTES_PER_BLOCK;
+        blocks = Math.max(1, Math.min(blocks, Integer.MAX_VALUE
+            / ByteFile.RECORDS_PER_BLOCK));
+        return (int)blocks * ByteFile.RECORDS_PER_BLOCK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many records the heap, or the radix sorter replacing it,
+     * sorts in memory. A top-K selection has neither and sorts nothing in
+     * memory.
+     * 
+     * @return the capacity in records
+     */
+    private int inMemoryCapacity() {
+        if (radixSorter != null) {
+            return radixSorter.capacity();
+        }
+        return (minHeap != null) ? minHeap.capacity() : 0;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Reads the manifest of an interrupted sort.
+     * 
+     * @param manifestPath
+     *            the manifest next to the input
+     * @return the manifest, or null if the sort has to start over
+     * @throws IOException
+     *             if the manifest can not be read
+     */
+    private RunManifest readManifest(String manifestPath)
+        throws IOException {
+        if (!new File(manifestPath).exists()) {
+            LOGGER.info("No manifest " + manifestPath
+                + ", sorting from the start");
+            return null;
+        }
+        if (new File(manifestPath).length() == 0) {
+            // Left by a journal that died before its header was written
+            LOGGER.info("Empty manifest " + manifestPath
+                + ", sorting from the start");
+            return null;
+        }
+        RunManifest manifest = RunManifest.read(manifestPath);
+        if (manifest.isGenerating()) {
+            // Run generation had not touched the input yet, but may have
+            // appended runs around natural runs to it
+            LOGGER.info("Run generation did not finish, sorting from the "
+                + "start");
+            if (fileParser.getFile().length() > manifest.getInputLength()) {
+                fileParser.resize(manifest.getInputLength());
+            }
+            return null;
+        }
+        return manifest;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Puts the runs of a manifest back in the input file and checks them.
+     * The runs may be in a scratch file: the merge file, when a pass left
+     * them there, or the run file, when the crash came before run generation
+     * renamed it. That file is renamed over the input now. The partial
+     * output of a pass that was cut short is cut off the end of the input.
+     * 
+     * @param manifest
+     *            the manifest of the interrupted sort
+     * @return the runs to merge
+     * @throws IOException
+     *             if the files do not match the manifest
+     */
+    private DLList restoreRuns(RunManifest manifest) throws IOException {
+        String dataFile = manifest.getDataFile();
+        if (!dataFile.equals(fileParser.getFileName()) && new File(dataFile)
+            .exists()) {
+            fileParser.replaceWith(dataFile);
+        }
+        // Scratch files start empty, as after a finished pass
+        runFileParser.reopen();
+        mergeFileParser.reopen();
+
+        manifest.validate(fileParser.getFile().length());
+        fileParser.resize(manifest.getDataLength());
+        LOGGER.info("Resuming after merge pass " + manifest.getPasses()
+            + " with " + manifest.toRunList().size() + " runs");
+        return manifest.toRunList();
     }
 
 
     // ----------------------------------------------------------
     /**
-     * Reports data in buffers.
+     * Reports data in buffers. Shards are reported one after the other,
+     * block by block, in key order.
      * 
      * @throws IOException
      */
     private void report() throws IOException {
-        fileParser.getFile().seek(0);
+        FileParser[] outputs = (shardFiles != null)
+            ? shardFiles
+            : new FileParser[] { fileParser };
 
         int recordsPerLine = 0; // Counter to track the number of records
                                 // printed per line
 
-        while (fileParser.readNextBlock(inputBuffer) != -1) {
-            // Read the first record of the block (16 bytes)
-            ByteBuffer byteBuffer = ByteBuffer.wrap(inputBuffer);
-            long recID = byteBuffer.getLong(); // Get the record ID
-            double key = byteBuffer.getDouble(); // Get the key
+        // The input buffer may span several blocks, report needs exactly one
+        byte[] blockBuffer = new byte[ByteFile.BYTES_PER_BLOCK];
+        for (FileParser output : outputs) {
+            output.getFile().seek(0);
+            while (output.readNextBlock(blockBuffer) != -1) {
+                // Read the first record of the block (16 bytes)
+                ByteBuffer byteBuffer = ByteBuffer.wrap(blockBuffer);
+                long recID = byteBuffer.getLong(); // Get the record ID
+                double key = byteBuffer.getDouble(); // Get the key
 
-            // Print the record (ID and key)
-            System.out.print(recID + " " + key + " ");
-            recordsPerLine++;
+                // Print the record (ID and key)
+                System.out.print(recID + " " + key + " ");
+                recordsPerLine++;
 
-            // Print a new line after every 5 records
-            if (recordsPerLine == 5) {
-                System.out.println();
-                recordsPerLine = 0;
+                // Print a new line after every 5 records
+                if (recordsPerLine == 5) {
+                    System.out.println();
+                    recordsPerLine = 0;
+                }
             }
+            output.close();
         }
         fileParser.close();
     }
@@ -0,0 +1,213 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the Controller class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class ControllerTest extends TestCase {
+    private Path directory;
+    private double[] keys;
+
+    /**
+     * Writes an input of random records into a temporary directory
+     *
+     * @throws IOException
+     */
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("controllerTest");
+        keys = new double[40 * ByteFile.RECORDS_PER_BLOCK];
+        Random rng = new Random(22);
+        ByteBuffer records = ByteBuffer.allocate(keys.length
+            * ByteFile.BYTES_PER_RECORD);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rng.nextDouble();
+            records.putLong(i);
+            records.putDouble(keys[i]);
+        }
+        Files.write(directory.resolve("input.bin"), records.array());
+        Arrays.sort(keys);
+    }
+
+
+    /**
+     * Deletes the temporary directory
+     */
+    public void tearDown() {
+        for (File file : directory.toFile().listFiles()) {
+            file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+
+    /**
+     * Tests a top-K sort whose records fit in memory, which selects them
+     * in one scan
+     *
+     * @throws IOException
+     */
+    public void testTopKInMemory() throws IOException {
+        assertTopK(1000);
+    }
+
+
+    /**
+     * Tests a top-K sort with more records than memory holds, which cuts
+     * its runs short
+     *
+     * @throws IOException
+     */
+    public void testTopKWithRuns() throws IOException {
+        assertTopK(15000);
+    }
+
+
+    /**
+     * Tests that a budget as large as the Java heap sorts a small input,
+     * whose heap is only allocated as large as the input
+     *
+     * @throws IOException
+     */
+    public void testBudgetLargerThanInput() throws IOException {
+        SortOptions options = new SortOptions();
+        options.setBudget(new MemoryBudget(Runtime.getRuntime()
+            .maxMemory()));
+        options.setRunFileName(directory.resolve("runs.bin").toString());
+        options.setMergeFileName(directory.resolve("merge.bin").toString());
+        Path input = directory.resolve("input.bin");
+        PrintStream out = System.out;
+        try {
+            Controller controller = new Controller(input.toString(),
+                options);
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            controller.performSorting();
+        }
+        finally {
+            System.setOut(out);
+        }
+        ByteBuffer sorted = ByteBuffer.wrap(Files.readAllBytes(input));
+        assertEquals(keys.length * ByteFile.BYTES_PER_RECORD, sorted
+            .remaining());
+        for (double key : keys) {
+            sorted.getLong();
+            assertEquals(key, sorted.getDouble(), 0.0);
+        }
+    }
+
+
+    /**
+     * Tests that a sharded sort splits the sorted records between the
+     * shards in key order and leaves the input empty
+     *
+     * @throws IOException
+     */
+    public void testShards() throws IOException {
+        SortOptions options = new SortOptions();
+        options.setBudget(new MemoryBudget(128 * 1024));
+        options.setShards(3);
+        options.setShardPrefix(directory.resolve("out").toString());
+        options.setRunFileName(directory.resolve("runs.bin").toString());
+        options.setMergeFileName(directory.resolve("merge.bin").toString());
+        Path input = directory.resolve("input.bin");
+        PrintStream out = System.out;
+        try {
+            Controller controller = new Controller(input.toString(),
+                options);
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            controller.performSorting();
+        }
+        finally {
+            System.setOut(out);
+        }
+        int next = 0;
+        for (int shard = 0; shard < 3; shard++) {
+            ByteBuffer sorted = ByteBuffer.wrap(Files.readAllBytes(Paths.get(
+                options.getShardName(shard))));
+            while (sorted.hasRemaining()) {
+                sorted.getLong();
+                assertEquals(keys[next++], sorted.getDouble(), 0.0);
+            }
+        }
+        assertEquals(keys.length, next);
+        // The shards replace the input
+        assertEquals(0, Files.size(input));
+    }
+
+
+    /**
+     * Tests that the sorted file gets an index only when one is asked for,
+     * and that a later sort without one removes it
+     *
+     * @throws IOException
+     */
+    public void testIndexOnlyOnRequest() throws IOException {
+        Path input = directory.resolve("input.bin");
+        Path index = Paths.get(input + BlockIndex.SUFFIX);
+        for (int indexBlocks : new int[] { 0, 4, 0 }) {
+            SortOptions options = new SortOptions();
+            options.setBudget(new MemoryBudget(128 * 1024));
+            options.setIndexBlocks(indexBlocks);
+            options.setRunFileName(directory.resolve("runs.bin").toString());
+            options.setMergeFileName(directory.resolve("merge.bin")
+                .toString());
+            PrintStream out = System.out;
+            try {
+                Controller controller = new Controller(input.toString(),
+                    options);
+                System.setOut(new PrintStream(new ByteArrayOutputStream()));
+                controller.performSorting();
+            }
+            finally {
+                System.setOut(out);
+            }
+            assertEquals(indexBlocks > 0, Files.exists(index));
+        }
+        assertEquals(0, new SortOptions().getIndexBlocks());
+    }
+
+
+    /**
+     * Sorts the input for its top records and checks they are the smallest
+     * keys in order
+     *
+     * @param topK
+     *            the number of records to keep
+     * @throws IOException
+     */
+    private void assertTopK(int topK) throws IOException {
+        SortOptions options = new SortOptions();
+        options.setBudget(new MemoryBudget(128 * 1024));
+        options.setTopK(topK);
+        options.setRunFileName(directory.resolve("runs.bin").toString());
+        options.setMergeFileName(directory.resolve("merge.bin").toString());
+        Path input = directory.resolve("input.bin");
+        PrintStream out = System.out;
+        try {
+            Controller controller = new Controller(input.toString(),
+                options);
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            controller.performSorting();
+        }
+        finally {
+            System.setOut(out);
+        }
+        ByteBuffer sorted = ByteBuffer.wrap(Files.readAllBytes(input));
+        assertEquals(topK * ByteFile.BYTES_PER_RECORD, sorted.remaining());
+        for (int i = 0; i < topK; i++) {
+            sorted.getLong();
+            assertEquals(keys[i], sorted.getDouble(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// -------------------------------------------------------------------------
+/**
+ * DeflateCodec runs the output of another codec through java.util.zip
+ * deflate, which finds the repeats that varints leave, such as IDs that
+ * step by the same amount. It uses the fastest level, since every block of
+ * every pass goes through it.
+ *
+ * Deflaters hold native memory and are not thread safe, so every thread
+ * keeps its own, together with a buffer for the inner encoding.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class DeflateCodec implements BlockCodec {
+    // ~ Fields ................................................................
+    /**
+     * Suffix added to the name of the inner codec.
+     */
+    public static final String SUFFIX = "+zip";
+
+    /**
+     * The codec whose output is deflated.
+     */
+    private BlockCodec inner;
+
+    /**
+     * Deflater of every thread.
+     */
+    private ThreadLocal<Deflater> deflaters;
+
+    /**
+     * Inflater of every thread.
+     */
+    private ThreadLocal<Inflater> inflaters;
+
+    /**
+     * Buffer of every thread for the inner encoding.
+     */
+    private ThreadLocal<ByteBuffer[]> scratch;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new DeflateCodec object.
+     *
+     * @param inner
+     *            the codec whose output is deflated
+     */
+    public DeflateCodec(BlockCodec inner) {
+        this.inner = inner;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(
+            Deflater.BEST_SPEED, true));
+        this.inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+        this.scratch = ThreadLocal.withInitial(() -> new ByteBuffer[1]);
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of the codec.
+     *
+     * @return the name of the inner codec followed by "+zip"
+     */
+    @Override
+    public String getName() {
+        return inner.getName() + SUFFIX;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Encodes records with the inner codec and deflates the result.
+     *
+     * @param records
+     *            whole records
+     * @param out
+     *            the buffer the encoded bytes go to
+     * @return false if either stage did not fit
+     */
+    @Override
+    public boolean encode(ByteBuffer records, ByteBuffer out) {
+        // The inner encoding is only worth deflating if it is shorter
+        ByteBuffer encoded = scratch(records.remaining());
+        if (!inner.encode(records, encoded)) {
+            return false;
+        }
+        encoded.flip();
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(encoded);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (!out.hasRemaining()) {
+                return false;
+            }
+            deflater.deflate(out);
+        }
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Inflates the bytes and decodes them with the inner codec.
+     *
+     * @param in
+     *            the encoded bytes
+     * @param count
+     *            the number of records encoded
+     * @param out
+     *            the buffer the records go to
+     * @throws IOException
+     *             if the bytes are not a valid encoding
+     */
+    @Override
+    public void decode(ByteBuffer in, int count, ByteBuffer out)
+        throws IOException {
+        // The inner encoding is never longer than the raw records
+        ByteBuffer encoded = scratch(count * ByteFile.BYTES_PER_RECORD);
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(in);
+        try {
+            while (!inflater.finished()) {
+                if (inflater.inflate(encoded) == 0 && (inflater
+                    .needsInput() || !encoded.hasRemaining())) {
+                    throw new IOException("Deflated block is cut short");
+                }
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Deflated block is corrupt", e);
+        }
+        encoded.flip();
+        inner.decode(encoded, count, out);
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns this thread's scratch buffer, cleared and grown to the given
+     * size if needed.
+     *
+     * @param bytes
+     *            the size needed
+     * @return the buffer, limited to that size
+     */
+    private ByteBuffer scratch(int bytes) {
+        ByteBuffer[] holder = scratch.get();
+        if (holder[0] == null || holder[0].capacity() < bytes) {
+            holder[0] = ByteBuffer.allocate(bytes);
+        }
+        holder[0].clear();
+        holder[0].limit(bytes);
+        return holder[0];
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// -------------------------------------------------------------------------
+/**
+ * ExternalSorter sorts a stream of records into another stream, for callers
+ * that do not want their input sorted in place. The input is read once,
+ * front to back, and never written to; the sorted records go to the output
+ * in order. Only the runs touch the disk, in two scratch files that are
+ * deleted again when the sort ends.
+ *
+ * Streams can not seek, so run generation reads on a single thread. The
+ * last merge pass writes to the output on a single thread too, and a
+ * stream sort can not be resumed, indexed or sharded. Every other option
+ * applies as for a file sort. A top-K sort whose records fit in memory
+ * needs no scratch files at all.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public final class ExternalSorter {
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Not instantiated.
+     */
+    private ExternalSorter() {
+        // Only static methods
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sorts the records of one stream into another. Both channels have to
+     * be blocking and are left open.
+     *
+     * @param in
+     *            the records to sort, read to its end
+     * @param out
+     *            the stream the sorted records are written to
+     * @param options
+     *            the options of the sort
+     * @return the metrics of the sort, which the caller may publish
+     * @throws IOException
+     *             if a stream or a scratch file fails, or the input ends
+     *             inside a record
+     * @throws IllegalArgumentException
+     *             if the options ask for shards
+     */
+    public static SortMetrics sort(
+        ReadableByteChannel in,
+        WritableByteChannel out,
+        SortOptions options)
+        throws IOException {
+        if (options.getShards() > 0) {
+            throw new IllegalArgumentException("A stream sort can not be "
+                + "sharded");
+        }
+        MemoryBudget budget = options.getBudget();
+        long topK = options.getTopK();
+        ChannelRecordSource source = new ChannelRecordSource(in, "input");
+        ChannelBlockSink sink = new ChannelBlockSink(out, "output");
+        byte[] inputBuffer = new byte[budget.getInputBufferBytes()];
+        if (topK > 0 && topK <= budget.getHeapRecords(1)) {
+            return selectTopK(source, sink, options, inputBuffer);
+        }
+
+        RecordHeap heap = null;
+        RadixSorter radixSorter = null;
+        // The single run generator gets the whole sort budget
+        if (options.getSortAlgorithm() == SortAlgorithm.RADIX) {
+            radixSorter = new RadixSorter(budget.getRadixRecords(1));
+        }
+        else {
+            heap = new RecordHeap(budget.getHeapRecords(1));
+        }
+        ReplacementSelection replacementSelection = newReplacementSelection(
+            options, heap, radixSorter, inputBuffer);
+        replacementSelection.setOutput(sink);
+        if (topK > 0) {
+            replacementSelection.setRecordLimit(topK);
+        }
+
+        Path directory = Paths.get(options.getScratchDirectory());
+        Path runPath = Files.createTempFile(directory, "runs", ".bin");
+        Path mergePath = null;
+        FileParser runFileParser = null;
+        FileParser mergeFileParser = null;
+        try {
+            mergePath = Files.createTempFile(directory, "merge", ".bin");
+            runFileParser = new FileParser(runPath.toString(), options
+                .getIOMode());
+            mergeFileParser = new FileParser(mergePath.toString(), options
+                .getIOMode());
+
+            SortMetrics metrics = new SortMetrics();
+            metrics.addFile(source.getStats());
+            metrics.addFile(runFileParser.getStats());
+            metrics.addFile(mergeFileParser.getStats());
+            metrics.addFile(sink.getStats());
+            replacementSelection.setMetrics(metrics);
+
+            metrics.beginPhase("run generation");
+            DLList runs = replacementSelection.generateRuns(source,
+                runFileParser);
+            metrics.setRecordsProcessed(source.getPosition()
+                / ByteFile.BYTES_PER_RECORD);
+
+            metrics.beginPhase("merge");
+            replacementSelection.recursiveMultiwayMerge(runFileParser,
+                mergeFileParser, runs);
+            metrics.endPhase();
+            if (options.getMetricsPath() != null) {
+                metrics.writeJson(options.getMetricsPath());
+            }
+            return metrics;
+        }
+        finally {
+            if (runFileParser != null) {
+                runFileParser.close();
+            }
+            if (mergeFileParser != null) {
+                mergeFileParser.close();
+            }
+            Files.deleteIfExists(runPath);
+            if (mergePath != null) {
+                Files.deleteIfExists(mergePath);
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Keeps the top records of a stream in memory and writes them to the
+     * sink, without scratch files.
+     *
+     * @param source
+     *            the records to sort
+     * @param sink
+     *            the stream the top records are written to
+     * @param options
+     *            the options of the sort, whose top records fit in a heap
+     * @param inputBuffer
+     *            the buffer the input is read into
+     * @return the metrics of the sort
+     * @throws IOException
+     *             if a stream fails or the input ends inside a record
+     */
+    private static SortMetrics selectTopK(
+        ChannelRecordSource source,
+        ChannelBlockSink sink,
+        SortOptions options,
+        byte[] inputBuffer)
+        throws IOException {
+        ReplacementSelection replacementSelection = newReplacementSelection(
+            options, null, null, inputBuffer);
+        SortMetrics metrics = new SortMetrics();
+        metrics.addFile(source.getStats());
+        metrics.addFile(sink.getStats());
+        replacementSelection.setMetrics(metrics);
+
+        metrics.beginPhase("top-k selection");
+        replacementSelection.selectTopK(new TopKSelector((int)options
+            .getTopK(), options.getLayout()), source, Long.MAX_VALUE, sink);
+        metrics.setRecordsProcessed(source.getPosition()
+            / ByteFile.BYTES_PER_RECORD);
+        metrics.endPhase();
+        if (options.getMetricsPath() != null) {
+            metrics.writeJson(options.getMetricsPath());
+        }
+        return metrics;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a ReplacementSelection with the buffers, depths, threads,
+     * codec, key layout and combiner of the options.
+     *
+     * @param options
+     *            the options of the sort
+     * @param heap
+     *            the heap of the first run generator, or null
+     * @param radixSorter
+     *            the radix sorter of the first run generator, or null
+     * @param inputBuffer
+     *            the buffer the first run generator reads into
+     * @return the ReplacementSelection
+     * @throws IllegalArgumentException
+     *             if the options ask for a top-K sort with a combiner or
+     *             with shards
+     */
+    public static ReplacementSelection newReplacementSelection(
+        SortOptions options,
+        RecordHeap heap,
+        RadixSorter radixSorter,
+        byte[] inputBuffer) {
+        if (options.getTopK() > 0 && options.getCombiner() != null) {
+            throw new IllegalArgumentException("A top-K sort can not combine "
+                + "records");
+        }
+        if (options.getTopK() > 0 && options.getShards() > 0) {
+            throw new IllegalArgumentException("A top-K sort can not be "
+                + "sharded");
+        }
+        MemoryBudget budget = options.getBudget();
+        // Cursors on encoded runs also hold a frame and its decoded records
+        int writeBehind = options.getWriteBehindDepth();
+        int cursorBuffers = options.getPrefetchDepth() + 1;
+        if (options.getCodec() != null) {
+            cursorBuffers += 2;
+        }
+        ReplacementSelection replacementSelection = new ReplacementSelection(
+            heap, inputBuffer, budget.getOutputBufferBytes(writeBehind + 1),
+            budget.getMergeFanIn(cursorBuffers));
+        replacementSelection.setPrefetchDepth(options.getPrefetchDepth());
+        replacementSelection.setWriteBehindDepth(writeBehind);
+        replacementSelection.setRunThreads(options.getRunThreads());
+        replacementSelection.setMergeThreads(options.getMergeThreads());
+        replacementSelection.setRadixSorter(radixSorter);
+        replacementSelection.setCodec(options.getCodec());
+        replacementSelection.setLayout(options.getLayout());
+        replacementSelection.setCombiner(options.getCombiner());
+        return replacementSelection;
+    }
+}
@@ -0,0 +1,257 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the ExternalSorter class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class ExternalSorterTest extends TestCase {
+
+    /**
+     * Tests that a stream of several runs comes out sorted, with the same
+     * records, and that the input is left as it was
+     *
+     * @throws IOException
+     */
+    public void testSortStream() throws IOException {
+        int count = 40 * ByteFile.RECORDS_PER_BLOCK;
+        byte[] input = randomRecords(count);
+        byte[] original = input.clone();
+
+        SortOptions options = new SortOptions();
+        options.setBudget(new MemoryBudget(128 * 1024));
+        options.setCodec(BlockCodec.forName("delta"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SortMetrics metrics = ExternalSorter.sort(Channels.newChannel(
+            new ByteArrayInputStream(input)), Channels.newChannel(out),
+            options);
+
+        assertTrue(Arrays.equals(original, input));
+        assertEquals(count, metrics.getRecordsProcessed());
+        assertTrue(metrics.getRunCount() > 1);
+        ByteBuffer sorted = ByteBuffer.wrap(out.toByteArray());
+        assertEquals(input.length, sorted.remaining());
+        long idSum = 0;
+        double previous = Double.NEGATIVE_INFINITY;
+        while (sorted.hasRemaining()) {
+            idSum += sorted.getLong();
+            double key = sorted.getDouble();
+            assertTrue(previous <= key);
+            previous = key;
+        }
+        assertEquals((long)count * (count - 1) / 2, idSum);
+    }
+
+
+    /**
+     * Tests that a top-K sort writes the smallest keys in order, both when
+     * they fit in memory and when the runs have to be merged
+     *
+     * @throws IOException
+     */
+    public void testTopK() throws IOException {
+        int count = 40 * ByteFile.RECORDS_PER_BLOCK;
+        byte[] input = randomRecords(count);
+        double[] keys = new double[count];
+        ByteBuffer records = ByteBuffer.wrap(input);
+        for (int i = 0; i < count; i++) {
+            keys[i] = records.getDouble(i * ByteFile.BYTES_PER_RECORD
+                + Long.BYTES);
+        }
+        Arrays.sort(keys);
+
+        // The smallest budget holds a few thousand heap slots
+        for (int k : new int[] { 1, 700, 15000 }) {
+            SortOptions options = new SortOptions();
+            options.setBudget(new MemoryBudget(128 * 1024));
+            options.setTopK(k);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ExternalSorter.sort(Channels.newChannel(new ByteArrayInputStream(
+                input)), Channels.newChannel(out), options);
+
+            ByteBuffer top = ByteBuffer.wrap(out.toByteArray());
+            assertEquals(k * ByteFile.BYTES_PER_RECORD, top.remaining());
+            for (int i = 0; i < k; i++) {
+                top.getLong();
+                assertEquals(keys[i], top.getDouble(), 0.0);
+            }
+        }
+    }
+
+
+    /**
+     * Tests that a counting sort writes every key once with the number of
+     * its records, combining records from many runs
+     *
+     * @throws IOException
+     */
+    public void testCombineCount() throws IOException {
+        int count = 40 * ByteFile.RECORDS_PER_BLOCK;
+        int distinct = 300;
+        Random rng = new Random(21);
+        ByteBuffer records = ByteBuffer.allocate(count
+            * ByteFile.BYTES_PER_RECORD);
+        long[] expected = new long[distinct];
+        for (int i = 0; i < count; i++) {
+            int key = rng.nextInt(distinct);
+            expected[key]++;
+            records.putLong(i);
+            records.putDouble(key - 100);
+        }
+
+        SortOptions options = new SortOptions();
+        options.setBudget(new MemoryBudget(128 * 1024));
+        options.setCombiner(RecordCombiner.forName("count"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SortMetrics metrics = ExternalSorter.sort(Channels.newChannel(
+            new ByteArrayInputStream(records.array())), Channels.newChannel(
+                out), options);
+
+        assertTrue(metrics.getRunCount() > 1);
+        ByteBuffer sorted = ByteBuffer.wrap(out.toByteArray());
+        assertEquals(distinct * ByteFile.BYTES_PER_RECORD, sorted
+            .remaining());
+        for (int key = 0; key < distinct; key++) {
+            assertEquals(expected[key], sorted.getLong());
+            assertEquals(key - 100, sorted.getDouble(), 0.0);
+        }
+    }
+
+
+    /**
+     * Tests that records sorted by a single int key are counted by that
+     * key alone, whatever the other half of its word holds
+     *
+     * @throws IOException
+     */
+    public void testCombineCountIntKey() throws IOException {
+        int count = 40 * ByteFile.RECORDS_PER_BLOCK;
+        int distinct = 10;
+        Random rng = new Random(21);
+        ByteBuffer records = ByteBuffer.allocate(count
+            * ByteFile.BYTES_PER_RECORD);
+        long[] expected = new long[distinct];
+        for (int i = 0; i < count; i++) {
+            int key = rng.nextInt(distinct);
+            expected[key]++;
+            records.putLong(i);
+            records.putInt(key - 5);
+            records.putInt(rng.nextInt());
+        }
+
+        SortOptions options = new SortOptions();
+        options.setBudget(new MemoryBudget(128 * 1024));
+        options.setLayout(RecordLayout.parse("int@8"));
+        options.setCombiner(RecordCombiner.forName("count"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExternalSorter.sort(Channels.newChannel(new ByteArrayInputStream(
+            records.array())), Channels.newChannel(out), options);
+
+        ByteBuffer sorted = ByteBuffer.wrap(out.toByteArray());
+        assertEquals(distinct * ByteFile.BYTES_PER_RECORD, sorted
+            .remaining());
+        for (int key = 0; key < distinct; key++) {
+            assertEquals(expected[key], sorted.getLong());
+            assertEquals(key - 5, sorted.getInt());
+            sorted.getInt();
+        }
+    }
+
+
+    /**
+     * Tests that the first combiner keeps the first record of every key in
+     * the input, whatever the rest of the key word
+     *
+     * @throws IOException
+     */
+    public void testCombineFirst() throws IOException {
+        assertCombineKeeps("first");
+    }
+
+
+    /**
+     * Tests that the last combiner keeps the last record of every key in
+     * the input, whatever the rest of the key word
+     *
+     * @throws IOException
+     */
+    public void testCombineLast() throws IOException {
+        assertCombineKeeps("last");
+    }
+
+
+    /**
+     * Sorts records with few int keys through several runs and checks that
+     * the combiner kept the first or last record of every key.
+     *
+     * @param name
+     *            "first" or "last"
+     * @throws IOException
+     */
+    private void assertCombineKeeps(String name) throws IOException {
+        int count = 40 * ByteFile.RECORDS_PER_BLOCK;
+        int distinct = 10;
+        Random rng = new Random(21);
+        ByteBuffer records = ByteBuffer.allocate(count
+            * ByteFile.BYTES_PER_RECORD);
+        long[] kept = new long[distinct];
+        int[] rest = new int[distinct];
+        Arrays.fill(kept, -1);
+        for (int i = 0; i < count; i++) {
+            int key = rng.nextInt(distinct);
+            int bits = rng.nextInt();
+            if (kept[key] < 0 || name.equals("last")) {
+                kept[key] = i;
+                rest[key] = bits;
+            }
+            records.putLong(i);
+            records.putInt(key - 5);
+            records.putInt(bits);
+        }
+
+        SortOptions options = new SortOptions();
+        options.setBudget(new MemoryBudget(128 * 1024));
+        options.setLayout(RecordLayout.parse("int@8"));
+        options.setCombiner(RecordCombiner.forName(name));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExternalSorter.sort(Channels.newChannel(new ByteArrayInputStream(
+            records.array())), Channels.newChannel(out), options);
+
+        ByteBuffer sorted = ByteBuffer.wrap(out.toByteArray());
+        assertEquals(distinct * ByteFile.BYTES_PER_RECORD, sorted
+            .remaining());
+        for (int key = 0; key < distinct; key++) {
+            assertEquals(kept[key], sorted.getLong());
+            assertEquals(key - 5, sorted.getInt());
+            assertEquals(rest[key], sorted.getInt());
+        }
+    }
+
+
+    /**
+     * Creates records with sequential IDs and random keys.
+     *
+     * @param count
+     *            the number of records
+     * @return the records
+     */
+    private byte[] randomRecords(int count) {
+        // Enough records for several runs of the smallest heap
+        Random rng = new Random(18);
+        ByteBuffer records = ByteBuffer.allocate(count
+            * ByteFile.BYTES_PER_RECORD);
+        for (int i = 0; i < count; i++) {
+            records.putLong(i);
+            records.putDouble(rng.nextDouble());
+        }
+        return records.array();
+    }
+}
@@ -32,7 +32,8 @@ public class Externalsort {
 
     /**
      * @param args
-     *            Command line parameters
+     *            Command line parameters: the file to sort, optionally
+     *            followed by options such as --mem=SIZE and --io=MODE
      */
     public static void main(String[] args) {
         if (args.length < 1) {
@@ -40,14 +41,27 @@ public class Externalsort {
         }
         // Get the filename from arguments
         String filename = args[0];
+        SortOptions options;
+        try {
+            options = SortOptions.parse(args, 1);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            return;
+        }
         try {
             // Initialize the Controller with the given filename
-            Controller controller = new Controller(filename);
+            Controller controller = new Controller(filename, options);
 
             // Perform the sorting
             controller.performSorting();
 
         }
+        catch (IllegalArgumentException e) {
+            // Options that can not be combined, or do not suit the file
+            System.err.println("Can not sort " + filename + ": " + e
+                .getMessage());
+        }
         catch (IOException e) {
             System.err.println("An error occurred while processing the file: "
                 + e.getMessage());
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import student.TestCase;
 
 /**
@@ -23,4 +26,43 @@ public class ExternalsortTest extends TestCase {
         String[] args = { "MakeAFileUsingByteFile.data" };
         Externalsort.main(args);
     }
+
+
+    /**
+     * Tests that an unknown option and a memory size that overflows are
+     * reported as invalid options, and nothing is sorted
+     */
+    public void testInvalidOptions() {
+        Externalsort.main(new String[] { "missing.bin", "--memory=1m" });
+        assertTrue(systemErr().getHistory().contains(
+            "Invalid option: Unknown option: --memory=1m"));
+        systemErr().clearHistory();
+        Externalsort.main(new String[] { "missing.bin",
+            "--mem=99999999999g" });
+        assertTrue(systemErr().getHistory().contains(
+            "Invalid option: Memory size out of range: 99999999999g"));
+    }
+
+
+    /**
+     * Tests that valid options that can not be used together are not
+     * reported as an invalid option
+     *
+     * @throws IOException
+     */
+    public void testOptionsThatDoNotCombine() throws IOException {
+        Path input = Files.createTempFile("externalsortTest", ".bin");
+        try {
+            Files.write(input, new byte[ByteFile.BYTES_PER_BLOCK]);
+            Externalsort.main(new String[] { input.toString(), "--top=10",
+                "--combine=count" });
+            String errors = systemErr().getHistory();
+            assertTrue(errors.contains("Can not sort " + input
+                + ": A top-K sort can not combine records"));
+            assertFalse(errors.contains("Invalid option"));
+        }
+        finally {
+            Files.delete(input);
+        }
+    }
 }
@@ -1,19 +1,99 @@
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
 
 // -------------------------------------------------------------------------
 /**
  * FileParser class provides methods to read, write, replace, and check
  * remaining data in a binary file using RandomAccessFile operations.
  * 
+ * Blocks move through the file's FileChannel, so a whole buffer goes in or
+ * out with one call. The sequential methods (readNextBlock, writeBlock) use
+ * the file pointer, which the channel shares with the RandomAccessFile. The
+ * positional methods (readBlock and writeBlock with a position) leave the
+ * file pointer alone, so several readers and a writer can share one file
+ * without seeking. writeBlocks and readBlocks gather from and scatter into
+ * several buffers with one call.
+ * 
+ * In IOMode.MAPPED the views returned by readView and nextView are slices of
+ * read-only mappings of the file, so records are read without a copy. Files
+ * are mapped in windows of up to 1 GB (see setWindowSize), which keeps
+ * files over 2 GB mappable. A range that crosses a window boundary falls
+ * back to a copying read. In IOMode.CHANNEL the same calls read into the
+ * caller's scratch buffer.
+ * 
+ * In IOMode.DIRECT the positional reads and writes bypass the page cache
+ * through a second channel opened with ExtendedOpenOption.DIRECT. Such I/O
+ * has to start and end on the block size of the file system and go through
+ * aligned memory, so every transfer is staged in aligned off-heap bounce
+ * buffers of BOUNCE_BYTES, which are pooled and reused across runs, passes
+ * and files. A write that covers only part of a block first reads the rest
+ * of it, and a write past the end of the data cuts the padding of its last
+ * block off again; both happen under a lock. Writes of whole blocks inside
+ * the data, the bulk of a sort since runs and chunks start on 8 KB blocks,
+ * go straight through. The sequential methods keep using the page cache.
+ * Where the file system refuses direct I/O, the file falls back to it.
+ * 
+ * Every read and write is counted in the file's IOStats, which stay with
+ * the path when the file is replaced or reopened.
+ * 
  * @author Kyungwan Do, Jaeyoung Shin
  * @version Nov 12, 2024
  */
-public class FileParser {
+public class FileParser implements RecordSource, BlockSink {
     // ~ Fields ................................................................
     private RandomAccessFile file; // file
+    private FileChannel channel; // channel of file, shares its position
     private String filePath; // file path
+    private IOMode mode; // how reads are served
+    private MappedByteBuffer[] windows; // mapped windows in MAPPED mode
+    private long windowSize = WINDOW_SIZE; // size of each mapped window
+    private IOStats stats; // reads, writes and seeks of the file
+    private FileChannel direct; // page cache bypass in DIRECT mode, or null
+    private int alignment; // block size direct transfers are aligned to
+    private volatile long dataLength; // end of the data for direct writes
+    private final Object directLock = new Object(); // orders partial writes
+
+    /**
+     * Default size of one mapped window in MAPPED mode.
+     */
+    public static final long WINDOW_SIZE = 1L << 30;
+
+    /**
+     * Size of one bounce buffer in DIRECT mode. Longer transfers take
+     * several.
+     */
+    public static final int BOUNCE_BYTES = 1 << 20;
+
+    /**
+     * Alignment of the bounce buffers, the largest block size direct I/O is
+     * used with.
+     */
+    private static final int MAX_ALIGNMENT = 1 << 16;
+
+    /**
+     * Bounce buffers not in use, shared by every file.
+     */
+    private static final Queue<ByteBuffer> BOUNCE_BUFFERS =
+        new ConcurrentLinkedQueue<>();
+
+    /**
+     * Logger for files that can not bypass the page cache.
+     */
+    private static final Logger LOGGER = Logger.getLogger(FileParser.class
+        .getName());
+
+    /**
+     * The open option that bypasses the page cache, or null where the JDK
+     * has none.
+     */
+    private static final OpenOption DIRECT_OPTION = directOption();
 
     // ~ Constructors ..........................................................
     /**
@@ -25,8 +105,29 @@ public class FileParser {
      *             if the file cannot be opened.
      */
     public FileParser(String filename) throws IOException {
+        this(filename, IOMode.CHANNEL);
+    }
+
+
+    /**
+     * Initializes the FileParser with the file to read and the way reads are
+     * served.
+     *
+     * @param filename
+     *            The name of the binary file to parse.
+     * @param mode
+     *            The I/O mode for reads and writes.
+     * @throws IOException
+     *             if the file cannot be opened.
+     */
+    public FileParser(String filename, IOMode mode) throws IOException {
         this.file = new RandomAccessFile(new File(filename), "rw");
+        this.channel = file.getChannel();
         this.filePath = filename;
+        this.mode = mode;
+        this.windows = new MappedByteBuffer[0];
+        this.stats = new IOStats(filename);
+        openDirect();
     }
 
 
@@ -35,11 +136,26 @@ public class FileParser {
      *
      * @return The name of the file.
      */
+    @Override
     public String getFileName() {
         return this.filePath;
     }
 
 
+    /**
+     * Sets the size of the windows the file is mapped in, WINDOW_SIZE by
+     * default, and drops the windows mapped so far. Small windows let a
+     * small file have reads that cross window boundaries.
+     *
+     * @param size
+     *            the window size in bytes
+     */
+    public synchronized void setWindowSize(long size) {
+        this.windowSize = size;
+        this.windows = new MappedByteBuffer[0];
+    }
+
+
     /**
      * Returns the name of the file associated with this FileParser.
      *
@@ -50,6 +166,36 @@ public class FileParser {
     }
 
 
+    /**
+     * Returns how reads of this file are served.
+     *
+     * @return The I/O mode.
+     */
+    public IOMode getMode() {
+        return this.mode;
+    }
+
+
+    /**
+     * Returns the channel of the file.
+     *
+     * @return The FileChannel of the file.
+     */
+    public FileChannel getChannel() {
+        return this.channel;
+    }
+
+
+    /**
+     * Returns the I/O counters of the file.
+     *
+     * @return The IOStats of the file.
+     */
+    public IOStats getStats() {
+        return this.stats;
+    }
+
+
     /**
      * Replaces the current file with a new file by deleting the old file and
      * renaming the new file.
@@ -80,28 +226,256 @@ public class FileParser {
         newFile.renameTo(originalFile);
         // Reopen the replaced file for further operations
         this.file = new RandomAccessFile(originalFile, "rw");
+        this.channel = file.getChannel();
+        this.windows = new MappedByteBuffer[0];
+        openDirect();
+    }
+
+
+    /**
+     * Reopens this parser on an empty file at its path. Used after the file
+     * has been renamed away by replaceWith().
+     *
+     * @throws IOException
+     *             If the file cannot be opened.
+     */
+    public void reopen() throws IOException {
+        this.close();
+        this.file = new RandomAccessFile(new File(this.filePath), "rw");
+        this.file.setLength(0);
+        this.channel = file.getChannel();
+        this.windows = new MappedByteBuffer[0];
+        openDirect();
     }
 
 
     /**
-     * Reads the next block of data into the provided buffer.
+     * Reads the next block of data into the provided buffer. The buffer may
+     * hold several blocks; near the end of the file it is only partly filled.
      *
      * @param buffer
-     *            input buffer to store data (exactly buffer.length bytes).
+     *            input buffer to store data (at most buffer.length bytes).
      * @return the number of bytes actually read, or -1 if end of file was
      *         reached before any bytes were read.
      * @throws IOException
      *             if there is an error reading the file.
      */
     public int readNextBlock(byte[] buffer) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        long position = channel.position();
+        while (bb.hasRemaining()) {
+            if (channel.read(bb) == -1) {
+                break;
+            }
+        }
+        stats.recordRead(position, bb.position());
+        // Return -1 if end of file is reached before any bytes were read
+        return (bb.position() == 0) ? -1 : bb.position();
+    }
+
+
+    /**
+     * Reads from the given position until the buffer is full or the file
+     * ends. The file pointer does not move.
+     *
+     * @param buffer
+     *            the buffer to fill from its position to its limit
+     * @param position
+     *            the file position to read from
+     * @return the number of bytes read, or -1 if the position is at or past
+     *         the end of the file
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    public int readBlock(ByteBuffer buffer, long position) throws IOException {
+        if (direct != null) {
+            boolean wanted = buffer.hasRemaining();
+            int total = (int)readDirect(new ByteBuffer[] { buffer }, position);
+            stats.recordRead(position, total);
+            return (total == 0 && wanted) ? -1 : total;
+        }
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position + total);
+            if (bytesRead == -1) {
+                break;
+            }
+            total += bytesRead;
+        }
+        stats.recordRead(position, total);
+        return (total == 0 && buffer.hasRemaining()) ? -1 : total;
+    }
+
+
+    /**
+     * Returns a buffer holding length bytes of the file from the given
+     * position. In MAPPED mode this is a slice of the mapping and nothing is
+     * copied; otherwise the bytes are read into the scratch buffer. The
+     * returned buffer is positioned at the first byte and is only valid until
+     * the next call with the same scratch buffer.
+     *
+     * @param position
+     *            the file position to read from
+     * @param length
+     *            the number of bytes wanted
+     * @param scratch
+     *            a buffer of at least length bytes for copying reads
+     * @return a buffer with the bytes between its position and limit, fewer
+     *         than length if the file ends first
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    @Override
+    public ByteBuffer readView(long position, int length, ByteBuffer scratch)
+        throws IOException {
+        if (mode == IOMode.MAPPED) {
+            ByteBuffer view = mappedView(position, length);
+            if (view != null) {
+                stats.recordRead(position, view.remaining());
+                return view;
+            }
+        }
+        scratch.clear();
+        scratch.limit(length);
+        readBlock(scratch, position);
+        scratch.flip();
+        return scratch;
+    }
+
+
+    /**
+     * Returns the next block at the file pointer as a view, like readView,
+     * and moves the file pointer past it.
+     *
+     * @param scratch
+     *            a buffer for copying reads; its capacity is the block size
+     * @return a buffer with the bytes read, empty at the end of the file
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    public ByteBuffer nextView(ByteBuffer scratch) throws IOException {
+        long position = channel.position();
+        int length = (int)Math.min(scratch.capacity(), Math.max(0, channel
+            .size() - position));
+        ByteBuffer view = readView(position, length, scratch);
+        channel.position(position + view.remaining());
+        return view;
+    }
+
+
+    /**
+     * Scatters consecutive data from the given position into several
+     * buffers with as few calls as possible. The file pointer does not move.
+     *
+     * @param buffers
+     *            the buffers to fill, each from its position to its limit
+     * @param position
+     *            the file position to read from
+     * @return the number of bytes read
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    public long readBlocks(ByteBuffer[] buffers, long position)
+        throws IOException {
+        if (direct != null) {
+            long total = readDirect(buffers, position);
+            stats.recordRead(position, total);
+            return total;
+        }
+        long wanted = 0;
+        for (ByteBuffer buffer : buffers) {
+            wanted += buffer.remaining();
+        }
+        long saved = channel.position();
+        long total = 0;
         try {
-            file.readFully(buffer);
-            return buffer.length;
+            channel.position(position);
+            while (total < wanted) {
+                long bytesRead = channel.read(buffers);
+                if (bytesRead == -1) {
+                    break;
+                }
+                total += bytesRead;
+            }
         }
-        catch (EOFException e) {
-            // Return -1 if end of file is reached before filling the buffer
-            return -1;
+        finally {
+            channel.position(saved);
         }
+        stats.recordRead(position, total);
+        return total;
+    }
+
+
+    /**
+     * Returns a slice of the mapping covering the range, mapping or
+     * remapping the window that holds it when needed. Synchronized because
+     * run cursors may read ahead on several threads.
+     *
+     * @param position
+     *            the file position of the range
+     * @param length
+     *            the length of the range
+     * @return the slice, or null if the range crosses a window boundary
+     * @throws IOException
+     *             if the file cannot be mapped.
+     */
+    private synchronized ByteBuffer mappedView(long position, int length)
+        throws IOException {
+        long size = channel.size();
+        long end = Math.min(position + length, size);
+        int index = (int)(position / windowSize);
+        long windowStart = index * windowSize;
+        if (position >= size || end > windowStart + windowSize) {
+            return null;
+        }
+        if (index >= windows.length) {
+            windows = Arrays.copyOf(windows, index + 1);
+        }
+        MappedByteBuffer window = windows[index];
+        if (window == null || windowStart + window.capacity() < end) {
+            // Map the window up to the current end of the file; the file may
+            // have grown since the window was mapped
+            long mapLength = Math.min(windowSize, size - windowStart);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                mapLength);
+            windows[index] = window;
+        }
+        ByteBuffer view = window.duplicate();
+        view.limit((int)(end - windowStart));
+        view.position((int)(position - windowStart));
+        return view.slice();
+    }
+
+
+    /**
+     * Sets the length of the file, cutting it short or growing it. Mapped
+     * windows are dropped when the file shrinks, since they may reach past
+     * its new end.
+     *
+     * @param length
+     *            the new length in bytes
+     * @throws IOException
+     *             if the length cannot be set.
+     */
+    public void resize(long length) throws IOException {
+        synchronized (directLock) {
+            if (length < file.length()) {
+                windows = new MappedByteBuffer[0];
+            }
+            file.setLength(length);
+            dataLength = length;
+        }
+    }
+
+
+    /**
+     * Forces everything written to the file onto the disk.
+     *
+     * @throws IOException
+     *             if the file cannot be synced.
+     */
+    public void sync() throws IOException {
+        channel.force(false);
     }
 
 
@@ -115,11 +489,17 @@ public class FileParser {
         if (file != null) {
             file.close();
         }
+        if (direct != null) {
+            direct.close();
+            direct = null;
+        }
+        windows = new MappedByteBuffer[0];
     }
 
 
     /**
-     * Writes a block of data from the provided buffer to the file.
+     * Writes a block of data from the provided buffer to the file. The buffer
+     * may hold several blocks.
      *
      * @param buffer
      *            output buffer containing data to write.
@@ -127,21 +507,98 @@ public class FileParser {
      *             if there is an error writing to the file.
      */
     public void writeBlock(byte[] buffer) throws IOException {
-        // Set up a ByteBuffer around the buffer
-        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        writeBlock(buffer, buffer.length);
+    }
+
+
+    /**
+     * Writes the first length bytes of the buffer at the file pointer with a
+     * single channel write, used for buffers that are only partly full.
+     *
+     * @param buffer
+     *            output buffer containing data to write.
+     * @param length
+     *            the number of bytes to write.
+     * @throws IOException
+     *             if there is an error writing to the file.
+     */
+    public void writeBlock(byte[] buffer, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buffer, 0, length);
+        stats.recordWrite(channel.position(), length);
+        synchronized (directLock) {
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+            dataLength = Math.max(dataLength, channel.position());
+        }
+    }
 
-        // Iterate over each record in the buffer and write them individually
-        for (int i = 0; i < ByteFile.RECORDS_PER_BLOCK; i++) {
-            long recID = bb.getLong();
-            double key = bb.getDouble();
 
-            // Write the record directly to the file as bytes
-            file.writeLong(recID);
-            file.writeDouble(key);
+    /**
+     * Writes the buffer from its position to its limit at the given file
+     * position. The file pointer does not move.
+     *
+     * @param buffer
+     *            the data to write
+     * @param position
+     *            the file position to write to
+     * @throws IOException
+     *             if there is an error writing to the file.
+     */
+    @Override
+    public void writeBlock(ByteBuffer buffer, long position)
+        throws IOException {
+        long offset = position;
+        stats.recordWrite(position, buffer.remaining());
+        if (direct != null) {
+            writeDirect(new ByteBuffer[] { buffer }, position);
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
         }
     }
 
 
+    /**
+     * Gathers several buffers into consecutive data at the given position
+     * with as few calls as possible. The file pointer does not move.
+     *
+     * @param buffers
+     *            the buffers to write, each from its position to its limit
+     * @param position
+     *            the file position to write to
+     * @return the number of bytes written
+     * @throws IOException
+     *             if there is an error writing to the file.
+     */
+    public long writeBlocks(ByteBuffer[] buffers, long position)
+        throws IOException {
+        if (direct != null) {
+            long total = writeDirect(buffers, position);
+            stats.recordWrite(position, total);
+            return total;
+        }
+        long wanted = 0;
+        for (ByteBuffer buffer : buffers) {
+            wanted += buffer.remaining();
+        }
+        long saved = channel.position();
+        long total = 0;
+        try {
+            channel.position(position);
+            while (total < wanted) {
+                total += channel.write(buffers);
+            }
+        }
+        finally {
+            channel.position(saved);
+        }
+        stats.recordWrite(position, total);
+        return total;
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Checks if it has remaining data.
@@ -153,4 +610,303 @@ public class FileParser {
         return file.getFilePointer() < file.length();
     }
 
+
+    /**
+     * Looks up ExtendedOpenOption.DIRECT by name. The option is JDK internal
+     * API in jdk.unsupported, so it is not compiled against.
+     *
+     * @return the option, or null if the JDK does not have it
+     */
+    private static OpenOption directOption() {
+        try {
+            Class<?> options = Class.forName(
+                "com.sun.nio.file.ExtendedOpenOption");
+            for (Object option : options.getEnumConstants()) {
+                if (((Enum<?>)option).name().equals("DIRECT")) {
+                    return (OpenOption)option;
+                }
+            }
+        }
+        catch (ClassNotFoundException e) {
+            // Not an OpenJDK runtime
+        }
+        return null;
+    }
+
+
+    /**
+     * Opens the channel that bypasses the page cache in DIRECT mode, or
+     * leaves the file on buffered I/O where the file system does not allow
+     * it.
+     */
+    private void openDirect() {
+        direct = null;
+        if (mode != IOMode.DIRECT) {
+            return;
+        }
+        Path path = Paths.get(filePath);
+        try {
+            dataLength = file.length();
+            long blockSize = Files.getFileStore(path).getBlockSize();
+            alignment = (blockSize > 0 && Long.bitCount(blockSize) == 1)
+                ? (int)Math.min(blockSize, Integer.MAX_VALUE)
+                : 4096;
+            if (alignment > MAX_ALIGNMENT) {
+                LOGGER.warning("Block size " + alignment + " of " + filePath
+                    + " is too large for direct I/O; using the page cache");
+                return;
+            }
+            if (DIRECT_OPTION == null) {
+                LOGGER.warning("No direct I/O in this JDK; " + filePath
+                    + " uses the page cache");
+                return;
+            }
+            direct = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, DIRECT_OPTION);
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warning("No direct I/O for " + filePath
+                + "; using the page cache: " + e);
+        }
+    }
+
+
+    /**
+     * Reads from the given position into the buffers in turn, through the
+     * direct channel, until they are full or the file ends.
+     *
+     * @param buffers
+     *            the buffers to fill, each from its position to its limit
+     * @param position
+     *            the file position to read from
+     * @return the number of bytes read
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    private long readDirect(ByteBuffer[] buffers, long position)
+        throws IOException {
+        long wanted = 0;
+        for (ByteBuffer buffer : buffers) {
+            wanted += buffer.remaining();
+        }
+        long total = 0;
+        ByteBuffer bounce = takeBounce();
+        try {
+            while (total < wanted) {
+                long offset = position + total;
+                long start = offset & -alignment;
+                int skip = (int)(offset - start);
+                int span = (int)Math.min(BOUNCE_BYTES, alignUp(skip + wanted
+                    - total));
+                bounce.clear().limit(span);
+                boolean end = fill(bounce, start);
+                bounce.flip();
+                if (bounce.limit() <= skip) {
+                    break;
+                }
+                bounce.position(skip);
+                for (ByteBuffer buffer : buffers) {
+                    total += transfer(bounce, buffer);
+                }
+                if (end) {
+                    break;
+                }
+            }
+        }
+        finally {
+            BOUNCE_BUFFERS.add(bounce);
+        }
+        return total;
+    }
+
+
+    /**
+     * Writes the buffers one after the other at the given position through
+     * the direct channel. Whole blocks inside the data are written as they
+     * are; a write that only covers part of a block, or that grows the
+     * file, holds the lock while it reads the rest of its edge blocks and
+     * cuts the padding of the last block off again.
+     *
+     * @param buffers
+     *            the buffers to write, each from its position to its limit
+     * @param position
+     *            the file position to write to
+     * @return the number of bytes written
+     * @throws IOException
+     *             if there is an error writing to the file.
+     */
+    private long writeDirect(ByteBuffer[] buffers, long position)
+        throws IOException {
+        long total = 0;
+        for (ByteBuffer buffer : buffers) {
+            total += buffer.remaining();
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long end = position + total;
+        long alignedStart = position & -alignment;
+        long alignedEnd = alignUp(end);
+        if (alignedStart == position && alignedEnd == end
+            && end <= (dataLength & -alignment)) {
+            writeAligned(buffers, position, end);
+            return total;
+        }
+        synchronized (directLock) {
+            long length = direct.size();
+            writeAligned(buffers, position, end);
+            long newLength = Math.max(length, end);
+            if (alignedEnd > newLength) {
+                direct.truncate(newLength);
+            }
+            dataLength = newLength;
+        }
+        return total;
+    }
+
+
+    /**
+     * Writes the blocks covering a range in chunks of the bounce buffer,
+     * reading in the edge blocks the range only covers in part. Past the end
+     * of the file those read as zeros.
+     *
+     * @param buffers
+     *            the data of the range
+     * @param position
+     *            the start of the range
+     * @param end
+     *            the end of the range
+     * @throws IOException
+     *             if there is an error reading or writing the file.
+     */
+    private void writeAligned(ByteBuffer[] buffers, long position, long end)
+        throws IOException {
+        long alignedEnd = alignUp(end);
+        ByteBuffer bounce = takeBounce();
+        try {
+            long chunk = position & -alignment;
+            while (chunk < alignedEnd) {
+                int span = (int)Math.min(BOUNCE_BYTES, alignedEnd - chunk);
+                long chunkEnd = chunk + span;
+                bounce.clear();
+                if (chunk < position) {
+                    readEdge(bounce, 0, chunk);
+                }
+                if (chunkEnd > end && chunkEnd - alignment >= position) {
+                    readEdge(bounce, span - alignment, chunkEnd - alignment);
+                }
+                long from = Math.max(position, chunk);
+                bounce.clear().position((int)(from - chunk));
+                bounce.limit((int)(Math.min(end, chunkEnd) - chunk));
+                for (ByteBuffer buffer : buffers) {
+                    transfer(buffer, bounce);
+                }
+                bounce.clear().limit(span);
+                while (bounce.hasRemaining()) {
+                    direct.write(bounce, chunk + bounce.position());
+                }
+                chunk = chunkEnd;
+            }
+        }
+        finally {
+            BOUNCE_BUFFERS.add(bounce);
+        }
+    }
+
+
+    /**
+     * Reads one block of the file into the bounce buffer, as zeros past the
+     * end of the file.
+     *
+     * @param bounce
+     *            the bounce buffer
+     * @param index
+     *            the offset of the block in the bounce buffer
+     * @param position
+     *            the file position of the block
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    private void readEdge(ByteBuffer bounce, int index, long position)
+        throws IOException {
+        ByteBuffer block = bounce.duplicate();
+        block.position(index).limit(index + alignment);
+        block = block.slice();
+        fill(block, position);
+        while (block.hasRemaining()) {
+            block.put((byte)0);
+        }
+    }
+
+
+    /**
+     * Reads from the direct channel until the buffer is full or the file
+     * ends.
+     *
+     * @param buffer
+     *            an aligned buffer to fill from its position to its limit
+     * @param position
+     *            the aligned file position of its position
+     * @return true if the file ended first
+     * @throws IOException
+     *             if there is an error reading the file.
+     */
+    private boolean fill(ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            int bytesRead = direct.read(buffer, start + buffer.position());
+            // Only the end of the file cuts a read off inside a block
+            if (bytesRead <= 0 || buffer.position() % alignment != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Rounds a position or length up to a whole number of blocks.
+     *
+     * @param value
+     *            the position or length
+     * @return the value rounded up to the alignment
+     */
+    private long alignUp(long value) {
+        return (value + alignment - 1) & -alignment;
+    }
+
+
+    /**
+     * Copies as many bytes as both buffers allow, advancing both.
+     *
+     * @param from
+     *            the buffer to copy from
+     * @param to
+     *            the buffer to copy to
+     * @return the number of bytes copied
+     */
+    private static int transfer(ByteBuffer from, ByteBuffer to) {
+        int length = Math.min(from.remaining(), to.remaining());
+        ByteBuffer part = from.duplicate();
+        part.limit(part.position() + length);
+        to.put(part);
+        from.position(from.position() + length);
+        return length;
+    }
+
+
+    /**
+     * Takes a bounce buffer from the pool, or allocates one aligned to
+     * MAX_ALIGNMENT.
+     *
+     * @return a bounce buffer of at least BOUNCE_BYTES
+     */
+    private static ByteBuffer takeBounce() {
+        ByteBuffer bounce = BOUNCE_BUFFERS.poll();
+        if (bounce == null) {
+            bounce = ByteBuffer.allocateDirect(BOUNCE_BYTES + MAX_ALIGNMENT)
+                .alignedSlice(MAX_ALIGNMENT);
+        }
+        return bounce;
+    }
 }
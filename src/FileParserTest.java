@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the FileParser class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class FileParserTest extends TestCase {
+
+    /**
+     * Tests that writes in DIRECT mode that start and end inside blocks, and
+     * that grow the file, read back as written, with the file exactly as
+     * long as its data
+     *
+     * @throws IOException
+     */
+    public void testDirectUnalignedRoundTrip() throws IOException {
+        Path path = Paths.get("fileParserTest.bin");
+        Files.deleteIfExists(path);
+        byte[] expected = new byte[3 * FileParser.BOUNCE_BYTES];
+        int length = 0;
+        Random rng = new Random(25);
+        FileParser parser = new FileParser(path.toString(), IOMode.DIRECT);
+        try {
+            for (int i = 0; i < 200; i++) {
+                int position = rng.nextInt(expected.length / 2);
+                int size = rng.nextInt(i % 10 == 0
+                    ? expected.length / 2
+                    : 3000);
+                byte[] data = new byte[size];
+                rng.nextBytes(data);
+                System.arraycopy(data, 0, expected, position, size);
+                length = Math.max(length, position + size);
+                int cut = rng.nextInt(size + 1);
+                parser.writeBlocks(new ByteBuffer[] { ByteBuffer.wrap(data, 0,
+                    cut), ByteBuffer.wrap(data, cut, size - cut) }, position);
+                assertEquals(length, parser.getFile().length());
+
+                int from = rng.nextInt(length);
+                ByteBuffer read = ByteBuffer.allocate(rng.nextInt(5000) + 1);
+                int got = parser.readBlock(read, from);
+                assertEquals(Math.min(read.capacity(), length - from), got);
+                assertTrue(Arrays.equals(read.array(), 0, got, expected, from,
+                    from + got));
+            }
+        }
+        finally {
+            parser.close();
+        }
+        try {
+            assertTrue(Arrays.equals(Files.readAllBytes(path), Arrays.copyOf(
+                expected, length)));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+
+    /**
+     * Tests that positional reads and writes through the channel leave the
+     * file pointer alone, and that reads stop at the end of the file
+     *
+     * @throws IOException
+     */
+    public void testChannelPositionalBlocks() throws IOException {
+        Path path = Files.createTempFile("fileParserTest", ".bin");
+        FileParser parser = new FileParser(path.toString());
+        try {
+            byte[] block = new byte[ByteFile.BYTES_PER_BLOCK];
+            Arrays.fill(block, (byte)1);
+            parser.writeBlock(block);
+            parser.writeBlock(block);
+            parser.getFile().seek(100);
+
+            byte[] data = new byte[3000];
+            new Random(5).nextBytes(data);
+            parser.writeBlock(ByteBuffer.wrap(data), 7000);
+            assertEquals(100, parser.getFile().getFilePointer());
+            assertEquals(2 * ByteFile.BYTES_PER_BLOCK, parser.getFile()
+                .length());
+
+            ByteBuffer read = ByteBuffer.allocate(data.length);
+            assertEquals(data.length, parser.readBlock(read, 7000));
+            assertTrue(Arrays.equals(data, read.array()));
+            assertEquals(100, parser.getFile().getFilePointer());
+
+            // Short at the end of the file, -1 past it
+            read.clear();
+            int tail = 2 * ByteFile.BYTES_PER_BLOCK - 15000;
+            assertEquals(tail, parser.readBlock(read, 15000));
+            read.clear();
+            assertEquals(-1, parser.readBlock(read, 2
+                * ByteFile.BYTES_PER_BLOCK));
+            assertEquals(100, parser.getFile().getFilePointer());
+        }
+        finally {
+            parser.close();
+            Files.delete(path);
+        }
+    }
+
+
+    /**
+     * Tests that gathering writes and scattering reads through the channel
+     * move every buffer, empty ones included, as consecutive data and leave
+     * the file pointer alone
+     *
+     * @throws IOException
+     */
+    public void testChannelGatherScatter() throws IOException {
+        Path path = Files.createTempFile("fileParserTest", ".bin");
+        FileParser parser = new FileParser(path.toString());
+        try {
+            byte[] data = new byte[3 * ByteFile.BYTES_PER_BLOCK + 123];
+            new Random(6).nextBytes(data);
+            int[] cuts = { 0, 100, 100, ByteFile.BYTES_PER_BLOCK + 100,
+                data.length, data.length };
+            parser.getFile().seek(50);
+            assertEquals(data.length, parser.writeBlocks(slices(data, cuts),
+                1000));
+            assertEquals(50, parser.getFile().getFilePointer());
+            assertEquals(1000 + data.length, parser.getFile().length());
+
+            byte[] read = new byte[data.length];
+            assertEquals(data.length, parser.readBlocks(slices(read, cuts),
+                1000));
+            assertTrue(Arrays.equals(data, read));
+            assertEquals(50, parser.getFile().getFilePointer());
+
+            // A scatter past the end of the data is short
+            Arrays.fill(read, (byte)0);
+            assertEquals(data.length - 500, parser.readBlocks(slices(read,
+                cuts), 1500));
+            assertTrue(Arrays.equals(data, 500, data.length, read, 0,
+                data.length - 500));
+        }
+        finally {
+            parser.close();
+            Files.delete(path);
+        }
+    }
+
+
+    /**
+     * Tests that mapped reads within a window are slices of the mapping,
+     * that reads crossing a window boundary are copied, and that both
+     * return the bytes of the file, also after it grows
+     *
+     * @throws IOException
+     */
+    public void testMappedWindowBoundaries() throws IOException {
+        Path path = Files.createTempFile("fileParserTest", ".bin");
+        byte[] data = new byte[5 * ByteFile.BYTES_PER_BLOCK + 77];
+        Random rng = new Random(6);
+        rng.nextBytes(data);
+        Files.write(path, Arrays.copyOf(data, 3 * ByteFile.BYTES_PER_BLOCK));
+        int window = ByteFile.BYTES_PER_BLOCK;
+        FileParser parser = new FileParser(path.toString(), IOMode.MAPPED);
+        try {
+            parser.setWindowSize(window);
+            ByteBuffer scratch = ByteBuffer.allocate(3 * window);
+            for (int i = 0; i < 300; i++) {
+                if (i == 150) {
+                    // The file grows past the windows mapped so far
+                    parser.writeBlock(ByteBuffer.wrap(data, 3 * window,
+                        data.length - 3 * window), 3 * window);
+                }
+                long size = parser.getFile().length();
+                int position = rng.nextInt((int)size);
+                int length = rng.nextInt(scratch.capacity()) + 1;
+                ByteBuffer view = parser.readView(position, length, scratch);
+                int expected = (int)Math.min(length, size - position);
+                assertEquals(expected, view.remaining());
+                boolean crosses = position / window != (position + expected
+                    - 1) / window;
+                assertEquals(crosses, view == scratch);
+                byte[] bytes = new byte[expected];
+                view.get(bytes);
+                assertTrue(Arrays.equals(data, position, position + expected,
+                    bytes, 0, expected));
+            }
+
+            // Sequential views with a scratch size that is not a divisor of
+            // the window size
+            parser.getFile().seek(0);
+            ByteBuffer odd = ByteBuffer.allocate(3000);
+            int position = 0;
+            ByteBuffer view = parser.nextView(odd);
+            while (view.hasRemaining()) {
+                int length = view.remaining();
+                byte[] bytes = new byte[length];
+                view.get(bytes);
+                assertTrue(Arrays.equals(data, position, position + length,
+                    bytes, 0, length));
+                position += length;
+                view = parser.nextView(odd);
+            }
+            assertEquals(data.length, position);
+        }
+        finally {
+            parser.close();
+            Files.delete(path);
+        }
+    }
+
+
+    /**
+     * Wraps consecutive slices of an array.
+     *
+     * @param data
+     *            the array
+     * @param cuts
+     *            the start of every slice and the end of the last one
+     * @return the slices
+     */
+    private ByteBuffer[] slices(byte[] data, int[] cuts) {
+        ByteBuffer[] buffers = new ByteBuffer[cuts.length - 1];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(data, cuts[i], cuts[i + 1] - cuts[i]);
+        }
+        return buffers;
+    }
+}
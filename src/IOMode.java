@@ -0,0 +1,46 @@
+// -------------------------------------------------------------------------
+/**
+ * IOMode selects how a FileParser reads and writes its file.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public enum IOMode {
+    /**
+     * Reads copy blocks from the FileChannel into the caller's buffer.
+     */
+    CHANNEL,
+
+    /**
+     * Reads are served straight from read-only memory mappings of the file,
+     * without copying. Suited to files that fit in the page cache.
+     */
+    MAPPED,
+
+    /**
+     * Positional reads and writes bypass the page cache through aligned
+     * bounce buffers, so a sort of scratch data much larger than memory
+     * does not push everything else out of the cache. Falls back to CHANNEL
+     * where the file system does not support direct I/O.
+     */
+    DIRECT;
+
+    // ----------------------------------------------------------
+    /**
+     * Parses a mode name as given on the command line, ignoring case.
+     *
+     * @param name
+     *            the mode name, for example "mapped"
+     * @return the mode
+     * @throws IllegalArgumentException
+     *             if there is no mode with that name
+     */
+    public static IOMode parse(String name) {
+        for (IOMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown I/O mode: " + name);
+    }
+}
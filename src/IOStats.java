@@ -0,0 +1,198 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// -------------------------------------------------------------------------
+/**
+ * IOStats counts the blocks and bytes read from and written to one file and
+ * the seeks between them. A read or write counts as a seek when it does not
+ * start where the one before it ended, which is what moves a disk head.
+ * Every transfer counts as whole blocks, so a partly filled last block is
+ * one block.
+ *
+ * Run cursors read ahead and writers write behind on threads of their own,
+ * so the counters are updated without locking. With several threads the
+ * seek count is the order the transfers reached the file in, as the disk
+ * saw them.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class IOStats implements IOStatsMBean {
+    // ~ Fields ................................................................
+    /**
+     * Path of the counted file.
+     */
+    private String fileName;
+
+    /**
+     * Blocks read.
+     */
+    private LongAdder blocksRead = new LongAdder();
+
+    /**
+     * Bytes read.
+     */
+    private LongAdder bytesRead = new LongAdder();
+
+    /**
+     * Blocks written.
+     */
+    private LongAdder blocksWritten = new LongAdder();
+
+    /**
+     * Bytes written.
+     */
+    private LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * Transfers that did not start where the one before ended.
+     */
+    private LongAdder seeks = new LongAdder();
+
+    /**
+     * File position just past the last transfer.
+     */
+    private AtomicLong lastEnd = new AtomicLong();
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new IOStats object with every counter at 0.
+     *
+     * @param fileName
+     *            path of the counted file
+     */
+    public IOStats(String fileName) {
+        this.fileName = fileName;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Counts a read.
+     *
+     * @param position
+     *            the file position of the first byte read
+     * @param bytes
+     *            the number of bytes read, nothing is counted if not
+     *            positive
+     */
+    public void recordRead(long position, long bytes) {
+        if (bytes > 0) {
+            blocksRead.add(blocks(bytes));
+            bytesRead.add(bytes);
+            recordPosition(position, bytes);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Counts a write.
+     *
+     * @param position
+     *            the file position of the first byte written
+     * @param bytes
+     *            the number of bytes written, nothing is counted if not
+     *            positive
+     */
+    public void recordWrite(long position, long bytes) {
+        if (bytes > 0) {
+            blocksWritten.add(blocks(bytes));
+            bytesWritten.add(bytes);
+            recordPosition(position, bytes);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBlocksRead() {
+        return blocksRead.sum();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBlocksWritten() {
+        return blocksWritten.sum();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSeeks() {
+        return seeks.sum();
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of blocks a transfer touches.
+     *
+     * @param bytes
+     *            the length of the transfer
+     * @return the block count, at least 1
+     */
+    private static long blocks(long bytes) {
+        return (bytes + ByteFile.BYTES_PER_BLOCK - 1)
+            / ByteFile.BYTES_PER_BLOCK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Counts a seek if a transfer does not follow the one before it.
+     *
+     * @param position
+     *            the position of the transfer
+     * @param bytes
+     *            the length of the transfer
+     */
+    private void recordPosition(long position, long bytes) {
+        if (lastEnd.getAndSet(position + bytes) != position) {
+            seeks.increment();
+        }
+    }
+}
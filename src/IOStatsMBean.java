@@ -0,0 +1,63 @@
+// -------------------------------------------------------------------------
+/**
+ * IOStatsMBean is the management interface of IOStats, the I/O counters of
+ * one file of a sort.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public interface IOStatsMBean {
+    // ----------------------------------------------------------
+    /**
+     * Returns the path of the file.
+     *
+     * @return the path
+     */
+    String getFileName();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of blocks read.
+     *
+     * @return the block count
+     */
+    long getBlocksRead();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of bytes read.
+     *
+     * @return the byte count
+     */
+    long getBytesRead();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of blocks written.
+     *
+     * @return the block count
+     */
+    long getBlocksWritten();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return the byte count
+     */
+    long getBytesWritten();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of reads and writes that did not start where the
+     * one before ended.
+     *
+     * @return the seek count
+     */
+    long getSeeks();
+}
@@ -0,0 +1,540 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// -------------------------------------------------------------------------
+/**
+ * KeyRangePartitioner cuts a set of sorted runs into key ranges so that the
+ * ranges can be merged independently of each other. It samples keys evenly
+ * from the runs, picks splitter keys at the quantiles of the sample, and then
+ * finds in every run, by binary search, the first record whose key is not
+ * smaller than each splitter. Splitters chosen elsewhere, from a sample of
+ * the input, can be given instead.
+ *
+ * Partition p holds, from every run, the records between the offsets of
+ * splitters p - 1 and p. Records with equal key fields always land in the
+ * same partition, as a splitter is moved back to the first key with its
+ * fields, so the partitions merged one after the other give the same
+ * order as one merge of the whole runs. Since every partition's size is
+ * known up front, so is its position in the output.
+ *
+ * Encoded runs can not be searched record by record. For them the
+ * partitioner reads the frame headers into a directory first, samples the
+ * first keys of the frames, and searches the frames by first key; only the
+ * one frame a boundary falls into is decoded. A slice of an encoded run
+ * starts at a frame and skips the records before the boundary.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class KeyRangePartitioner {
+
+    // -------------------------------------------------------------------------
+    /**
+     * The frames of an encoded run.
+     */
+    private static class FrameDirectory {
+        /**
+         * File position of every frame, followed by the end of the run.
+         */
+        private long[] positions = new long[16];
+
+        /**
+         * Index of the first record of every frame, followed by the record
+         * count of the run.
+         */
+        private long[] firstRecords = new long[16];
+
+        /**
+         * Normalized key of the first record of every frame.
+         */
+        private long[] firstKeys = new long[16];
+
+        /**
+         * Number of frames.
+         */
+        private int frames;
+
+        /**
+         * Appends a frame.
+         *
+         * @param position
+         *            the file position of the frame
+         * @param firstRecord
+         *            the index of its first record
+         * @param firstKey
+         *            the normalized key of its first record
+         */
+        void add(long position, long firstRecord, long firstKey) {
+            if (frames + 1 == positions.length) {
+                positions = Arrays.copyOf(positions, 2 * positions.length);
+                firstRecords = Arrays.copyOf(firstRecords, positions.length);
+                firstKeys = Arrays.copyOf(firstKeys, positions.length);
+            }
+            positions[frames] = position;
+            firstRecords[frames] = firstRecord;
+            firstKeys[frames] = firstKey;
+            frames++;
+        }
+
+        /**
+         * Finds the frame holding a record.
+         *
+         * @param record
+         *            the index of the record, below the record count
+         * @return the index of the frame
+         */
+        int frameOf(long record) {
+            int low = 0;
+            int high = frames - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (firstRecords[mid] <= record) {
+                    low = mid;
+                }
+                else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    // ~ Fields ................................................................
+    /**
+     * Number of sampled keys per partition. More samples give partitions of
+     * more even size for a few more reads.
+     */
+    private static final int SAMPLES_PER_PARTITION = 64;
+
+    /**
+     * The file the runs are in.
+     */
+    private FileParser runFileParser;
+
+    /**
+     * Codec the runs are encoded with, or null for raw runs.
+     */
+    private BlockCodec codec;
+
+    /**
+     * Layout giving the keys of the records.
+     */
+    private RecordLayout layout;
+
+    /**
+     * Frame directory of every run being partitioned, with a codec.
+     */
+    private FrameDirectory[] directories;
+
+    /**
+     * Buffer for reading single keys and frame headers.
+     */
+    private ByteBuffer keyScratch;
+
+    /**
+     * Buffer for reading a frame, with a codec.
+     */
+    private ByteBuffer frameScratch;
+
+    /**
+     * Buffer a frame is decoded into, with a codec.
+     */
+    private ByteBuffer records;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new KeyRangePartitioner object for raw runs.
+     *
+     * @param runFileParser
+     *            the file the runs are in
+     */
+    public KeyRangePartitioner(FileParser runFileParser) {
+        this(runFileParser, null);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new KeyRangePartitioner object.
+     *
+     * @param runFileParser
+     *            the file the runs are in
+     * @param codec
+     *            the codec the runs are encoded with, or null for raw runs
+     */
+    public KeyRangePartitioner(FileParser runFileParser, BlockCodec codec) {
+        this(runFileParser, codec, RecordLayout.DEFAULT);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new KeyRangePartitioner object for records of any layout.
+     *
+     * @param runFileParser
+     *            the file the runs are in
+     * @param codec
+     *            the codec the runs are encoded with, or null for raw runs
+     * @param layout
+     *            the layout of the records
+     */
+    public KeyRangePartitioner(
+        FileParser runFileParser,
+        BlockCodec codec,
+        RecordLayout layout) {
+        this.runFileParser = runFileParser;
+        this.codec = codec;
+        this.layout = layout;
+        this.keyScratch = ByteBuffer.allocate(Math.max(RunFrames.HEADER_BYTES,
+            ByteFile.BYTES_PER_RECORD));
+        if (codec != null) {
+            this.frameScratch = ByteBuffer.allocate(RunFrames.HEADER_BYTES
+                + RunFrames.MAX_RECORD_BYTES);
+            this.records = ByteBuffer.allocate(RunFrames.MAX_RECORD_BYTES);
+        }
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Cuts the runs into key ranges. Entry [p][r] of the result is the slice
+     * of run r that belongs to partition p, numbered r. The slices of a run
+     * follow each other and together hold the whole run. Some partitions
+     * may be empty.
+     *
+     * @param runs
+     *            the runs to cut
+     * @param partitions
+     *            the number of partitions, at least 1
+     * @return the slices of every partition
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public Run[][] partition(Run[] runs, int partitions) throws IOException {
+        return partition(runs, partitions, null);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Cuts the runs into the key ranges between the given splitters, for
+     * example those of a KeySampler. Partition p holds the records from
+     * splitter p - 1 up to splitter p.
+     *
+     * @param runs
+     *            the runs to cut
+     * @param splitters
+     *            the normalized splitter keys in ascending order, one fewer
+     *            than the partitions
+     * @return the slices of every partition
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public Run[][] partition(Run[] runs, long[] splitters) throws IOException {
+        return partition(runs, splitters.length + 1, splitters);
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Cuts the runs into key ranges, between the given splitters or those
+     * sampled from the runs.
+     *
+     * @param runs
+     *            the runs to cut
+     * @param partitions
+     *            the number of partitions, at least 1
+     * @param given
+     *            the splitters, or null to sample them
+     * @return the slices of every partition
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private Run[][] partition(Run[] runs, int partitions, long[] given)
+        throws IOException {
+        if (codec != null) {
+            directories = new FrameDirectory[runs.length];
+            for (int r = 0; r < runs.length; r++) {
+                directories[r] = scanFrames(runs[r]);
+            }
+        }
+        long[] splitters = (given != null)
+            ? given
+            : chooseSplitters(runs, partitions);
+        Run[][] slices = new Run[partitions][runs.length];
+        for (int r = 0; r < runs.length; r++) {
+            long from = 0;
+            for (int p = 0; p < partitions; p++) {
+                long to = (p + 1 < partitions)
+                    ? lowerBound(runs, r, layout.firstKey(splitters[p]))
+                    : runs[r].getLength() / ByteFile.BYTES_PER_RECORD;
+                slices[p][r] = slice(runs[r], r, from, to);
+                from = to;
+            }
+        }
+        directories = null;
+        return slices;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Samples keys from the runs, each run in proportion to its length, and
+     * picks partitions - 1 splitters at the quantiles of the sample.
+     *
+     * @param runs
+     *            the runs to sample
+     * @param partitions
+     *            the number of partitions
+     * @return the normalized splitter keys in ascending order
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private long[] chooseSplitters(Run[] runs, int partitions)
+        throws IOException {
+        long totalRecords = 0;
+        for (Run run : runs) {
+            totalRecords += run.getLength() / ByteFile.BYTES_PER_RECORD;
+        }
+        long wanted = (long)SAMPLES_PER_PARTITION * partitions;
+        long[] sample = new long[(int)Math.min(wanted, totalRecords)];
+        int n = 0;
+        for (int r = 0; r < runs.length; r++) {
+            long records = runs[r].getLength() / ByteFile.BYTES_PER_RECORD;
+            int count = (int)Math.min(sample.length - n, records * wanted
+                / Math.max(1, totalRecords));
+            for (int i = 0; i < count; i++) {
+                sample[n++] = sampleKey(runs, r, records * i / count);
+            }
+        }
+        sample = Arrays.copyOf(sample, n);
+        Arrays.sort(sample);
+
+        long[] splitters = new long[partitions - 1];
+        for (int p = 1; p < partitions; p++) {
+            // An empty sample puts everything in the last partition
+            splitters[p - 1] = (n == 0)
+                ? Long.MIN_VALUE
+                : sample[(int)((long)n * p / partitions)];
+        }
+        return splitters;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns a key to sample for a record: its own key in a raw run, the
+     * first key of its frame in an encoded one.
+     *
+     * @param runs
+     *            the runs
+     * @param r
+     *            the index of the run
+     * @param record
+     *            the index of the record within the run
+     * @return the normalized key
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private long sampleKey(Run[] runs, int r, long record)
+        throws IOException {
+        if (codec == null) {
+            return readKey(runs[r].getStartPosition(), record);
+        }
+        FrameDirectory directory = directories[r];
+        return directory.firstKeys[directory.frameOf(record)];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Finds the first record of a run whose key is not smaller than the
+     * given key.
+     *
+     * @param runs
+     *            the runs
+     * @param r
+     *            the index of the run to search
+     * @param key
+     *            the normalized key to look for
+     * @return the index of that record, or the record count of the run
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private long lowerBound(Run[] runs, int r, long key)
+        throws IOException {
+        Run run = runs[r];
+        if (codec != null) {
+            return frameLowerBound(directories[r], key);
+        }
+        long low = 0;
+        long high = run.getLength() / ByteFile.BYTES_PER_RECORD;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (readKey(run.getStartPosition(), mid) < key) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Finds the first record of an encoded run whose key is not smaller
+     * than the given key. Every frame after the last one starting below the
+     * key holds only larger keys, so only that frame is decoded.
+     *
+     * @param directory
+     *            the frames of the run
+     * @param key
+     *            the normalized key to look for
+     * @return the index of that record, or the record count of the run
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private long frameLowerBound(FrameDirectory directory, long key)
+        throws IOException {
+        int low = 0;
+        int high = directory.frames;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (directory.firstKeys[mid] < key) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        if (low == 0) {
+            return 0;
+        }
+
+        int f = low - 1;
+        long position = directory.positions[f];
+        int bytes = (int)(directory.positions[f + 1] - position);
+        ByteBuffer frame = runFileParser.readView(position, bytes,
+            frameScratch);
+        if (frame.remaining() < bytes) {
+            throw new EOFException("Frame at " + position + " ends past the "
+                + "end of " + runFileParser.getFileName());
+        }
+        int count = RunFrames.recordCount(frame);
+        frame.position(frame.position() + RunFrames.HEADER_BYTES);
+        records.clear();
+        RunFrames.decode(codec, count, frame, records);
+        long below = 0;
+        while (below < count) {
+            int at = (int)below * ByteFile.BYTES_PER_RECORD;
+            if (layout.key(records.getLong(at), records.getLong(at
+                + Long.BYTES)) >= key) {
+                break;
+            }
+            below++;
+        }
+        return directory.firstRecords[f] + below;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Builds the slice of a run between two records.
+     *
+     * @param run
+     *            the run
+     * @param r
+     *            the index of the run, which numbers the slice
+     * @param from
+     *            the index of the first record of the slice
+     * @param to
+     *            the index just past its last record
+     * @return the slice
+     */
+    private Run slice(Run run, int r, long from, long to) {
+        long length = (to - from) * ByteFile.BYTES_PER_RECORD;
+        if (codec == null) {
+            long start = run.getStartPosition() + from
+                * ByteFile.BYTES_PER_RECORD;
+            return new Run(start, length, start + length, r);
+        }
+        if (from == to) {
+            return new Run(run.getStartPosition(), 0, run.getStartPosition(),
+                r);
+        }
+        FrameDirectory directory = directories[r];
+        int first = directory.frameOf(from);
+        int last = directory.frameOf(to - 1);
+        Run slice = new Run(directory.positions[first], length,
+            directory.positions[last + 1], r);
+        slice.setSkipRecords((int)(from - directory.firstRecords[first]));
+        return slice;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Reads the frame headers of an encoded run.
+     *
+     * @param run
+     *            the run
+     * @return its frames
+     * @throws IOException
+     *             if an I/O error occurs or the frames do not match the run
+     */
+    private FrameDirectory scanFrames(Run run) throws IOException {
+        FrameDirectory directory = new FrameDirectory();
+        long position = run.getStartPosition();
+        long record = 0;
+        while (position < run.getEndPosition()) {
+            ByteBuffer header = runFileParser.readView(position,
+                RunFrames.HEADER_BYTES, keyScratch);
+            if (header.remaining() < RunFrames.HEADER_BYTES) {
+                throw new EOFException("Run " + run.getRunNum()
+                    + " ends past the end of " + runFileParser.getFileName());
+            }
+            RunFrames.checkHeader(header, run);
+            directory.add(position, record, RunFrames.firstKey(header));
+            record += RunFrames.recordCount(header);
+            position += RunFrames.HEADER_BYTES + RunFrames.payloadLength(
+                header);
+        }
+        if (record * ByteFile.BYTES_PER_RECORD != run.getLength()) {
+            throw new IOException("Frames of run " + run.getRunNum()
+                + " do not hold its " + run.getLength() + " bytes");
+        }
+        // The entry past the last frame marks the end of the run
+        directory.add(position, record, Long.MAX_VALUE);
+        directory.frames--;
+        return directory;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Reads the key of one record of a raw run.
+     *
+     * @param runStart
+     *            the file position of the run
+     * @param record
+     *            the index of the record within the run
+     * @return the normalized key
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private long readKey(long runStart, long record) throws IOException {
+        // The key may be anywhere in the record, so all of it is read
+        ByteBuffer view = runFileParser.readView(runStart + record
+            * ByteFile.BYTES_PER_RECORD, ByteFile.BYTES_PER_RECORD,
+            keyScratch);
+        return layout.key(view.getLong(view.position()), view.getLong(view
+            .position() + Long.BYTES));
+    }
+}
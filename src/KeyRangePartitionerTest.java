@@ -0,0 +1,196 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the KeyRangePartitioner class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class KeyRangePartitionerTest extends TestCase {
+    private static final int RECORD = ByteFile.BYTES_PER_RECORD;
+    private Path directory;
+    private FileParser runFile;
+    private ByteBuffer data;
+
+    /**
+     * Creates an empty run file in a temporary directory
+     *
+     * @throws IOException
+     */
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("partitionerTest");
+        runFile = new FileParser(directory.resolve("runs.bin").toString());
+    }
+
+
+    /**
+     * Closes the run file and deletes the temporary directory
+     *
+     * @throws IOException
+     */
+    public void tearDown() throws IOException {
+        runFile.close();
+        for (File file : directory.toFile().listFiles()) {
+            file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+
+    /**
+     * Tests that sampled splitters cut every run into consecutive slices
+     * whose key ranges follow each other
+     *
+     * @throws IOException
+     */
+    public void testSampledSplitters() throws IOException {
+        RecordLayout layout = RecordLayout.DEFAULT;
+        Run[] runs = writeRuns(layout, new int[] { 3000, 500, 1700 });
+        Run[][] slices = new KeyRangePartitioner(runFile, null, layout)
+            .partition(runs, 4);
+        assertEquals(4, slices.length);
+        assertSlices(layout, runs, slices);
+    }
+
+
+    /**
+     * Tests that given splitters keep every record with the same int key
+     * in one partition, whatever the rest of its word
+     *
+     * @throws IOException
+     */
+    public void testGivenSplittersOnIntKey() throws IOException {
+        RecordLayout layout = RecordLayout.parse("int@8");
+        Run[] runs = writeRuns(layout, new int[] { 2000, 2000 });
+        // Splitters in the middle of a key's records
+        long[] splitters = { layout.key(0, (10L << 32) | 12345), layout.key(
+            0, (30L << 32) | 99) };
+        Run[][] slices = new KeyRangePartitioner(runFile, null, layout)
+            .partition(runs, splitters);
+        assertEquals(3, slices.length);
+        assertSlices(layout, runs, slices);
+        for (int p = 0; p < slices.length; p++) {
+            for (Run slice : slices[p]) {
+                for (long i = 0; i < slice.getLength(); i += RECORD) {
+                    int field = data.getInt((int)(slice.getStartPosition()
+                        + i) + Long.BYTES);
+                    assertEquals(p, field < 10 ? 0 : field < 30 ? 1 : 2);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Writes sorted runs of random records with few distinct keys to the
+     * run file, one after the other.
+     *
+     * @param layout
+     *            the layout the runs are sorted by
+     * @param lengths
+     *            the number of records of every run
+     * @return the runs
+     * @throws IOException
+     */
+    private Run[] writeRuns(RecordLayout layout, int[] lengths)
+        throws IOException {
+        int total = 0;
+        for (int length : lengths) {
+            total += length;
+        }
+        data = ByteBuffer.allocate(total * RECORD);
+        Random rng = new Random(10);
+        Run[] runs = new Run[lengths.length];
+        long start = 0;
+        for (int r = 0; r < lengths.length; r++) {
+            long[][] records = new long[lengths[r]][];
+            for (int i = 0; i < records.length; i++) {
+                long word1 = ((long)rng.nextInt(40) << 32) | (rng.nextInt()
+                    & 0xFFFFFFFFL);
+                if (layout.isDefault()) {
+                    word1 = Double.doubleToLongBits(rng.nextInt(40) / 2.0);
+                }
+                records[i] = new long[] { i, word1 };
+            }
+            Arrays.sort(records, (a, b) -> Long.compare(layout.key(a[0],
+                a[1]), layout.key(b[0], b[1])));
+            for (long[] record : records) {
+                data.putLong(record[0]);
+                data.putLong(record[1]);
+            }
+            long length = (long)lengths[r] * RECORD;
+            runs[r] = new Run(start, length, start + length, r);
+            start += length;
+        }
+        data.flip();
+        runFile.writeBlock(data.duplicate(), 0);
+        return runs;
+    }
+
+
+    /**
+     * Checks that the slices of every run follow each other and hold the
+     * whole run, and that the key fields of every partition are below
+     * those of the partitions after it.
+     *
+     * @param layout
+     *            the layout of the records
+     * @param runs
+     *            the runs that were cut
+     * @param slices
+     *            the slices of every partition
+     */
+    private void assertSlices(RecordLayout layout, Run[] runs, Run[][] slices) {
+        for (int r = 0; r < runs.length; r++) {
+            long position = runs[r].getStartPosition();
+            for (Run[] partition : slices) {
+                assertEquals(r, partition[r].getRunNum());
+                assertEquals(position, partition[r].getStartPosition());
+                position += partition[r].getLength();
+            }
+            assertEquals(runs[r].getEndPosition(), position);
+        }
+        long previous = Long.MIN_VALUE;
+        for (Run[] partition : slices) {
+            long lowest = Long.MAX_VALUE;
+            long highest = Long.MIN_VALUE;
+            for (Run slice : partition) {
+                for (long key : keys(layout, slice)) {
+                    lowest = Math.min(lowest, layout.firstKey(key));
+                    highest = Math.max(highest, layout.firstKey(key));
+                }
+            }
+            if (lowest != Long.MAX_VALUE) {
+                assertTrue(previous < lowest);
+                previous = highest;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the normalized keys of a slice.
+     *
+     * @param layout
+     *            the layout of the records
+     * @param slice
+     *            the slice
+     * @return the keys in file order
+     */
+    private long[] keys(RecordLayout layout, Run slice) {
+        long[] keys = new long[(int)(slice.getLength() / RECORD)];
+        for (int i = 0; i < keys.length; i++) {
+            int offset = (int)slice.getStartPosition() + i * RECORD;
+            keys[i] = layout.key(data.getLong(offset), data.getLong(offset
+                + Long.BYTES));
+        }
+        return keys;
+    }
+}
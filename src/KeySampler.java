@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// -------------------------------------------------------------------------
+/**
+ * KeySampler keeps a uniform random sample of the keys it is shown, of at
+ * most a fixed number of keys however many it sees. It is a reservoir in
+ * the bottom-k form: every key draws a random priority, and the sample is
+ * the keys with the smallest priorities, kept in a max-heap on priority.
+ * Most keys are dropped after a single comparison with the root.
+ *
+ * Samplers of the same capacity merge into a sample of everything they
+ * saw, which is how the run generation threads, each with a sampler of its
+ * own, end up with a single sample. Merged samplers must draw from
+ * different seeds. The splitters at the quantiles of the sample cut the
+ * keys into ranges of about equal size.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class KeySampler {
+    // ~ Fields ................................................................
+    /**
+     * The sampled keys, in heap order of their priorities.
+     */
+    private long[] keys;
+
+    /**
+     * The priority of every sampled key, a max-heap.
+     */
+    private long[] priorities;
+
+    /**
+     * Number of keys in the sample.
+     */
+    private int size;
+
+    /**
+     * Number of keys seen, including those of merged samplers.
+     */
+    private long count;
+
+    /**
+     * Source of the priorities.
+     */
+    private SplittableRandom random;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty KeySampler object.
+     *
+     * @param capacity
+     *            the most keys the sample holds, at least 1
+     * @param seed
+     *            the seed of the priorities
+     */
+    public KeySampler(int capacity, long seed) {
+        this.keys = new long[capacity];
+        this.priorities = new long[capacity];
+        this.random = new SplittableRandom(seed);
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Shows the sampler a key.
+     *
+     * @param key
+     *            the normalized key
+     */
+    public void add(long key) {
+        count++;
+        offer(key, random.nextLong());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds the sample of another sampler of the same capacity, leaving a
+     * sample of the keys both have seen.
+     *
+     * @param other
+     *            the other sampler
+     */
+    public void merge(KeySampler other) {
+        count += other.count;
+        for (int i = 0; i < other.size; i++) {
+            offer(other.keys[i], other.priorities[i]);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Empties the sample.
+     */
+    public void clear() {
+        size = 0;
+        count = 0;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of keys in the sample.
+     *
+     * @return the sample size
+     */
+    public int size() {
+        return size;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of keys the sampler has seen.
+     *
+     * @return the key count
+     */
+    public long getCount() {
+        return count;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the most keys the sample holds.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Picks parts - 1 splitters at the quantiles of the sample. Keys below
+     * the first splitter go to the first part, keys from splitter p - 1 up
+     * to splitter p to part p.
+     *
+     * @param parts
+     *            the number of parts, at least 1
+     * @return the splitters in ascending order
+     */
+    public long[] splitters(int parts) {
+        long[] sorted = Arrays.copyOf(keys, size);
+        Arrays.sort(sorted);
+        long[] splitters = new long[parts - 1];
+        for (int p = 1; p < parts; p++) {
+            // An empty sample puts everything in the last part
+            splitters[p - 1] = (size == 0)
+                ? Long.MIN_VALUE
+                : sorted[(int)((long)size * p / parts)];
+        }
+        return splitters;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Keeps a key if its priority is among the smallest seen.
+     *
+     * @param key
+     *            the key
+     * @param priority
+     *            its priority
+     */
+    private void offer(long key, long priority) {
+        if (size < keys.length) {
+            // Sift the new key up from the end
+            int i = size++;
+            while (i > 0 && priorities[(i - 1) / 2] < priority) {
+                keys[i] = keys[(i - 1) / 2];
+                priorities[i] = priorities[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            keys[i] = key;
+            priorities[i] = priority;
+            return;
+        }
+        if (priority >= priorities[0]) {
+            return;
+        }
+        // Replace the root and sift down
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && priorities[child + 1] > priorities[child]) {
+                child++;
+            }
+            if (priorities[child] <= priority) {
+                break;
+            }
+            keys[i] = keys[child];
+            priorities[i] = priorities[child];
+            i = child;
+        }
+        keys[i] = key;
+        priorities[i] = priority;
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the KeySampler class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class KeySamplerTest extends TestCase {
+
+    /**
+     * Tests that a sampler keeps every key until it is full and then stays
+     * at its capacity
+     */
+    public void testCapacity() {
+        KeySampler sampler = new KeySampler(100, 1);
+        for (int i = 0; i < 50; i++) {
+            sampler.add(i);
+        }
+        assertEquals(50, sampler.size());
+        long[] splitters = sampler.splitters(5);
+        assertEquals(4, splitters.length);
+        for (int p = 0; p < splitters.length; p++) {
+            assertEquals(10 * (p + 1), splitters[p]);
+        }
+        for (int i = 50; i < 10000; i++) {
+            sampler.add(i);
+        }
+        assertEquals(100, sampler.size());
+        assertEquals(10000, sampler.getCount());
+        sampler.clear();
+        assertEquals(0, sampler.size());
+        assertEquals(Long.MIN_VALUE, sampler.splitters(2)[0]);
+    }
+
+
+    /**
+     * Tests that splitters from merged samplers cut keys seen in sorted
+     * stretches, as run generation shows them, into even parts
+     */
+    public void testMergedSplittersBalance() {
+        Random rng = new Random(23);
+        int parts = 4;
+        int perSampler = 50000;
+        KeySampler merged = new KeySampler(4096, 0);
+        long[][] keys = new long[3][perSampler];
+        for (int s = 0; s < keys.length; s++) {
+            KeySampler sampler = new KeySampler(4096, s + 1);
+            for (int i = 0; i < perSampler; i++) {
+                // Ascending keys, as in a sorted run
+                keys[s][i] = (long)i * 1000 + rng.nextInt(1000);
+                sampler.add(keys[s][i]);
+            }
+            merged.merge(sampler);
+        }
+        assertEquals(3L * perSampler, merged.getCount());
+        assertEquals(4096, merged.size());
+
+        long[] splitters = merged.splitters(parts);
+        int[] counts = new int[parts];
+        for (long[] samplerKeys : keys) {
+            for (long key : samplerKeys) {
+                int p = 0;
+                while (p < splitters.length && key >= splitters[p]) {
+                    p++;
+                }
+                counts[p]++;
+            }
+        }
+        int even = 3 * perSampler / parts;
+        for (int count : counts) {
+            assertTrue(Math.abs(count - even) < even / 20);
+        }
+    }
+}
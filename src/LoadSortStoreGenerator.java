@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * LoadSortStoreGenerator turns one chunk of the input file into sorted runs
+ * with a RadixSorter: it loads as many records as the sorter holds, sorts
+ * them and stores them as one run, until the chunk is used up. Runs are as
+ * long as the sorter, half of what replacement selection gets out of the
+ * same memory on random input, but every record is much cheaper to sort.
+ *
+ * Like RunGenerator it writes the runs of its chunk over the span of the run
+ * file the chunk occupies in the input file, moved along by the caller when
+ * the runs are encoded, so generators on different chunks can work at the
+ * same time.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class LoadSortStoreGenerator implements ChunkRunGenerator {
+    // ~ Fields ................................................................
+    /**
+     * The sorter owned by this generator.
+     */
+    private RadixSorter sorter;
+
+    /**
+     * The input file or stream.
+     */
+    private RecordSource inputParser;
+
+    /**
+     * Position of the first byte of the chunk.
+     */
+    private long chunkStart;
+
+    /**
+     * Position just past the chunk.
+     */
+    private long chunkEnd;
+
+    /**
+     * Position in the run file where the runs of the chunk start.
+     */
+    private long outputStart;
+
+    /**
+     * Buffer the input blocks are read into.
+     */
+    private ByteBuffer inputScratch;
+
+    /**
+     * Writer for the run file.
+     */
+    private BlockWriter writer;
+
+    /**
+     * Catalog receiving the finished runs.
+     */
+    private RunCatalog catalog;
+
+    /**
+     * Combiner of records with equal keys, or null.
+     */
+    private RecordCombiner combiner;
+
+    /**
+     * Sampler of the keys of the chunk, or null.
+     */
+    private KeySampler sampler;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new LoadSortStoreGenerator object.
+     *
+     * @param sorter
+     *            the sorter to use, not shared with other generators
+     * @param inputParser
+     *            the input file or stream
+     * @param chunkStart
+     *            position of the first byte of the chunk
+     * @param chunkEnd
+     *            position just past the chunk
+     * @param outputStart
+     *            position in the run file where the runs of the chunk start
+     * @param inputScratch
+     *            buffer for reading input blocks
+     * @param writer
+     *            writer for the run file
+     * @param catalog
+     *            catalog receiving the finished runs
+     */
+    public LoadSortStoreGenerator(
+        RadixSorter sorter,
+        RecordSource inputParser,
+        long chunkStart,
+        long chunkEnd,
+        long outputStart,
+        ByteBuffer inputScratch,
+        BlockWriter writer,
+        RunCatalog catalog) {
+        this.sorter = sorter;
+        this.inputParser = inputParser;
+        this.chunkStart = chunkStart;
+        this.chunkEnd = chunkEnd;
+        this.outputStart = outputStart;
+        this.inputScratch = inputScratch;
+        this.writer = writer;
+        this.catalog = catalog;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets the combiner of records with equal keys within a run.
+     *
+     * @param recordCombiner
+     *            the combiner, or null to keep every record
+     */
+    @Override
+    public void setCombiner(RecordCombiner recordCombiner) {
+        this.combiner = recordCombiner;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the sampler shown the key of every record of the chunk.
+     *
+     * @param keySampler
+     *            the sampler, or null
+     */
+    @Override
+    public void setSampler(KeySampler keySampler) {
+        this.sampler = keySampler;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Generates the runs of the chunk. The runs are handed to the writer,
+     * which the caller has to flush before reading them.
+     *
+     * @return the number of runs generated
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    @Override
+    public Integer call() throws IOException {
+        long inputPos = chunkStart;
+        RunWriter out = new RunWriter(writer, sorter.getLayout(),
+            outputStart);
+        out.setCombiner(combiner, true);
+        out.setSampler(sampler);
+        int runs = 0;
+        while (inputPos < chunkEnd) {
+            sorter.clear();
+            inputPos = sorter.load(inputParser, inputPos, chunkEnd,
+                inputScratch);
+            if (sorter.size() == 0) {
+                break;
+            }
+            sorter.sort();
+            sorter.writeTo(out);
+            Run run = out.finish(runs);
+            catalog.add(run.getStartPosition(), run.getLength(), run
+                .getEndPosition());
+            runs++;
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+
+// -------------------------------------------------------------------------
+/**
+ * LoserTree is a tournament tree over the current records of k run cursors.
+ * Every internal node remembers the loser of the match played there and
+ * node 0 holds the overall winner, the cursor with the smallest key. Keys
+ * are the normalized keys of the cursors, compared as plain longs.
+ *
+ * After the winner's record is written, advance() moves that cursor on and
+ * replays only the matches on the path from its leaf to the root, which
+ * costs about log2(k) comparisons per record no matter how large the blocks
+ * are. Exhausted cursors lose every match. Equal keys are won by the lower
+ * cursor index, so records with equal keys keep the order of their runs.
+ * A key mask limits the comparison to the key fields, so records whose
+ * key fields are equal keep that order too.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class LoserTree {
+    // ~ Fields ................................................................
+    /**
+     * The cursors competing in the tree, one per leaf.
+     */
+    private RunCursor[] cursors;
+
+    /**
+     * Number of cursors in play.
+     */
+    private int k;
+
+    /**
+     * losers[t] is the cursor that lost at internal node t, losers[0] is the
+     * winner.
+     */
+    private int[] losers;
+
+    /**
+     * Bits of the keys that are compared.
+     */
+    private long keyMask;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new LoserTree object and plays the initial tournament. The
+     * cursors must already be positioned on their first records.
+     *
+     * @param cursors
+     *            the cursors to merge
+     * @param k
+     *            the number of cursors from the array that take part
+     */
+    public LoserTree(RunCursor[] cursors, int k) {
+        this(cursors, k, -1L);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new LoserTree object that compares only some bits of the
+     * keys, and plays the initial tournament.
+     *
+     * @param cursors
+     *            the cursors to merge
+     * @param k
+     *            the number of cursors from the array that take part
+     * @param keyMask
+     *            the bits of the keys that are compared, which must include
+     *            the sign bit
+     */
+    public LoserTree(RunCursor[] cursors, int k, long keyMask) {
+        this.keyMask = keyMask;
+        this.cursors = cursors;
+        this.k = k;
+        this.losers = new int[Math.max(1, k)];
+
+        // Index k stands for a virtual record smaller than everything, so
+        // every real leaf can be replayed into an initially empty tree
+        for (int i = 0; i < losers.length; i++) {
+            losers[i] = k;
+        }
+        for (int i = k - 1; i >= 0; i--) {
+            replay(i);
+        }
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns whether every cursor is exhausted.
+     *
+     * @return true if there is nothing left to merge
+     */
+    public boolean isEmpty() {
+        return k == 0 || cursors[losers[0]].isExhausted();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the cursor holding the smallest current record.
+     *
+     * @return the winning cursor
+     */
+    public RunCursor winner() {
+        return cursors[losers[0]];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Moves the winning cursor to its next record and replays its path to
+     * the root to find the new winner.
+     *
+     * @throws IOException
+     *             if the cursor fails to read its next block
+     */
+    public void advance() throws IOException {
+        int winner = losers[0];
+        cursors[winner].advance();
+        replay(winner);
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Plays the leaf's record up the tree. At each node the loser stays and
+     * the winner moves on, and the final winner is stored at node 0.
+     *
+     * @param leaf
+     *            the index of the cursor whose record changed
+     */
+    private void replay(int leaf) {
+        int winner = leaf;
+        for (int t = (leaf + k) / 2; t > 0; t /= 2) {
+            if (beats(losers[t], winner)) {
+                int loser = winner;
+                winner = losers[t];
+                losers[t] = loser;
+            }
+        }
+        losers[0] = winner;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Decides a match between two cursors.
+     *
+     * @param a
+     *            index of one cursor, or k for the virtual smallest record
+     * @param b
+     *            index of the other cursor, or k
+     * @return true if a's record comes before b's
+     */
+    private boolean beats(int a, int b) {
+        if (a == k || b == k) {
+            return a == k && b != k;
+        }
+        RunCursor ca = cursors[a];
+        RunCursor cb = cursors[b];
+        if (ca.isExhausted() || cb.isExhausted()) {
+            return !ca.isExhausted();
+        }
+        long keyA = ca.getKey() & keyMask;
+        long keyB = cb.getKey() & keyMask;
+        return keyA < keyB || (keyA == keyB && a < b);
+    }
+}
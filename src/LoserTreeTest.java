@@ -0,0 +1,201 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the LoserTree class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class LoserTreeTest extends TestCase {
+    private Path directory;
+
+    /**
+     * set up for tests
+     *
+     * @throws IOException
+     */
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("loserTreeTest");
+    }
+
+
+    /**
+     * Deletes the temporary directory
+     */
+    public void tearDown() {
+        for (File file : directory.toFile().listFiles()) {
+            file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+
+    /**
+     * Tests that equal keys are won by the lower cursor, so records with
+     * equal keys come out in the order of their runs
+     *
+     * @throws IOException
+     */
+    public void testTiesKeepRunOrder() throws IOException {
+        double[][] runs = { { 1, 1, 2 }, { 1, 2 }, { 1, 1 } };
+        long[] expected = { id(0, 0), id(0, 1), id(1, 0), id(2, 0), id(2, 1),
+            id(0, 2), id(1, 1) };
+        assertEquals(expected, merge(runs));
+    }
+
+
+    /**
+     * Tests that empty and exhausted cursors lose every match
+     *
+     * @throws IOException
+     */
+    public void testExhaustedCursors() throws IOException {
+        double[][] runs = { {}, { 5 }, {}, { 1, 2, 3, 4, 6 } };
+        long[] expected = { id(3, 0), id(3, 1), id(3, 2), id(3, 3), id(1, 0),
+            id(3, 4) };
+        assertEquals(expected, merge(runs));
+
+        assertEquals(0, merge(new double[][] { {}, {} }).length);
+    }
+
+
+    /**
+     * Tests a tree over a single cursor
+     *
+     * @throws IOException
+     */
+    public void testSingleCursor() throws IOException {
+        double[][] runs = { { -3, 0, 0, 7 } };
+        long[] expected = { id(0, 0), id(0, 1), id(0, 2), id(0, 3) };
+        assertEquals(expected, merge(runs));
+    }
+
+
+    /**
+     * Tests that merges of k runs, for k that are and are not powers of
+     * two, match a stable sort of all the records
+     *
+     * @throws IOException
+     */
+    public void testAnyNumberOfCursors() throws IOException {
+        Random rng = new Random(3);
+        for (int k = 2; k <= 9; k++) {
+            double[][] runs = new double[k][];
+            List<double[]> records = new ArrayList<>();
+            for (int r = 0; r < k; r++) {
+                // Runs of different lengths, some over a block, few keys
+                runs[r] = new double[rng.nextInt(2
+                    * ByteFile.RECORDS_PER_BLOCK)];
+                for (int i = 0; i < runs[r].length; i++) {
+                    runs[r][i] = rng.nextInt(50);
+                }
+                Arrays.sort(runs[r]);
+                for (int i = 0; i < runs[r].length; i++) {
+                    records.add(new double[] { runs[r][i], id(r, i) });
+                }
+            }
+            // Collections.sort is stable
+            Collections.sort(records, (a, b) -> Double.compare(a[0], b[0]));
+            long[] expected = new long[records.size()];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = (long)records.get(i)[1];
+            }
+            assertEquals(expected, merge(runs));
+        }
+    }
+
+
+    /**
+     * Checks that two arrays of record IDs are equal.
+     *
+     * @param expected
+     *            the expected IDs
+     * @param actual
+     *            the merged IDs
+     */
+    private void assertEquals(long[] expected, long[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("record " + i, expected[i], actual[i]);
+        }
+    }
+
+
+    /**
+     * Returns the ID of a record of a run.
+     *
+     * @param run
+     *            the run
+     * @param record
+     *            the record within the run
+     * @return the ID
+     */
+    private static long id(int run, int record) {
+        return run * 100000L + record;
+    }
+
+
+    /**
+     * Writes runs with the given keys one after another to a file and
+     * merges them with a LoserTree.
+     *
+     * @param runs
+     *            the keys of every run, sorted
+     * @return the IDs of the merged records
+     * @throws IOException
+     */
+    private long[] merge(double[][] runs) throws IOException {
+        int count = 0;
+        for (double[] run : runs) {
+            count += run.length;
+        }
+        ByteBuffer data = ByteBuffer.allocate(count
+            * ByteFile.BYTES_PER_RECORD);
+        for (int r = 0; r < runs.length; r++) {
+            for (int i = 0; i < runs[r].length; i++) {
+                data.putLong(id(r, i));
+                data.putDouble(runs[r][i]);
+            }
+        }
+        Path path = directory.resolve("runs.bin");
+        Files.write(path, data.array());
+
+        FileParser parser = new FileParser(path.toString());
+        RunCursor[] cursors = new RunCursor[runs.length];
+        long start = 0;
+        for (int r = 0; r < runs.length; r++) {
+            long length = (long)runs[r].length * ByteFile.BYTES_PER_RECORD;
+            cursors[r] = new RunCursor(ByteFile.BYTES_PER_BLOCK);
+            cursors[r].open(parser, new Run(start, length, start + length,
+                r));
+            start += length;
+        }
+        long[] merged = new long[count];
+        int next = 0;
+        try {
+            LoserTree tree = new LoserTree(cursors, cursors.length);
+            while (!tree.isEmpty()) {
+                merged[next++] = tree.winner().getWord0();
+                tree.advance();
+            }
+        }
+        finally {
+            for (RunCursor cursor : cursors) {
+                cursor.close();
+            }
+            parser.close();
+        }
+        assertEquals(count, next);
+        return merged;
+    }
+}
@@ -0,0 +1,295 @@
+// -------------------------------------------------------------------------
+/**
+ * MemoryBudget splits a working-memory budget between the parts of the sort
+ * that hold data: the replacement selection heap, the input buffer and the
+ * output buffer, and decides the merge fan-in the same budget allows.
+ *
+ * The I/O buffers get a small share of the budget (at least one block each)
+ * and the heap gets the rest, so run length grows with the budget.
+ * Replacement selection produces runs of about twice the heap size on random
+ * input. The default budget reproduces the original layout of an 8 block
+ * heap with one input and one output block.
+ *
+ * Sizes can be given as plain bytes or with a k, m or g suffix, for example
+ * "64m" or "2g". A budget can not be larger than the Java heap
+ * (Runtime.maxMemory(), set with -Xmx).
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class MemoryBudget {
+    // ~ Fields ................................................................
+    /**
+     * The default budget: an 8 block heap plus one input and one output block.
+     */
+    public static final long DEFAULT_BYTES = 8L * ByteFile.RECORDS_PER_BLOCK
+        * RecordHeap.BYTES_PER_SLOT + 2L * ByteFile.BYTES_PER_BLOCK;
+
+    /**
+     * The I/O buffers each get 1/IO_SHARE of the budget.
+     */
+    private static final int IO_SHARE = 64;
+
+    /**
+     * Upper bound for each I/O buffer, in blocks (1 MB). Larger buffers do not
+     * make sequential I/O any faster and are better spent on the heap.
+     */
+    private static final int MAX_IO_BLOCKS = 128;
+
+    /**
+     * Upper bound for the merge fan-in. Beyond this the per-run buffers are
+     * so small relative to the budget that more memory is better spent on
+     * fewer, larger reads.
+     */
+    private static final int MAX_FAN_IN = 4096;
+
+    /**
+     * The total budget in bytes.
+     */
+    private long totalBytes;
+
+    /**
+     * Number of blocks in the input buffer.
+     */
+    private int inputBlocks;
+
+    /**
+     * Number of blocks in the output buffer.
+     */
+    private int outputBlocks;
+
+    /**
+     * Number of records the heap can hold, always whole blocks.
+     */
+    private int heapRecords;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new MemoryBudget object with the default size.
+     */
+    public MemoryBudget() {
+        this(DEFAULT_BYTES);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new MemoryBudget object and splits it between the heap and
+     * the I/O buffers.
+     *
+     * @param totalBytes
+     *            the working memory available to the sort, in bytes
+     * @throws IllegalArgumentException
+     *             if the budget can not hold the smallest possible layout
+     *             or does not fit in the Java heap
+     */
+    public MemoryBudget(long totalBytes) {
+        if (totalBytes < DEFAULT_BYTES) {
+            throw new IllegalArgumentException("Memory budget of "
+                + totalBytes + " bytes is below the minimum of "
+                + DEFAULT_BYTES);
+        }
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        if (totalBytes > maxMemory) {
+            throw new IllegalArgumentException("Memory budget of "
+                + totalBytes + " bytes is above the Java heap of " + maxMemory
+                + " bytes, raise -Xmx or lower --mem");
+        }
+        this.totalBytes = totalBytes;
+
+        long ioBlocks = totalBytes / IO_SHARE / ByteFile.BYTES_PER_BLOCK;
+        this.inputBlocks = (int)Math.max(1, Math.min(MAX_IO_BLOCKS, ioBlocks));
+        this.outputBlocks = inputBlocks;
+
+        long heapBytes = totalBytes - (long)(inputBlocks + outputBlocks)
+            * ByteFile.BYTES_PER_BLOCK;
+        long heapBlocks = heapBytes / ((long)ByteFile.RECORDS_PER_BLOCK
+            * RecordHeap.BYTES_PER_SLOT);
+        // Java arrays are indexed by int
+        heapBlocks = Math.min(heapBlocks, Integer.MAX_VALUE
+            / ByteFile.RECORDS_PER_BLOCK);
+        this.heapRecords = (int)heapBlocks * ByteFile.RECORDS_PER_BLOCK;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Parses a size such as "65536", "512k", "64m" or "2g".
+     *
+     * @param size
+     *            the size string
+     * @return a MemoryBudget of that size
+     * @throws IllegalArgumentException
+     *             if the string is not a valid size
+     */
+    public static MemoryBudget parse(String size) {
+        String s = size.trim().toLowerCase();
+        long multiplier = 1;
+        char unit = s.isEmpty() ? ' ' : s.charAt(s.length() - 1);
+        if (unit == 'k') {
+            multiplier = 1L << 10;
+        }
+        else if (unit == 'm') {
+            multiplier = 1L << 20;
+        }
+        else if (unit == 'g') {
+            multiplier = 1L << 30;
+        }
+        if (multiplier != 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        long bytes;
+        try {
+            bytes = Math.multiplyExact(Long.parseLong(s), multiplier);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid memory size: "
+                + size);
+        }
+        catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Memory size out of range: "
+                + size);
+        }
+        return new MemoryBudget(bytes);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the total budget.
+     *
+     * @return the budget in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records the replacement selection heap holds.
+     *
+     * @return the heap capacity in records
+     */
+    public int getHeapRecords() {
+        return heapRecords;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records each heap holds when the heap share is
+     * split between several run generators.
+     *
+     * @param heaps
+     *            the number of heaps
+     * @return the capacity of each heap in records, at least one block
+     */
+    public int getHeapRecords(int heaps) {
+        int blocks = heapRecords / ByteFile.RECORDS_PER_BLOCK / heaps;
+        return Math.max(1, blocks) * ByteFile.RECORDS_PER_BLOCK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records each radix sorter holds when the heap
+     * share is given to radix sorters instead, split between several run
+     * generators.
+     *
+     * @param sorters
+     *            the number of sorters
+     * @return the capacity of each sorter in records, at least one block
+     */
+    public int getRadixRecords(int sorters) {
+        long bytes = (long)heapRecords * RecordHeap.BYTES_PER_SLOT / sorters;
+        long blocks = bytes / RadixSorter.BYTES_PER_RECORD
+            / ByteFile.RECORDS_PER_BLOCK;
+        return (int)Math.max(1, blocks) * ByteFile.RECORDS_PER_BLOCK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the size of the input buffer.
+     *
+     * @return the input buffer size in bytes
+     */
+    public int getInputBufferBytes() {
+        return inputBlocks * ByteFile.BYTES_PER_BLOCK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the size of the output buffer.
+     *
+     * @return the output buffer size in bytes
+     */
+    public int getOutputBufferBytes() {
+        return outputBlocks * ByteFile.BYTES_PER_BLOCK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the size of each output buffer when the output share is split
+     * into several buffers, as the write-behind pool does. Each buffer holds
+     * at least one block, so small budgets go slightly over their output
+     * share rather than write partial blocks.
+     *
+     * @param buffers
+     *            the number of output buffers
+     * @return the size of each buffer in bytes, whole blocks
+     */
+    public int getOutputBufferBytes(int buffers) {
+        return Math.max(1, outputBlocks / buffers) * ByteFile.BYTES_PER_BLOCK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many runs one merge can combine when every run is read
+     * through a single block buffer.
+     *
+     * @return the merge fan-in, at least 2
+     */
+    public int getMergeFanIn() {
+        return getMergeFanIn(1);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many runs one merge can combine. During a merge every run
+     * keeps its block buffers in its cursor, and the input and output
+     * buffers stay allocated.
+     *
+     * @param buffersPerRun
+     *            the number of block buffers each run cursor owns
+     * @return the merge fan-in, at least 2
+     */
+    public int getMergeFanIn(int buffersPerRun) {
+        long available = totalBytes - getInputBufferBytes()
+            - getOutputBufferBytes();
+        return (int)Math.max(2, Math.min(MAX_FAN_IN, available
+            / ((long)ByteFile.BYTES_PER_BLOCK * buffersPerRun)));
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns a short description of the split.
+     *
+     * @return the description
+     */
+    @Override
+    public String toString() {
+        return "MemoryBudget[" + totalBytes + " bytes, heap " + heapRecords
+            + " records, input " + getInputBufferBytes() + " bytes, output "
+            + getOutputBufferBytes() + " bytes, fan-in " + getMergeFanIn()
+            + "]";
+    }
+}
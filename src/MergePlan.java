@@ -0,0 +1,258 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// -------------------------------------------------------------------------
+/**
+ * MergePlan describes how the runs left by run generation are merged into
+ * one sorted run. It is a list of passes. Each pass merges groups of runs,
+ * where a group is a set of indices into the run list at the start of the
+ * pass.
+ *
+ * A pass that leaves some runs out ("carries" them) is executed in place:
+ * the merged runs are appended to the run file and the carried runs are not
+ * copied. A pass that merges every run writes a new run file. After a pass
+ * the run list is the carried runs in their old order followed by the merged
+ * runs in group order, unless the pass keeps the order of the runs: its
+ * groups are consecutive runs, and every merged run takes the place of its
+ * group in the list.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class MergePlan {
+
+    // -------------------------------------------------------------------------
+    /**
+     * One merge pass: the groups of runs merged together and the number of
+     * runs before the pass.
+     */
+    public static class Pass {
+        private int[][] groups;
+        private int runsBefore;
+        private int runsMerged;
+        private long bytes;
+        private boolean keepsOrder;
+
+        /**
+         * Creates a new Pass.
+         *
+         * @param groups
+         *            the groups of run indices merged in this pass
+         * @param runsBefore
+         *            the number of runs at the start of the pass
+         * @param bytes
+         *            the number of bytes the pass reads (and writes)
+         */
+        public Pass(int[][] groups, int runsBefore, long bytes) {
+            this(groups, runsBefore, bytes, false);
+        }
+
+
+        /**
+         * Creates a new Pass that may keep the order of the runs.
+         *
+         * @param groups
+         *            the groups of run indices merged in this pass
+         * @param runsBefore
+         *            the number of runs at the start of the pass
+         * @param bytes
+         *            the number of bytes the pass reads (and writes)
+         * @param keepsOrder
+         *            true if the groups are consecutive runs and every
+         *            merged run takes the place of its group
+         */
+        public Pass(
+            int[][] groups,
+            int runsBefore,
+            long bytes,
+            boolean keepsOrder) {
+            this.groups = groups;
+            this.keepsOrder = keepsOrder;
+            this.runsBefore = runsBefore;
+            this.bytes = bytes;
+            for (int[] group : groups) {
+                runsMerged += group.length;
+            }
+        }
+
+
+        /**
+         * Returns the groups of run indices merged in this pass.
+         *
+         * @return the groups
+         */
+        public int[][] getGroups() {
+            return groups;
+        }
+
+
+        /**
+         * Returns the number of runs at the start of the pass.
+         *
+         * @return the number of runs
+         */
+        public int getRunsBefore() {
+            return runsBefore;
+        }
+
+
+        /**
+         * Returns the number of runs after the pass.
+         *
+         * @return the number of runs
+         */
+        public int getRunsAfter() {
+            return runsBefore - runsMerged + groups.length;
+        }
+
+
+        /**
+         * Returns whether some runs are left out of this pass, in which case
+         * the pass appends its output to the run file.
+         *
+         * @return true if the pass carries runs
+         */
+        public boolean carriesRuns() {
+            return runsMerged < runsBefore;
+        }
+
+
+        /**
+         * Returns whether every merged run takes the place of its group in
+         * the run list, instead of following the carried runs.
+         *
+         * @return true if the pass keeps the order of the runs
+         */
+        public boolean keepsOrder() {
+            return keepsOrder;
+        }
+
+
+        /**
+         * Returns the largest group of the pass.
+         *
+         * @return the fan-in of the pass
+         */
+        public int getFanIn() {
+            int fanIn = 0;
+            for (int[] group : groups) {
+                fanIn = Math.max(fanIn, group.length);
+            }
+            return fanIn;
+        }
+
+
+        /**
+         * Returns the number of bytes the pass reads. It writes the same
+         * amount.
+         *
+         * @return the bytes moved by the pass
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    // ~ Fields ................................................................
+    /**
+     * The passes in execution order.
+     */
+    private List<Pass> passes;
+
+    /**
+     * The fan-in the plan was made for.
+     */
+    private int fanIn;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty MergePlan object.
+     *
+     * @param fanIn
+     *            the maximum number of runs per merge
+     */
+    public MergePlan(int fanIn) {
+        this.passes = new ArrayList<>();
+        this.fanIn = fanIn;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Adds a pass to the end of the plan.
+     *
+     * @param pass
+     *            the pass to add
+     */
+    public void addPass(Pass pass) {
+        passes.add(pass);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the passes in execution order.
+     *
+     * @return the passes
+     */
+    public List<Pass> getPasses() {
+        return passes;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the predicted number of bytes read by all passes.
+     *
+     * @return the bytes read
+     */
+    public long getPredictedBytesRead() {
+        long total = 0;
+        for (Pass pass : passes) {
+            total += pass.getBytes();
+        }
+        return total;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the predicted number of bytes written by all passes. Every
+     * merged byte is written once, so this equals the bytes read.
+     *
+     * @return the bytes written
+     */
+    public long getPredictedBytesWritten() {
+        return getPredictedBytesRead();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns a description of the plan, one line per pass.
+     *
+     * @return the description
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Merge plan: ").append(passes.size()).append(
+            " pass(es), fan-in ").append(fanIn).append(", predicted ").append(
+                getPredictedBytesRead()).append(" bytes read, ").append(
+                    getPredictedBytesWritten()).append(" bytes written");
+        for (int i = 0; i < passes.size(); i++) {
+            Pass pass = passes.get(i);
+            builder.append("\n  pass ").append(i + 1).append(": ").append(pass
+                .getRunsBefore()).append(" -> ").append(pass.getRunsAfter())
+                .append(" runs, ").append(pass.getGroups().length).append(
+                    " merge(s), fan-in ").append(pass.getFanIn()).append(", ")
+                .append(pass.getBytes()).append(" bytes");
+            if (pass.carriesRuns()) {
+                builder.append(", in place");
+            }
+        }
+        return builder.toString();
+    }
+}
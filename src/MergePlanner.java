@@ -0,0 +1,320 @@
+import java.util.Arrays;
+import java.util.Iterator;
+
+// -------------------------------------------------------------------------
+/**
+ * MergePlanner decides how to merge a list of runs with a given fan-in while
+ * moving as few bytes as possible.
+ *
+ * With N runs and fan-in k the merge needs P = ceil(log_k N) passes. Every
+ * pass except the first is a full k-way pass, and the first pass only merges
+ * enough of the smallest runs to leave exactly k^(P-1) runs behind. The runs
+ * it does not touch stay where they are. This is the optimal merge pattern
+ * for a fixed number of passes. A single run needs no pass at all.
+ *
+ * The last pass may be limited to a smaller fan-in f, for a final merge
+ * whose threads share the cursors of one merge. The first pass then leaves
+ * f * k^(P-2) runs, so the full passes end with at most f runs.
+ *
+ * A stable planner keeps records with equal keys in the order of the runs,
+ * which a combining sort relies on. It only merges consecutive runs, and
+ * every merged run takes the place of its runs; its first pass merges the
+ * cheapest stretch of consecutive runs instead of the smallest runs.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class MergePlanner {
+    // ~ Fields ................................................................
+    /**
+     * The largest number of runs one merge may combine.
+     */
+    private int fanIn;
+
+    /**
+     * Whether merges only take consecutive runs and keep them in order.
+     */
+    private boolean stable;
+
+    /**
+     * The largest number of runs the last pass may combine.
+     */
+    private int finalFanIn;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new MergePlanner object.
+     *
+     * @param fanIn
+     *            the largest number of runs one merge may combine, at least 2
+     */
+    public MergePlanner(int fanIn) {
+        this(fanIn, false);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new MergePlanner object that may keep the runs in order.
+     *
+     * @param fanIn
+     *            the largest number of runs one merge may combine, at least 2
+     * @param stable
+     *            true to merge only consecutive runs and keep the order of
+     *            the runs
+     */
+    public MergePlanner(int fanIn, boolean stable) {
+        this.stable = stable;
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("Fan-in must be at least 2: "
+                + fanIn);
+        }
+        this.fanIn = fanIn;
+        this.finalFanIn = fanIn;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Limits the last pass to fewer runs than the other passes.
+     *
+     * @param finalFanIn
+     *            the largest number of runs the last pass may combine,
+     *            between 2 and the fan-in
+     * @throws IllegalArgumentException
+     *             if the fan-in is out of range
+     */
+    public void setFinalFanIn(int finalFanIn) {
+        if (finalFanIn < 2 || finalFanIn > fanIn) {
+            throw new IllegalArgumentException("Final fan-in must be "
+                + "between 2 and " + fanIn + ": " + finalFanIn);
+        }
+        this.finalFanIn = finalFanIn;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Plans the merge of the given runs.
+     *
+     * @param runs
+     *            the runs to merge, in file order
+     * @return the plan, without passes if there is at most one run
+     */
+    public MergePlan plan(DLList runs) {
+        long[] lengths = new long[runs.size()];
+        Iterator<Run> iterator = runs.iterator();
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = iterator.next().getLength();
+        }
+        return plan(lengths);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Plans the merge of runs with the given lengths.
+     *
+     * @param runLengths
+     *            the length of every run in bytes, in file order
+     * @return the plan, without passes if there is at most one run
+     */
+    public MergePlan plan(long[] runLengths) {
+        MergePlan plan = new MergePlan(fanIn);
+        long[] lengths = runLengths.clone();
+        if (lengths.length <= 1) {
+            return plan;
+        }
+
+        // Runs left after the first pass so that every later pass is full
+        int target = 1;
+        if (lengths.length > finalFanIn) {
+            target = finalFanIn;
+            while ((long)target * fanIn < lengths.length) {
+                target *= fanIn;
+            }
+        }
+
+        if (target > 1) {
+            int[][] groups = stable
+                ? consecutiveGroups(lengths, target)
+                : firstPassGroups(lengths, target);
+            lengths = addPass(plan, lengths, groups);
+        }
+        while (lengths.length > 1) {
+            lengths = addPass(plan, lengths, fullPassGroups(lengths.length));
+        }
+        return plan;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Chooses the groups of the first pass: the smallest runs, merged just
+     * enough to leave target runs. A short group goes first so the runs it
+     * holds are the smallest.
+     *
+     * @param lengths
+     *            the run lengths
+     * @param target
+     *            the number of runs that should be left
+     * @return the groups of run indices
+     */
+    private int[][] firstPassGroups(long[] lengths, int target) {
+        int reduce = lengths.length - target;
+        int fullMerges = reduce / (fanIn - 1);
+        int remainder = reduce % (fanIn - 1);
+        int numGroups = fullMerges + (remainder > 0 ? 1 : 0);
+
+        // Order the run indices by length, smallest first
+        Integer[] order = new Integer[lengths.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lengths[a], lengths[b]));
+
+        int[][] groups = new int[numGroups][];
+        int next = 0;
+        for (int g = 0; g < numGroups; g++) {
+            int size = (g == 0 && remainder > 0) ? remainder + 1 : fanIn;
+            groups[g] = new int[size];
+            for (int j = 0; j < size; j++) {
+                groups[g][j] = order[next++];
+            }
+            // Keep file order inside a group so equal keys stay stable
+            Arrays.sort(groups[g]);
+        }
+        return groups;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Chooses the groups of the first pass of a stable plan: the stretch of
+     * consecutive runs with the fewest bytes among those long enough to
+     * leave target runs, cut into groups like the smallest runs would be.
+     *
+     * @param lengths
+     *            the run lengths
+     * @param target
+     *            the number of runs that should be left
+     * @return the groups of run indices
+     */
+    private int[][] consecutiveGroups(long[] lengths, int target) {
+        int reduce = lengths.length - target;
+        int fullMerges = reduce / (fanIn - 1);
+        int remainder = reduce % (fanIn - 1);
+        int numGroups = fullMerges + (remainder > 0 ? 1 : 0);
+        int span = reduce + numGroups;
+
+        // Slide a window of span runs over the list
+        long bytes = 0;
+        for (int i = 0; i < span; i++) {
+            bytes += lengths[i];
+        }
+        long fewest = bytes;
+        int start = 0;
+        for (int i = span; i < lengths.length; i++) {
+            bytes += lengths[i] - lengths[i - span];
+            if (bytes < fewest) {
+                fewest = bytes;
+                start = i - span + 1;
+            }
+        }
+
+        int[][] groups = new int[numGroups][];
+        int next = start;
+        for (int g = 0; g < numGroups; g++) {
+            int size = (g == 0 && remainder > 0) ? remainder + 1 : fanIn;
+            groups[g] = new int[size];
+            for (int j = 0; j < size; j++) {
+                groups[g][j] = next++;
+            }
+        }
+        return groups;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Groups all runs into consecutive merges of up to fanIn runs.
+     *
+     * @param numRuns
+     *            the number of runs
+     * @return the groups of run indices
+     */
+    private int[][] fullPassGroups(int numRuns) {
+        int numGroups = (numRuns + fanIn - 1) / fanIn;
+        int[][] groups = new int[numGroups][];
+        for (int g = 0; g < numGroups; g++) {
+            int first = g * fanIn;
+            groups[g] = new int[Math.min(fanIn, numRuns - first)];
+            for (int j = 0; j < groups[g].length; j++) {
+                groups[g][j] = first + j;
+            }
+        }
+        return groups;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds a pass to the plan and works out the run lengths after it.
+     *
+     * @param plan
+     *            the plan being built
+     * @param lengths
+     *            the run lengths before the pass
+     * @param groups
+     *            the groups merged in the pass
+     * @return the run lengths after the pass
+     */
+    private long[] addPass(MergePlan plan, long[] lengths, int[][] groups) {
+        boolean[] merged = new boolean[lengths.length];
+        long[] mergedLengths = new long[groups.length];
+        long bytes = 0;
+        for (int g = 0; g < groups.length; g++) {
+            for (int index : groups[g]) {
+                merged[index] = true;
+                mergedLengths[g] += lengths[index];
+            }
+            bytes += mergedLengths[g];
+        }
+        MergePlan.Pass pass = new MergePlan.Pass(groups, lengths.length,
+            bytes, stable);
+        plan.addPass(pass);
+
+        long[] after = new long[pass.getRunsAfter()];
+        int next = 0;
+        if (stable) {
+            // Every merged run takes the place of its group
+            int[] groupAt = new int[lengths.length];
+            Arrays.fill(groupAt, -1);
+            for (int g = 0; g < groups.length; g++) {
+                groupAt[groups[g][0]] = g;
+            }
+            for (int i = 0; i < lengths.length; i++) {
+                if (groupAt[i] >= 0) {
+                    after[next++] = mergedLengths[groupAt[i]];
+                }
+                else if (!merged[i]) {
+                    after[next++] = lengths[i];
+                }
+            }
+            return after;
+        }
+        // Carried runs keep their order, merged runs follow
+        for (int i = 0; i < lengths.length; i++) {
+            if (!merged[i]) {
+                after[next++] = lengths[i];
+            }
+        }
+        for (long length : mergedLengths) {
+            after[next++] = length;
+        }
+        return after;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.Arrays;
+import student.TestCase;
+
+/**
+ * Test class for the MergePlanner class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class MergePlannerTest extends TestCase {
+    private MergePlanner planner;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        planner = new MergePlanner(8);
+    }
+
+
+    /**
+     * Tests that a single run needs no pass
+     */
+    public void testSingleRun() {
+        MergePlan plan = planner.plan(new long[] { 100 });
+        assertEquals(0, plan.getPasses().size());
+        assertEquals(0, plan.getPredictedBytesRead());
+    }
+
+
+    /**
+     * Tests that up to fan-in runs merge in one pass
+     */
+    public void testSinglePass() {
+        MergePlan plan = planner.plan(new long[] { 10, 20, 30, 40, 50, 60, 70,
+            80 });
+        assertEquals(1, plan.getPasses().size());
+        assertFalse(plan.getPasses().get(0).carriesRuns());
+        assertEquals(360, plan.getPredictedBytesWritten());
+    }
+
+
+    /**
+     * Tests that the first pass only merges the smallest runs so the last
+     * pass is full
+     */
+    public void testPartialFirstPass() {
+        long[] lengths = { 50, 5, 60, 1, 70, 80, 2, 90, 100, 3, 110, 120 };
+        MergePlan plan = planner.plan(lengths);
+        assertEquals(2, plan.getPasses().size());
+
+        MergePlan.Pass first = plan.getPasses().get(0);
+        assertTrue(first.carriesRuns());
+        assertEquals(12, first.getRunsBefore());
+        assertEquals(8, first.getRunsAfter());
+        // The five smallest runs: 1 + 2 + 3 + 5 + 50
+        assertEquals(61, first.getBytes());
+
+        MergePlan.Pass last = plan.getPasses().get(1);
+        assertEquals(8, last.getFanIn());
+        assertEquals(1, last.getRunsAfter());
+        assertEquals(61 + 691, plan.getPredictedBytesRead());
+    }
+
+
+    /**
+     * Tests that a stable plan merges the cheapest consecutive runs and
+     * leaves the merged run in their place
+     */
+    public void testStablePartialFirstPass() {
+        long[] lengths = { 50, 5, 60, 1, 70, 80, 2, 90, 100, 3, 110, 120 };
+        MergePlan plan = new MergePlanner(8, true).plan(lengths);
+        assertEquals(2, plan.getPasses().size());
+
+        MergePlan.Pass first = plan.getPasses().get(0);
+        assertTrue(first.keepsOrder());
+        assertEquals(1, first.getGroups().length);
+        assertTrue(Arrays.equals(new int[] { 0, 1, 2, 3, 4 }, first
+            .getGroups()[0]));
+        // 50 + 5 + 60 + 1 + 70 beats every other stretch of five runs
+        assertEquals(186, first.getBytes());
+        assertEquals(186 + 691, plan.getPredictedBytesRead());
+    }
+
+
+    /**
+     * Tests that a smaller final fan-in leaves at most that many runs for
+     * the last pass
+     */
+    public void testFinalFanIn() {
+        planner.setFinalFanIn(2);
+        long[] lengths = new long[20];
+        Arrays.fill(lengths, 1);
+        MergePlan plan = planner.plan(lengths);
+        assertEquals(3, plan.getPasses().size());
+        assertEquals(16, plan.getPasses().get(0).getRunsAfter());
+        assertEquals(2, plan.getPasses().get(1).getRunsAfter());
+        assertEquals(2, plan.getPasses().get(2).getFanIn());
+
+        // Few enough runs still merge in one pass
+        assertEquals(1, planner.plan(new long[] { 1, 2 }).getPasses()
+            .size());
+    }
+
+
+    /**
+     * Tests that many runs take a partial pass and then full passes
+     */
+    public void testThreePasses() {
+        long[] lengths = new long[100];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = 1;
+        }
+        MergePlan plan = planner.plan(lengths);
+        assertEquals(3, plan.getPasses().size());
+        assertEquals(64, plan.getPasses().get(0).getRunsAfter());
+        assertEquals(8, plan.getPasses().get(1).getRunsAfter());
+        assertEquals(1, plan.getPasses().get(2).getRunsAfter());
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * NaturalRunScanner reads the input once, front to back, looking for the
+ * ascending stretches it already holds. Incremental exports and appended
+ * logs are often sorted or nearly so, and a natural run at least as long as
+ * the runs the heap would produce is better merged where it lies than
+ * pushed through the heap and rewritten.
+ *
+ * The scan only reads. It gives up early on input that is not worth it:
+ * once no natural run long enough was found in the first two run lengths
+ * of the input, or none can fit in the rest of it, the scan stops and finds
+ * nothing. Random input therefore costs a read of two runs' worth of
+ * records, and a fully sorted input is verified by a single read. A
+ * KeySampler can be shown every key read on the way.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class NaturalRunScanner {
+    // ~ Fields ................................................................
+    /**
+     * Layout giving the keys the records are sorted by.
+     */
+    private RecordLayout layout;
+
+    /**
+     * Sampler shown every key read, or null.
+     */
+    private KeySampler sampler;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new NaturalRunScanner object.
+     *
+     * @param layout
+     *            the layout of the records
+     */
+    public NaturalRunScanner(RecordLayout layout) {
+        this.layout = layout;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets the sampler shown every key the scan reads. When the scan finds
+     * natural runs it has read the whole input, and so has the sampler.
+     *
+     * @param keySampler
+     *            the sampler, or null
+     */
+    public void setSampler(KeySampler keySampler) {
+        this.sampler = keySampler;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Finds the natural runs of at least the given number of records. Keys
+     * may repeat within a natural run. A single run holding the whole input
+     * means the input is sorted.
+     *
+     * @param input
+     *            the input file
+     * @param length
+     *            the length of the input
+     * @param minRecords
+     *            the fewest records a natural run is worth keeping for
+     * @param scratch
+     *            buffer for reading blocks
+     * @return the natural runs in file order, none if the scan gave up
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public DLList scan(
+        RecordSource input,
+        long length,
+        long minRecords,
+        ByteBuffer scratch)
+        throws IOException {
+        DLList runs = new DLList();
+        long minBytes = Math.max(1, minRecords) * ByteFile.BYTES_PER_RECORD;
+        long position = 0;
+        long record = 0; // Position of the next record
+        long runStart = 0;
+        long previous = Long.MIN_VALUE;
+        while (position < length) {
+            int bytes = (int)Math.min(scratch.capacity(), length - position);
+            ByteBuffer view = input.readView(position, bytes, scratch);
+            if (!view.hasRemaining()) {
+                break; // The file ended early
+            }
+            position += view.remaining();
+            while (view.remaining() >= ByteFile.BYTES_PER_RECORD) {
+                long key = layout.key(view.getLong(), view.getLong());
+                if (sampler != null) {
+                    sampler.add(key);
+                }
+                if (key < previous) {
+                    addRun(runs, runStart, record, minBytes);
+                    runStart = record;
+                    if (runs.size() == 0 && (runStart > 2 * minBytes
+                        || runStart + minBytes > length)) {
+                        // Too little of the input is sorted to pay off
+                        return runs;
+                    }
+                }
+                previous = key;
+                record += ByteFile.BYTES_PER_RECORD;
+            }
+        }
+        addRun(runs, runStart, record, minBytes);
+        return runs;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Adds a natural run to the list if it is long enough.
+     *
+     * @param runs
+     *            the natural runs found so far
+     * @param start
+     *            the position of the run
+     * @param end
+     *            the position just past the run
+     * @param minBytes
+     *            the shortest run kept
+     */
+    private void addRun(DLList runs, long start, long end, long minBytes) {
+        if (end - start >= minBytes) {
+            runs.add(new Run(start, end - start, end, runs.size()));
+        }
+    }
+}
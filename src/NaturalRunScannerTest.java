@@ -0,0 +1,126 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the NaturalRunScanner class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class NaturalRunScannerTest extends TestCase {
+    private static final int RECORD = ByteFile.BYTES_PER_RECORD;
+    private ByteBuffer scratch;
+    private ChannelRecordSource source;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        scratch = ByteBuffer.allocate(ByteFile.BYTES_PER_BLOCK);
+    }
+
+
+    /**
+     * Tests that a sorted input with repeated keys is a single run
+     *
+     * @throws IOException
+     */
+    public void testSortedInput() throws IOException {
+        double[] keys = new double[5000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i / 3;
+        }
+        DLList runs = scan(RecordLayout.DEFAULT, keys, 1000);
+        assertEquals(1, runs.size());
+        assertEquals(0, runs.get(0).getStartPosition());
+        assertEquals(keys.length * RECORD, runs.get(0).getLength());
+    }
+
+
+    /**
+     * Tests that only the natural runs long enough are kept, in file order
+     *
+     * @throws IOException
+     */
+    public void testLongRunsKept() throws IOException {
+        double[] keys = new double[5500];
+        for (int i = 0; i < keys.length; i++) {
+            // Ascending stretches of 3000, 500 and 2000 records
+            keys[i] = (i < 3000) ? i : (i < 3500) ? i - 3000 : i - 3500;
+        }
+        DLList runs = scan(RecordLayout.DEFAULT, keys, 1000);
+        assertEquals(2, runs.size());
+        assertEquals(0, runs.get(0).getStartPosition());
+        assertEquals(3000 * RECORD, runs.get(0).getLength());
+        assertEquals(3500 * RECORD, runs.get(1).getStartPosition());
+        assertEquals(2000 * RECORD, runs.get(1).getLength());
+        assertEquals(5500 * RECORD, runs.get(1).getEndPosition());
+    }
+
+
+    /**
+     * Tests that a descending key makes descending input a single run
+     *
+     * @throws IOException
+     */
+    public void testDescendingKey() throws IOException {
+        double[] keys = new double[3000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = -i;
+        }
+        RecordLayout descending = RecordLayout.parse("double@8:desc");
+        assertEquals(1, scan(descending, keys, 1000).size());
+        assertEquals(0, scan(RecordLayout.DEFAULT, keys, 1000).size());
+    }
+
+
+    /**
+     * Tests that random input gives up after about two run lengths
+     *
+     * @throws IOException
+     */
+    public void testRandomInputGivesUp() throws IOException {
+        double[] keys = new double[20000];
+        Random rng = new Random(22);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rng.nextDouble();
+        }
+        assertEquals(0, scan(RecordLayout.DEFAULT, keys, 1000).size());
+        // No more than two run lengths and the block holding their end
+        assertTrue(source.getStats().getBytesRead() <= 2 * 1000 * RECORD
+            + ByteFile.BYTES_PER_BLOCK);
+    }
+
+
+    /**
+     * Scans records with the given keys after sequential IDs.
+     *
+     * @param layout
+     *            the layout to scan with
+     * @param keys
+     *            the keys of the records
+     * @param minRecords
+     *            the fewest records a natural run is kept for
+     * @return the natural runs
+     * @throws IOException
+     */
+    private DLList scan(
+        RecordLayout layout,
+        double[] keys,
+        long minRecords)
+        throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(keys.length * RECORD);
+        for (int i = 0; i < keys.length; i++) {
+            records.putLong(i);
+            records.putDouble(keys[i]);
+        }
+        source = new ChannelRecordSource(Channels.newChannel(
+            new ByteArrayInputStream(records.array())), "input");
+        NaturalRunScanner scanner = new NaturalRunScanner(layout);
+        return scanner.scan(source, records.capacity(), minRecords, scratch);
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * RadixSorter sorts records in memory with a least significant digit radix
+ * sort instead of comparisons. A RecordLayout splits every record into a
+ * normalized key and a payload; with the sign bit of the key flipped, the
+ * unsigned order of the key is the order of the records. Keys and payloads
+ * are kept in parallel primitive arrays and moved together, one byte of the
+ * key per pass.
+ *
+ * The counts for all eight passes are gathered in one scan before sorting,
+ * and passes where every key has the same byte are skipped, which saves the
+ * exponent passes on keys of similar magnitude. Bytes outside the key
+ * fields, the rest of a single int key's word, are not sorted on either.
+ * The sort is stable, so records with equal key fields keep the order they
+ * were added in.
+ *
+ * A sorter needs two copies of its arrays, 32 bytes per record, against 20
+ * for a RecordHeap slot.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class RadixSorter {
+    // ~ Fields ................................................................
+    /**
+     * Memory used per record: key bits and payload, each twice.
+     */
+    public static final int BYTES_PER_RECORD = 32;
+
+    /**
+     * Number of bits sorted per pass.
+     */
+    private static final int RADIX_BITS = 8;
+
+    /**
+     * Number of buckets per pass.
+     */
+    private static final int BUCKETS = 1 << RADIX_BITS;
+
+    /**
+     * Number of passes over a 64-bit key.
+     */
+    private static final int PASSES = Long.SIZE / RADIX_BITS;
+
+    /**
+     * Normalized keys of the records with the sign bit flipped, so their
+     * unsigned order is the order of the records.
+     */
+    private long[] keys;
+
+    /**
+     * Payloads of the records.
+     */
+    private long[] ids;
+
+    /**
+     * Second copy of the key bits that every pass scatters into.
+     */
+    private long[] keyTemp;
+
+    /**
+     * Second copy of the payloads that every pass scatters into.
+     */
+    private long[] idTemp;
+
+    /**
+     * Layout splitting the records into keys and payloads.
+     */
+    private RecordLayout layout;
+
+    /**
+     * Number of records held.
+     */
+    private int size;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty RadixSorter object.
+     *
+     * @param capacity
+     *            the maximum number of records
+     */
+    public RadixSorter(int capacity) {
+        this.keys = new long[capacity];
+        this.ids = new long[capacity];
+        this.keyTemp = new long[capacity];
+        this.idTemp = new long[capacity];
+        this.layout = RecordLayout.DEFAULT;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets the layout of the records read and written from now on.
+     *
+     * @param recordLayout
+     *            the layout
+     */
+    public void setLayout(RecordLayout recordLayout) {
+        this.layout = recordLayout;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the layout of the records.
+     *
+     * @return the layout
+     */
+    public RecordLayout getLayout() {
+        return layout;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the maximum number of records.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records held.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Removes every record.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds a record.
+     *
+     * @param payload
+     *            the record payload
+     * @param key
+     *            the normalized record key
+     * @throws IllegalStateException
+     *             if the sorter is full
+     */
+    public void add(long payload, long key) {
+        if (size == keys.length) {
+            throw new IllegalStateException("Radix sorter is full");
+        }
+        keys[size] = key ^ Long.MIN_VALUE;
+        ids[size] = payload;
+        size++;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Reads records from a file or stream until the sorter is full or the
+     * end position is reached.
+     *
+     * @param parser
+     *            the file or stream to read
+     * @param position
+     *            the position of the first record
+     * @param end
+     *            the position to stop at
+     * @param scratch
+     *            buffer for reading blocks
+     * @return the position of the first record not read
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public long load(
+        RecordSource parser,
+        long position,
+        long end,
+        ByteBuffer scratch)
+        throws IOException {
+        while (size < keys.length && position < end) {
+            long wanted = Math.min(end - position, (long)(keys.length - size)
+                * ByteFile.BYTES_PER_RECORD);
+            int bytes = (int)Math.min(scratch.capacity(), wanted);
+            ByteBuffer view = parser.readView(position, bytes, scratch);
+            if (!view.hasRemaining()) {
+                return end; // The file ended early
+            }
+            position += view.remaining();
+            while (view.remaining() >= ByteFile.BYTES_PER_RECORD) {
+                long word0 = view.getLong();
+                long word1 = view.getLong();
+                add(layout.payload(word0, word1), layout.key(word0, word1));
+            }
+        }
+        return position;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sorts the records by key.
+     */
+    public void sort() {
+        // Count the bytes of every pass in a single scan
+        int[][] counts = new int[PASSES][BUCKETS];
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            for (int pass = 0; pass < PASSES; pass++) {
+                counts[pass][(int)(key >>> (pass * RADIX_BITS)) & (BUCKETS
+                    - 1)]++;
+            }
+        }
+
+        // The bits of the key fields
+        long fields = layout.firstKey(-1L);
+        for (int pass = 0; pass < PASSES; pass++) {
+            int shift = pass * RADIX_BITS;
+            int[] count = counts[pass];
+            if (((fields >>> shift) & (BUCKETS - 1)) == 0) {
+                continue; // Not part of the key
+            }
+            if (size == 0 || count[(int)(keys[0] >>> shift) & (BUCKETS
+                - 1)] == size) {
+                continue; // Every key has the same byte here
+            }
+
+            // Turn the counts into the first index of every bucket
+            int next = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                int c = count[b];
+                count[b] = next;
+                next += c;
+            }
+            for (int i = 0; i < size; i++) {
+                int dst = count[(int)(keys[i] >>> shift) & (BUCKETS - 1)]++;
+                keyTemp[dst] = keys[i];
+                idTemp[dst] = ids[i];
+            }
+
+            long[] swap = keys;
+            keys = keyTemp;
+            keyTemp = swap;
+            swap = ids;
+            ids = idTemp;
+            idTemp = swap;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds every record, in the current order, to the run being written.
+     *
+     * @param out
+     *            the run writer
+     * @throws IOException
+     *             if a write fails
+     */
+    public void writeTo(RunWriter out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            long key = keys[i] ^ Long.MIN_VALUE;
+            out.add(key, layout.word0(key, ids[i]), layout.word1(key,
+                ids[i]));
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the payload of a record.
+     *
+     * @param index
+     *            the index of the record, in sorted order after sort()
+     * @return the record payload
+     */
+    public long getPayload(int index) {
+        return ids[index];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the normalized key of a record.
+     *
+     * @param index
+     *            the index of the record, in sorted order after sort()
+     * @return the record key
+     */
+    public long getKey(int index) {
+        return keys[index] ^ Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,59 @@
+import student.TestCase;
+
+/**
+ * Test class for the RadixSorter class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class RadixSorterTest extends TestCase {
+    private RadixSorter sorter;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        sorter = new RadixSorter(16);
+    }
+
+
+    /**
+     * Tests that records come out sorted by key with their payloads
+     */
+    public void testSort() {
+        long[] keys = { 35, -70, 0, Long.MAX_VALUE, Long.MIN_VALUE, 35, 20 };
+        for (int i = 0; i < keys.length; i++) {
+            sorter.add(i, keys[i]);
+        }
+        sorter.sort();
+        assertEquals(keys.length, sorter.size());
+        for (int i = 0; i + 1 < sorter.size(); i++) {
+            assertTrue(sorter.getKey(i) <= sorter.getKey(i + 1));
+        }
+        assertEquals(4, sorter.getPayload(0));
+        assertEquals(Long.MAX_VALUE, sorter.getKey(6));
+        // Equal keys keep the order they were added in
+        assertEquals(0, sorter.getPayload(4));
+        assertEquals(5, sorter.getPayload(5));
+    }
+
+
+    /**
+     * Tests that a full sorter refuses more records
+     */
+    public void testFull() {
+        for (int i = 0; i < sorter.capacity(); i++) {
+            sorter.add(i, 1);
+        }
+        Exception thrown = null;
+        try {
+            sorter.add(99, 1);
+        }
+        catch (IllegalStateException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+        sorter.clear();
+        assertEquals(0, sorter.size());
+    }
+}
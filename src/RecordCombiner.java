@@ -0,0 +1,130 @@
+// -------------------------------------------------------------------------
+/**
+ * RecordCombiner folds records with equal keys into one while runs are
+ * written, so duplicates are dropped as early as possible: run generation
+ * combines the equal keys of each run, and every merge combines the equal
+ * keys coming from its runs. Every later pass then reads and writes fewer
+ * records, and the sorted output holds one record per key.
+ *
+ * Records are equal when their key fields are (see RecordLayout.sameKey()).
+ * The payload, the word not holding the key, is combined by combine(); the
+ * rest of the key word, which a single int key leaves over, is picked by
+ * combineKeys(). Records with equal keys reach the combiner in the order
+ * of the input: a combining sort generates its runs with the stable radix
+ * sorter and only merges consecutive runs (see SortOptions.setCombiner()).
+ *
+ * A combiner has to be associative, since records are combined run by run
+ * and again when the runs are merged. Records read from the input are first
+ * turned into partial results by lift(); records of runs already are. The
+ * combiners given on the command line:
+ *
+ * <pre>
+ * none   records are kept as they are, the default
+ * first  keeps the first record of every key in the input
+ * last   keeps the last record of every key in the input
+ * count  keeps one record per key whose payload is the number of records
+ * </pre>
+ *
+ * Other reductions implement this interface and are set with
+ * SortOptions.setCombiner().
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public interface RecordCombiner {
+    /**
+     * Name of the setting that keeps every record.
+     */
+    String NONE = "none";
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of the combiner as given on the command line.
+     *
+     * @return the name
+     */
+    String getName();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Turns the payload of a record read from the input into a partial
+     * result, the payload itself by default.
+     *
+     * @param payload
+     *            the payload of an input record
+     * @return the partial result
+     */
+    default long lift(long payload) {
+        return payload;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Combines the partial results of two records with equal keys.
+     *
+     * @param key
+     *            the normalized key of both records
+     * @param earlier
+     *            the partial result of the record that comes first
+     * @param later
+     *            the partial result of the record that comes next
+     * @return the partial result of both
+     */
+    long combine(long key, long earlier, long later);
+
+
+    // ----------------------------------------------------------
+    /**
+     * Picks which of two records with equal key fields the combined record
+     * takes its normalized key from. The keys only differ in the rest of
+     * the word of a single int key. The earlier record's by default.
+     *
+     * @param earlier
+     *            the normalized key of the record that comes first
+     * @param later
+     *            the normalized key of the record that comes next
+     * @return the normalized key of the combined record
+     */
+    default long combineKeys(long earlier, long later) {
+        return earlier;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Looks up a combiner by name, ignoring case.
+     *
+     * @param name
+     *            the combiner name, for example "count"
+     * @return the combiner, or null for "none"
+     * @throws IllegalArgumentException
+     *             if there is no combiner with that name
+     */
+    static RecordCombiner forName(String name) {
+        String combiner = name.trim().toLowerCase();
+        if (combiner.equals(NONE)) {
+            return null;
+        }
+        for (StandardCombiner standard : StandardCombiner.values()) {
+            if (standard.getName().equals(combiner)) {
+                return standard;
+            }
+        }
+        throw new IllegalArgumentException("Unknown combiner: " + name);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of a combiner, or "none" for null.
+     *
+     * @param combiner
+     *            the combiner, or null
+     * @return the name
+     */
+    static String nameOf(RecordCombiner combiner) {
+        return (combiner == null) ? NONE : combiner.getName();
+    }
+}
@@ -0,0 +1,482 @@
+// -------------------------------------------------------------------------
+/**
+ * RecordHeap is a min-heap specialized for the 16 byte records of the sort.
+ * Instead of holding Record objects it keeps normalized keys, payloads and
+ * run tags in parallel primitive arrays, so inserting, removing and
+ * replacing records never allocates. It follows the same contract as MinHeap
+ * (insert, removeMin, modify, buildHeap, setHeapSize) but passes the record
+ * fields as separate arguments. A RecordLayout splits every record into its
+ * normalized key, which the heap compares as a plain long, and its payload,
+ * and puts it back together from them.
+ *
+ * Removed records are not returned as objects. removeMin() moves the minimum
+ * to the slot just past the live heap and returns that slot, and the fields
+ * can then be read with getKey(pos), getPayload(pos) and getRunNum(pos)
+ * until the heap is modified again.
+ *
+ * For replacement selection the heap also keeps a "retired" region just past
+ * the live heap. retireMin() swaps the root out for a record that can not
+ * join the current run, and promoteRetired() turns those records into the
+ * heap for the next run.
+ *
+ * A heap created with reversed order is a max-heap: the root is the record
+ * with the largest key, and every "min" method refers to that record. A
+ * bounded max-heap keeps the smallest records seen so far, for top-K
+ * selection.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class RecordHeap {
+    // ~ Fields ................................................................
+    /**
+     * Memory used by one heap slot: a long key, a long payload and an int
+     * tag.
+     */
+    public static final int BYTES_PER_SLOT = 2 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * The normalized keys of the records, ordered as a min-heap over [0, n).
+     */
+    private long[] keys;
+
+    /**
+     * The payloads of the records, parallel to keys.
+     */
+    private long[] payloads;
+
+    /**
+     * The run tags of the records, parallel to keys.
+     */
+    private int[] runNums;
+
+    /**
+     * Maximum number of records the heap can hold.
+     */
+    private int capacity;
+
+    /**
+     * Number of records currently in the heap.
+     */
+    private int n;
+
+    /**
+     * Number of records in the retired region.
+     */
+    private int retired;
+
+    /**
+     * First slot of the retired region. The region grows downward from here
+     * as the live heap shrinks.
+     */
+    private int retiredStart;
+
+    /**
+     * Whether the largest key is at the root instead of the smallest.
+     */
+    private final boolean reversed;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty RecordHeap object.
+     *
+     * @param capacity
+     *            the maximum number of records in the heap
+     */
+    public RecordHeap(int capacity) {
+        this(capacity, false);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty RecordHeap object in the given order.
+     *
+     * @param capacity
+     *            the maximum number of records in the heap
+     * @param reversed
+     *            true for a max-heap, false for a min-heap
+     */
+    public RecordHeap(int capacity, boolean reversed) {
+        this.reversed = reversed;
+        this.keys = new long[capacity];
+        this.payloads = new long[capacity];
+        this.runNums = new int[capacity];
+        this.capacity = capacity;
+        this.n = 0;
+        this.retired = 0;
+        this.retiredStart = capacity;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns the maximum number of records the heap can hold.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the current size of the heap.
+     *
+     * @return current heap size
+     */
+    public int heapSize() {
+        return n;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Forcefully changes the heap size. May need a buildHeap() afterwards.
+     *
+     * @param newSize
+     *            new size
+     */
+    public void setHeapSize(int newSize) {
+        assert newSize <= capacity : "Heap size is beyond max";
+        n = newSize;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records waiting in the retired region.
+     *
+     * @return the number of retired records
+     */
+    public int retiredSize() {
+        return retired;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Stores a record in the given slot without restoring the heap property.
+     * Used to preload the arrays before a buildHeap().
+     *
+     * @param pos
+     *            the slot to write
+     * @param payload
+     *            the record payload
+     * @param key
+     *            the normalized record key
+     * @param runNum
+     *            the run tag of the record
+     */
+    public void set(int pos, long payload, long key, int runNum) {
+        keys[pos] = key;
+        payloads[pos] = payload;
+        runNums[pos] = runNum;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Inserts a record into the heap.
+     *
+     * @param payload
+     *            the record payload
+     * @param key
+     *            the normalized record key
+     * @param runNum
+     *            the run tag of the record
+     */
+    public void insert(long payload, long key, int runNum) {
+        assert n < capacity && retired == 0 : "Heap is full; cannot insert";
+        set(n, payload, key, runNum);
+        n++;
+        siftUp(n - 1);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Organizes the contents of [0, n) to satisfy the heap structure.
+     */
+    public void buildHeap() {
+        for (int i = (n - 2) / 2; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the normalized key of the minimum record.
+     *
+     * @return minimum key
+     */
+    public long getMinKey() {
+        assert n > 0 : "Heap is empty; no minimum";
+        return keys[0];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the payload of the minimum record.
+     *
+     * @return payload of the minimum record
+     */
+    public long getMinPayload() {
+        assert n > 0 : "Heap is empty; no minimum";
+        return payloads[0];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the run tag of the minimum record.
+     *
+     * @return run tag of the minimum record
+     */
+    public int getMinRunNum() {
+        assert n > 0 : "Heap is empty; no minimum";
+        return runNums[0];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the normalized key stored in the given slot.
+     *
+     * @param pos
+     *            the slot
+     * @return the key
+     */
+    public long getKey(int pos) {
+        return keys[pos];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the payload stored in the given slot.
+     *
+     * @param pos
+     *            the slot
+     * @return the record payload
+     */
+    public long getPayload(int pos) {
+        return payloads[pos];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the run tag stored in the given slot.
+     *
+     * @param pos
+     *            the slot
+     * @return the run tag
+     */
+    public int getRunNum(int pos) {
+        return runNums[pos];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Removes the minimum record. The record is moved to the slot just past
+     * the shrunken heap, where it can be read until the next modification.
+     *
+     * @return the slot that now holds the removed record
+     */
+    public int removeMin() {
+        assert n > 0 : "Heap is empty; cannot remove";
+        n--;
+        if (n > 0) {
+            swap(0, n);
+            siftDown(0);
+        }
+        return n;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replaces the record at the given position, then sifts it around.
+     *
+     * @param pos
+     *            the position in the heap
+     * @param payload
+     *            the new record payload
+     * @param key
+     *            the new normalized record key
+     * @param runNum
+     *            the new run tag
+     */
+    public void modify(int pos, long payload, long key, int runNum) {
+        assert (0 <= pos && pos < n) : "Invalid heap position";
+        set(pos, payload, key, runNum);
+        siftUp(pos);
+        siftDown(pos);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replaces the minimum record with a new one. Cheaper than modify(0, ...)
+     * because a new root can only move down.
+     *
+     * @param payload
+     *            the new record payload
+     * @param key
+     *            the new normalized record key
+     * @param runNum
+     *            the new run tag
+     */
+    public void replaceMin(long payload, long key, int runNum) {
+        assert n > 0 : "Heap is empty; cannot replace minimum";
+        set(0, payload, key, runNum);
+        siftDown(0);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Removes the minimum record and parks a new record in the retired region
+     * instead. Used by replacement selection when the incoming record is
+     * smaller than the last output and has to wait for the next run.
+     *
+     * @param payload
+     *            the record payload to retire
+     * @param key
+     *            the normalized record key to retire
+     * @param runNum
+     *            the run tag to retire
+     */
+    public void retireMin(long payload, long key, int runNum) {
+        assert n > 0 : "Heap is empty; cannot retire";
+        n--;
+        if (n > 0) {
+            swap(0, n);
+            siftDown(0);
+        }
+        // The slot just freed at n borders the retired region
+        set(n, payload, key, runNum);
+        retiredStart = n;
+        retired++;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Moves all retired records to the front of the arrays and builds a new
+     * heap from them. The live heap is expected to be empty.
+     */
+    public void promoteRetired() {
+        assert n == 0 : "Heap still holds records of the current run";
+        System.arraycopy(keys, retiredStart, keys, 0, retired);
+        System.arraycopy(payloads, retiredStart, payloads, 0, retired);
+        System.arraycopy(runNums, retiredStart, runNums, 0, retired);
+        n = retired;
+        retired = 0;
+        retiredStart = capacity;
+        buildHeap();
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Moves an element down to its correct place.
+     *
+     * @param pos
+     *            position
+     */
+    private void siftDown(int pos) {
+        long key = keys[pos];
+        long payload = payloads[pos];
+        int runNum = runNums[pos];
+        int half = n >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < n && isLessThan(keys[child + 1], keys[child])) {
+                child++;
+            }
+            if (!isLessThan(keys[child], key)) {
+                break;
+            }
+            keys[pos] = keys[child];
+            payloads[pos] = payloads[child];
+            runNums[pos] = runNums[child];
+            pos = child;
+        }
+        keys[pos] = key;
+        payloads[pos] = payload;
+        runNums[pos] = runNum;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Moves an element up to its correct place.
+     *
+     * @param pos
+     *            position
+     */
+    private void siftUp(int pos) {
+        long key = keys[pos];
+        long payload = payloads[pos];
+        int runNum = runNums[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (!isLessThan(key, keys[parent])) {
+                break;
+            }
+            keys[pos] = keys[parent];
+            payloads[pos] = payloads[parent];
+            runNums[pos] = runNums[parent];
+            pos = parent;
+        }
+        keys[pos] = key;
+        payloads[pos] = payload;
+        runNums[pos] = runNum;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Compares two normalized keys, or the other way round in a max-heap.
+     *
+     * @param a
+     *            one key
+     * @param b
+     *            another key
+     * @return true if a belongs closer to the root than b
+     */
+    private boolean isLessThan(long a, long b) {
+        return reversed ? a > b : a < b;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Swaps the records at two positions.
+     *
+     * @param pos1
+     *            one of the positions
+     * @param pos2
+     *            the other position
+     */
+    private void swap(int pos1, int pos2) {
+        long k = keys[pos1];
+        keys[pos1] = keys[pos2];
+        keys[pos2] = k;
+        long payload = payloads[pos1];
+        payloads[pos1] = payloads[pos2];
+        payloads[pos2] = payload;
+        int r = runNums[pos1];
+        runNums[pos1] = runNums[pos2];
+        runNums[pos2] = r;
+    }
+}
@@ -0,0 +1,104 @@
+import student.TestCase;
+
+/**
+ * Test class for the RecordHeap class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class RecordHeapTest extends TestCase {
+    private RecordHeap heap;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        heap = new RecordHeap(8);
+    }
+
+
+    /**
+     * Tests that removeMin returns records in key order
+     */
+    public void testInsertRemoveMin() {
+        long[] keys = { 5, 1, 9, -2, 3 };
+        for (int i = 0; i < keys.length; i++) {
+            heap.insert(i, keys[i], i + 10);
+        }
+        assertEquals(5, heap.heapSize());
+        assertEquals(-2, heap.getMinKey());
+        assertEquals(3, heap.getMinPayload());
+
+        long previous = Long.MIN_VALUE;
+        while (heap.heapSize() > 0) {
+            int pos = heap.removeMin();
+            assertTrue(heap.getKey(pos) >= previous);
+            assertEquals(heap.getPayload(pos) + 10, heap.getRunNum(pos));
+            previous = heap.getKey(pos);
+        }
+    }
+
+
+    /**
+     * Tests building a heap from preloaded slots and modifying it
+     */
+    public void testBuildHeapAndModify() {
+        for (int i = 0; i < 8; i++) {
+            heap.set(i, i, 8 - i, -1);
+        }
+        heap.setHeapSize(8);
+        heap.buildHeap();
+        assertEquals(1, heap.getMinKey());
+
+        heap.replaceMin(100, 20, -1);
+        assertEquals(2, heap.getMinKey());
+        heap.modify(3, 200, -1, -1);
+        assertEquals(200, heap.getMinPayload());
+    }
+
+
+    /**
+     * Tests that retired records become the heap of the next run
+     */
+    public void testRetireAndPromote() {
+        for (int i = 0; i < 4; i++) {
+            heap.insert(i, i, -1);
+        }
+        heap.retireMin(10, -5, -1);
+        heap.retireMin(11, -6, -1);
+        assertEquals(2, heap.heapSize());
+        assertEquals(2, heap.retiredSize());
+        assertEquals(2, heap.getMinKey());
+
+        heap.removeMin();
+        heap.removeMin();
+        heap.promoteRetired();
+        assertEquals(2, heap.heapSize());
+        assertEquals(0, heap.retiredSize());
+        assertEquals(-6, heap.getMinKey());
+    }
+
+
+    /**
+     * Tests that a reversed heap removes records largest first, which
+     * leaves the slots in ascending order
+     */
+    public void testMaxHeap() {
+        RecordHeap maxHeap = new RecordHeap(5, true);
+        long[] keys = { 5, Long.MAX_VALUE, -2, 3, 0 };
+        for (int i = 0; i < keys.length; i++) {
+            maxHeap.insert(i, keys[i], -1);
+        }
+        assertEquals(1, maxHeap.getMinPayload());
+        maxHeap.replaceMin(7, 1, -1);
+        assertEquals(5, maxHeap.getMinKey());
+
+        while (maxHeap.heapSize() > 0) {
+            maxHeap.removeMin();
+        }
+        long[] sorted = { -2, 0, 1, 3, 5 };
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(sorted[i], maxHeap.getKey(i));
+        }
+    }
+}
@@ -0,0 +1,451 @@
+// -------------------------------------------------------------------------
+/**
+ * RecordLayout describes where the sort key of a record is and how it
+ * orders. It does not set the size of a record: every record is
+ * ByteFile.BYTES_PER_RECORD (16) bytes, read as two big-endian 8 byte
+ * words, and the heap, the run files, the codecs, the frames and the
+ * index all hold records that way. Within a record the key is one 8 byte
+ * field (long or double) or one or two 4 byte int fields, all in the same
+ * word, each ascending or descending. Two int fields form a composite key,
+ * ordered by the first field, then the second.
+ *
+ * The layout turns every record into a normalized key and a payload. The
+ * normalized key is a long whose signed order is the order of the records,
+ * so the heap, the radix sorter and the merge compare plain longs whatever
+ * the layout. The key word's bytes that are not part of the key follow the
+ * key fields in its low bits, and the payload is the other word, so a record
+ * can always be put back together from the two. Keys are compared as
+ * follows:
+ *
+ * <pre>
+ * long    as a signed 64 bit integer
+ * int     as a signed 32 bit integer
+ * double  like Double.compare, except that the raw bits of the key are
+ *         kept, so NaNs with the sign bit set order first
+ * </pre>
+ *
+ * Layouts are written the way --key takes them: comma separated fields of
+ * type@offset, optionally followed by :desc. The default is "double@8", the
+ * key after the 8 byte record ID. Other examples:
+ *
+ * <pre>
+ * long@0        by record ID
+ * double@8:desc largest key first
+ * int@8,int@12  by the high half of the second word, then its low half
+ * </pre>
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public final class RecordLayout {
+
+    // -------------------------------------------------------------------------
+    /**
+     * The types a key field can have.
+     */
+    public enum KeyType {
+        /**
+         * A signed 64 bit integer.
+         */
+        LONG(Long.SIZE),
+
+        /**
+         * A signed 32 bit integer.
+         */
+        INT(Integer.SIZE),
+
+        /**
+         * A 64 bit floating point number.
+         */
+        DOUBLE(Double.SIZE);
+
+        /**
+         * Width of a field of this type in bits.
+         */
+        private final int bits;
+
+        /**
+         * Creates a key type.
+         *
+         * @param bits
+         *            the width in bits
+         */
+        KeyType(int bits) {
+            this.bits = bits;
+        }
+    }
+
+    // ~ Fields ................................................................
+    /**
+     * The layout of the (long ID, double key) records of the sort.
+     */
+    public static final RecordLayout DEFAULT = parse("double@8");
+
+    /**
+     * Mask of the low 32 bits of a long.
+     */
+    private static final long LOW_BITS = 0xFFFFFFFFL;
+
+    /**
+     * The layout as written on the command line, in canonical form.
+     */
+    private final String spec;
+
+    /**
+     * Index of the word holding the key, 0 or 1.
+     */
+    private final int keyWord;
+
+    /**
+     * Type of every key field, in key order.
+     */
+    private final KeyType[] types;
+
+    /**
+     * Distance of every key field from the low end of its word, in bits.
+     */
+    private final int[] shifts;
+
+    /**
+     * Whether every key field orders descending.
+     */
+    private final boolean[] descending;
+
+    /**
+     * Distance from the low end of the key word of the 32 bits that are not
+     * part of a single int key.
+     */
+    private final int restShift;
+
+    /**
+     * Mask of the bits of a normalized key that come from key fields.
+     */
+    private final long fieldMask;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new RecordLayout object from checked fields.
+     *
+     * @param spec
+     *            the canonical layout
+     * @param keyWord
+     *            the word holding the key
+     * @param types
+     *            the field types
+     * @param shifts
+     *            the field distances from the low end of the word
+     * @param descending
+     *            the field directions
+     */
+    private RecordLayout(
+        String spec,
+        int keyWord,
+        KeyType[] types,
+        int[] shifts,
+        boolean[] descending) {
+        this.spec = spec;
+        this.keyWord = keyWord;
+        this.types = types;
+        this.shifts = shifts;
+        this.descending = descending;
+        this.restShift = (shifts[0] == Integer.SIZE) ? 0 : Integer.SIZE;
+        this.fieldMask = (types.length == 1 && types[0].bits == Integer.SIZE)
+            ? ~LOW_BITS
+            : -1L;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Reads a layout as written on the command line, ignoring case and
+     * blanks.
+     *
+     * @param text
+     *            the layout, for example "int@8,int@12:desc"
+     * @return the layout
+     * @throws IllegalArgumentException
+     *             if the layout is malformed, or its fields overlap, are not
+     *             aligned to their size or do not share one word
+     */
+    public static RecordLayout parse(String text) {
+        String[] fields = text.replace(" ", "").toLowerCase().split(",");
+        if (fields.length > 2) {
+            throw new IllegalArgumentException("Key of more than two fields: "
+                + text);
+        }
+        KeyType[] types = new KeyType[fields.length];
+        int[] shifts = new int[fields.length];
+        boolean[] descending = new boolean[fields.length];
+        int keyWord = -1;
+        int bits = 0;
+        long covered = 0;
+        StringBuilder canonical = new StringBuilder();
+        for (int f = 0; f < fields.length; f++) {
+            String field = fields[f];
+            if (field.endsWith(":desc")) {
+                descending[f] = true;
+                field = field.substring(0, field.length() - 5);
+            }
+            else if (field.endsWith(":asc")) {
+                field = field.substring(0, field.length() - 4);
+            }
+            if (field.startsWith("size")) {
+                throw new IllegalArgumentException("Records are "
+                    + ByteFile.BYTES_PER_RECORD + " bytes, their size can "
+                    + "not be set: " + text);
+            }
+            int at = field.indexOf('@');
+            int offset;
+            try {
+                types[f] = KeyType.valueOf(field.substring(0, Math.max(0, at))
+                    .toUpperCase());
+                offset = Integer.parseInt(field.substring(at + 1));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid key field \""
+                    + fields[f] + "\", expected type@offset[:desc]", e);
+            }
+            int bytes = types[f].bits / Byte.SIZE;
+            if (offset < 0 || offset % bytes != 0
+                || offset + bytes > ByteFile.BYTES_PER_RECORD) {
+                throw new IllegalArgumentException("Key field \"" + fields[f]
+                    + "\" is not an aligned field of the "
+                    + ByteFile.BYTES_PER_RECORD + " byte record");
+            }
+            if (keyWord >= 0 && offset / Long.BYTES != keyWord) {
+                throw new IllegalArgumentException("Key fields of " + text
+                    + " are not in the same 8 byte word");
+            }
+            keyWord = offset / Long.BYTES;
+            shifts[f] = Long.SIZE - (offset % Long.BYTES) * Byte.SIZE
+                - types[f].bits;
+            long mask = (types[f].bits == Long.SIZE)
+                ? -1L
+                : LOW_BITS << shifts[f];
+            if ((covered & mask) != 0) {
+                throw new IllegalArgumentException("Key fields of " + text
+                    + " overlap");
+            }
+            covered |= mask;
+            bits += types[f].bits;
+
+            if (f > 0) {
+                canonical.append(',');
+            }
+            canonical.append(types[f].name().toLowerCase()).append('@')
+                .append(offset).append(descending[f] ? ":desc" : "");
+        }
+        return new RecordLayout(canonical.toString(), keyWord, types, shifts,
+            descending);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns whether this is the layout of the default key, the double
+     * after the record ID in ascending order.
+     *
+     * @return true for the default layout
+     */
+    public boolean isDefault() {
+        return spec.equals(DEFAULT.spec);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the normalized key of a record.
+     *
+     * @param word0
+     *            the first 8 bytes of the record
+     * @param word1
+     *            the last 8 bytes of the record
+     * @return a key whose signed order is the order of the records
+     */
+    public long key(long word0, long word1) {
+        long word = (keyWord == 0) ? word0 : word1;
+        if (types.length == 1 && types[0].bits == Long.SIZE) {
+            // A single 8 byte field takes the whole word
+            long value = order(types[0], word);
+            return (descending[0] ? ~value : value) ^ Long.MIN_VALUE;
+        }
+        long key = 0;
+        for (int f = 0; f < types.length; f++) {
+            long value = order(types[f], (word >>> shifts[f]) & LOW_BITS);
+            if (descending[f]) {
+                value ^= LOW_BITS;
+            }
+            key |= value << (Integer.SIZE * (1 - f));
+        }
+        if (types.length == 1) {
+            // The rest of the word keeps the record whole
+            key |= (word >>> restShift) & LOW_BITS;
+        }
+        return key ^ Long.MIN_VALUE;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns whether two records have equal key fields. A single int key
+     * carries the rest of its word in the low bits of the normalized key,
+     * which this ignores, so records that only differ there are equal.
+     *
+     * @param key
+     *            the normalized key of one record
+     * @param other
+     *            the normalized key of the other record
+     * @return true if the key fields are equal
+     */
+    public boolean sameKey(long key, long other) {
+        return ((key ^ other) & fieldMask) == 0;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the smallest normalized key of the records whose key fields
+     * equal those of the given key, the key itself unless the rest of a
+     * single int key's word has to be cleared.
+     *
+     * @param key
+     *            the normalized key
+     * @return the first normalized key with the same key fields
+     */
+    public long firstKey(long key) {
+        return key & fieldMask;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the payload of a record, the word not holding the key.
+     *
+     * @param word0
+     *            the first 8 bytes of the record
+     * @param word1
+     *            the last 8 bytes of the record
+     * @return the payload
+     */
+    public long payload(long word0, long word1) {
+        return (keyWord == 0) ? word1 : word0;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Puts the first 8 bytes of a record back together.
+     *
+     * @param key
+     *            the normalized key of the record
+     * @param payload
+     *            the payload of the record
+     * @return the first word of the record
+     */
+    public long word0(long key, long payload) {
+        return (keyWord == 0) ? keyWord(key) : payload;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Puts the last 8 bytes of a record back together.
+     *
+     * @param key
+     *            the normalized key of the record
+     * @param payload
+     *            the payload of the record
+     * @return the second word of the record
+     */
+    public long word1(long key, long payload) {
+        return (keyWord == 1) ? keyWord(key) : payload;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the layout as written on the command line.
+     *
+     * @return the layout, for example "double@8"
+     */
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Puts the word holding the key back together.
+     *
+     * @param key
+     *            the normalized key
+     * @return the word
+     */
+    private long keyWord(long key) {
+        long bits = key ^ Long.MIN_VALUE;
+        if (types.length == 1 && types[0].bits == Long.SIZE) {
+            return unorder(types[0], descending[0] ? ~bits : bits);
+        }
+        long word = 0;
+        for (int f = 0; f < types.length; f++) {
+            long value = (bits >>> (Integer.SIZE * (1 - f))) & LOW_BITS;
+            if (descending[f]) {
+                value ^= LOW_BITS;
+            }
+            word |= unorder(types[f], value) << shifts[f];
+        }
+        if (types.length == 1) {
+            word |= (bits & LOW_BITS) << restShift;
+        }
+        return word;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Maps the bits of a field to bits whose unsigned order is the order of
+     * the field's values.
+     *
+     * @param type
+     *            the field type
+     * @param bits
+     *            the field, in the low bits for an int
+     * @return the order-preserving bits
+     */
+    private static long order(KeyType type, long bits) {
+        switch (type) {
+            case INT:
+                return bits ^ (1L << (Integer.SIZE - 1));
+            case DOUBLE:
+                return bits ^ ((bits >> (Long.SIZE - 1)) | Long.MIN_VALUE);
+            default:
+                return bits ^ Long.MIN_VALUE;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Maps bits from order() back to the field.
+     *
+     * @param type
+     *            the field type
+     * @param bits
+     *            the order-preserving bits
+     * @return the field
+     */
+    private static long unorder(KeyType type, long bits) {
+        switch (type) {
+            case INT:
+                return bits ^ (1L << (Integer.SIZE - 1));
+            case DOUBLE:
+                return bits ^ ((~bits >> (Long.SIZE - 1)) | Long.MIN_VALUE);
+            default:
+                return bits ^ Long.MIN_VALUE;
+        }
+    }
+}
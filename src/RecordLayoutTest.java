@@ -0,0 +1,169 @@
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the RecordLayout class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class RecordLayoutTest extends TestCase {
+
+    /**
+     * Tests that the default key orders like Double.compare
+     */
+    public void testDoubleOrder() {
+        double[] keys = { Double.NEGATIVE_INFINITY, -1e300, -2.5, -0.0, 0.0,
+            Double.MIN_VALUE, 1.0, 1e300, Double.POSITIVE_INFINITY,
+            Double.NaN };
+        RecordLayout layout = RecordLayout.DEFAULT;
+        for (int i = 0; i + 1 < keys.length; i++) {
+            assertTrue(layout.key(9, Double.doubleToRawLongBits(
+                keys[i])) < layout.key(9, Double.doubleToRawLongBits(
+                    keys[i + 1])));
+        }
+        assertTrue(layout.isDefault());
+        assertEquals(9, layout.payload(9, 0));
+    }
+
+
+    /**
+     * Tests that every kind of key orders its records and puts them back
+     * together bit for bit
+     */
+    public void testOrderAndRoundTrip() {
+        Random rng = new Random(20);
+        String[] specs = { "long@0", "long@8:desc", "double@0:desc",
+            "int@4", "int@8:desc", "int@8,int@12", "int@4:desc,int@0" };
+        for (String spec : specs) {
+            RecordLayout layout = RecordLayout.parse(spec);
+            assertEquals(spec, layout.toString());
+            for (int i = 0; i < 1000; i++) {
+                long[] a = { rng.nextLong(), rng.nextLong() };
+                long[] b = { a[0], a[1] };
+                // Small changes keep both signs of each field likely
+                b[rng.nextInt(2)] += rng.nextInt(5) - 2;
+                long keyA = layout.key(a[0], a[1]);
+                long keyB = layout.key(b[0], b[1]);
+                assertEquals(spec, a[0], layout.word0(keyA, layout.payload(
+                    a[0], a[1])));
+                assertEquals(spec, a[1], layout.word1(keyA, layout.payload(
+                    a[0], a[1])));
+                assertEquals(spec, Integer.signum(compare(spec, a, b)),
+                    Integer.signum(Long.compare(keyA, keyB)));
+            }
+        }
+    }
+
+
+    /**
+     * Tests that records compare equal by their key fields only, and that
+     * the first key with the same fields is not larger than any of them
+     */
+    public void testSameKey() {
+        RecordLayout single = RecordLayout.parse("int@8");
+        long a = single.key(1, (7L << 32) | 5);
+        long b = single.key(2, (7L << 32) | 9);
+        long c = single.key(3, (8L << 32) | 5);
+        assertTrue(single.sameKey(a, b));
+        assertFalse(single.sameKey(a, c));
+        assertEquals(single.firstKey(a), single.firstKey(b));
+        assertTrue(single.firstKey(a) <= Math.min(a, b));
+        assertTrue(single.firstKey(c) > b);
+
+        RecordLayout pair = RecordLayout.parse("int@8,int@12");
+        long d = pair.key(1, (7L << 32) | 5);
+        long e = pair.key(2, (7L << 32) | 9);
+        assertFalse(pair.sameKey(d, e));
+        assertEquals(d, pair.firstKey(d));
+    }
+
+
+    /**
+     * Tests that malformed layouts are refused
+     */
+    public void testParseErrors() {
+        String[] bad = { "float@8", "long@4", "int@6", "int@16",
+            "int@4,int@8", "long@0,int@0", "int@0,int@4,int@8", "double",
+            "size@32,long@0" };
+        for (String spec : bad) {
+            try {
+                RecordLayout.parse(spec);
+                fail("accepted " + spec);
+            }
+            catch (IllegalArgumentException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+        assertEquals("int@8:desc,int@12", RecordLayout.parse(
+            " INT@8:desc, int@12:asc").toString());
+    }
+
+
+    /**
+     * Compares two records the slow way, field by field. Fields not in the
+     * key break ties only for the single field layouts, whose normalized
+     * keys keep the rest of the key word.
+     *
+     * @param spec
+     *            the layout
+     * @param a
+     *            the words of the first record
+     * @param b
+     *            the words of the second record
+     * @return the comparison of the keys
+     */
+    private int compare(String spec, long[] a, long[] b) {
+        switch (spec) {
+            case "long@0":
+                return Long.compare(a[0], b[0]);
+            case "long@8:desc":
+                return Long.compare(b[1], a[1]);
+            case "double@0:desc":
+                return Long.compare(sortable(b[0]), sortable(a[0]));
+            case "int@4":
+                return compareInts((int)a[0], (int)b[0], a[0] >>> 32,
+                    b[0] >>> 32);
+            case "int@8:desc":
+                return compareInts((int)(b[1] >> 32), (int)(a[1] >> 32),
+                    a[1] & 0xFFFFFFFFL, b[1] & 0xFFFFFFFFL);
+            case "int@8,int@12":
+                return compareInts((int)(a[1] >> 32), (int)(b[1] >> 32),
+                    (int)a[1], (int)b[1]);
+            default:
+                return compareInts((int)b[0], (int)a[0], (int)(a[0] >> 32),
+                    (int)(b[0] >> 32));
+        }
+    }
+
+
+    /**
+     * Compares two pairs of values, by the first value, then the second.
+     *
+     * @param a1
+     *            the first value of the first pair
+     * @param b1
+     *            the first value of the second pair
+     * @param a2
+     *            the second value of the first pair
+     * @param b2
+     *            the second value of the second pair
+     * @return the comparison of the pairs
+     */
+    private int compareInts(long a1, long b1, long a2, long b2) {
+        return (a1 != b1) ? Long.compare(a1, b1) : Long.compare(a2, b2);
+    }
+
+
+    /**
+     * Maps the bits of a double to a long ordering like the double, with
+     * raw NaNs by their sign.
+     *
+     * @param bits
+     *            the raw bits
+     * @return the sortable long
+     */
+    private long sortable(long bits) {
+        return (bits < 0) ? ~bits ^ Long.MIN_VALUE : bits;
+    }
+}
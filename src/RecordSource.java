@@ -0,0 +1,33 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * RecordSource is where run generation reads its records from: the input
+ * file, or a stream handed to ExternalSorter. Reads name the position they
+ * start at; a stream can only serve them in order.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public interface RecordSource {
+    // ----------------------------------------------------------
+    /**
+     * Reads bytes from the given position and returns a view of them, which
+     * may be the scratch buffer or memory of the source itself. The view is
+     * only valid until the next call with the same scratch buffer.
+     *
+     * @param position
+     *            the position to read from
+     * @param length
+     *            the number of bytes wanted
+     * @param scratch
+     *            a buffer of at least length bytes for copying reads
+     * @return a buffer with the bytes between its position and limit, fewer
+     *         than length if the source ends first
+     * @throws IOException
+     *             if the read fails
+     */
+    ByteBuffer readView(long position, int length, ByteBuffer scratch)
+        throws IOException;
+}
@@ -1,6 +1,16 @@
 import java.nio.ByteBuffer;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 
 // -------------------------------------------------------------------------
 /**
@@ -24,7 +34,12 @@ public class ReplacementSelection {
     /**
      * The min-heap structure used for managing the sorting process
      */
-    private MinHeap<Record> minheap;
+    private RecordHeap minheap;
+
+    /**
+     * The radix sorter used instead of the heap, or null to use the heap.
+     */
+    private RadixSorter radixSorter;
 
     /**
      * A buffer for reading blocks of data from the input file during the
@@ -34,10 +49,115 @@ public class ReplacementSelection {
     private byte[] inputBuffer;
 
     /**
-     * A buffer for holding sorted records that will be written in blocks to the
-     * output file.
+     * Size of each buffer holding sorted records that will be written in
+     * blocks to the output file.
+     */
+    private int outputBufferBytes;
+
+    /**
+     * Number of full output buffers that may wait for the writer thread.
+     */
+    private int writeBehindDepth;
+
+    /**
+     * The maximum number of runs merged together in one merge.
+     */
+    private int mergeFanIn;
+
+    /**
+     * Run cursors kept between merges so their block buffers are reused.
+     */
+    private RunCursor[] cursors;
+
+    /**
+     * Number of blocks each run cursor reads ahead during a merge.
+     */
+    private int prefetchDepth;
+
+    /**
+     * Executor reading blocks ahead for the run cursors, only while merging.
+     */
+    private ExecutorService prefetchExecutor;
+
+    /**
+     * Number of threads reading ahead for the run cursors. Reads are short
+     * and mostly wait on the disk, so a few threads serve many runs.
+     */
+    private static final int PREFETCH_THREADS = 4;
+
+    /**
+     * Index of the sorted output, filled while it is written, or null.
+     */
+    private BlockIndex blockIndex;
+
+    /**
+     * Number of threads generating runs, each on its own chunk of the input.
+     */
+    private int runThreads = 1;
+
+    /**
+     * Number of threads sharing the final merge, each on its own key range.
+     */
+    private int mergeThreads = 1;
+
+    /**
+     * Metrics the runs and merge passes are reported to, or null.
+     */
+    private SortMetrics metrics;
+
+    /**
+     * Manifest checkpointing the runs after generation and every pass, or
+     * null.
+     */
+    private RunManifest manifest;
+
+    /**
+     * Codec the intermediate runs are encoded with, or null for raw runs.
+     */
+    private BlockCodec codec;
+
+    /**
+     * Layout giving the keys of the records.
+     */
+    private RecordLayout layout = RecordLayout.DEFAULT;
+
+    /**
+     * Sink the last merge pass writes the sorted records to instead of a
+     * file, or null.
+     */
+    private BlockSink output;
+
+    /**
+     * Number of records the merge stops after, for top-K sorts.
+     */
+    private long recordLimit = Long.MAX_VALUE;
+
+    /**
+     * Combiner of records with equal keys, or null.
+     */
+    private RecordCombiner combiner;
+
+    /**
+     * Files the last merge pass writes the key ranges of the sorted records
+     * to, in key order, or null.
+     */
+    private FileParser[] shards;
+
+    /**
+     * Sample of the input keys the shards are split by, or null.
+     */
+    private KeySampler sample;
+
+    /**
+     * Number of sampled keys per shard.
      */
-    private byte[] outputBuffer;
+    private static final int SAMPLES_PER_SHARD = 4096;
+
+    /**
+     * Logger for the merge plan.
+     */
+    private static final Logger LOGGER = Logger.getLogger(
+        ReplacementSelection.class.getName());
 
     // ~ Constructors ..........................................................
     // ----------------------------------------------------------
@@ -48,25 +168,293 @@ public class ReplacementSelection {
      *            the minheap used for managing records during sorting
      * @param inputBuffer
      *            the buffer used to read data from input files
-     * @param outputBuffer
-     *            the buffer used to store sorted data before writing
+     * @param outputBufferBytes
+     *            the size of each buffer used to store sorted data before
+     *            writing
+     * @param mergeFanIn
+     *            the maximum number of runs merged together in one merge
      */
     public ReplacementSelection(
-        MinHeap<Record> minheap,
+        RecordHeap minheap,
         byte[] inputBuffer,
-        byte[] outputBuffer) {
+        int outputBufferBytes,
+        int mergeFanIn) {
         this.minheap = minheap;
         this.inputBuffer = inputBuffer;
-        this.outputBuffer = outputBuffer;
+        this.outputBufferBytes = outputBufferBytes;
+        this.mergeFanIn = mergeFanIn;
     }
 
 
     // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets how many blocks each run cursor reads ahead on a background thread
+     * during merges. 0 reads every block synchronously.
+     * 
+     * @param prefetchDepth
+     *            the number of blocks to read ahead
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+        this.cursors = null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many full output buffers may wait for the writer thread while
+     * sorting continues. 0 writes every buffer synchronously.
+     * 
+     * @param writeBehindDepth
+     *            the number of buffers that may wait
+     */
+    public void setWriteBehindDepth(int writeBehindDepth) {
+        this.writeBehindDepth = writeBehindDepth;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sorts with a radix sorter instead of the heap: the in-memory sort
+     * radix sorts the whole file, and runs are generated by load-sort-store.
+     * 
+     * @param radixSorter
+     *            the sorter, or null to go back to the heap
+     */
+    public void setRadixSorter(RadixSorter radixSorter) {
+        this.radixSorter = radixSorter;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many threads generate runs. Every thread works on its own
+     * chunk of the input with its own heap or radix sorter of the same
+     * capacity as the one this object was given.
+     * 
+     * @param runThreads
+     *            the number of run generation threads, at least 1
+     */
+    public void setRunThreads(int runThreads) {
+        this.runThreads = runThreads;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the index to fill while the sorted output is written. Every
+     * writer that may produce the final layout fills it: the in-memory sort,
+     * run generation (whose output is final when it is a single run) and the
+     * last merge pass, which overwrites whatever run generation recorded.
+     * 
+     * @param blockIndex
+     *            the index, or null for none
+     */
+    public void setBlockIndex(BlockIndex blockIndex) {
+        this.blockIndex = blockIndex;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many threads share the final merge. The runs are cut into
+     * that many key ranges, which are merged at the same time. The threads
+     * split the fan-in and the output buffers of a single merge, so the
+     * merge plan leaves fewer runs for the final pass.
+     * 
+     * @param mergeThreads
+     *            the number of merge threads, at least 1
+     */
+    public void setMergeThreads(int mergeThreads) {
+        this.mergeThreads = mergeThreads;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the metrics that run generation reports its runs to and the
+     * merge reports its passes to.
+     * 
+     * @param metrics
+     *            the metrics, or null for none
+     */
+    public void setMetrics(SortMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the manifest that keeps the runs on disk. Run generation
+     * journals every run in it, and the runs are checkpointed once they are
+     * all generated and after every merge pass, each time after the file
+     * holding them is forced to disk.
+     * 
+     * @param manifest
+     *            the manifest, or null for none
+     */
+    public void setManifest(RunManifest manifest) {
+        this.manifest = manifest;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the codec intermediate runs are encoded with: run generation and
+     * every merge pass but the last write frames (see RunFrames), and the
+     * merge reads them. The last pass writes the sorted output raw, and a
+     * single encoded run gets a pass of its own to decode it. When resuming,
+     * this has to be the codec of the manifest.
+     * 
+     * @param codec
+     *            the codec, or null to keep runs raw
+     */
+    public void setCodec(BlockCodec codec) {
+        this.codec = codec;
+        this.cursors = null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the layout of the records, which says where their keys are and
+     * how they order. Run generation, the merge and the partitioner all
+     * compare the normalized keys of this layout. When resuming, this has
+     * to be the layout of the manifest.
+     * 
+     * @param layout
+     *            the layout
+     */
+    public void setLayout(RecordLayout layout) {
+        this.layout = layout;
+        this.cursors = null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets a sink that receives the sorted records instead of a file. The
+     * last merge pass writes to it in order, on a single thread, and a
+     * single run is copied to it by a pass of its own. The scratch files
+     * then only ever hold runs.
+     * 
+     * @param output
+     *            the sink, or null to leave the sorted run in the run file
+     */
+    public void setOutput(BlockSink output) {
+        this.output = output;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many of the smallest records the merge keeps. Runs are cut
+     * to that many records before the first pass, since no record past it
+     * can be among the smallest, and every merge stops once it has written
+     * that many. The final merge then runs on a single thread.
+     * 
+     * @param recordLimit
+     *            the number of records, or Long.MAX_VALUE for all of them
+     */
+    public void setRecordLimit(long recordLimit) {
+        this.recordLimit = recordLimit;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the combiner of records with equal keys. Run generation and the
+     * in-memory sort combine the records of every run as it is written, and
+     * every merge combines the records of its runs, so runs shrink as soon
+     * as they are written and the sorted output holds one record per key.
+     * The output length is then only known at the end, so the final merge
+     * runs on a single thread.
+     * 
+     * @param combiner
+     *            the combiner, or null to keep every record
+     */
+    public void setCombiner(RecordCombiner combiner) {
+        this.combiner = combiner;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the files the sorted records are split between. The last merge
+     * pass cuts its runs by key range and merges every range into its own
+     * file from the start, on up to mergeThreads threads, instead of
+     * writing a single sorted run. The ranges are split at the quantiles of
+     * a sample of the input keys, which run generation and the in-memory
+     * sort take as they write; without one the runs themselves are
+     * sampled. A single sorted run is split the same way.
+     * 
+     * @param shardFiles
+     *            the files, in key order, or null for a single sorted run
+     */
+    public void setShards(FileParser[] shardFiles) {
+        this.shards = shardFiles;
+        this.sample = (shardFiles == null)
+            ? null
+            : new KeySampler(SAMPLES_PER_SHARD * shardFiles.length, 0);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the sample of the input keys the shards are split by, which a
+     * NaturalRunScanner may fill. Its keys are kept only when the natural
+     * runs are.
+     * 
+     * @return the sample, or null without shards
+     */
+    public KeySampler getSample() {
+        return sample;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Reads the whole input once through a TopKSelector and writes the
+     * records it kept, in key order, to the sink from its start.
+     * 
+     * @param selector
+     *            the selector, holding K slots
+     * @param input
+     *            the input file or stream
+     * @param length
+     *            the length of the input, or Long.MAX_VALUE for a stream
+     * @param sink
+     *            the file or stream the records are written to
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public void selectTopK(
+        TopKSelector selector,
+        RecordSource input,
+        long length,
+        BlockSink sink)
+        throws IOException {
+        selector.load(input, 0, length, ByteBuffer.wrap(inputBuffer));
+        selector.sort();
+        BlockWriter writer = newWriter(sink, null, 1);
+        writer.setIndex(blockIndex);
+        try {
+            selector.writeTo(writer, 0);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Sorts the contents of the min-heap in memory and writes the sorted
      * records
-     * to the specified output file.
+     * to the specified output file. With a radix sorter the records are read
+     * from the file instead and radix sorted. A file left shorter by the
+     * combiner is cut to the sorted records.
      *
      * @param fileParser
      *            the FileParser used to access and write data to the output
@@ -75,42 +463,52 @@ public class ReplacementSelection {
      *             if an I/O error occurs during file operations
      */
     public void inMemorySort(FileParser fileParser) throws IOException {
-        int outputIndex = 0;
-
-        fileParser.getFile().seek(0);
-        while (minheap.heapSize() != 0) {
-            Record minRecord = minheap.removeMin();
-
-            // Allocate ByteBuffer for ID and key separately
-            ByteBuffer idBuffer = ByteBuffer.allocate(Long.BYTES);
-            ByteBuffer keyBuffer = ByteBuffer.allocate(Double.BYTES);
-
-            idBuffer.putLong(minRecord.getID());
-            keyBuffer.putDouble(minRecord.getKey());
-
-            // Copy to output buffer, starting at the current output index
-            System.arraycopy(idBuffer.array(), 0, outputBuffer, outputIndex,
-                Long.BYTES);
-            outputIndex += Long.BYTES;
-            System.arraycopy(keyBuffer.array(), 0, outputBuffer, outputIndex,
-                Double.BYTES);
-            outputIndex += Double.BYTES;
-
-            if (outputIndex >= ByteFile.BYTES_PER_BLOCK) {
-                fileParser.writeBlock(outputBuffer); // Write buffer to file
-                outputIndex = 0; // Reset index for new data
+        BlockWriter writer = newWriter(fileParser, null, 1);
+        writer.setIndex(blockIndex);
+        RunWriter out = new RunWriter(writer, layout, 0);
+        out.setCombiner(combiner, true);
+        if (sample != null) {
+            sample.clear();
+            out.setSampler(sample);
+        }
+        if (radixSorter != null) {
+            radixSorter.clear();
+            radixSorter.setLayout(layout);
+            radixSorter.load(fileParser, 0, fileParser.getFile().length(),
+                ByteBuffer.wrap(inputBuffer));
+            radixSorter.sort();
+            radixSorter.writeTo(out);
+        }
+        else {
+            while (minheap.heapSize() != 0) {
+                int pos = minheap.removeMin();
+                long key = minheap.getKey(pos);
+                long payload = minheap.getPayload(pos);
+                out.add(key, layout.word0(key, payload), layout.word1(key,
+                    payload));
             }
         }
+        // Write the partly filled last buffer and wait for every write
+        long end = out.finish(0).getEndPosition();
+        writer.close();
+        if (end < fileParser.getFile().length()) {
+            fileParser.resize(end);
+        }
     }
 
 
     // ----------------------------------------------------------
     /**
      * Executes the replacement selection algorithm to create long sorted runs.
-     * It
-     * iteratively
-     * processes input blocks and generates
-     * sorted runs that are written to the run file.
+     * The input is split into one chunk per run generation thread along
+     * block boundaries, and a RunGenerator turns each chunk into runs over
+     * the same span of the run file. The first generator uses this object's
+     * heap and input buffer, the others get their own of the same size. With
+     * a radix sorter the chunks go to LoadSortStoreGenerators instead. With
+     * a single thread the whole file is one chunk and no threads are started.
+     * Encoded runs may take a little more room than the chunk, so with a
+     * codec every span is moved along by the room the spans before it may
+     * need.
      * 
      * @param inputParser
      *            the FileParser for reading the input data
@@ -124,130 +522,123 @@ public class ReplacementSelection {
         FileParser inputParser,
         FileParser runFileParser)
         throws IOException {
-        int inputIndex = 0;
-        int outputIndex = 0;
-        int storedMins = 0;
-        ByteBuffer byteBuffer = ByteBuffer.allocate(0); // Empty buffer with
-                                                        // zero capacity
-        long start = 0; // Start position of the run
-        long end = 0; // End position of the run
-        DLList runList = new DLList();
-        int runNum = 0; // Start runNum at 0
-        Record minRecord;
-
-        while (inputParser.hasRemainingData() || minheap.heapSize() > 0) {
-            // Track the start position of the run
-            start = end; // Start from the last end position
-
-            if (inputParser.hasRemainingData() && !byteBuffer.hasRemaining()) {
-                inputParser.readNextBlock(inputBuffer);
-                byteBuffer = ByteBuffer.wrap(inputBuffer); // 0 for new block
-            }
-
-            while (minheap.heapSize() > 0
-                || storedMins >= ByteFile.RECORDS_PER_BLOCK * 8) {
-                if (minheap.heapSize() > 0) {
-                    if (!byteBuffer.hasRemaining() && !inputParser
-                        .hasRemainingData()) {
-                        minRecord = minheap.removeMin();
-                    }
-                    else {
-                        minRecord = minheap.getMin();
-                    }
-
-                    outputIndex = addToOutputBuffer(minRecord, outputIndex);
-                    end += ByteFile.BYTES_PER_RECORD;
-
-                    if (outputIndex >= ByteFile.BYTES_PER_BLOCK) {
-                        runFileParser.writeBlock(outputBuffer);
-                        outputIndex = 0;
-                    }
-
-                    if (byteBuffer.remaining() >= ByteFile.BYTES_PER_RECORD) {
-                        long recID = byteBuffer.getLong();
-                        double key = byteBuffer.getDouble();
-                        inputIndex += ByteFile.BYTES_PER_RECORD;
-
-                        Record record = new Record(recID, key, -1);
-
-                        if (record.getKey() >= minRecord.getKey()) {
-                            minheap.modify(0, record);
-                        }
-                        else {
-                            minheap.modify(0, record);
-                            minheap.removeMin();
-                            storedMins++;
-                        }
-                    }
-
-                    if (!byteBuffer.hasRemaining() && inputParser
-                        .hasRemainingData()) {
-                        inputParser.readNextBlock(inputBuffer);
-                        byteBuffer = ByteBuffer.wrap(inputBuffer);
-                    }
-                }
-                else {
-                    // Heap is empty
-                    // Break out to start a new run
-                    break;
-                }
-            }
-
-            if (outputIndex > 0) {
-                // Set up a ByteBuffer around the outputBuffer to extract
-                // records
-                ByteBuffer bb = ByteBuffer.wrap(outputBuffer);
-
-                // Calculate the number of records to write based on outputIndex
-                int numRecords = outputIndex / ByteFile.BYTES_PER_RECORD;
-
-                for (int i = 0; i < numRecords; i++) {
-                    long recID = bb.getLong(); // Extract the long (recID)
-                    double key = bb.getDouble(); // Extract the double (key)
-
-                    // Write the record directly to the file
-                    runFileParser.getFile().writeLong(recID);
-                    runFileParser.getFile().writeDouble(key);
-                }
-                outputIndex = 0; // Reset for the next run
-            }
-
-            // Calculate run length and create new Run object
-            long runLength = end - start;
+        return performReplacementSelection(inputParser, runFileParser,
+            new DLList());
+    }
 
-            Run newRun = new Run(start, runLength, end, runNum);
-            runList.add(newRun);
-            runNum++;
 
-            if (storedMins < ByteFile.RECORDS_PER_BLOCK * 8) {
-                minheap.setHeapSize(storedMins);
-                minheap.buildHeap();
-            }
-            else {
-                minheap.setHeapSize(ByteFile.RECORDS_PER_BLOCK * 8);
-                minheap.buildHeap();
-            }
-            storedMins = 0;
+    // ----------------------------------------------------------
+    /**
+     * Executes replacement selection around the natural runs the input
+     * already holds (see NaturalRunScanner). The natural runs stay where
+     * they are and become runs as they are. Only the stretches between them
+     * go through the heap or the radix sorter, one after the other on a
+     * single thread, and their runs are appended to the input past its
+     * end, so the input is never overwritten and the run file is not used.
+     * Natural runs are raw and hold records as they came, so with a codec
+     * or a combiner they are ignored and the whole input is sorted into
+     * runs as usual.
+     * 
+     * @param inputParser
+     *            the FileParser for reading the input data, which receives
+     *            the runs
+     * @param runFileParser
+     *            the FileParser for writing sorted runs to, when there are
+     *            no natural runs
+     * @param naturalRuns
+     *            the natural runs of the input in file order, or none
+     * @return a doubly linked list containing run objects
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public DLList performReplacementSelection(
+        FileParser inputParser,
+        FileParser runFileParser,
+        DLList naturalRuns)
+        throws IOException {
+        if (naturalRuns.size() > 0 && codec == null && combiner == null) {
+            // The scan that found the natural runs sampled every key
+            return generateAroundNaturalRuns(inputParser, naturalRuns);
         }
-        long length = runFileParser.getFile().length();
+        long length = inputParser.getFile().length();
+        long blocks = (length + ByteFile.BYTES_PER_BLOCK - 1)
+            / ByteFile.BYTES_PER_BLOCK;
+        int workers = (int)Math.max(1, Math.min(runThreads, blocks));
 
+        if (manifest != null) {
+            manifest.beginGeneration();
+        }
+        DLList runList = generateRuns(inputParser, length, workers,
+            runFileParser);
+        long dataEnd = 0;
+        Iterator<Run> runIterator = runList.iterator();
+        while (runIterator.hasNext()) {
+            dataEnd = Math.max(dataEnd, runIterator.next().getEndPosition());
+        }
+        if (manifest != null) {
+            // The runs survive a crash in the rename that follows
+            runFileParser.sync();
+            manifest.checkpoint(runFileParser.getFileName(), dataEnd, runList,
+                codec);
+        }
         runFileParser.close();
         inputParser.replaceWith(runFileParser.getFileName());
-        System.out.println(runList.size());
+        if (manifest != null) {
+            manifest.checkpoint(inputParser.getFileName(), dataEnd, runList,
+                codec);
+        }
+        if (metrics != null) {
+            metrics.recordRuns(runList);
+        }
         return runList;
     }
 
 
     // ----------------------------------------------------------
+    /**
+     * Generates runs from a stream, which is read once, front to back, on a
+     * single thread. The runs are left in the run file and the stream is not
+     * written to.
+     * 
+     * @param input
+     *            the stream of records
+     * @param runFileParser
+     *            the FileParser for writing sorted runs to
+     * @return a doubly linked list containing run objects
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public DLList generateRuns(RecordSource input, FileParser runFileParser)
+        throws IOException {
+        // The length is unknown; reads stop where the stream ends
+        DLList runList = generateRuns(input, Long.MAX_VALUE, 1,
+            runFileParser);
+        if (metrics != null) {
+            metrics.recordRuns(runList);
+        }
+        return runList;
+    }
+
+
     // ----------------------------------------------------------
     /**
-     * Performs a recursive multiway merge on the run list by grouping runs into
-     * batches of 8.
+     * Merges the run list into a single run. A MergePlanner works out the
+     * passes from the run lengths and the fan-in, the plan is logged, and
+     * then each pass is executed. A single run needs no merging at all.
+     * 
+     * Passes ping-pong between the run file and the merge file, which stay
+     * open throughout: a pass that merges every run reads one and writes
+     * the other, which then holds the runs. The merge file is sized once
+     * for the whole data up front. If the sorted run ends up in the merge
+     * file, it is renamed over the run file once, at the end, and the merge
+     * file is reopened empty. With an output sink the last pass writes to
+     * the sink instead and neither file is renamed.
      * 
      * @param runFileParser
-     *            the FileParser object to read run data.
+     *            the FileParser object to read run data, which receives the
+     *            sorted run.
      * @param mergeFileParser
-     *            the FileParser object to write merged data.
+     *            the FileParser object used as the second scratch file.
      * @param runs
      *            the list of runs to merge.
      * @throws IOException
@@ -257,281 +648,903 @@ public class ReplacementSelection {
         FileParser mergeFileParser,
         DLList runs)
         throws IOException {
+        if (recordLimit != Long.MAX_VALUE) {
+            limitRuns(runs);
+        }
+        // A combiner sees records with equal keys in the order of the runs,
+        // and the merges of the final pass share the cursor budget
+        MergePlanner planner = new MergePlanner(mergeFanIn, combiner != null);
+        planner.setFinalFanIn(Math.max(2, mergeFanIn / finalMerges()));
+        MergePlan plan = planner.plan(runs);
+        long total = 0;
+        Iterator<Run> runIterator = runs.iterator();
+        while (runIterator.hasNext()) {
+            total += runIterator.next().getLength();
+        }
+        total = Math.min(total, limitBytes());
+        if (plan.getPasses().isEmpty()) {
+            if (runs.size() == 0 || (codec == null && output == null
+                && shards == null && runs.get(0).getStartPosition() == 0)) {
+                // Run generation already produced a single sorted run, and
+                // only a record limit or a combiner may leave it short
+                if (total < runFileParser.getFile().length()) {
+                    runFileParser.resize(total);
+                }
+                return;
+            }
+            // A single encoded run still has to be decoded, and the output
+            // sink or the shards still have to receive it
+            plan.addPass(new MergePlan.Pass(new int[][] { { 0 } }, 1,
+                total));
+        }
+        LOGGER.info(plan.toString());
+
+        if (prefetchDepth > 0) {
+            prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "run-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+        if (mergeFileParser.getFile().length() < total) {
+            mergeFileParser.resize(total);
+        }
 
-        // Base Case: If only one run remains, sorting is complete
-        if (runs.size() <= 1) {
+        FileParser source = runFileParser;
+        FileParser spare = mergeFileParser;
+        try {
+            for (MergePlan.Pass pass : plan.getPasses()) {
+                FileParser written = mergePass(source, spare, runs, pass);
+                if (written != source) {
+                    spare = source;
+                    source = written;
+                }
+            }
+        }
+        finally {
+            // Cursors must not outlive the executor that fills them
+            closeCursors();
+            if (prefetchExecutor != null) {
+                prefetchExecutor.shutdown();
+                prefetchExecutor = null;
+            }
+        }
+        if (output != null) {
+            // The sorted run went to the sink instead of either file
+            return;
+        }
+        if (shards != null) {
+            // The shards hold the sorted records, the runs are not needed
+            // any more
+            mergeFileParser.resize(0);
             return;
         }
 
-        // Initialize a new list to hold merged runs after this pass
-        DLList newRunList = new DLList();
-
-        int totalRuns = runs.size();
-        int index = 0;
-        int groupRunNum = 0;
-
-        while (index < totalRuns) {
-            // Determine the number of runs in this batch (up to 8)
-            int currentBatchSize = Math.min(8, totalRuns - index);
-
-            // Extract the current batch of runs
-            DLList currentBatch = new DLList();
-            for (int i = 0; i < currentBatchSize; i++) {
-                currentBatch.add(runs.get(index + i));
+        // Earlier, longer contents may follow the sorted run, which is
+        // shorter than its runs when records were combined
+        total = runs.get(0).getLength();
+        source.resize(total);
+        if (source != runFileParser) {
+            // Move the sorted run into place, the only rename of the merge
+            source.close();
+            runFileParser.replaceWith(source.getFileName());
+            source.reopen();
+            if (manifest != null) {
+                manifest.checkpoint(runFileParser.getFileName(), total, runs,
+                    null);
             }
+        }
+        else {
+            // Give back the space the merge file was sized to
+            mergeFileParser.resize(0);
+        }
+    }
 
-            // Merge the current batch into a single run
-            Run mergedRun = mergeRuns(runFileParser, mergeFileParser,
-                currentBatch, groupRunNum);
 
-            // Add the merged run to the new run list
-            newRunList.add(mergedRun);
+    // ----------------------------------------------------------
+    /**
+     * Executes one pass of a merge plan. A pass that carries runs appends its
+     * merged runs after the last run in the run file and leaves the carried
+     * runs in place. A pass that merges every run writes the spare file from
+     * its start, and the spare file holds the runs from then on.
+     * 
+     * @param runFileParser
+     *            the FileParser holding the runs.
+     * @param spareFileParser
+     *            the FileParser a pass that merges every run writes to.
+     * @param runs
+     *            the list of runs, replaced by the list after the pass
+     * @param pass
+     *            the pass to execute
+     * @return the FileParser holding the runs after the pass
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private FileParser mergePass(
+        FileParser runFileParser,
+        FileParser spareFileParser,
+        DLList runs,
+        MergePlan.Pass pass)
+        throws IOException {
+        // Index the run list once instead of walking it per group
+        Run[] current = new Run[runs.size()];
+        Iterator<Run> runIterator = runs.iterator();
+        int passNumber = 1;
+        long dataEnd = 0;
+        for (int i = 0; i < current.length; i++) {
+            current[i] = runIterator.next();
+            // Every run left by the pass before is from that pass or older
+            passNumber = Math.max(passNumber, current[i].getPass() + 1);
+            dataEnd = Math.max(dataEnd, current[i].getEndPosition());
+        }
 
-            // Move to the next batch
-            index += currentBatchSize;
+        boolean inPlace = pass.carriesRuns();
+        FileParser target = inPlace ? runFileParser : spareFileParser;
+        // Whatever lies past the last run is left over from earlier passes
+        long outputPos = inPlace ? dataEnd : 0;
+        int[][] groups = pass.getGroups();
+        if (metrics != null) {
+            metrics.recordPass(pass.getFanIn());
+        }
+        // The last pass writes the sorted output, which is never encoded
+        boolean lastPass = !inPlace && groups.length == 1;
+        BlockCodec outputCodec = lastPass ? null : codec;
+        BlockSink sink = (lastPass && output != null) ? output : target;
+        // A final merge split between threads brings cursors and writers
+        // of its own, so the cursors of earlier passes are let go first
+        boolean split = lastPass && (shards != null || finalMerges() > 1);
+        BlockWriter writer = null;
+        if (split) {
+            closeCursors();
+        }
+        else {
+            writer = newWriter(sink, outputCodec, 1);
+            if (lastPass) {
+                writer.setIndex(blockIndex);
+            }
+        }
 
-            groupRunNum++;
+        // Merge every group into a single run
+        boolean[] merged = new boolean[current.length];
+        Run[] mergedRuns = new Run[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            Run[] group = new Run[groups[g].length];
+            for (int i = 0; i < group.length; i++) {
+                group[i] = current[groups[g][i]];
+                merged[groups[g][i]] = true;
+            }
+            if (split && shards != null) {
+                mergedRuns[g] = mergeShards(runFileParser, group, g);
+            }
+            else if (split) {
+                // The final merge is split by key range between threads
+                mergedRuns[g] = mergeRunsPartitioned(runFileParser, target,
+                    group, g, outputPos);
+            }
+            else {
+                mergedRuns[g] = mergeRuns(runFileParser, writer, group, g,
+                    outputPos);
+            }
+            outputPos = mergedRuns[g].getEndPosition();
+        }
+        // The next pass reads what this one wrote
+        if (writer != null) {
+            writer.close();
         }
 
-        // Replace the old run list with the new merged run list
+        // Carried runs keep their order and are followed by the merged
+        // runs, or the merged runs take the places of their groups
+        int[] groupAt = new int[current.length];
+        Arrays.fill(groupAt, -1);
+        if (pass.keepsOrder()) {
+            for (int g = 0; g < groups.length; g++) {
+                groupAt[groups[g][0]] = g;
+            }
+        }
         runs.clear();
-        for (int i = 0; i < newRunList.size(); i++) {
-            runs.add(newRunList.get(i));
+        for (int i = 0; i < current.length; i++) {
+            if (groupAt[i] >= 0) {
+                addMergedRun(runs, mergedRuns[groupAt[i]], passNumber);
+            }
+            else if (!merged[i]) {
+                Run carried = new Run(current[i].getStartPosition(), current[i]
+                    .getLength(), current[i].getEndPosition(), runs.size());
+                carried.setPass(current[i].getPass());
+                runs.add(carried);
+            }
+        }
+        if (!pass.keepsOrder()) {
+            for (Run mergedRun : mergedRuns) {
+                addMergedRun(runs, mergedRun, passNumber);
+            }
         }
-        mergeFileParser.close();
-        // Replace old run file with the newly merged run file
-        runFileParser.replaceWith(mergeFileParser.getFileName());
 
-        // Recursive call to handle the next pass of merging
-        recursiveMultiwayMerge(runFileParser, mergeFileParser, runs);
+        if (manifest != null && sink == target && !(lastPass
+            && shards != null)) {
+            target.sync();
+            manifest.checkpoint(target.getFileName(), outputPos, runs,
+                outputCodec);
+        }
+        return target;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds a run written by a merge pass to the end of the run list.
+     * 
+     * @param runs
+     *            the run list
+     * @param mergedRun
+     *            the merged run
+     * @param passNumber
+     *            the number of the pass that wrote it
+     */
+    private static void addMergedRun(
+        DLList runs,
+        Run mergedRun,
+        int passNumber) {
+        Run run = new Run(mergedRun.getStartPosition(), mergedRun.getLength(),
+            mergedRun.getEndPosition(), runs.size());
+        run.setPass(passNumber);
+        runs.add(run);
     }
 
 
     // ----------------------------------------------------------
     /**
      * Merges multiple runs from a specified batch of runs into a single run,
-     * utilizing a min-heap to maintain the sorted order during merging.
+     * utilizing a loser tree to maintain the sorted order during merging.
+     * The cursors are kept between merges so their buffers are reused.
      * 
      * @param runFileParser
-     *            the FileParser to read each run’s data
-     * @param mergeFileParser
-     *            the FileParser to store merged run data
+     *            the FileParser to read each run's data
+     * @param writer
+     *            the writer storing merged run data, which may write to the
+     *            run file itself when the output goes past its end
      * @param runsToMerge
-     *            the list of runs to be merged
+     *            the runs to be merged
      * @param groupRunNum
      *            the identifier number for the merged run
+     * @param outputStart
+     *            the position in the merge file where the merged run starts
      * @return the resulting Run object that represents the merged data
      * @throws IOException
      *             if an I/O error occurs during file operations
      */
     private Run mergeRuns(
+        FileParser runFileParser,
+        BlockWriter writer,
+        Run[] runsToMerge,
+        int groupRunNum,
+        long outputStart)
+        throws IOException {
+        int numRuns = runsToMerge.length;
+
+        // Reuse the cursors of earlier merges
+        if (cursors == null || cursors.length < numRuns) {
+            cursors = newCursors(Math.max(numRuns, mergeFanIn));
+        }
+        Run merged = mergeInto(cursors, runFileParser, writer, runsToMerge,
+            outputStart);
+
+        // Create and return the new merged Run object, whose records may
+        // take fewer bytes than their length if they are encoded
+        return new Run(outputStart, merged.getLength(), merged
+            .getEndPosition(), groupRunNum);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Merges runs through the given cursors into the writer, starting at the
+     * given output position. Every run is read through its own cursor, and
+     * each output record costs one leaf-to-root replay of a loser tree.
+     * Records with equal keys are combined on the way out.
+     * 
+     * @param mergeCursors
+     *            at least one cursor per run
+     * @param runFileParser
+     *            the FileParser to read each run's data
+     * @param writer
+     *            the writer storing merged data
+     * @param runsToMerge
+     *            the runs to be merged
+     * @param outputStart
+     *            the output position of the first merged record
+     * @return the merged run, numbered 0
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private Run mergeInto(
+        RunCursor[] mergeCursors,
+        FileParser runFileParser,
+        BlockWriter writer,
+        Run[] runsToMerge,
+        long outputStart)
+        throws IOException {
+        int numRuns = runsToMerge.length;
+
+        // Open a cursor on every run
+        for (int i = 0; i < numRuns; i++) {
+            mergeCursors[i].open(runFileParser, runsToMerge[i]);
+        }
+        // A combiner gets records with equal key fields in the order of the
+        // runs, whatever the rest of their key word
+        long keyMask = (combiner != null) ? layout.firstKey(-1L) : -1L;
+        LoserTree tree = new LoserTree(mergeCursors, numRuns, keyMask);
+
+        // Positional writes let the merge file be the run file the cursors
+        // are reading
+        RunWriter out = new RunWriter(writer, layout, outputStart);
+        out.setCombiner(combiner, false);
+
+        // Merge records from all runs, up to the record limit
+        long left = recordLimit;
+        while (!tree.isEmpty() && left-- > 0) {
+            RunCursor winner = tree.winner();
+            out.add(winner.getKey(), winner.getWord0(), winner.getWord1());
+            tree.advance();
+        }
+        return out.finish(0);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Merges runs into a single run with several threads. The runs are cut
+     * into key ranges, one per merge thread, and each thread merges its range
+     * of every run with cursors and a writer of its own. The size of every
+     * range is known before merging starts, so each thread writes straight to
+     * its final position in the output.
+     * 
+     * @param runFileParser
+     *            the FileParser to read each run's data
+     * @param mergeFileParser
+     *            the FileParser to store merged data
+     * @param runsToMerge
+     *            the runs to be merged
+     * @param groupRunNum
+     *            the identifier number for the merged run
+     * @param outputStart
+     *            the position in the merge file where the merged run starts
+     * @return the resulting Run object that represents the merged data
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private Run mergeRunsPartitioned(
         FileParser runFileParser,
         FileParser mergeFileParser,
-        DLList runsToMerge,
-        int groupRunNum)
+        Run[] runsToMerge,
+        int groupRunNum,
+        long outputStart)
         throws IOException {
-        long start = runsToMerge.get(0).getStartPosition();
-        long end = start;
-        long currentPos;
-        // Initialize MinHeap for merging runs
-        // Initialize MinHeap with capacity for 8 blocks of records
-        Record[] emptyHeapArray = new Record[ByteFile.RECORDS_PER_BLOCK * 8];
-        this.minheap = new MinHeap<>(emptyHeapArray, 0,
-            ByteFile.RECORDS_PER_BLOCK * 8);
-
-        // Create buffers for reading from each run
-        this.inputBuffer = new byte[ByteFile.BYTES_PER_BLOCK];
-        this.outputBuffer = new byte[ByteFile.BYTES_PER_BLOCK];
-
-        // Load the first record from each run into the heap
-        for (int i = 0; i < runsToMerge.size(); i++) {
-            Run currentRun = runsToMerge.get(i);
-            currentPos = currentRun.getCurrentPosition();
-            runFileParser.getFile().seek(currentPos);
-
-            // Read the first block of the current run
-            // if (currentPos + bytesRead >= end)) {
-
-            int bytesRead = runFileParser.readNextBlock(inputBuffer);
-            // Wrap the buffer in a ByteBuffer for easy data access
-            ByteBuffer byteBuffer = ByteBuffer.wrap(inputBuffer);
-
-            // Iterate over each record in the buffer and add to the heap
-            for (int rec = 0; rec < ByteFile.RECORDS_PER_BLOCK; rec++) {
-                long recID = byteBuffer.getLong(); // Read 8 bytes for recID
-                double key = byteBuffer.getDouble(); // Read 8 bytes for key
-
-                // Check if this is the last record in the block
-                if (rec >= ByteFile.RECORDS_PER_BLOCK) {
-                    // If this is the last record, mark it with the runNum
-                    Record record = new Record(recID, key, runsToMerge.get(i)
-                        .getRunNum()); // put in run number for last record of
-                                       // block in the run
-                    currentRun.setCurrentPosition(currentPos
-                        + ByteFile.BYTES_PER_BLOCK);
-                    minheap.insert(record);
+        int numRuns = runsToMerge.length;
+        Run[][] partitions = new KeyRangePartitioner(runFileParser, codec,
+            layout).partition(runsToMerge, mergeThreads);
+
+        List<Callable<Long>> tasks = new ArrayList<>();
+        long partitionStart = outputStart;
+        for (Run[] slices : partitions) {
+            long start = partitionStart;
+            tasks.add(() -> {
+                RunCursor[] partitionCursors = newCursors(numRuns);
+                BlockWriter writer = newWriter(mergeFileParser, null,
+                    mergeThreads);
+                writer.setIndex(blockIndex);
+                try {
+                    return mergeInto(partitionCursors, runFileParser, writer,
+                        slices, start).getEndPosition();
                 }
-                else {
-                    // Regular record without run number
-                    Record record = new Record(recID, key, -1); // -1 indicates
-                                                                // no specific
-                                                                // run number
-                    minheap.insert(record);
+                finally {
+                    for (RunCursor cursor : partitionCursors) {
+                        cursor.close();
+                    }
+                    writer.close();
                 }
+            });
+            for (Run slice : slices) {
+                partitionStart += slice.getLength();
             }
         }
+        runInParallel(tasks, "merge-partition");
 
-        // Set up output buffer for writing merged records
-        ByteBuffer outputByteBuffer = ByteBuffer.wrap(outputBuffer);
-        int outputIndex = 0;
-
-        // Merge records from all runs
-        while (minheap.heapSize() > 0) {
-            Record minRecord = minheap.removeMin();
-            int minRecordRunNum = minRecord.getRunNum();
-            // Write the minimum record to the output buffer
-            outputByteBuffer.putLong(minRecord.getID());
-            outputByteBuffer.putDouble(minRecord.getKey());
-            outputIndex += ByteFile.BYTES_PER_RECORD;
-
-            if (minRecordRunNum != -1) {
-                Run currentRun = runsToMerge.getRunByNumber(minRecordRunNum);
-                long currentPositionRun = currentRun.getCurrentPosition();
-                long endPositionRun = currentRun.getEndPosition();
-
-                // Check if there are fewer bytes left than a full block
-                if (currentPositionRun
-                    + ByteFile.BYTES_PER_BLOCK >= endPositionRun) {
-                    // Calculate how many bytes remain until the end of the run
-                    int remainingBytes = (int)(endPositionRun
-                        - currentPositionRun);
-                    // Create a temporary byte array of size `remainingBytes`
-                    byte[] tempBuffer = new byte[remainingBytes];
-                    runFileParser.getFile().seek(currentPositionRun);
-                    int bytesRead = runFileParser.getFile().read(tempBuffer, 0,
-                        remainingBytes);
-
-                    // If we successfully read the remaining bytes
-                    if (bytesRead > 0) {
-                        // Wrap the tempBuffer in a ByteBuffer for easy data
-                        // access
-                        ByteBuffer tempByteBuffer = ByteBuffer.wrap(tempBuffer);
-
-                        // Iterate over the records in the temporary buffer and
-                        // insert them into the minheap
-                        while (tempByteBuffer
-                            .remaining() >= ByteFile.BYTES_PER_RECORD) {
-                            long recID = tempByteBuffer.getLong(); // Read 8
-                                                                   // bytes for
-                                                                   // recID
-                            double key = tempByteBuffer.getDouble(); // Read 8
-                                                                     // bytes
-                                                                     // for key
-
-                            // Insert the record into the minheap
-                            Record record = new Record(recID, key,
-                                minRecordRunNum); // Mark with runNum
-                            minheap.insert(record);
-                        }
-                    }
-                    // Update the current position of the run to indicate that
-                    // we have read till the end
-                    currentRun.setCurrentPosition(endPositionRun);
+        return new Run(outputStart, partitionStart - outputStart,
+            partitionStart, groupRunNum);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Merges runs into the shards. The runs are cut into one key range per
+     * shard at the splitters of the sample, and every range is merged into
+     * its shard from the start, with cursors and a writer of its own. Each
+     * shard is cut to what was merged into it.
+     * 
+     * @param runFileParser
+     *            the FileParser to read each run's data
+     * @param runsToMerge
+     *            the runs to be merged
+     * @param groupRunNum
+     *            the identifier number for the merged run
+     * @return a run as long as all shards together
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private Run mergeShards(
+        FileParser runFileParser,
+        Run[] runsToMerge,
+        int groupRunNum)
+        throws IOException {
+        int numRuns = runsToMerge.length;
+        KeyRangePartitioner partitioner = new KeyRangePartitioner(
+            runFileParser, codec, layout);
+        Run[][] partitions = (sample.size() > 0)
+            ? partitioner.partition(runsToMerge, sample.splitters(
+                shards.length))
+            : partitioner.partition(runsToMerge, shards.length);
+
+        long[] lengths = new long[shards.length];
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int p = 0; p < shards.length; p++) {
+            FileParser shard = shards[p];
+            Run[] slices = partitions[p];
+            int index = p;
+            tasks.add(() -> {
+                RunCursor[] shardCursors = newCursors(numRuns);
+                BlockWriter writer = newWriter(shard, null, finalMerges());
+                try {
+                    lengths[index] = mergeInto(shardCursors, runFileParser,
+                        writer, slices, 0).getEndPosition();
                 }
-                else {
-                    // Regular case: More than a full block left to read
-                    runFileParser.getFile().seek(currentPositionRun);
-                    int bytesRead = runFileParser.readNextBlock(inputBuffer);
-
-                    if (bytesRead > 0) {
-                        ByteBuffer newBuffer = ByteBuffer.wrap(inputBuffer);
-
-                        // Corrected code for reading from newBuffer
-                        while (newBuffer
-                            .remaining() >= ByteFile.BYTES_PER_RECORD) {
-                            // Safely read the record only if there are enough
-                            // bytes available
-                            long recID = newBuffer.getLong(); // Read 8 bytes
-                                                              // for recID
-                            double key = newBuffer.getDouble(); // Read 8 bytes
-                                                                // for key
-
-                            Record newRecord = new Record(recID, key,
-                                minRecordRunNum);
-                            minheap.insert(newRecord);
-                        }
-                        // Update the current position of the run after reading
-                        // the block
-                        currentRun.setCurrentPosition(currentPositionRun
-                            + ByteFile.BYTES_PER_BLOCK);
+                finally {
+                    for (RunCursor cursor : shardCursors) {
+                        cursor.close();
                     }
+                    writer.close();
+                }
+                if (shard.getFile().length() > lengths[index]) {
+                    shard.resize(lengths[index]);
                 }
+                return lengths[index];
+            });
+        }
+        runInParallel(tasks, mergeThreads, "merge-shard");
+
+        long total = 0;
+        StringBuilder sizes = new StringBuilder();
+        for (long length : lengths) {
+            total += length;
+            sizes.append(' ').append(length / ByteFile.BYTES_PER_RECORD);
+        }
+        LOGGER.info("Records per shard:" + sizes);
+        return new Run(0, total, total, groupRunNum);
+    }
+
 
+    // ----------------------------------------------------------
+    /**
+     * Keeps the natural runs of the input and generates runs from the
+     * records between them, appended to the input past its end.
+     * 
+     * @param inputParser
+     *            the input file, which receives the runs
+     * @param naturalRuns
+     *            the natural runs in file order
+     * @return the runs, in file order
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private DLList generateAroundNaturalRuns(
+        FileParser inputParser,
+        DLList naturalRuns)
+        throws IOException {
+        long length = inputParser.getFile().length();
+        if (manifest != null) {
+            manifest.beginGeneration();
+        }
+        RunCatalog catalog = new RunCatalog(manifest);
+        BlockWriter writer = newWriter(inputParser, null, 1);
+        long outputPos = length;
+        long gapStart = 0;
+        try {
+            Iterator<Run> runIterator = naturalRuns.iterator();
+            while (runIterator.hasNext()) {
+                Run natural = runIterator.next();
+                outputPos = generateGap(inputParser, gapStart, natural
+                    .getStartPosition(), outputPos, writer, catalog);
+                catalog.add(natural.getStartPosition(), natural.getLength(),
+                    natural.getEndPosition());
+                gapStart = natural.getEndPosition();
+            }
+            outputPos = generateGap(inputParser, gapStart, length, outputPos,
+                writer, catalog);
+        }
+        finally {
+            // Every run must be on disk before it is read
+            writer.close();
+        }
+
+        DLList runList = catalog.toRunList();
+        if (manifest != null) {
+            inputParser.sync();
+            manifest.checkpoint(inputParser.getFileName(), outputPos, runList,
+                null);
+        }
+        if (metrics != null) {
+            metrics.recordRuns(runList);
+        }
+        LOGGER.info("Kept " + naturalRuns.size() + " natural run(s), "
+            + (runList.size() - naturalRuns.size()) + " run(s) generated");
+        return runList;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Generates the runs of the records between two natural runs. Without a
+     * codec or a combiner the runs take exactly as many bytes as the
+     * records.
+     * 
+     * @param inputParser
+     *            the input file
+     * @param start
+     *            the position of the first record
+     * @param end
+     *            the position just past the last record
+     * @param outputStart
+     *            the position the runs are written to
+     * @param writer
+     *            the writer for the input file
+     * @param catalog
+     *            the catalog receiving the runs
+     * @return the position just past the runs
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private long generateGap(
+        FileParser inputParser,
+        long start,
+        long end,
+        long outputStart,
+        BlockWriter writer,
+        RunCatalog catalog)
+        throws IOException {
+        if (start >= end) {
+            return outputStart;
+        }
+        ByteBuffer scratch = ByteBuffer.wrap(inputBuffer);
+        ChunkRunGenerator generator;
+        if (radixSorter != null) {
+            radixSorter.setLayout(layout);
+            generator = new LoadSortStoreGenerator(radixSorter, inputParser,
+                start, end, outputStart, scratch, writer, catalog);
+        }
+        else {
+            generator = new RunGenerator(minheap, layout, inputParser, start,
+                end, outputStart, scratch, writer, catalog);
+        }
+        generator.call();
+        return outputStart + (end - start);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Splits the input into one chunk per worker along block boundaries and
+     * generates the runs of every chunk, each on its own thread unless
+     * there is only one. Every run is on disk when this returns.
+     * 
+     * @param input
+     *            the input file or stream
+     * @param length
+     *            the length of the input, where the last chunk ends
+     * @param workers
+     *            the number of run generation threads
+     * @param runFileParser
+     *            the FileParser for writing sorted runs to
+     * @return the runs, in file order
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private DLList generateRuns(
+        RecordSource input,
+        long length,
+        int workers,
+        FileParser runFileParser)
+        throws IOException {
+        RunCatalog catalog = new RunCatalog(manifest);
+        List<ChunkRunGenerator> generators = new ArrayList<>();
+        BlockWriter[] writers = new BlockWriter[workers];
+        KeySampler[] samplers = new KeySampler[workers];
+        long slack = 0;
+        // Rounded up without overflow, since a stream has no length
+        long blocks = length / ByteFile.BYTES_PER_BLOCK + ((length
+            % ByteFile.BYTES_PER_BLOCK == 0) ? 0 : 1);
+        for (int i = 0; i < workers; i++) {
+            long chunkStart = blocks * i / workers * ByteFile.BYTES_PER_BLOCK;
+            long chunkEnd = (i + 1 == workers)
+                ? length
+                : blocks * (i + 1) / workers * ByteFile.BYTES_PER_BLOCK;
+            long outputStart = chunkStart + slack;
+            ByteBuffer scratch = (i == 0)
+                ? ByteBuffer.wrap(inputBuffer)
+                : ByteBuffer.allocate(inputBuffer.length);
+            writers[i] = newWriter(runFileParser, codec, workers);
+            if (codec == null) {
+                writers[i].setIndex(blockIndex);
+            }
+            int capacity;
+            if (radixSorter != null) {
+                RadixSorter sorter = (i == 0)
+                    ? radixSorter
+                    : new RadixSorter(radixSorter.capacity());
+                sorter.setLayout(layout);
+                capacity = sorter.capacity();
+                generators.add(new LoadSortStoreGenerator(sorter, input,
+                    chunkStart, chunkEnd, outputStart, scratch, writers[i],
+                    catalog));
             }
-            // Check if output buffer is full
-            if (outputIndex >= ByteFile.BYTES_PER_BLOCK) {
-                mergeFileParser.writeBlock(outputBuffer);
-                outputByteBuffer.clear(); // Reset buffer for the next block
-                end += ByteFile.BYTES_PER_BLOCK;
-                outputIndex = 0;
+            else {
+                RecordHeap heap = (i == 0)
+                    ? minheap
+                    : new RecordHeap(minheap.capacity());
+                capacity = heap.capacity();
+                generators.add(new RunGenerator(heap, layout, input,
+                    chunkStart, chunkEnd, outputStart, scratch, writers[i],
+                    catalog));
+            }
+            generators.get(i).setCombiner(combiner);
+            if (sample != null) {
+                samplers[i] = new KeySampler(sample.capacity(), i + 1);
+                generators.get(i).setSampler(samplers[i]);
             }
+            if (codec != null && i + 1 < workers) {
+                slack += frameSlack(chunkEnd - chunkStart, capacity);
+            }
+        }
 
+        try {
+            if (workers == 1) {
+                generators.get(0).call();
+            }
+            else {
+                runInParallel(generators, "run-generator");
+            }
         }
+        finally {
+            // Every run must be on disk before it is read or renamed
+            for (BlockWriter writer : writers) {
+                writer.close();
+            }
+        }
+        if (sample != null) {
+            // Whatever an earlier scan sampled is replaced
+            sample.clear();
+            for (KeySampler sampler : samplers) {
+                sample.merge(sampler);
+            }
+        }
+        return catalog.toRunList();
+    }
 
-        if (outputIndex > 0) {
-            // Set up a ByteBuffer around the outputBuffer to extract
-            // records
-            ByteBuffer bb = ByteBuffer.wrap(outputBuffer);
 
-            // Calculate the number of records to write based on outputIndex
-            int numRecords = outputIndex / ByteFile.BYTES_PER_RECORD;
+    // ----------------------------------------------------------
+    /**
+     * Returns the record limit in bytes.
+     * 
+     * @return the bytes of recordLimit records, or Long.MAX_VALUE
+     */
+    private long limitBytes() {
+        return (recordLimit > Long.MAX_VALUE / ByteFile.BYTES_PER_RECORD)
+            ? Long.MAX_VALUE
+            : recordLimit * ByteFile.BYTES_PER_RECORD;
+    }
 
-            for (int i = 0; i < numRecords; i++) {
-                long recID = bb.getLong(); // Extract the long (recID)
-                double key = bb.getDouble(); // Extract the double (key)
 
-                // Write the record directly to the file
-                runFileParser.getFile().writeLong(recID);
-                runFileParser.getFile().writeDouble(key);
+    // ----------------------------------------------------------
+    /**
+     * Cuts every run longer than the record limit down to its first
+     * recordLimit records. A raw run then ends after them; an encoded run
+     * keeps its end, since its cursor stops when the records are used up.
+     * 
+     * @param runs
+     *            the runs, replaced by the cut runs
+     */
+    private void limitRuns(DLList runs) {
+        long limit = limitBytes();
+        Run[] current = new Run[runs.size()];
+        Iterator<Run> runIterator = runs.iterator();
+        for (int i = 0; i < current.length; i++) {
+            current[i] = runIterator.next();
+        }
+        runs.clear();
+        for (Run run : current) {
+            if (run.getLength() <= limit) {
+                runs.add(run);
+                continue;
             }
-            end += outputIndex;
-            outputIndex = 0; // Reset for the next run
+            long end = (codec == null)
+                ? run.getStartPosition() + limit
+                : run.getEndPosition();
+            Run cut = new Run(run.getStartPosition(), limit, end, run
+                .getRunNum());
+            cut.setPass(run.getPass());
+            runs.add(cut);
         }
+    }
 
-        long runLength = end - start;
 
-        // Create and return the new merged Run object
-        return new Run(start, runLength, end, groupRunNum);
+    // ----------------------------------------------------------
+    /**
+     * Creates run cursors that read ahead on the prefetch executor.
+     * 
+     * @param count
+     *            the number of cursors
+     * @return the cursors
+     */
+    private RunCursor[] newCursors(int count) {
+        RunCursor[] newCursors = new RunCursor[count];
+        for (int i = 0; i < count; i++) {
+            newCursors[i] = new RunCursor(ByteFile.BYTES_PER_BLOCK,
+                prefetchDepth, prefetchExecutor);
+            newCursors[i].setCodec(codec);
+            newCursors[i].setLayout(layout);
+        }
+        return newCursors;
     }
 
 
     // ----------------------------------------------------------
     /**
-     * Adds a record to the output buffer and increments the output index.
+     * Runs every task on a thread of its own and waits for all of them.
      * 
-     * @param record
-     *            the Record to be added to the buffer
-     * @param outputIndex
-     *            the current index in the output buffer
-     * @return the updated output index after adding the record
+     * @param tasks
+     *            the tasks
+     * @param threadName
+     *            the name of the threads
      * @throws IOException
-     *             if an I/O error occurs during buffer manipulation
+     *             if a task fails or the wait is interrupted
      */
-    private int addToOutputBuffer(Record record, int outputIndex)
+    private void runInParallel(
+        List<? extends Callable<?>> tasks,
+        String threadName)
         throws IOException {
-        ByteBuffer idBuffer = ByteBuffer.allocate(Long.BYTES);
-        ByteBuffer keyBuffer = ByteBuffer.allocate(Double.BYTES);
-        idBuffer.putLong(record.getID());
-        keyBuffer.putDouble(record.getKey());
+        runInParallel(tasks, tasks.size(), threadName);
+    }
 
-        System.arraycopy(idBuffer.array(), 0, outputBuffer, outputIndex,
-            Long.BYTES);
-        outputIndex += Long.BYTES;
-        System.arraycopy(keyBuffer.array(), 0, outputBuffer, outputIndex,
-            Double.BYTES);
-        outputIndex += Double.BYTES;
 
-        return outputIndex;
+    // ----------------------------------------------------------
+    /**
+     * Runs the tasks on up to the given number of threads and waits for all
+     * of them.
+     * 
+     * @param tasks
+     *            the tasks
+     * @param threads
+     *            the most threads to run them on
+     * @param threadName
+     *            the name of the threads
+     * @throws IOException
+     *             if a task fails or the wait is interrupted
+     */
+    private void runInParallel(
+        List<? extends Callable<?>> tasks,
+        int threads,
+        String threadName)
+        throws IOException {
+        int poolSize = Math.max(1, Math.min(threads, tasks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+            runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (Callable<?> task : tasks) {
+                results.add(executor.submit(task));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for "
+                + threadName);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(threadName + " failed", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
     }
 
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many merges the final pass runs at once, each with cursors
+     * on every run and a writer of its own: one per merge thread if the
+     * final merge is split by key range or into shards, otherwise one.
+     * 
+     * @return the number of final merges running at once
+     */
+    private int finalMerges() {
+        if (shards != null) {
+            return Math.min(mergeThreads, shards.length);
+        }
+        if (mergeThreads > 1 && output == null
+            && recordLimit == Long.MAX_VALUE && combiner == null) {
+            return mergeThreads;
+        }
+        return 1;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Closes the run cursors kept between merges, if any.
+     */
+    private void closeCursors() {
+        if (cursors != null) {
+            for (RunCursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+        cursors = null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a write-behind writer for one phase of the sort. Writers
+     * running at the same time split the output buffers between them, each
+     * keeping at least a block per buffer.
+     * 
+     * @param target
+     *            the file or stream to write to
+     * @param writerCodec
+     *            the codec to encode with, or null to write raw
+     * @param writers
+     *            the number of writers sharing the output buffers
+     * @return the writer
+     */
+    private BlockWriter newWriter(
+        BlockSink target,
+        BlockCodec writerCodec,
+        int writers) {
+        int blocks = outputBufferBytes / ByteFile.BYTES_PER_BLOCK / writers;
+        BlockWriter writer = new BlockWriter(target, Math.max(1, blocks)
+            * ByteFile.BYTES_PER_BLOCK, writeBehindDepth, writerCodec);
+        writer.setLayout(layout);
+        return writer;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many bytes the encoded runs of a chunk may take beyond the
+     * chunk. Every frame holds at most a block and adds a header at worst,
+     * and only the last frame of a run is short. A run holds at least as
+     * many records as the heap or sorter, except for at most two at the end
+     * of the chunk.
+     * 
+     * @param chunkBytes
+     *            the length of the chunk
+     * @param capacity
+     *            the capacity of the heap or sorter in records
+     * @return the room in bytes
+     */
+    private static long frameSlack(long chunkBytes, int capacity) {
+        long records = chunkBytes / ByteFile.BYTES_PER_RECORD;
+        long frames = (chunkBytes + RunFrames.MAX_RECORD_BYTES - 1)
+            / RunFrames.MAX_RECORD_BYTES;
+        return (frames + records / capacity + 2) * RunFrames.HEADER_BYTES;
+    }
 }
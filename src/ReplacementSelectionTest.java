@@ -0,0 +1,360 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the ReplacementSelection class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class ReplacementSelectionTest extends TestCase {
+    private static final int BLOCK = ByteFile.BYTES_PER_BLOCK;
+    private static final int RECORD = ByteFile.BYTES_PER_RECORD;
+    private static final int ID_BITS = 20;
+    private Path directory;
+    private double[] keys;
+
+    /**
+     * set up for tests
+     *
+     * @throws IOException
+     */
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("replacementSelectionTest");
+    }
+
+
+    /**
+     * Deletes the temporary directory
+     */
+    public void tearDown() {
+        for (File file : directory.toFile().listFiles()) {
+            file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+
+    /**
+     * Tests that every run generation thread keeps its runs inside its own
+     * chunk of blocks, with the last chunk taking the partial block
+     *
+     * @throws IOException
+     */
+    public void testRunsStayInTheirChunks() throws IOException {
+        int count = 10 * ByteFile.RECORDS_PER_BLOCK + 100;
+        FileParser input = writeInput(count, 9);
+        FileParser runFile = parser("runs.bin");
+        ReplacementSelection selection = newSelection(256);
+        selection.setRunThreads(3);
+        DLList runs = selection.performReplacementSelection(input, runFile);
+
+        // 11 blocks split between 3 threads
+        long[] bounds = { 0, 3L * BLOCK, 7L * BLOCK, (long)count * RECORD };
+        long previousEnd = 0;
+        Iterator<Run> iterator = runs.iterator();
+        while (iterator.hasNext()) {
+            Run run = iterator.next();
+            assertEquals(previousEnd, run.getStartPosition());
+            int chunk = 0;
+            while (run.getStartPosition() >= bounds[chunk + 1]) {
+                chunk++;
+            }
+            assertTrue(run.getEndPosition() <= bounds[chunk + 1]);
+            previousEnd = run.getEndPosition();
+        }
+        assertEquals(bounds[3], previousEnd);
+        assertTrue(runs.size() > 3);
+        assertRuns(input, runs, null);
+        input.close();
+    }
+
+
+    /**
+     * Tests that encoded runs of several threads do not overlap, when
+     * frames of random records take more room than the records
+     *
+     * @throws IOException
+     */
+    public void testEncodedRunsLeaveRoom() throws IOException {
+        for (String name : new String[] { "delta", "xor+zip" }) {
+            int count = 9 * ByteFile.RECORDS_PER_BLOCK + 3;
+            FileParser input = writeInput(count, 10);
+            FileParser runFile = parser("runs.bin");
+            BlockCodec codec = BlockCodec.forName(name);
+            ReplacementSelection selection = newSelection(200);
+            selection.setRunThreads(4);
+            selection.setCodec(codec);
+            DLList runs = selection.performReplacementSelection(input,
+                runFile);
+
+            long previousEnd = 0;
+            Iterator<Run> iterator = runs.iterator();
+            while (iterator.hasNext()) {
+                Run run = iterator.next();
+                assertTrue(run.getStartPosition() >= previousEnd);
+                previousEnd = run.getEndPosition();
+            }
+            assertTrue(previousEnd <= input.getFile().length());
+            assertRuns(input, runs, codec);
+            input.close();
+        }
+    }
+
+
+    /**
+     * Tests run generation with more threads than the input has blocks
+     *
+     * @throws IOException
+     */
+    public void testMoreThreadsThanBlocks() throws IOException {
+        int count = 2 * ByteFile.RECORDS_PER_BLOCK + 3;
+        FileParser input = writeInput(count, 11);
+        ReplacementSelection selection = newSelection(256);
+        selection.setRunThreads(8);
+        DLList runs = selection.performReplacementSelection(input, parser(
+            "runs.bin"));
+        assertEquals((long)count * RECORD, input.getFile().length());
+        assertRuns(input, runs, null);
+        input.close();
+    }
+
+
+    /**
+     * Tests that a final merge split by key range between threads writes
+     * the same keys as a single merge thread, and every record once, on
+     * skewed keys and on keys with few distinct values. Records with equal
+     * keys may come in another order, since the merge plan depends on the
+     * number of threads.
+     *
+     * @throws IOException
+     */
+    public void testPartitionedMergeMatchesSingleThread() throws IOException {
+        int count = 24 * ByteFile.RECORDS_PER_BLOCK + 11;
+        Random rng = new Random(12);
+        double[] skewed = new double[count];
+        double[] duplicates = new double[count];
+        for (int i = 0; i < count; i++) {
+            // Nine in ten keys are the same, the rest crowd near it
+            skewed[i] = (rng.nextInt(10) == 0)
+                ? Math.pow(rng.nextDouble(), 8)
+                : 0.5;
+            duplicates[i] = rng.nextInt(5);
+        }
+        for (double[] inputKeys : new double[][] { skewed, duplicates }) {
+            ByteBuffer expected = ByteBuffer.wrap(mergeWith(inputKeys, 1));
+            for (int threads : new int[] { 2, 3, 8 }) {
+                ByteBuffer sorted = ByteBuffer.wrap(mergeWith(inputKeys,
+                    threads));
+                boolean[] seen = new boolean[count];
+                for (int i = 0; i < count; i++) {
+                    int id = (int)(sorted.getLong() & ((1 << ID_BITS) - 1));
+                    assertFalse(seen[id]);
+                    seen[id] = true;
+                    double key = sorted.getDouble();
+                    assertEquals(inputKeys[id], key, 0.0);
+                    assertEquals(expected.getDouble(i * RECORD + Long.BYTES),
+                        key, 0.0);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Tests that merge passes swap the run and merge files, and that the
+     * sorted run ends up in the run file and the merge file empty, after an
+     * odd or an even number of passes that write the merge file
+     *
+     * @throws IOException
+     */
+    public void testPassesSwapFiles() throws IOException {
+        boolean[] parities = new boolean[2];
+        for (int heapRecords : new int[] { 2048, 400, 100, 30 }) {
+            int count = 16 * ByteFile.RECORDS_PER_BLOCK + 5;
+            FileParser input = writeInput(count, heapRecords);
+            FileParser mergeFile = parser("merge.bin");
+            try {
+                ReplacementSelection selection = newSelection(heapRecords);
+                DLList runs = selection.performReplacementSelection(input,
+                    parser("runs.bin"));
+                MergePlanner planner = new MergePlanner(4, false);
+                planner.setFinalFanIn(4);
+                int swaps = 0;
+                for (MergePlan.Pass pass : planner.plan(runs).getPasses()) {
+                    if (!pass.carriesRuns()) {
+                        swaps++;
+                    }
+                }
+                parities[swaps % 2] = true;
+
+                selection.recursiveMultiwayMerge(input, mergeFile, runs);
+                assertEquals(1, runs.size());
+                assertTrue(input.getFileName().endsWith("input.bin"));
+                assertEquals((long)count * RECORD, input.getFile().length());
+                assertEquals(0, mergeFile.getFile().length());
+                assertRuns(input, runs, null);
+            }
+            finally {
+                input.close();
+                mergeFile.close();
+            }
+        }
+        assertTrue(parities[0]);
+        assertTrue(parities[1]);
+    }
+
+
+    /**
+     * Sorts records with the given keys into runs and merges them with the
+     * given number of final merge threads.
+     *
+     * @param inputKeys
+     *            the keys of the records
+     * @param mergeThreads
+     *            the number of merge threads
+     * @return the sorted file
+     * @throws IOException
+     */
+    private byte[] mergeWith(double[] inputKeys, int mergeThreads)
+        throws IOException {
+        FileParser input = writeInput(inputKeys, 13);
+        FileParser runFile = parser("runs.bin");
+        FileParser mergeFile = parser("merge.bin");
+        try {
+            ReplacementSelection selection = newSelection(256);
+            selection.setMergeThreads(mergeThreads);
+            DLList runs = selection.performReplacementSelection(input,
+                runFile);
+            assertTrue(runs.size() > 4);
+            selection.recursiveMultiwayMerge(input, mergeFile, runs);
+        }
+        finally {
+            input.close();
+            mergeFile.close();
+        }
+        byte[] sorted = Files.readAllBytes(directory.resolve("input.bin"));
+        assertEquals(inputKeys.length * RECORD, sorted.length);
+        return sorted;
+    }
+
+
+    /**
+     * Creates a ReplacementSelection with a heap of the given size and
+     * buffers of a block.
+     *
+     * @param heapRecords
+     *            the capacity of the heap
+     * @return the ReplacementSelection
+     */
+    private ReplacementSelection newSelection(int heapRecords) {
+        return new ReplacementSelection(new RecordHeap(heapRecords),
+            new byte[BLOCK], BLOCK, 4);
+    }
+
+
+    /**
+     * Opens a file in the temporary directory.
+     *
+     * @param name
+     *            the name of the file
+     * @return the FileParser
+     * @throws IOException
+     */
+    private FileParser parser(String name) throws IOException {
+        return new FileParser(directory.resolve(name).toString());
+    }
+
+
+    /**
+     * Writes an input file of records with random keys, whose IDs end in
+     * their record numbers.
+     *
+     * @param count
+     *            the number of records
+     * @param seed
+     *            the seed of the keys
+     * @return the input file
+     * @throws IOException
+     */
+    private FileParser writeInput(int count, long seed) throws IOException {
+        double[] randomKeys = new double[count];
+        Random rng = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            randomKeys[i] = rng.nextDouble();
+        }
+        return writeInput(randomKeys, seed);
+    }
+
+
+    /**
+     * Writes an input file of records with the given keys, whose IDs end
+     * in their record numbers.
+     *
+     * @param inputKeys
+     *            the keys of the records
+     * @param seed
+     *            the seed of the IDs
+     * @return the input file
+     * @throws IOException
+     */
+    private FileParser writeInput(double[] inputKeys, long seed)
+        throws IOException {
+        keys = inputKeys;
+        Random rng = new Random(seed);
+        ByteBuffer records = ByteBuffer.allocate(keys.length * RECORD);
+        for (int i = 0; i < keys.length; i++) {
+            // Random high bits keep the codecs from shrinking the IDs
+            records.putLong(rng.nextLong() << ID_BITS | i);
+            records.putDouble(keys[i]);
+        }
+        Path path = directory.resolve("input.bin");
+        Files.write(path, records.array());
+        return new FileParser(path.toString());
+    }
+
+
+    /**
+     * Checks that every run is sorted and that the runs together hold every
+     * input record once.
+     *
+     * @param file
+     *            the file holding the runs
+     * @param runs
+     *            the runs
+     * @param codec
+     *            the codec of the runs, or null
+     * @throws IOException
+     */
+    private void assertRuns(FileParser file, DLList runs, BlockCodec codec)
+        throws IOException {
+        boolean[] seen = new boolean[keys.length];
+        RunCursor cursor = new RunCursor(BLOCK);
+        cursor.setCodec(codec);
+        Iterator<Run> iterator = runs.iterator();
+        while (iterator.hasNext()) {
+            cursor.open(file, iterator.next());
+            double previous = Double.NEGATIVE_INFINITY;
+            while (!cursor.isExhausted()) {
+                int id = (int)(cursor.getWord0() & ((1 << ID_BITS) - 1));
+                double key = Double.longBitsToDouble(cursor.getWord1());
+                assertFalse(seen[id]);
+                seen[id] = true;
+                assertEquals(keys[id], key, 0.0);
+                assertTrue(previous <= key);
+                previous = key;
+                cursor.advance();
+            }
+        }
+        cursor.close();
+        for (boolean record : seen) {
+            assertTrue(record);
+        }
+    }
+}
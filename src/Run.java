@@ -20,13 +20,15 @@ public class Run {
     private long startPosition;
 
     /**
-     * The length of the run in bytes.
+     * The length of the run in bytes. For an encoded run this is the length
+     * of its records, not of its frames.
      */
     private long length;
 
     /**
      * The end position of the run in the binary file, calculated as
-     * startPosition + length.
+     * startPosition + length for a raw run and past the last frame for an
+     * encoded one.
      */
     private long endPosition;
 
@@ -40,6 +42,17 @@ public class Run {
      * sorting and merging.
      */
     private int runNum;
+
+    /**
+     * The merge pass that wrote this run, 0 for run generation.
+     */
+    private int pass;
+
+    /**
+     * Records to skip before the run starts. A slice of an encoded run
+     * starts at the frame holding its first record.
+     */
+    private int skipRecords;
     // ~ Constructors ..........................................................
 
     // ----------------------------------------------------------
@@ -132,4 +145,51 @@ public class Run {
     public int getRunNum() {
         return runNum;
     }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the merge pass that wrote this run.
+     * 
+     * @return the pass number, 0 for a run from run generation
+     */
+    public int getPass() {
+        return pass;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the merge pass that wrote this run.
+     * 
+     * @param pass
+     *            the pass number, 0 for a run from run generation
+     */
+    public void setPass(int pass) {
+        this.pass = pass;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many records of the first frame come before the run.
+     * 
+     * @return the records to skip, 0 unless this is a slice of an encoded
+     *         run
+     */
+    public int getSkipRecords() {
+        return skipRecords;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many records of the first frame come before the run.
+     * 
+     * @param skipRecords
+     *            the records to skip
+     */
+    public void setSkipRecords(int skipRecords) {
+        this.skipRecords = skipRecords;
+    }
 }
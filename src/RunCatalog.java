@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// -------------------------------------------------------------------------
+/**
+ * RunCatalog collects the runs produced during run generation. Several
+ * generators may add runs at the same time, so every method is synchronized.
+ * Once generation is over the catalog is turned into the run list the merge
+ * works on, ordered by position in the run file and numbered from 0. With a
+ * RunManifest every run is journaled as soon as it is added.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class RunCatalog {
+    // ~ Fields ................................................................
+    /**
+     * The runs added so far, in the order they were finished.
+     */
+    private List<Run> runs;
+
+    /**
+     * Manifest journaling every run, or null.
+     */
+    private RunManifest manifest;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty RunCatalog object.
+     */
+    public RunCatalog() {
+        this(null);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty RunCatalog object that journals every run.
+     *
+     * @param manifest
+     *            the manifest journaling the runs, or null for none
+     */
+    public RunCatalog(RunManifest manifest) {
+        this.runs = new ArrayList<>();
+        this.manifest = manifest;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Records a finished run.
+     *
+     * @param start
+     *            the position of the run in the run file
+     * @param length
+     *            the length of the records of the run in bytes
+     * @param end
+     *            the position just past the run, start + length unless the
+     *            run is encoded
+     * @throws IOException
+     *             if the run can not be journaled
+     */
+    public synchronized void add(long start, long length, long end)
+        throws IOException {
+        runs.add(new Run(start, length, end, runs.size()));
+        if (manifest != null) {
+            manifest.runGenerated(start, length, end);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of runs recorded.
+     *
+     * @return the run count
+     */
+    public synchronized int size() {
+        return runs.size();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Builds the run list for the merge: runs in file order, numbered by
+     * their place in the list.
+     *
+     * @return the run list
+     */
+    public synchronized DLList toRunList() {
+        List<Run> ordered = new ArrayList<>(runs);
+        ordered.sort(Comparator.comparingLong(Run::getStartPosition));
+        DLList runList = new DLList();
+        for (Run run : ordered) {
+            runList.add(new Run(run.getStartPosition(), run.getLength(), run
+                .getEndPosition(), runList.size()));
+        }
+        return runList;
+    }
+}
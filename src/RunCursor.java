@@ -0,0 +1,522 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// -------------------------------------------------------------------------
+/**
+ * RunCursor reads one run record by record during a merge. It owns block
+ * buffers for its run and refills them from the run file when the current
+ * one is used up, so the merge only sees the current record of each run.
+ * When the run file is mapped the cursor reads the mapping directly instead.
+ *
+ * With a prefetch depth above zero the cursor owns depth + 1 buffers and an
+ * I/O executor fills the standby buffers with the next blocks of the run
+ * while the merge consumes the current one, so the merge only waits for the
+ * disk when it outruns the read-ahead. With depth zero every block is read
+ * synchronously when it is needed.
+ *
+ * A cursor with a BlockCodec reads encoded runs: it puts the frames of the
+ * run back together from the blocks, which they may straddle, and decodes
+ * one frame at a time. It stops after the number of records the run holds,
+ * so a slice of an encoded run may end inside a frame, and it skips the
+ * records of the first frame that come before the slice.
+ *
+ * The cursor keeps the current record as it was read, for the merge to
+ * write unchanged, together with its normalized key from the RecordLayout,
+ * which the merge compares.
+ *
+ * A cursor can be reused for another run with open(), which keeps its
+ * buffers.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class RunCursor {
+    // ~ Fields ................................................................
+    /**
+     * The file the run is read from.
+     */
+    private FileParser runFileParser;
+
+    /**
+     * The run this cursor reads. Its current position is the next position
+     * to request a block from, which runs ahead of the records consumed.
+     */
+    private Run run;
+
+    /**
+     * Buffers not holding a block at the moment.
+     */
+    private ArrayDeque<ByteBuffer> freeBuffers;
+
+    /**
+     * Requested blocks in run order.
+     */
+    private ArrayDeque<Future<ByteBuffer>> pendingBlocks;
+
+    /**
+     * The buffers the requested blocks are read into, in the same order.
+     */
+    private ArrayDeque<ByteBuffer> pendingBuffers;
+
+    /**
+     * The buffer behind the current block, or null.
+     */
+    private ByteBuffer currentBuffer;
+
+    /**
+     * View over the current block: part of a buffer, or a slice of the
+     * mapping when the run file is mapped.
+     */
+    private ByteBuffer blockView;
+
+    /**
+     * The records being consumed: the current block, or the decoded frame
+     * when the run is encoded.
+     */
+    private ByteBuffer byteBuffer;
+
+    /**
+     * Codec the runs are encoded with, or null for raw runs.
+     */
+    private BlockCodec codec;
+
+    /**
+     * Buffer a frame is put together in, only with a codec.
+     */
+    private ByteBuffer frame;
+
+    /**
+     * Buffer a frame is decoded into, only with a codec.
+     */
+    private ByteBuffer records;
+
+    /**
+     * Records of the run not consumed yet.
+     */
+    private long recordsLeft;
+
+    /**
+     * Records still to skip at the start of the run.
+     */
+    private long skipRecords;
+
+    /**
+     * Executor that reads blocks ahead, or null to read synchronously.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Layout giving the normalized keys of the records.
+     */
+    private RecordLayout layout;
+
+    /**
+     * First 8 bytes of the current record.
+     */
+    private long word0;
+
+    /**
+     * Last 8 bytes of the current record.
+     */
+    private long word1;
+
+    /**
+     * Normalized key of the current record.
+     */
+    private long key;
+
+    /**
+     * True once every record of the run has been consumed.
+     */
+    private boolean exhausted;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new RunCursor object with one block buffer that reads
+     * synchronously.
+     *
+     * @param blockBytes
+     *            size of the block buffer, a multiple of the record size
+     */
+    public RunCursor(int blockBytes) {
+        this(blockBytes, 0, null);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new RunCursor object that reads ahead.
+     *
+     * @param blockBytes
+     *            size of each block buffer, a multiple of the record size
+     * @param prefetchDepth
+     *            number of blocks read ahead of the current one
+     * @param executor
+     *            the executor doing the reads, or null to read synchronously
+     */
+    public RunCursor(
+        int blockBytes,
+        int prefetchDepth,
+        ExecutorService executor) {
+        this.executor = (prefetchDepth > 0) ? executor : null;
+        this.freeBuffers = new ArrayDeque<>();
+        this.pendingBlocks = new ArrayDeque<>();
+        this.pendingBuffers = new ArrayDeque<>();
+        int numBuffers = (this.executor == null) ? 1 : prefetchDepth + 1;
+        for (int i = 0; i < numBuffers; i++) {
+            freeBuffers.add(ByteBuffer.allocate(blockBytes));
+        }
+        this.blockView = ByteBuffer.allocate(0);
+        this.byteBuffer = blockView;
+        this.layout = RecordLayout.DEFAULT;
+        this.exhausted = true;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets the codec the runs opened from now on are encoded with.
+     *
+     * @param blockCodec
+     *            the codec, or null for raw runs
+     */
+    public void setCodec(BlockCodec blockCodec) {
+        this.codec = blockCodec;
+        if (codec != null && frame == null) {
+            frame = ByteBuffer.allocate(RunFrames.HEADER_BYTES
+                + RunFrames.MAX_RECORD_BYTES);
+            records = ByteBuffer.allocate(RunFrames.MAX_RECORD_BYTES);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the layout of the records of the runs opened from now on.
+     *
+     * @param recordLayout
+     *            the layout
+     */
+    public void setLayout(RecordLayout recordLayout) {
+        this.layout = recordLayout;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Points the cursor at the start of a run, starts reading ahead and reads
+     * its first record.
+     *
+     * @param parser
+     *            the FileParser holding the run
+     * @param newRun
+     *            the run to read
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public void open(FileParser parser, Run newRun) throws IOException {
+        close();
+        this.runFileParser = parser;
+        this.run = newRun;
+        this.exhausted = false;
+        this.recordsLeft = newRun.getLength() / ByteFile.BYTES_PER_RECORD;
+        this.skipRecords = newRun.getSkipRecords();
+        blockView = ByteBuffer.allocate(0);
+        byteBuffer = blockView;
+        requestBlocks();
+        advance();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Moves to the next record of the run, switching to the next block or
+     * frame when the current one is used up.
+     *
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public void advance() throws IOException {
+        if (recordsLeft == 0 || (!byteBuffer.hasRemaining()
+            && !nextRecords())) {
+            exhausted = true;
+            return;
+        }
+        recordsLeft--;
+        word0 = byteBuffer.getLong();
+        word1 = byteBuffer.getLong();
+        key = layout.key(word0, word1);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Waits for outstanding reads and takes back all buffers. Called before
+     * the cursor is reopened and when a merge is abandoned.
+     */
+    public void close() {
+        while (!pendingBlocks.isEmpty()) {
+            try {
+                pendingBlocks.poll().get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                // The block is discarded anyway
+            }
+            freeBuffers.add(pendingBuffers.poll());
+        }
+        if (currentBuffer != null) {
+            freeBuffers.add(currentBuffer);
+            currentBuffer = null;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns whether every record of the run has been consumed.
+     *
+     * @return true if the run is exhausted
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the first 8 bytes of the current record, the record ID in the
+     * default layout.
+     *
+     * @return the first word
+     */
+    public long getWord0() {
+        return word0;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the last 8 bytes of the current record, the key bits in the
+     * default layout.
+     *
+     * @return the second word
+     */
+    public long getWord1() {
+        return word1;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the normalized key of the current record.
+     *
+     * @return the key
+     */
+    public long getKey() {
+        return key;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the run this cursor reads.
+     *
+     * @return the run
+     */
+    public Run getRun() {
+        return run;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Makes the next records of the run current: the next block of a raw
+     * run, or the next frame of an encoded one.
+     *
+     * @return false if the run has no more data
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private boolean nextRecords() throws IOException {
+        if (codec == null) {
+            if (!nextBlock()) {
+                return false;
+            }
+            byteBuffer = blockView;
+            return true;
+        }
+        while (true) {
+            frame.clear();
+            frame.limit(RunFrames.HEADER_BYTES);
+            if (!fill(frame)) {
+                return false;
+            }
+            frame.flip();
+            RunFrames.checkHeader(frame, run);
+            int count = RunFrames.recordCount(frame);
+            frame.limit(RunFrames.payloadLength(frame));
+            frame.position(0);
+            if (!fill(frame)) {
+                throw new EOFException("Run " + run.getRunNum()
+                    + " ends inside a frame");
+            }
+            frame.flip();
+            records.clear();
+            RunFrames.decode(codec, count, frame, records);
+            records.flip();
+
+            // A slice starts inside its first frame
+            long skip = Math.min(skipRecords, count);
+            skipRecords -= skip;
+            records.position((int)skip * ByteFile.BYTES_PER_RECORD);
+            if (records.hasRemaining()) {
+                byteBuffer = records;
+                return true;
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Copies the next bytes of the run into a buffer, moving on to the next
+     * blocks as needed.
+     *
+     * @param dst
+     *            the buffer, filled from its position to its limit
+     * @return false if the run ends before the first byte
+     * @throws IOException
+     *             if the run ends after the first byte, or a read fails
+     */
+    private boolean fill(ByteBuffer dst) throws IOException {
+        boolean started = false;
+        while (dst.hasRemaining()) {
+            if (!blockView.hasRemaining() && !nextBlock()) {
+                if (started) {
+                    throw new EOFException("Run " + run.getRunNum()
+                        + " ends inside a frame");
+                }
+                return false;
+            }
+            int bytes = Math.min(dst.remaining(), blockView.remaining());
+            ByteBuffer part = blockView.duplicate();
+            part.limit(part.position() + bytes);
+            dst.put(part);
+            blockView.position(blockView.position() + bytes);
+            started = true;
+        }
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Releases the current block and makes the oldest requested block
+     * current, waiting for it if it has not arrived yet.
+     *
+     * @return false if the run has no more data
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private boolean nextBlock() throws IOException {
+        if (currentBuffer != null) {
+            freeBuffers.add(currentBuffer);
+            currentBuffer = null;
+        }
+        requestBlocks();
+        if (pendingBlocks.isEmpty()) {
+            return false;
+        }
+
+        currentBuffer = pendingBuffers.poll();
+        try {
+            blockView = pendingBlocks.poll().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading run "
+                + run.getRunNum());
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException("Failed to read run " + run.getRunNum(), e
+                .getCause());
+        }
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Requests the next blocks of the run into every free buffer. Without an
+     * executor the read happens right here.
+     *
+     * @throws IOException
+     *             if a synchronous read fails
+     */
+    private void requestBlocks() throws IOException {
+        while (!freeBuffers.isEmpty()) {
+            long position = run.getCurrentPosition();
+            int bytes = (int)Math.min(freeBuffers.peek().capacity(), run
+                .getEndPosition() - position);
+            if (bytes <= 0) {
+                return;
+            }
+            ByteBuffer buffer = freeBuffers.poll();
+            run.setCurrentPosition(position + bytes);
+
+            Future<ByteBuffer> block;
+            if (executor == null) {
+                block = CompletableFuture.completedFuture(readBlock(position,
+                    bytes, buffer));
+            }
+            else {
+                block = executor.submit(() -> readBlock(position, bytes,
+                    buffer));
+            }
+            pendingBuffers.add(buffer);
+            pendingBlocks.add(block);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Reads one block of the run with a positional read, since the cursors
+     * of one merge share the file. May run on the I/O executor.
+     *
+     * @param position
+     *            the file position of the block
+     * @param bytes
+     *            the length of the block
+     * @param buffer
+     *            the buffer to read into
+     * @return a view of the block
+     * @throws IOException
+     *             if the read fails or the file ends early
+     */
+    private ByteBuffer readBlock(long position, int bytes, ByteBuffer buffer)
+        throws IOException {
+        ByteBuffer view = runFileParser.readView(position, bytes, buffer);
+        if (view.remaining() < bytes) {
+            throw new EOFException("Run " + run.getRunNum()
+                + " ends past the end of " + runFileParser.getFileName());
+        }
+        return view;
+    }
+}
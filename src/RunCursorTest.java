@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import student.TestCase;
+
+/**
+ * Test class for the RunCursor class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class RunCursorTest extends TestCase {
+    private static final int RECORDS = 20 * ByteFile.RECORDS_PER_BLOCK + 37;
+    private Path path;
+    private ExecutorService executor;
+
+    /**
+     * Writes records whose IDs are their record numbers
+     *
+     * @throws IOException
+     */
+    public void setUp() throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(RECORDS
+            * ByteFile.BYTES_PER_RECORD);
+        for (int i = 0; i < RECORDS; i++) {
+            records.putLong(i);
+            records.putDouble(i / 2.0);
+        }
+        path = Files.createTempFile("runCursorTest", ".bin");
+        Files.write(path, records.array());
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+
+    /**
+     * Deletes the file and stops the executor
+     *
+     * @throws IOException
+     */
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        Files.delete(path);
+    }
+
+
+    /**
+     * Tests that cursors reading ahead by several blocks return the same
+     * records as a synchronous cursor, for runs that start and end inside
+     * blocks
+     *
+     * @throws IOException
+     */
+    public void testPrefetchDepths() throws IOException {
+        for (IOMode mode : new IOMode[] { IOMode.CHANNEL, IOMode.MAPPED }) {
+            FileParser parser = new FileParser(path.toString(), mode);
+            try {
+                for (int depth : new int[] { 0, 1, 2, 4 }) {
+                    RunCursor cursor = new RunCursor(ByteFile.BYTES_PER_BLOCK,
+                        depth, executor);
+                    assertRecords(cursor, parser, 0, RECORDS);
+                    assertRecords(cursor, parser, 100, RECORDS - 5);
+                    assertRecords(cursor, parser, 7, 7);
+                    cursor.close();
+                }
+            }
+            finally {
+                parser.close();
+            }
+        }
+    }
+
+
+    /**
+     * Tests that a cursor reopened with reads still in flight starts the
+     * new run cleanly
+     *
+     * @throws IOException
+     */
+    public void testReopenWhileReadingAhead() throws IOException {
+        FileParser parser = new FileParser(path.toString());
+        try {
+            RunCursor cursor = new RunCursor(ByteFile.BYTES_PER_BLOCK, 3,
+                executor);
+            for (int start = 0; start < RECORDS; start += 1500) {
+                cursor.open(parser, run(start, RECORDS));
+                // Only part of the first block, the rest is still queued
+                for (int i = 0; i < 10 && !cursor.isExhausted(); i++) {
+                    assertEquals(start + i, cursor.getWord0());
+                    cursor.advance();
+                }
+            }
+            assertRecords(cursor, parser, 3000, 9000);
+            cursor.close();
+        }
+        finally {
+            parser.close();
+        }
+    }
+
+
+    /**
+     * Opens a cursor on a run of records and checks that it returns each
+     * of them in order, then is exhausted.
+     *
+     * @param cursor
+     *            the cursor
+     * @param parser
+     *            the file of the run
+     * @param first
+     *            the first record of the run
+     * @param end
+     *            the record after the run
+     * @throws IOException
+     */
+    private void assertRecords(
+        RunCursor cursor,
+        FileParser parser,
+        int first,
+        int end)
+        throws IOException {
+        cursor.open(parser, run(first, end));
+        for (int i = first; i < end; i++) {
+            assertFalse(cursor.isExhausted());
+            assertEquals(i, cursor.getWord0());
+            assertEquals(i / 2.0, Double.longBitsToDouble(cursor.getWord1()),
+                0.0);
+            cursor.advance();
+        }
+        assertTrue(cursor.isExhausted());
+    }
+
+
+    /**
+     * Returns the run of the records from first to end.
+     *
+     * @param first
+     *            the first record
+     * @param end
+     *            the record after the last one
+     * @return the run
+     */
+    private Run run(int first, int end) {
+        long start = (long)first * ByteFile.BYTES_PER_RECORD;
+        long length = (long)(end - first) * ByteFile.BYTES_PER_RECORD;
+        return new Run(start, length, start + length, 0);
+    }
+}
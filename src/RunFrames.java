@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * RunFrames lays out encoded runs. An encoded run is a sequence of frames,
+ * each holding up to one block of records:
+ *
+ * <pre>
+ * int    number of records in the frame
+ * int    length of the payload in bytes
+ * long   normalized key of the first record (see RecordLayout)
+ * byte[] payload
+ * </pre>
+ *
+ * The payload is the records encoded by the BlockCodec, or the records
+ * themselves when the encoding would not be shorter. A payload of exactly
+ * records * 16 bytes is therefore always raw. The first key lets a reader
+ * find a key range by reading headers only.
+ *
+ * A frame may straddle the blocks the run is read in; readers assemble it.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public final class RunFrames {
+    // ~ Fields ................................................................
+    /**
+     * Size of a frame header in bytes.
+     */
+    public static final int HEADER_BYTES = 16;
+
+    /**
+     * Largest number of record bytes in one frame.
+     */
+    public static final int MAX_RECORD_BYTES = ByteFile.BYTES_PER_BLOCK;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Not instantiated.
+     */
+    private RunFrames() {
+        // Only static helpers
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns how many bytes the frames of the given records take at most,
+     * when every frame ends up raw.
+     *
+     * @param recordBytes
+     *            the bytes of records written in one go
+     * @return the bound in bytes
+     */
+    public static int maxFramedBytes(int recordBytes) {
+        int frames = (recordBytes + MAX_RECORD_BYTES - 1) / MAX_RECORD_BYTES;
+        return recordBytes + frames * HEADER_BYTES;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Encodes records into frames of up to one block each.
+     *
+     * @param codec
+     *            the codec
+     * @param layout
+     *            the layout giving the key of the first record of a frame
+     * @param records
+     *            whole records between position and limit, consumed
+     * @param out
+     *            the buffer the frames are appended to, with room for
+     *            maxFramedBytes() of the records
+     */
+    public static void encode(
+        BlockCodec codec,
+        RecordLayout layout,
+        ByteBuffer records,
+        ByteBuffer out) {
+        while (records.remaining() >= ByteFile.BYTES_PER_RECORD) {
+            int bytes = Math.min(records.remaining(), MAX_RECORD_BYTES);
+            ByteBuffer piece = records.slice();
+            piece.limit(bytes);
+            records.position(records.position() + bytes);
+
+            int header = out.position();
+            out.position(header + HEADER_BYTES);
+            // Only an encoding shorter than the records is kept
+            ByteBuffer payload = out.slice();
+            payload.limit(bytes - 1);
+            int length;
+            if (codec.encode(piece.duplicate(), payload)) {
+                length = payload.position();
+            }
+            else {
+                out.put(piece.duplicate());
+                length = bytes;
+            }
+            out.putInt(header, bytes / ByteFile.BYTES_PER_RECORD);
+            out.putInt(header + Integer.BYTES, length);
+            out.putLong(header + 2 * Integer.BYTES, layout.key(piece.getLong(
+                0), piece.getLong(Long.BYTES)));
+            out.position(header + HEADER_BYTES + length);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records of a frame.
+     *
+     * @param header
+     *            the header, from its position
+     * @return the record count
+     */
+    public static int recordCount(ByteBuffer header) {
+        return header.getInt(header.position());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the payload length of a frame.
+     *
+     * @param header
+     *            the header, from its position
+     * @return the length in bytes
+     */
+    public static int payloadLength(ByteBuffer header) {
+        return header.getInt(header.position() + Integer.BYTES);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the key of the first record of a frame.
+     *
+     * @param header
+     *            the header, from its position
+     * @return the normalized key
+     */
+    public static long firstKey(ByteBuffer header) {
+        return header.getLong(header.position() + 2 * Integer.BYTES);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Checks a header read from a run, so a damaged run fails cleanly
+     * instead of asking for huge buffers.
+     *
+     * @param header
+     *            the header, from its position
+     * @param run
+     *            the run, for the message
+     * @throws IOException
+     *             if the header is impossible
+     */
+    public static void checkHeader(ByteBuffer header, Run run)
+        throws IOException {
+        long recordBytes = (long)recordCount(header)
+            * ByteFile.BYTES_PER_RECORD;
+        int length = payloadLength(header);
+        if (recordBytes <= 0 || recordBytes > MAX_RECORD_BYTES || length <= 0
+            || length > recordBytes) {
+            throw new IOException("Run " + run.getRunNum()
+                + " holds a damaged frame header");
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Decodes the payload of a frame.
+     *
+     * @param codec
+     *            the codec the run was written with
+     * @param count
+     *            the number of records in the frame
+     * @param payload
+     *            the payload, between position and limit
+     * @param out
+     *            the buffer the records are appended to
+     * @throws IOException
+     *             if the payload is not a valid encoding
+     */
+    public static void decode(
+        BlockCodec codec,
+        int count,
+        ByteBuffer payload,
+        ByteBuffer out)
+        throws IOException {
+        if (payload.remaining() == count * ByteFile.BYTES_PER_RECORD) {
+            out.put(payload);
+        }
+        else {
+            codec.decode(payload, count, out);
+        }
+    }
+}
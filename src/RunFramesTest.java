@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the RunFrames class and the block codecs.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class RunFramesTest extends TestCase {
+    private static final String[] CODECS = { "delta", "xor", "delta+zip",
+        "xor+zip" };
+
+    /**
+     * Tests that records come back bit for bit from every codec, and that
+     * close IDs and keys take fewer bytes than raw records
+     *
+     * @throws IOException
+     */
+    public void testRoundTrip() throws IOException {
+        // Three frames' worth of sorted records with a NaN at the end
+        int count = 3 * ByteFile.RECORDS_PER_BLOCK - 5;
+        ByteBuffer records = ByteBuffer.allocate(count
+            * ByteFile.BYTES_PER_RECORD);
+        for (int i = 0; i < count - 1; i++) {
+            records.putLong(1000 + i);
+            records.putDouble(-50.0 + i * 0.25);
+        }
+        records.putLong(-7);
+        records.putDouble(Double.longBitsToDouble(0x7ff8000000000123L));
+        records.flip();
+
+        for (String name : CODECS) {
+            BlockCodec codec = BlockCodec.forName(name);
+            ByteBuffer frames = ByteBuffer.allocate(RunFrames.maxFramedBytes(
+                records.remaining()));
+            RunFrames.encode(codec, RecordLayout.DEFAULT, records
+                .duplicate(), frames);
+            assertTrue(name, frames.position() < records.remaining());
+            assertEquals(name, records, roundTrip(codec, records
+                .duplicate()));
+        }
+    }
+
+
+    /**
+     * Tests that records the codec can not shrink are stored raw
+     *
+     * @throws IOException
+     */
+    public void testRawFallback() throws IOException {
+        Random rng = new Random(17);
+        ByteBuffer records = ByteBuffer.allocate(ByteFile.BYTES_PER_BLOCK);
+        while (records.hasRemaining()) {
+            records.putLong(rng.nextLong());
+            records.putDouble(rng.nextDouble() - 0.5);
+        }
+        records.flip();
+
+        BlockCodec codec = BlockCodec.forName("xor");
+        ByteBuffer frames = ByteBuffer.allocate(RunFrames.maxFramedBytes(
+            records.remaining()));
+        RunFrames.encode(codec, RecordLayout.DEFAULT, records.duplicate(),
+            frames);
+        frames.flip();
+        assertEquals(ByteFile.BYTES_PER_BLOCK, RunFrames.payloadLength(
+            frames));
+        assertEquals(RecordLayout.DEFAULT.key(records.getLong(0), records
+            .getLong(Long.BYTES)), RunFrames.firstKey(frames));
+        assertEquals(records, roundTrip(codec, records.duplicate()));
+    }
+
+
+    /**
+     * Tests codec names
+     */
+    public void testForName() {
+        assertNull(BlockCodec.forName("none"));
+        assertEquals("none", BlockCodec.nameOf(null));
+        assertEquals("xor+zip", BlockCodec.forName("XOR+zip").getName());
+        try {
+            BlockCodec.forName("lz4");
+            fail("accepted an unknown codec");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("lz4"));
+        }
+    }
+
+
+    /**
+     * Frames records and decodes the frames again.
+     *
+     * @param codec
+     *            the codec
+     * @param records
+     *            the records
+     * @return the decoded records
+     * @throws IOException
+     */
+    private ByteBuffer roundTrip(BlockCodec codec, ByteBuffer records)
+        throws IOException {
+        int raw = records.remaining();
+        ByteBuffer frames = ByteBuffer.allocate(RunFrames.maxFramedBytes(
+            raw));
+        RunFrames.encode(codec, RecordLayout.DEFAULT, records, frames);
+        frames.flip();
+
+        ByteBuffer decoded = ByteBuffer.allocate(raw);
+        while (frames.hasRemaining()) {
+            int count = RunFrames.recordCount(frames);
+            int length = RunFrames.payloadLength(frames);
+            assertTrue(length <= count * ByteFile.BYTES_PER_RECORD);
+            frames.position(frames.position() + RunFrames.HEADER_BYTES);
+            ByteBuffer payload = frames.slice();
+            payload.limit(length);
+            RunFrames.decode(codec, count, payload, decoded);
+            frames.position(frames.position() + length);
+        }
+        decoded.flip();
+        return decoded;
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * RunGenerator turns one chunk of the input file into sorted runs with
+ * replacement selection. It fills its heap from the start of the chunk, then
+ * repeatedly emits the smallest record and replaces it with the next input
+ * record, holding back records that are smaller than the last one emitted
+ * until the next run.
+ *
+ * Replacement selection writes as many bytes as it reads, or fewer when a
+ * RecordCombiner folds equal keys, so the runs of a chunk are written over
+ * the same span of the run file the chunk occupies in the input file.
+ * Generators working on different chunks therefore never write to the same
+ * region and need no coordination besides the shared RunCatalog. All input
+ * is read with positional reads for the same reason. A writer with a codec
+ * may need a few bytes more than it reads; the caller then moves the span
+ * of every chunk to leave room.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class RunGenerator implements ChunkRunGenerator {
+    // ~ Fields ................................................................
+    /**
+     * The heap owned by this generator.
+     */
+    private RecordHeap heap;
+
+    /**
+     * Layout splitting records into the keys and payloads of the heap.
+     */
+    private RecordLayout layout;
+
+    /**
+     * The input file or stream.
+     */
+    private RecordSource inputParser;
+
+    /**
+     * Position of the first byte of the chunk.
+     */
+    private long chunkStart;
+
+    /**
+     * Position just past the chunk.
+     */
+    private long chunkEnd;
+
+    /**
+     * Position in the run file where the runs of the chunk start.
+     */
+    private long outputStart;
+
+    /**
+     * Buffer the input blocks are read into.
+     */
+    private ByteBuffer inputScratch;
+
+    /**
+     * Writer for the run file.
+     */
+    private BlockWriter writer;
+
+    /**
+     * Catalog receiving the finished runs.
+     */
+    private RunCatalog catalog;
+
+    /**
+     * Combiner of records with equal keys, or null.
+     */
+    private RecordCombiner combiner;
+
+    /**
+     * Sampler of the keys of the chunk, or null.
+     */
+    private KeySampler sampler;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new RunGenerator object.
+     *
+     * @param heap
+     *            the heap to use, not shared with other generators
+     * @param layout
+     *            the layout of the records
+     * @param inputParser
+     *            the input file or stream
+     * @param chunkStart
+     *            position of the first byte of the chunk
+     * @param chunkEnd
+     *            position just past the chunk
+     * @param outputStart
+     *            position in the run file where the runs of the chunk start
+     * @param inputScratch
+     *            buffer for reading input blocks
+     * @param writer
+     *            writer for the run file
+     * @param catalog
+     *            catalog receiving the finished runs
+     */
+    public RunGenerator(
+        RecordHeap heap,
+        RecordLayout layout,
+        RecordSource inputParser,
+        long chunkStart,
+        long chunkEnd,
+        long outputStart,
+        ByteBuffer inputScratch,
+        BlockWriter writer,
+        RunCatalog catalog) {
+        this.heap = heap;
+        this.layout = layout;
+        this.inputParser = inputParser;
+        this.chunkStart = chunkStart;
+        this.chunkEnd = chunkEnd;
+        this.outputStart = outputStart;
+        this.inputScratch = inputScratch;
+        this.writer = writer;
+        this.catalog = catalog;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets the combiner of records with equal keys within a run.
+     *
+     * @param recordCombiner
+     *            the combiner, or null to keep every record
+     */
+    @Override
+    public void setCombiner(RecordCombiner recordCombiner) {
+        this.combiner = recordCombiner;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the sampler shown the key of every record of the chunk.
+     *
+     * @param keySampler
+     *            the sampler, or null
+     */
+    @Override
+    public void setSampler(KeySampler keySampler) {
+        this.sampler = keySampler;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Generates the runs of the chunk. The runs are handed to the writer,
+     * which the caller has to flush before reading them.
+     *
+     * @return the number of runs generated
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    @Override
+    public Integer call() throws IOException {
+        long inputPos = loadHeap();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(0); // Nothing read yet
+        RunWriter out = new RunWriter(writer, layout, outputStart);
+        out.setCombiner(combiner, true);
+        out.setSampler(sampler);
+        int runs = 0;
+
+        while (heap.heapSize() > 0) {
+            while (heap.heapSize() > 0) {
+                long minPayload = heap.getMinPayload();
+                long minKey = heap.getMinKey();
+                out.add(minKey, layout.word0(minKey, minPayload), layout
+                    .word1(minKey, minPayload));
+
+                if (!byteBuffer.hasRemaining() && inputPos < chunkEnd) {
+                    int bytes = (int)Math.min(inputScratch.capacity(),
+                        chunkEnd - inputPos);
+                    byteBuffer = inputParser.readView(inputPos, bytes,
+                        inputScratch);
+                    // A short read means the file ended early
+                    inputPos = byteBuffer.hasRemaining()
+                        ? inputPos + byteBuffer.remaining()
+                        : chunkEnd;
+                }
+
+                if (byteBuffer.remaining() >= ByteFile.BYTES_PER_RECORD) {
+                    long word0 = byteBuffer.getLong();
+                    long word1 = byteBuffer.getLong();
+                    long key = layout.key(word0, word1);
+                    long payload = layout.payload(word0, word1);
+
+                    if (key >= minKey) {
+                        // Still fits in the current run
+                        heap.replaceMin(payload, key, -1);
+                    }
+                    else {
+                        // Has to wait for the next run
+                        heap.retireMin(payload, key, -1);
+                    }
+                }
+                else {
+                    // Input is exhausted, drain the heap
+                    heap.removeMin();
+                }
+            }
+
+            // The next run starts in a fresh buffer
+            Run run = out.finish(runs);
+            catalog.add(run.getStartPosition(), run.getLength(), run
+                .getEndPosition());
+            runs++;
+
+            // Records held back during this run form the next heap
+            heap.promoteRetired();
+        }
+        return runs;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Fills the heap from the start of the chunk, or takes the whole chunk
+     * if it is smaller than the heap.
+     *
+     * @return the position of the first record not in the heap
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private long loadHeap() throws IOException {
+        int records = (int)Math.min(heap.capacity(), (chunkEnd - chunkStart)
+            / ByteFile.BYTES_PER_RECORD);
+        long position = chunkStart;
+        int rec = 0;
+        while (rec < records) {
+            int bytes = Math.min(inputScratch.capacity(), (records - rec)
+                * ByteFile.BYTES_PER_RECORD);
+            ByteBuffer byteBuffer = inputParser.readView(position, bytes,
+                inputScratch);
+            if (!byteBuffer.hasRemaining()) {
+                break; // The file ended early
+            }
+            position += byteBuffer.remaining();
+
+            // Store every record in the heap arrays, then heapify once
+            while (byteBuffer.remaining() >= ByteFile.BYTES_PER_RECORD) {
+                long word0 = byteBuffer.getLong();
+                long word1 = byteBuffer.getLong();
+                heap.set(rec, layout.payload(word0, word1), layout.key(word0,
+                    word1), -1);
+                rec++;
+            }
+        }
+        heap.setHeapSize(rec);
+        heap.buildHeap();
+        return position;
+    }
+}
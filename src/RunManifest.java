@@ -0,0 +1,538 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// -------------------------------------------------------------------------
+/**
+ * RunManifest keeps the run catalog of an external sort on disk, so a sort
+ * that dies can go on from its last finished pass instead of starting over.
+ * It lives next to the input as (input).manifest and is a small text file:
+ *
+ * <pre>
+ * input-length 2457600
+ * state merging
+ * codec none
+ * key double@8
+ * data 2457600 input.bin
+ * run 0 65536 65536 0 1
+ * ...
+ * </pre>
+ *
+ * Every run line holds start, length, end, run number and the pass that
+ * wrote the run, 0 for run generation. The codec line names the BlockCodec
+ * the runs are encoded with; the length of an encoded run counts its
+ * records, its end where its frames end. The key line is the RecordLayout
+ * the runs are sorted by; without one they are sorted by the default key.
+ *
+ * While runs are generated the manifest is a journal in state "generating":
+ * its header is written like a checkpoint, then every finished run is
+ * appended and forced to disk. Generation rewrites the input, so a sort
+ * that dies in it starts over from the input, which is still whole then;
+ * the journal shows how far it got. A crash in the middle of an append
+ * leaves a torn last line, which reading the journal drops. Once generation
+ * or a
+ * merge pass is done, checkpoint() replaces the manifest with the complete
+ * run list in state "merging", together with the file holding the runs and
+ * its length. Checkpoints are written to a temporary file, forced to disk
+ * and renamed over the manifest, so a crash leaves either the old or the
+ * new one.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class RunManifest implements AutoCloseable {
+    // ~ Fields ................................................................
+    /**
+     * Suffix appended to the name of the input to name its manifest.
+     */
+    public static final String SUFFIX = ".manifest";
+
+    /**
+     * Path of the manifest.
+     */
+    private Path path;
+
+    /**
+     * Length of the input, which the runs add up to.
+     */
+    private long inputLength;
+
+    /**
+     * Whether the manifest is the journal of an unfinished run generation.
+     */
+    private boolean generating;
+
+    /**
+     * Path of the file holding the runs at the last checkpoint.
+     */
+    private String dataFile;
+
+    /**
+     * Length of the data file at the last checkpoint.
+     */
+    private long dataLength;
+
+    /**
+     * Codec the runs of the last checkpoint are encoded with, or null.
+     */
+    private BlockCodec codec;
+
+    /**
+     * Layout the runs are sorted by.
+     */
+    private RecordLayout layout = RecordLayout.DEFAULT;
+
+    /**
+     * The runs at the last checkpoint, or the runs journaled so far.
+     */
+    private List<Run> runs;
+
+    /**
+     * The open journal while runs are generated, or null.
+     */
+    private FileChannel journal;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty RunManifest object. Nothing is written until
+     * beginGeneration() or checkpoint().
+     *
+     * @param path
+     *            the manifest file
+     * @param inputLength
+     *            length of the input to sort
+     */
+    public RunManifest(String path, long inputLength) {
+        this.path = Paths.get(path);
+        this.inputLength = inputLength;
+        this.runs = new ArrayList<>();
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Reads a manifest. Lines after the first one that can not be read end
+     * a journal, since only its last append can be torn.
+     *
+     * @param path
+     *            the manifest file
+     * @return the manifest
+     * @throws IOException
+     *             if the file can not be read or is not a manifest
+     */
+    public static RunManifest read(String path) throws IOException {
+        RunManifest manifest = new RunManifest(path, -1);
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest.path,
+            StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String[] fields = line.split(" ", 3);
+            try {
+                switch (fields[0]) {
+                    case "input-length":
+                        manifest.inputLength = Long.parseLong(fields[1]);
+                        break;
+                    case "state":
+                        manifest.generating = "generating".equals(fields[1]);
+                        break;
+                    case "codec":
+                        manifest.codec = BlockCodec.forName(fields[1]);
+                        break;
+                    case "key":
+                        manifest.layout = RecordLayout.parse(fields[1]);
+                        break;
+                    case "data":
+                        manifest.dataLength = Long.parseLong(fields[1]);
+                        manifest.dataFile = fields[2];
+                        break;
+                    case "run":
+                        manifest.runs.add(parseRun(line));
+                        break;
+                    default:
+                        throw new IOException("unknown entry " + fields[0]);
+                }
+            }
+            catch (RuntimeException e) {
+                if (manifest.generating) {
+                    break;
+                }
+                throw new IOException(path + ":" + lineNumber
+                    + ": malformed manifest line: " + line, e);
+            }
+            catch (IOException e) {
+                throw new IOException(path + ":" + lineNumber + ": " + e
+                    .getMessage(), e);
+            }
+        }
+        if (manifest.inputLength < 0) {
+            throw new IOException(path + " is not a run manifest");
+        }
+        return manifest;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Starts the journal of run generation, replacing whatever the manifest
+     * held.
+     *
+     * @throws IOException
+     *             if the manifest can not be written
+     */
+    public synchronized void beginGeneration() throws IOException {
+        closeJournal();
+        generating = true;
+        runs.clear();
+        // The header replaces the manifest atomically, so a crash never
+        // leaves a manifest without one
+        replace("input-length " + inputLength + "\nstate generating\n");
+        journal = FileChannel.open(path, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Journals a finished run of run generation. Called by every run
+     * generation thread.
+     *
+     * @param start
+     *            the position of the run in the run file
+     * @param length
+     *            the length of the records of the run in bytes
+     * @param end
+     *            the position just past the run
+     * @throws IOException
+     *             if the manifest can not be written
+     */
+    public synchronized void runGenerated(long start, long length, long end)
+        throws IOException {
+        Run run = new Run(start, length, end, runs.size());
+        runs.add(run);
+        if (journal != null) {
+            append(format(run));
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Records that every run of the list is complete in the data file. The
+     * caller has forced the data file to disk; the manifest is replaced
+     * atomically and forced to disk before this returns.
+     *
+     * @param file
+     *            path of the file holding the runs
+     * @param length
+     *            length of the data in the file
+     * @param runList
+     *            the runs, in list order
+     * @param runCodec
+     *            the codec the runs are encoded with, or null
+     * @throws IOException
+     *             if the manifest can not be written
+     */
+    public synchronized void checkpoint(
+        String file,
+        long length,
+        DLList runList,
+        BlockCodec runCodec)
+        throws IOException {
+        closeJournal();
+        generating = false;
+        dataFile = file;
+        dataLength = length;
+        codec = runCodec;
+        runs.clear();
+        Iterator<Run> iterator = runList.iterator();
+        while (iterator.hasNext()) {
+            runs.add(iterator.next());
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append("input-length " + inputLength + "\n");
+        text.append("state merging\n");
+        text.append("codec " + BlockCodec.nameOf(codec) + "\n");
+        text.append("key " + layout + "\n");
+        text.append("data " + dataLength + " " + dataFile + "\n");
+        for (Run run : runs) {
+            text.append(format(run));
+        }
+        replace(text.toString());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Checks that the runs of the last checkpoint can be merged from a data
+     * file of the given length: they lie inside the data, do not overlap and
+     * add up to the input. Raw runs must also end where their records do.
+     *
+     * @param fileLength
+     *            the length of the data file on disk
+     * @throws IOException
+     *             if the manifest does not match the file
+     */
+    public synchronized void validate(long fileLength) throws IOException {
+        if (generating || dataFile == null) {
+            throw new IOException(path + " has no finished runs");
+        }
+        if (fileLength < dataLength) {
+            throw new IOException(dataFile + " holds " + fileLength
+                + " bytes, the manifest expects " + dataLength);
+        }
+        List<Run> ordered = new ArrayList<>(runs);
+        ordered.sort((a, b) -> Long.compare(a.getStartPosition(), b
+            .getStartPosition()));
+        long total = 0;
+        long previousEnd = 0;
+        for (Run run : ordered) {
+            long span = run.getEndPosition() - run.getStartPosition();
+            if (run.getStartPosition() < previousEnd || run.getLength() < 0
+                || span < 0 || (codec == null && span != run.getLength())
+                || run.getEndPosition() > dataLength) {
+                throw new IOException("Run " + run.getRunNum() + " of " + path
+                    + " does not fit the data file");
+            }
+            total += run.getLength();
+            previousEnd = run.getEndPosition();
+        }
+        if (total != inputLength) {
+            throw new IOException("Runs of " + path + " hold " + total
+                + " bytes, the input held " + inputLength);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the runs of the last checkpoint as a run list for the merge.
+     *
+     * @return the runs, in list order
+     */
+    public synchronized DLList toRunList() {
+        DLList runList = new DLList();
+        for (Run run : runs) {
+            Run copy = new Run(run.getStartPosition(), run.getLength(), run
+                .getEndPosition(), runList.size());
+            copy.setPass(run.getPass());
+            runList.add(copy);
+        }
+        return runList;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Closes the journal if run generation left it open, as it does when
+     * generation fails. The manifest file stays, so the sort can still be
+     * resumed.
+     *
+     * @throws IOException
+     *             if the journal can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeJournal();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns whether the manifest is the journal of an unfinished run
+     * generation.
+     *
+     * @return true if run generation did not finish
+     */
+    public synchronized boolean isGenerating() {
+        return generating;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the length of the input.
+     *
+     * @return the length in bytes
+     */
+    public long getInputLength() {
+        return inputLength;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the file holding the runs at the last checkpoint.
+     *
+     * @return the path, or null before the first checkpoint
+     */
+    public synchronized String getDataFile() {
+        return dataFile;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the length of the data at the last checkpoint.
+     *
+     * @return the length in bytes
+     */
+    public synchronized long getDataLength() {
+        return dataLength;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the codec the runs of the last checkpoint are encoded with.
+     *
+     * @return the codec, or null for raw runs
+     */
+    public synchronized BlockCodec getCodec() {
+        return codec;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the layout the runs are sorted by, written with every checkpoint.
+     *
+     * @param recordLayout
+     *            the layout
+     */
+    public synchronized void setLayout(RecordLayout recordLayout) {
+        this.layout = recordLayout;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the layout the runs are sorted by.
+     *
+     * @return the layout
+     */
+    public synchronized RecordLayout getLayout() {
+        return layout;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of merge passes finished at the last checkpoint.
+     *
+     * @return the pass count
+     */
+    public synchronized int getPasses() {
+        int passes = 0;
+        for (Run run : runs) {
+            passes = Math.max(passes, run.getPass());
+        }
+        return passes;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Appends text to the journal and forces it to disk.
+     *
+     * @param text
+     *            the text
+     * @throws IOException
+     *             if the manifest can not be written
+     */
+    private void append(String text) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(
+            StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            journal.write(bytes);
+        }
+        journal.force(false);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replaces the manifest with the given text: it is written to a
+     * temporary file, forced to disk and renamed over the manifest.
+     *
+     * @param text
+     *            the new manifest
+     * @throws IOException
+     *             if the manifest can not be written
+     */
+    private void replace(String text) throws IOException {
+        Path temporary = Paths.get(path + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(
+                StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Closes the journal if it is open.
+     *
+     * @throws IOException
+     *             if the journal can not be closed
+     */
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Formats a run line.
+     *
+     * @param run
+     *            the run
+     * @return the line, ending in a newline
+     */
+    private static String format(Run run) {
+        return "run " + run.getStartPosition() + " " + run.getLength() + " "
+            + run.getEndPosition() + " " + run.getRunNum() + " " + run
+                .getPass() + "\n";
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Parses a run line.
+     *
+     * @param line
+     *            the line
+     * @return the run
+     */
+    private static Run parseRun(String line) {
+        String[] fields = line.split(" ");
+        Run run = new Run(Long.parseLong(fields[1]), Long.parseLong(
+            fields[2]), Long.parseLong(fields[3]), Integer.parseInt(
+                fields[4]));
+        run.setPass(Integer.parseInt(fields[5]));
+        return run;
+    }
+}
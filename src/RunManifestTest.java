@@ -0,0 +1,135 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import student.TestCase;
+
+/**
+ * Test class for the RunManifest class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class RunManifestTest extends TestCase {
+    private static final String PATH = "test.bin" + RunManifest.SUFFIX;
+    private static final int RECORD = ByteFile.BYTES_PER_RECORD;
+    private RunManifest manifest;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        new File(PATH).delete();
+        manifest = new RunManifest(PATH, 300 * RECORD);
+    }
+
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(PATH).delete();
+    }
+
+
+    /**
+     * Tests that a journal of run generation reads back as unfinished and
+     * a checkpoint reads back with its runs and passes
+     *
+     * @throws IOException
+     */
+    public void testJournalAndCheckpoint() throws IOException {
+        manifest.beginGeneration();
+        manifest.runGenerated(0, 100 * RECORD, 100 * RECORD);
+        assertTrue(RunManifest.read(PATH).isGenerating());
+
+        DLList runs = new DLList();
+        runs.add(new Run(0, 100 * RECORD, 100 * RECORD, 0));
+        Run merged = new Run(300 * RECORD, 200 * RECORD, 500 * RECORD, 1);
+        merged.setPass(1);
+        runs.add(merged);
+        manifest.setLayout(RecordLayout.parse("int@8,int@12:desc"));
+        manifest.checkpoint("test.bin", 500 * RECORD, runs, BlockCodec
+            .forName("delta+zip"));
+
+        RunManifest saved = RunManifest.read(PATH);
+        assertFalse(saved.isGenerating());
+        assertEquals("test.bin", saved.getDataFile());
+        assertEquals(500 * RECORD, saved.getDataLength());
+        assertEquals(300 * RECORD, saved.getInputLength());
+        assertEquals(1, saved.getPasses());
+        assertEquals("delta+zip", saved.getCodec().getName());
+        assertEquals("int@8,int@12:desc", saved.getLayout().toString());
+        DLList reloaded = saved.toRunList();
+        assertEquals(2, reloaded.size());
+        saved.validate(500 * RECORD);
+    }
+
+
+    /**
+     * Tests that a journal whose last append was torn by a crash still
+     * reads back as unfinished
+     *
+     * @throws IOException
+     */
+    public void testTornJournal() throws IOException {
+        manifest.beginGeneration();
+        manifest.runGenerated(0, 100 * RECORD, 100 * RECORD);
+        Files.write(Paths.get(PATH), "run 0 81".getBytes(
+            StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertTrue(RunManifest.read(PATH).isGenerating());
+    }
+
+
+    /**
+     * Tests that closing the manifest of a failed generation closes its
+     * journal and keeps the manifest, so the sort can resume
+     *
+     * @throws IOException
+     */
+    public void testCloseKeepsJournal() throws IOException {
+        manifest.beginGeneration();
+        manifest.runGenerated(0, 100 * RECORD, 100 * RECORD);
+        manifest.close();
+        // Nothing is journaled once the journal is closed
+        manifest.runGenerated(100 * RECORD, 100 * RECORD, 200 * RECORD);
+        manifest.close();
+
+        RunManifest saved = RunManifest.read(PATH);
+        assertTrue(saved.isGenerating());
+        assertEquals(1, saved.toRunList().size());
+    }
+
+
+    /**
+     * Tests that a data file that does not match the runs is refused
+     *
+     * @throws IOException
+     */
+    public void testValidate() throws IOException {
+        DLList runs = new DLList();
+        runs.add(new Run(0, 100 * RECORD, 100 * RECORD, 0));
+        manifest.checkpoint("test.bin", 100 * RECORD, runs, null);
+        try {
+            // The runs do not add up to the input
+            manifest.validate(100 * RECORD);
+            fail("validated missing runs");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("the input held"));
+        }
+
+        runs.add(new Run(100 * RECORD, 200 * RECORD, 300 * RECORD, 1));
+        manifest.checkpoint("test.bin", 300 * RECORD, runs, null);
+        try {
+            manifest.validate(200 * RECORD);
+            fail("validated a short file");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("holds"));
+        }
+        manifest.validate(300 * RECORD);
+    }
+}
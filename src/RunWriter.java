@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * RunWriter writes sorted runs one record at a time through a BlockWriter,
+ * filling its buffers and keeping track of where every run starts and
+ * ends. With a RecordCombiner it holds back the last record added, and a
+ * following record with the same key fields (see RecordLayout.sameKey()) is
+ * combined into it instead of being written, so a run holds one record per
+ * key.
+ *
+ * Runs are written one after the other from the start position on. finish()
+ * ends the current run; the next record starts a new one in a fresh buffer.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class RunWriter {
+    // ~ Fields ................................................................
+    /**
+     * The writer the buffers go to.
+     */
+    private BlockWriter writer;
+
+    /**
+     * Layout putting combined records back together.
+     */
+    private RecordLayout layout;
+
+    /**
+     * Combiner of records with equal keys, or null to keep every record.
+     */
+    private RecordCombiner combiner;
+
+    /**
+     * Whether the records added come from the input and have to be lifted.
+     */
+    private boolean lift;
+
+    /**
+     * Sampler shown the key of every record added, or null.
+     */
+    private KeySampler sampler;
+
+    /**
+     * The buffer being filled.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * File position the buffer goes to.
+     */
+    private long position;
+
+    /**
+     * File position of the current run.
+     */
+    private long runStart;
+
+    /**
+     * Bytes of records of the current run.
+     */
+    private long runLength;
+
+    /**
+     * Whether a record is held back for combining.
+     */
+    private boolean pending;
+
+    /**
+     * Normalized key of the held back record.
+     */
+    private long pendingKey;
+
+    /**
+     * Partial result of the held back record.
+     */
+    private long pendingPayload;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new RunWriter object.
+     *
+     * @param writer
+     *            the writer
+     * @param layout
+     *            the layout of the records
+     * @param position
+     *            the file position of the first run
+     */
+    public RunWriter(BlockWriter writer, RecordLayout layout, long position) {
+        this.writer = writer;
+        this.layout = layout;
+        this.position = position;
+        this.runStart = position;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets the combiner of records with equal keys.
+     *
+     * @param recordCombiner
+     *            the combiner, or null to keep every record
+     * @param input
+     *            true if the records come from the input, false if they
+     *            come from runs that were combined already
+     */
+    public void setCombiner(RecordCombiner recordCombiner, boolean input) {
+        this.combiner = recordCombiner;
+        this.lift = input;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the sampler shown the key of every record added, before any
+     * records are combined.
+     *
+     * @param keySampler
+     *            the sampler, or null
+     */
+    public void setSampler(KeySampler keySampler) {
+        this.sampler = keySampler;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds the next record of the run, which must not be smaller than the
+     * record before.
+     *
+     * @param key
+     *            the normalized key of the record
+     * @param word0
+     *            the first 8 bytes of the record
+     * @param word1
+     *            the last 8 bytes of the record
+     * @throws IOException
+     *             if a write fails
+     */
+    public void add(long key, long word0, long word1) throws IOException {
+        if (sampler != null) {
+            sampler.add(key);
+        }
+        if (combiner == null) {
+            put(word0, word1);
+            return;
+        }
+        long payload = layout.payload(word0, word1);
+        if (lift) {
+            payload = combiner.lift(payload);
+        }
+        if (pending && layout.sameKey(key, pendingKey)) {
+            pendingPayload = combiner.combine(pendingKey, pendingPayload,
+                payload);
+            pendingKey = combiner.combineKeys(pendingKey, key);
+            return;
+        }
+        if (pending) {
+            put(layout.word0(pendingKey, pendingPayload), layout.word1(
+                pendingKey, pendingPayload));
+        }
+        pending = true;
+        pendingKey = key;
+        pendingPayload = payload;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Ends the current run and hands its last buffer to the writer.
+     *
+     * @param runNum
+     *            the number of the run
+     * @return the run, whose end may lie past its records when the writer
+     *         encodes
+     * @throws IOException
+     *             if a write fails
+     */
+    public Run finish(int runNum) throws IOException {
+        if (pending) {
+            put(layout.word0(pendingKey, pendingPayload), layout.word1(
+                pendingKey, pendingPayload));
+            pending = false;
+        }
+        if (buffer == null) {
+            buffer = writer.acquire();
+        }
+        position += writer.submit(buffer, position);
+        buffer = null;
+        Run run = new Run(runStart, runLength, position, runNum);
+        runStart = position;
+        runLength = 0;
+        return run;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Puts a record in the buffer, handing the buffer to the writer once it
+     * is full.
+     *
+     * @param word0
+     *            the first 8 bytes of the record
+     * @param word1
+     *            the last 8 bytes of the record
+     * @throws IOException
+     *             if a write fails
+     */
+    private void put(long word0, long word1) throws IOException {
+        if (buffer == null) {
+            buffer = writer.acquire();
+        }
+        buffer.putLong(word0);
+        buffer.putLong(word1);
+        runLength += ByteFile.BYTES_PER_RECORD;
+        if (!buffer.hasRemaining()) {
+            position += writer.submit(buffer, position);
+            buffer = null;
+        }
+    }
+}
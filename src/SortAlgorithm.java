@@ -0,0 +1,41 @@
+// -------------------------------------------------------------------------
+/**
+ * SortAlgorithm selects how records are sorted in memory, both when the
+ * whole input fits in memory and when runs are generated.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public enum SortAlgorithm {
+    /**
+     * A RecordHeap: the in-memory sort drains the heap, and runs come from
+     * replacement selection, about twice as long as the heap on random input.
+     */
+    HEAP,
+
+    /**
+     * A RadixSorter: records are sorted by LSD radix sort on their key bits,
+     * and runs come from load-sort-store, as long as the sorter. Much faster
+     * per record than the heap, at the price of shorter runs.
+     */
+    RADIX;
+
+    // ----------------------------------------------------------
+    /**
+     * Parses an algorithm name as given on the command line, ignoring case.
+     *
+     * @param name
+     *            the algorithm name, for example "radix"
+     * @return the algorithm
+     * @throws IllegalArgumentException
+     *             if there is no algorithm with that name
+     */
+    public static SortAlgorithm parse(String name) {
+        for (SortAlgorithm algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(name.trim())) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown sort algorithm: " + name);
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+// -------------------------------------------------------------------------
+/**
+ * SortCoordinator generates the runs of a file sort in worker processes,
+ * for inputs whose sort is more than one JVM's heap and garbage collector
+ * handle well. The input is split into one slice per worker along block
+ * boundaries, and every worker, a JVM of its own running SortWorker on the
+ * same host, sorts its slice into a single run in the same span of the run
+ * file. The workers share nothing but the files: each reads its slice of
+ * the input, writes its span of the run file and reports its run on
+ * standard output. Once every worker is done the run file is renamed over
+ * the input, as after run generation in this process, and the runs are
+ * merged there.
+ *
+ * Workers run the same java and class path as this process, with the
+ * options of a stream sort (see SortOptions.toStreamArguments()). Each
+ * gets the whole memory budget, and their log goes to standard error. A
+ * worker that fails fails the sort, and the other workers are stopped.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class SortCoordinator {
+    // ~ Fields ................................................................
+    /**
+     * The options of the sort, passed on to the workers.
+     */
+    private SortOptions options;
+
+    /**
+     * Manifest checkpointing the runs once the workers are done, or null.
+     */
+    private RunManifest manifest;
+
+    /**
+     * Metrics the runs are reported to, or null.
+     */
+    private SortMetrics metrics;
+
+    /**
+     * Logger for the workers started.
+     */
+    private static final Logger LOGGER = Logger.getLogger(
+        SortCoordinator.class.getName());
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new SortCoordinator object.
+     *
+     * @param options
+     *            the options of the sort, giving the number of workers
+     */
+    public SortCoordinator(SortOptions options) {
+        this.options = options;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets the manifest that checkpoints the runs of the workers, as
+     * ReplacementSelection does after run generation.
+     *
+     * @param manifest
+     *            the manifest, or null for none
+     */
+    public void setManifest(RunManifest manifest) {
+        this.manifest = manifest;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the metrics the runs are reported to.
+     *
+     * @param metrics
+     *            the metrics, or null for none
+     */
+    public void setMetrics(SortMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Has the workers sort the slices of the input into the run file, which
+     * then replaces the input. The runs are raw, whatever the codec of the
+     * sort.
+     *
+     * @param inputParser
+     *            the FileParser of the input, which receives the runs
+     * @param runFileParser
+     *            the FileParser of the run file
+     * @return the runs, one per worker, in file order
+     * @throws IOException
+     *             if a worker fails or a file can not be written
+     */
+    public DLList generateRuns(FileParser inputParser, FileParser runFileParser)
+        throws IOException {
+        // A partial record at the end of the input is dropped, as it is
+        // by a sort without workers
+        long length = inputParser.getFile().length()
+            / ByteFile.BYTES_PER_RECORD * ByteFile.BYTES_PER_RECORD;
+        long blocks = (length + ByteFile.BYTES_PER_BLOCK - 1)
+            / ByteFile.BYTES_PER_BLOCK;
+        int workers = (int)Math.max(1, Math.min(options.getWorkers(),
+            blocks));
+        // Every worker writes the span of its slice
+        runFileParser.resize(length);
+
+        LOGGER.info("Starting " + workers + " sort worker(s)");
+        List<Process> processes = new ArrayList<>();
+        DLList runList = new DLList();
+        try {
+            for (int i = 0; i < workers; i++) {
+                long start = blocks * i / workers * ByteFile.BYTES_PER_BLOCK;
+                long end = (i + 1 == workers)
+                    ? length
+                    : blocks * (i + 1) / workers * ByteFile.BYTES_PER_BLOCK;
+                processes.add(startWorker(inputParser.getFileName(), start,
+                    end, runFileParser.getFileName()));
+            }
+            for (int i = 0; i < workers; i++) {
+                long[] run = awaitWorker(processes.get(i), i);
+                runList.add(new Run(run[0], run[1], run[0] + run[1], i));
+            }
+        }
+        finally {
+            // A failed worker leaves no use for the others
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+        }
+
+        long dataEnd = 0;
+        Iterator<Run> runIterator = runList.iterator();
+        while (runIterator.hasNext()) {
+            dataEnd = Math.max(dataEnd, runIterator.next().getEndPosition());
+        }
+        if (manifest != null) {
+            // The runs survive a crash in the rename that follows
+            runFileParser.sync();
+            manifest.checkpoint(runFileParser.getFileName(), dataEnd,
+                runList, null);
+        }
+        runFileParser.close();
+        inputParser.replaceWith(runFileParser.getFileName());
+        if (manifest != null) {
+            manifest.checkpoint(inputParser.getFileName(), dataEnd, runList,
+                null);
+        }
+        if (metrics != null) {
+            metrics.recordRuns(runList);
+        }
+        return runList;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Starts a worker on a slice of the input.
+     *
+     * @param input
+     *            the input file
+     * @param start
+     *            the position of the slice
+     * @param end
+     *            the position just past the slice
+     * @param runFile
+     *            the run file
+     * @return the worker process
+     * @throws IOException
+     *             if the process can not be started
+     */
+    private Process startWorker(
+        String input,
+        long start,
+        long end,
+        String runFile)
+        throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+            .toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SortWorker.class.getName());
+        command.add(input);
+        command.add(Long.toString(start));
+        command.add(Long.toString(end));
+        command.add(runFile);
+        command.addAll(options.toStreamArguments());
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Waits for a worker and reads the run it reports.
+     *
+     * @param process
+     *            the worker process
+     * @param worker
+     *            the number of the worker
+     * @return the start and length of the run
+     * @throws IOException
+     *             if the worker fails or reports no run
+     */
+    private long[] awaitWorker(Process process, int worker)
+        throws IOException {
+        long[] run = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 3 && fields[0].equals("run")) {
+                    run = new long[] { Long.parseLong(fields[1]), Long
+                        .parseLong(fields[2]) };
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Sort worker " + worker + " reported a "
+                + "malformed run", e);
+        }
+        int status;
+        try {
+            status = process.waitFor();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for sort "
+                + "worker " + worker);
+        }
+        if (status != 0 || run == null) {
+            throw new IOException("Sort worker " + worker + " failed with "
+                + "exit status " + status);
+        }
+        return run;
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the SortCoordinator class.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class SortCoordinatorTest extends TestCase {
+
+    /**
+     * Tests that a file sorted by worker processes comes out sorted, with
+     * the same records
+     *
+     * @throws IOException
+     */
+    public void testSortWithWorkers() throws IOException {
+        assertEquals(3, sortWithWorkers(40 * ByteFile.RECORDS_PER_BLOCK, 0));
+    }
+
+
+    /**
+     * Tests that a partial record at the end of the input is dropped, not
+     * read by the last worker
+     *
+     * @throws IOException
+     */
+    public void testPartialLastRecord() throws IOException {
+        assertEquals(3, sortWithWorkers(40 * ByteFile.RECORDS_PER_BLOCK
+            + 100, 3));
+    }
+
+
+    /**
+     * Sorts random records with three workers and checks that the input
+     * then holds the same records, sorted.
+     *
+     * @param count
+     *            the number of records
+     * @param extraBytes
+     *            bytes of a partial record after the records
+     * @return the number of runs
+     * @throws IOException
+     */
+    private int sortWithWorkers(int count, int extraBytes)
+        throws IOException {
+        Random rng = new Random(24);
+        ByteBuffer records = ByteBuffer.allocate(count
+            * ByteFile.BYTES_PER_RECORD + extraBytes);
+        for (int i = 0; i < count; i++) {
+            records.putLong(i);
+            records.putDouble(rng.nextDouble());
+        }
+        // The sort and its scratch files stay out of the working directory
+        Path directory = Files.createTempDirectory("coordinatorTest");
+        Path input = directory.resolve("input.bin");
+        Files.write(input, records.array());
+
+        SortOptions options = new SortOptions();
+        options.setBudget(new MemoryBudget(96 * 1024));
+        options.setWorkers(3);
+        options.setRunFileName(directory.resolve("runs.bin").toString());
+        options.setMergeFileName(directory.resolve("merge.bin").toString());
+        PrintStream out = System.out;
+        try {
+            Controller controller = new Controller(input.toString(),
+                options);
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            controller.performSorting();
+            System.setOut(out);
+
+            ByteBuffer sorted = ByteBuffer.wrap(Files.readAllBytes(input));
+            assertEquals(count * ByteFile.BYTES_PER_RECORD, sorted
+                .remaining());
+            long idSum = 0;
+            double previous = Double.NEGATIVE_INFINITY;
+            while (sorted.hasRemaining()) {
+                idSum += sorted.getLong();
+                double key = sorted.getDouble();
+                assertTrue(previous <= key);
+                previous = key;
+            }
+            assertEquals((long)count * (count - 1) / 2, idSum);
+            return controller.getMetrics().getRunCount();
+        }
+        finally {
+            System.setOut(out);
+            for (File file : directory.toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(directory);
+        }
+    }
+}
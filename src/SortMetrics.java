@@ -0,0 +1,496 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// -------------------------------------------------------------------------
+/**
+ * SortMetrics collects what one sort did: the records sorted, the runs and
+ * their lengths, the fan-in of every merge pass, the I/O of every file and
+ * the wall and CPU time of every phase. The Controller times the phases and
+ * ReplacementSelection reports runs and passes; the files count their own
+ * I/O in IOStats.
+ *
+ * The metrics can be watched while the sort runs through JMX, where they
+ * are registered as ExternalSort:type=SortMetrics and every file as
+ * ExternalSort:type=FileIO,file=(path), and written as a JSON summary when
+ * the sort is done.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class SortMetrics implements SortMetricsMBean {
+    // ~ Fields ................................................................
+    /**
+     * JMX domain of the registered MBeans.
+     */
+    public static final String DOMAIN = "ExternalSort";
+
+    /**
+     * Records sorted.
+     */
+    private long recordsProcessed;
+
+    /**
+     * Number of runs.
+     */
+    private int runCount;
+
+    /**
+     * Length of the shortest run in records.
+     */
+    private long minRunLength;
+
+    /**
+     * Length of the longest run in records.
+     */
+    private long maxRunLength;
+
+    /**
+     * Records in all runs together.
+     */
+    private long totalRunLength;
+
+    /**
+     * Fan-in of every merge pass.
+     */
+    private List<Integer> passFanIns = new ArrayList<>();
+
+    /**
+     * Name of every finished phase.
+     */
+    private List<String> phaseNames = new ArrayList<>();
+
+    /**
+     * Wall time of every finished phase in nanoseconds.
+     */
+    private List<Long> phaseWallNanos = new ArrayList<>();
+
+    /**
+     * CPU time of every finished phase in nanoseconds, -1 if unknown.
+     */
+    private List<Long> phaseCpuNanos = new ArrayList<>();
+
+    /**
+     * Name of the running phase, or null.
+     */
+    private String currentPhase;
+
+    /**
+     * Wall clock when the running phase began.
+     */
+    private long phaseStartWall;
+
+    /**
+     * Process CPU time when the running phase began.
+     */
+    private long phaseStartCpu;
+
+    /**
+     * I/O counters of the files of the sort.
+     */
+    private List<IOStats> files = new ArrayList<>();
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sets the number of records sorted.
+     *
+     * @param records
+     *            the record count
+     */
+    public synchronized void setRecordsProcessed(long records) {
+        this.recordsProcessed = records;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Records the runs of run generation.
+     *
+     * @param runs
+     *            the runs
+     */
+    public synchronized void recordRuns(DLList runs) {
+        runCount = 0;
+        totalRunLength = 0;
+        minRunLength = Long.MAX_VALUE;
+        maxRunLength = 0;
+        Iterator<Run> iterator = runs.iterator();
+        while (iterator.hasNext()) {
+            long length = iterator.next().getLength()
+                / ByteFile.BYTES_PER_RECORD;
+            runCount++;
+            totalRunLength += length;
+            minRunLength = Math.min(minRunLength, length);
+            maxRunLength = Math.max(maxRunLength, length);
+        }
+        if (runCount == 0) {
+            minRunLength = 0;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Records a merge pass.
+     *
+     * @param fanIn
+     *            the largest number of runs merged together in the pass
+     */
+    public synchronized void recordPass(int fanIn) {
+        passFanIns.add(fanIn);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Starts timing a phase, ending the running one if there is one.
+     *
+     * @param name
+     *            the name of the phase
+     */
+    public synchronized void beginPhase(String name) {
+        endPhase();
+        currentPhase = name;
+        phaseStartWall = System.nanoTime();
+        phaseStartCpu = processCpuNanos();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Stops timing the running phase. Does nothing if no phase is running.
+     */
+    public synchronized void endPhase() {
+        if (currentPhase == null) {
+            return;
+        }
+        long cpu = processCpuNanos();
+        phaseNames.add(currentPhase);
+        phaseWallNanos.add(System.nanoTime() - phaseStartWall);
+        phaseCpuNanos.add((cpu < 0 || phaseStartCpu < 0)
+            ? -1
+            : cpu - phaseStartCpu);
+        currentPhase = null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds the I/O counters of a file of the sort.
+     *
+     * @param stats
+     *            the counters
+     */
+    public synchronized void addFile(IOStats stats) {
+        files.add(stats);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the I/O counters of the files of the sort.
+     *
+     * @return the counters, in the order the files were added
+     */
+    public synchronized List<IOStats> getFiles() {
+        return new ArrayList<>(files);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Registers the metrics and the counters of every file with the
+     * platform MBean server, replacing those of an earlier sort. They stay
+     * registered after the sort so they can still be read.
+     *
+     * @throws JMException
+     *             if an MBean can not be registered
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        register(server, new ObjectName(DOMAIN + ":type=SortMetrics"), this);
+        for (IOStats stats : getFiles()) {
+            register(server, new ObjectName(DOMAIN + ":type=FileIO,file="
+                + ObjectName.quote(stats.getFileName())), stats);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Writes the metrics as a JSON summary.
+     *
+     * @param path
+     *            the file to write
+     * @throws IOException
+     *             if the file can not be written
+     */
+    public void writeJson(String path) throws IOException {
+        Files.write(Paths.get(path), toJson().getBytes(
+            StandardCharsets.UTF_8));
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the metrics as a JSON object.
+     *
+     * @return the JSON text
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"recordsProcessed\": " + recordsProcessed + ",\n");
+        json.append("  \"runs\": {\"count\": " + runCount
+            + ", \"minLength\": " + minRunLength + ", \"meanLength\": "
+            + String.format(Locale.ROOT, "%.1f", getMeanRunLength())
+            + ", \"maxLength\": " + maxRunLength + "},\n");
+
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < passFanIns.size(); i++) {
+            items.add("{\"pass\": " + (i + 1) + ", \"fanIn\": " + passFanIns
+                .get(i) + "}");
+        }
+        appendArray(json, "mergePasses", items, true);
+
+        items.clear();
+        for (IOStats stats : files) {
+            items.add("{\"file\": " + quote(stats.getFileName())
+                + ", \"blocksRead\": " + stats.getBlocksRead()
+                + ", \"bytesRead\": " + stats.getBytesRead()
+                + ", \"blocksWritten\": " + stats.getBlocksWritten()
+                + ", \"bytesWritten\": " + stats.getBytesWritten()
+                + ", \"seeks\": " + stats.getSeeks() + "}");
+        }
+        appendArray(json, "files", items, true);
+
+        items.clear();
+        for (int i = 0; i < phaseNames.size(); i++) {
+            items.add("{\"name\": " + quote(phaseNames.get(i))
+                + ", \"wallMillis\": " + millis(phaseWallNanos.get(i))
+                + ", \"cpuMillis\": " + millis(phaseCpuNanos.get(i)) + "}");
+        }
+        appendArray(json, "phases", items, false);
+        return json.append("}\n").toString();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getRecordsProcessed() {
+        return recordsProcessed;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getRunCount() {
+        return runCount;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getMinRunLength() {
+        return minRunLength;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized double getMeanRunLength() {
+        return (runCount == 0) ? 0 : (double)totalRunLength / runCount;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getMaxRunLength() {
+        return maxRunLength;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getMergePasses() {
+        return passFanIns.size();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int[] getPassFanIns() {
+        int[] fanIns = new int[passFanIns.size()];
+        for (int i = 0; i < fanIns.length; i++) {
+            fanIns[i] = passFanIns.get(i);
+        }
+        return fanIns;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String[] getPhaseNames() {
+        return phaseNames.toArray(new String[0]);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long[] getPhaseWallMillis() {
+        long[] times = new long[phaseWallNanos.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = millis(phaseWallNanos.get(i));
+        }
+        return times;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long[] getPhaseCpuMillis() {
+        long[] times = new long[phaseCpuNanos.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = millis(phaseCpuNanos.get(i));
+        }
+        return times;
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Registers an MBean, unregistering whatever had its name before.
+     *
+     * @param server
+     *            the MBean server
+     * @param name
+     *            the name of the MBean
+     * @param bean
+     *            the MBean
+     * @throws JMException
+     *             if the MBean can not be registered
+     */
+    private static void register(
+        MBeanServer server,
+        ObjectName name,
+        Object bean)
+        throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the CPU time used by every thread of the process so far.
+     *
+     * @return the CPU time in nanoseconds, or -1 if the JVM does not report
+     *         it
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean)os)
+                .getProcessCpuTime();
+        }
+        return -1;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Converts nanoseconds to milliseconds, keeping -1 for unknown.
+     *
+     * @param nanos
+     *            the time in nanoseconds, or -1
+     * @return the time in milliseconds, or -1
+     */
+    private static long millis(long nanos) {
+        return (nanos < 0) ? -1 : nanos / 1_000_000;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Appends a member of the JSON summary whose value is an array, one
+     * element per line.
+     *
+     * @param json
+     *            the summary so far
+     * @param name
+     *            the name of the member
+     * @param items
+     *            the elements, already in JSON
+     * @param more
+     *            whether another member follows
+     */
+    private static void appendArray(
+        StringBuilder json,
+        String name,
+        List<String> items,
+        boolean more) {
+        json.append("  \"" + name + "\": [");
+        for (int i = 0; i < items.size(); i++) {
+            json.append(i == 0 ? "\n    " : ",\n    ").append(items.get(i));
+        }
+        json.append(items.isEmpty() ? "]" : "\n  ]");
+        json.append(more ? ",\n" : "\n");
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Quotes a string for JSON.
+     *
+     * @param text
+     *            the string
+     * @return the string in double quotes, with quotes and backslashes
+     *         escaped
+     */
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,102 @@
+// -------------------------------------------------------------------------
+/**
+ * SortMetricsMBean is the management interface of SortMetrics, the
+ * counters and timers of one sort. Run lengths are in records and times in
+ * milliseconds. Phases are listed in the order they ran; the wall and CPU
+ * times of a phase are at the same index as its name.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public interface SortMetricsMBean {
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records sorted.
+     *
+     * @return the record count
+     */
+    long getRecordsProcessed();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of runs run generation produced.
+     *
+     * @return the run count, 0 for an in-memory sort
+     */
+    int getRunCount();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the length of the shortest run.
+     *
+     * @return the length in records
+     */
+    long getMinRunLength();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the mean length of the runs.
+     *
+     * @return the length in records
+     */
+    double getMeanRunLength();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the length of the longest run.
+     *
+     * @return the length in records
+     */
+    long getMaxRunLength();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of merge passes.
+     *
+     * @return the pass count
+     */
+    int getMergePasses();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the largest number of runs merged together in every pass.
+     *
+     * @return the fan-in of every pass, in pass order
+     */
+    int[] getPassFanIns();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the names of the phases.
+     *
+     * @return the names, in the order the phases ran
+     */
+    String[] getPhaseNames();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the wall time of every phase.
+     *
+     * @return the wall times in milliseconds
+     */
+    long[] getPhaseWallMillis();
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the CPU time of every phase, counting every thread of the
+     * process.
+     *
+     * @return the CPU times in milliseconds, -1 where the JVM does not
+     *         report them
+     */
+    long[] getPhaseCpuMillis();
+}
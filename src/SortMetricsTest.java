@@ -0,0 +1,72 @@
+import student.TestCase;
+
+/**
+ * Test class for the SortMetrics and IOStats classes.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class SortMetricsTest extends TestCase {
+    private SortMetrics metrics;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        metrics = new SortMetrics();
+    }
+
+
+    /**
+     * Tests that only transfers that do not follow the one before count as
+     * seeks, and that partial blocks count as whole blocks
+     */
+    public void testIOStats() {
+        IOStats stats = new IOStats("data.bin");
+        int block = ByteFile.BYTES_PER_BLOCK;
+        stats.recordRead(0, block);
+        stats.recordRead(block, 2 * block);
+        stats.recordWrite(0, 16);
+        stats.recordRead(3 * block, 0);
+        assertEquals(3, stats.getBlocksRead());
+        assertEquals(3L * block, stats.getBytesRead());
+        assertEquals(1, stats.getBlocksWritten());
+        assertEquals(16, stats.getBytesWritten());
+        assertEquals(1, stats.getSeeks());
+        stats.recordWrite(5 * block, block);
+        assertEquals(2, stats.getSeeks());
+    }
+
+
+    /**
+     * Tests the run lengths, passes and phases and their JSON summary
+     */
+    public void testRunsAndJson() {
+        DLList runs = new DLList();
+        int record = ByteFile.BYTES_PER_RECORD;
+        runs.add(new Run(0, 100 * record, 100 * record, 0));
+        runs.add(new Run(100 * record, 300 * record, 400 * record, 1));
+        metrics.recordRuns(runs);
+        metrics.recordPass(2);
+        metrics.setRecordsProcessed(400);
+        metrics.beginPhase("merge");
+        metrics.endPhase();
+        metrics.addFile(new IOStats("a\"b.bin"));
+
+        assertEquals(2, metrics.getRunCount());
+        assertEquals(100, metrics.getMinRunLength());
+        assertEquals(300, metrics.getMaxRunLength());
+        assertEquals(200.0, metrics.getMeanRunLength(), 0.0);
+        assertEquals(1, metrics.getMergePasses());
+        assertEquals(2, metrics.getPassFanIns()[0]);
+        assertEquals("merge", metrics.getPhaseNames()[0]);
+        assertEquals(1, metrics.getPhaseWallMillis().length);
+
+        String json = metrics.toJson();
+        assertTrue(json.contains("\"recordsProcessed\": 400"));
+        assertTrue(json.contains("\"meanLength\": 200.0"));
+        assertTrue(json.contains("{\"pass\": 1, \"fanIn\": 2}"));
+        assertTrue(json.contains("\"file\": \"a\\\"b.bin\""));
+        assertTrue(json.contains("\"name\": \"merge\""));
+    }
+}
@@ -0,0 +1,978 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// -------------------------------------------------------------------------
+/**
+ * SortOptions collects the settings of one sort, such as the working memory
+ * budget, the I/O mode of the files, how far merge cursors read ahead, how
+ * far output writes may lag behind, how many threads generate runs and
+ * share the final merge, which algorithm sorts in memory and how dense the
+ * index of the sorted file is, where the metrics summary goes, whether an
+ * interrupted sort is resumed, how intermediate runs are encoded, which
+ * key the records are sorted by, how records with equal keys are combined,
+ * how many files the sorted records are split between and how many worker
+ * processes generate the runs. Every setting has a default, so a new
+ * SortOptions needs no configuration.
+ *
+ * Note that a sharded sort (--shards) does not leave the sorted records in
+ * the input: they are only in the shard files, and the input file is
+ * truncated to zero length.
+ *
+ * Records are always ByteFile.BYTES_PER_RECORD (16) bytes. --key only
+ * says where the key is within them; there is no option for the size of
+ * a record, and a size field in --key is rejected.
+ *
+ * Options are read from the command line with parse(). They look like
+ * "--mem=2g", "--io=mapped", "--prefetch=2", "--write-behind=2",
+ * "--threads=8", "--merge-threads=8", "--sorter=radix", "--index=16",
+ * "--metrics=sort.json", "--resume", "--codec=delta+zip",
+ * "--key=int@8,int@12:desc", "--combine=count", "--shards=8",
+ * "--shard-prefix=part" or "--workers=4".
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class SortOptions {
+    // ~ Fields ................................................................
+    /**
+     * Name of the system property that sets the memory budget, for example
+     * -Dsort.mem=2g
+     */
+    public static final String MEMORY_PROPERTY = "sort.mem";
+
+    /**
+     * Prefix of the command line option that sets the memory budget, for
+     * example --mem=2g
+     */
+    public static final String MEMORY_OPTION = "--mem=";
+
+    /**
+     * Prefix of the command line option that sets the I/O mode, for example
+     * --io=mapped or --io=direct
+     */
+    public static final String IO_OPTION = "--io=";
+
+    /**
+     * Prefix of the command line option that sets the merge read-ahead depth,
+     * for example --prefetch=2
+     */
+    public static final String PREFETCH_OPTION = "--prefetch=";
+
+    /**
+     * Prefix of the command line option that sets the write-behind depth,
+     * for example --write-behind=2
+     */
+    public static final String WRITE_BEHIND_OPTION = "--write-behind=";
+
+    /**
+     * Prefix of the command line option that sets the number of run
+     * generation threads, for example --threads=8
+     */
+    public static final String THREADS_OPTION = "--threads=";
+
+    /**
+     * Prefix of the command line option that sets the number of threads
+     * sharing the final merge, for example --merge-threads=8
+     */
+    public static final String MERGE_THREADS_OPTION = "--merge-threads=";
+
+    /**
+     * Prefix of the command line option that sets the in-memory sort
+     * algorithm, for example --sorter=radix
+     */
+    public static final String SORTER_OPTION = "--sorter=";
+
+    /**
+     * Prefix of the command line option that asks for an index of the
+     * sorted file and sets how many blocks share one entry, for example
+     * --index=16
+     */
+    public static final String INDEX_OPTION = "--index=";
+
+    /**
+     * Prefix of the command line option that names the file the JSON
+     * metrics summary is written to, for example --metrics=sort.json
+     */
+    public static final String METRICS_OPTION = "--metrics=";
+
+    /**
+     * The command line option that resumes an interrupted sort from its run
+     * manifest.
+     */
+    public static final String RESUME_OPTION = "--resume";
+
+    /**
+     * Prefix of the command line option that sets the codec of the
+     * intermediate runs, for example --codec=delta+zip
+     */
+    public static final String CODEC_OPTION = "--codec=";
+
+    /**
+     * Prefix of the command line option that keeps only the records with
+     * the smallest keys, for example --top=1000
+     */
+    public static final String TOP_OPTION = "--top=";
+
+    /**
+     * Prefix of the command line option that sets the key the records are
+     * sorted by, for example --key=long@0. It does not change the size of
+     * a record.
+     */
+    public static final String KEY_OPTION = "--key=";
+
+    /**
+     * Prefix of the command line option that combines records with equal
+     * keys, for example --combine=first
+     */
+    public static final String COMBINE_OPTION = "--combine=";
+
+    /**
+     * Prefix of the command line option that splits the sorted records
+     * between files by key range, for example --shards=8
+     */
+    public static final String SHARDS_OPTION = "--shards=";
+
+    /**
+     * Prefix of the command line option that sets how the shard files are
+     * named, for example --shard-prefix=part
+     */
+    public static final String SHARD_PREFIX_OPTION = "--shard-prefix=";
+
+    /**
+     * Prefix of the command line option that generates the runs in worker
+     * processes, for example --workers=4
+     */
+    public static final String WORKERS_OPTION = "--workers=";
+
+    /**
+     * The working memory budget.
+     */
+    private MemoryBudget budget;
+
+    /**
+     * How the input and run files are read.
+     */
+    private IOMode ioMode;
+
+    /**
+     * Number of blocks each merge cursor reads ahead, 0 for synchronous
+     * reads.
+     */
+    private int prefetchDepth;
+
+    /**
+     * Number of full output buffers that may wait for the writer thread, 0
+     * for synchronous writes.
+     */
+    private int writeBehindDepth;
+
+    /**
+     * Number of threads generating runs.
+     */
+    private int runThreads;
+
+    /**
+     * Number of threads sharing the final merge.
+     */
+    private int mergeThreads;
+
+    /**
+     * How records are sorted in memory.
+     */
+    private SortAlgorithm sortAlgorithm;
+
+    /**
+     * Number of blocks of the sorted file per index entry, 0 (the default)
+     * for no index.
+     */
+    private int indexBlocks;
+
+    /**
+     * File the JSON metrics summary is written to, or null for none.
+     */
+    private String metricsPath;
+
+    /**
+     * Whether an interrupted sort is resumed from its run manifest.
+     */
+    private boolean resume;
+
+    /**
+     * Codec the intermediate runs are encoded with, or null for raw runs.
+     */
+    private BlockCodec codec;
+
+    /**
+     * Number of records with the smallest keys the sort keeps, 0 for all.
+     */
+    private long topK;
+
+    /**
+     * Layout giving the key the records are sorted by.
+     */
+    private RecordLayout layout;
+
+    /**
+     * Combiner of records with equal keys, or null to keep every record.
+     */
+    private RecordCombiner combiner;
+
+    /**
+     * Number of files the sorted records are split between, 0 for none.
+     */
+    private int shards;
+
+    /**
+     * Path prefix of the shard files.
+     */
+    private String shardPrefix;
+
+    /**
+     * Number of worker processes generating runs, 1 to generate them in
+     * this process.
+     */
+    private int workers;
+
+    /**
+     * Directory the scratch files of a stream sort are created in.
+     */
+    private String scratchDirectory;
+
+    /**
+     * The file a file sort writes its runs to.
+     */
+    private String runFileName;
+
+    /**
+     * The file a file sort writes merge passes to.
+     */
+    private String mergeFileName;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new SortOptions object with the default settings.
+     */
+    public SortOptions() {
+        this.budget = new MemoryBudget();
+        this.ioMode = IOMode.CHANNEL;
+        this.prefetchDepth = 1;
+        this.writeBehindDepth = 2;
+        this.runThreads = 1;
+        this.mergeThreads = 1;
+        this.sortAlgorithm = SortAlgorithm.HEAP;
+        this.indexBlocks = 0;
+        this.layout = RecordLayout.DEFAULT;
+        this.shardPrefix = "out";
+        this.workers = 1;
+        this.scratchDirectory = System.getProperty("java.io.tmpdir");
+        this.runFileName = "intermediateRuns.bin";
+        this.mergeFileName = "mergedResult.bin";
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Reads options from command line arguments. Arguments that do not
+     * start with "--" are not options and are ignored. The memory option
+     * wins over the sort.mem system property.
+     *
+     * @param args
+     *            the command line arguments
+     * @param first
+     *            the index of the first argument to look at
+     * @return the options
+     * @throws IllegalArgumentException
+     *             if an option is unknown or has an invalid value
+     */
+    public static SortOptions parse(String[] args, int first) {
+        SortOptions options = new SortOptions();
+        String memory = System.getProperty(MEMORY_PROPERTY);
+        if (memory != null) {
+            options.setBudget(MemoryBudget.parse(memory));
+        }
+        for (int i = first; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith(MEMORY_OPTION)) {
+                options.setBudget(MemoryBudget.parse(arg.substring(
+                    MEMORY_OPTION.length())));
+            }
+            else if (arg.startsWith(IO_OPTION)) {
+                options.setIOMode(IOMode.parse(arg.substring(IO_OPTION
+                    .length())));
+            }
+            else if (arg.startsWith(PREFETCH_OPTION)) {
+                options.setPrefetchDepth(Integer.parseInt(arg.substring(
+                    PREFETCH_OPTION.length())));
+            }
+            else if (arg.startsWith(WRITE_BEHIND_OPTION)) {
+                options.setWriteBehindDepth(Integer.parseInt(arg.substring(
+                    WRITE_BEHIND_OPTION.length())));
+            }
+            else if (arg.startsWith(THREADS_OPTION)) {
+                options.setRunThreads(Integer.parseInt(arg.substring(
+                    THREADS_OPTION.length())));
+            }
+            else if (arg.startsWith(MERGE_THREADS_OPTION)) {
+                options.setMergeThreads(Integer.parseInt(arg.substring(
+                    MERGE_THREADS_OPTION.length())));
+            }
+            else if (arg.startsWith(SORTER_OPTION)) {
+                options.setSortAlgorithm(SortAlgorithm.parse(arg.substring(
+                    SORTER_OPTION.length())));
+            }
+            else if (arg.startsWith(INDEX_OPTION)) {
+                options.setIndexBlocks(Integer.parseInt(arg.substring(
+                    INDEX_OPTION.length())));
+            }
+            else if (arg.startsWith(METRICS_OPTION)) {
+                options.setMetricsPath(arg.substring(METRICS_OPTION
+                    .length()));
+            }
+            else if (arg.equals(RESUME_OPTION)) {
+                options.setResume(true);
+            }
+            else if (arg.startsWith(CODEC_OPTION)) {
+                options.setCodec(BlockCodec.forName(arg.substring(CODEC_OPTION
+                    .length())));
+            }
+            else if (arg.startsWith(TOP_OPTION)) {
+                options.setTopK(Long.parseLong(arg.substring(TOP_OPTION
+                    .length())));
+            }
+            else if (arg.startsWith(KEY_OPTION)) {
+                options.setLayout(RecordLayout.parse(arg.substring(KEY_OPTION
+                    .length())));
+            }
+            else if (arg.startsWith(COMBINE_OPTION)) {
+                options.setCombiner(RecordCombiner.forName(arg.substring(
+                    COMBINE_OPTION.length())));
+            }
+            else if (arg.startsWith(SHARDS_OPTION)) {
+                options.setShards(Integer.parseInt(arg.substring(
+                    SHARDS_OPTION.length())));
+            }
+            else if (arg.startsWith(SHARD_PREFIX_OPTION)) {
+                options.setShardPrefix(arg.substring(SHARD_PREFIX_OPTION
+                    .length()));
+            }
+            else if (arg.startsWith(WORKERS_OPTION)) {
+                options.setWorkers(Integer.parseInt(arg.substring(
+                    WORKERS_OPTION.length())));
+            }
+            else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return options;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the working memory budget.
+     *
+     * @return the budget
+     */
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the working memory budget.
+     *
+     * @param budget
+     *            the budget
+     */
+    public void setBudget(MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how the input, run and merge files are read and written. In
+     * DIRECT mode the positional I/O of the run and merge files bypasses
+     * the page cache; the input and the shards use CHANNEL instead.
+     *
+     * @return the I/O mode
+     */
+    public IOMode getIOMode() {
+        return ioMode;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how the input, run and merge files are read and written. In
+     * DIRECT mode the positional I/O of the run and merge files bypasses
+     * the page cache; the input and the shards use CHANNEL instead.
+     *
+     * @param ioMode
+     *            the I/O mode
+     */
+    public void setIOMode(IOMode ioMode) {
+        this.ioMode = ioMode;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many blocks each merge cursor reads ahead.
+     *
+     * @return the prefetch depth, 0 for synchronous reads
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many blocks each merge cursor reads ahead. Each block of
+     * read-ahead costs one block buffer per run, which lowers the fan-in the
+     * memory budget allows.
+     *
+     * @param prefetchDepth
+     *            the prefetch depth, 0 for synchronous reads
+     * @throws IllegalArgumentException
+     *             if the depth is negative
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("Prefetch depth must not be "
+                + "negative: " + prefetchDepth);
+        }
+        this.prefetchDepth = prefetchDepth;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many full output buffers may wait for the writer thread.
+     *
+     * @return the write-behind depth, 0 for synchronous writes
+     */
+    public int getWriteBehindDepth() {
+        return writeBehindDepth;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many full output buffers may wait for the writer thread. The
+     * output share of the memory budget is split between depth + 1 buffers.
+     *
+     * @param writeBehindDepth
+     *            the write-behind depth, 0 for synchronous writes
+     * @throws IllegalArgumentException
+     *             if the depth is negative
+     */
+    public void setWriteBehindDepth(int writeBehindDepth) {
+        if (writeBehindDepth < 0) {
+            throw new IllegalArgumentException("Write-behind depth must not "
+                + "be negative: " + writeBehindDepth);
+        }
+        this.writeBehindDepth = writeBehindDepth;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many threads generate runs.
+     *
+     * @return the number of run generation threads
+     */
+    public int getRunThreads() {
+        return runThreads;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many threads generate runs. The heap share of the memory
+     * budget is split evenly between them, so more threads produce more,
+     * shorter runs.
+     *
+     * @param runThreads
+     *            the number of run generation threads
+     * @throws IllegalArgumentException
+     *             if the number is below 1
+     */
+    public void setRunThreads(int runThreads) {
+        if (runThreads < 1) {
+            throw new IllegalArgumentException("Run threads must be at "
+                + "least 1: " + runThreads);
+        }
+        this.runThreads = runThreads;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many threads share the final merge.
+     *
+     * @return the number of merge threads
+     */
+    public int getMergeThreads() {
+        return mergeThreads;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many threads share the final merge. Each thread merges one
+     * key range of every run with cursors and a writer of its own, so the
+     * fan-in of the final merge and its output buffers are divided between
+     * the threads.
+     *
+     * @param mergeThreads
+     *            the number of merge threads
+     * @throws IllegalArgumentException
+     *             if the number is below 1
+     */
+    public void setMergeThreads(int mergeThreads) {
+        if (mergeThreads < 1) {
+            throw new IllegalArgumentException("Merge threads must be at "
+                + "least 1: " + mergeThreads);
+        }
+        this.mergeThreads = mergeThreads;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how records are sorted in memory. A combining sort always uses
+     * the radix sorter, which is stable, so the combiner sees records with
+     * equal keys in the order of the input.
+     *
+     * @return the sort algorithm
+     */
+    public SortAlgorithm getSortAlgorithm() {
+        if (combiner != null) {
+            return SortAlgorithm.RADIX;
+        }
+        return sortAlgorithm;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how records are sorted in memory, both for inputs that fit in
+     * memory and for run generation. A combiner overrides it with the radix
+     * sorter.
+     *
+     * @param sortAlgorithm
+     *            the sort algorithm
+     */
+    public void setSortAlgorithm(SortAlgorithm sortAlgorithm) {
+        this.sortAlgorithm = sortAlgorithm;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many blocks of the sorted file share one index entry.
+     *
+     * @return the blocks per index entry, 0 for no index
+     */
+    public int getIndexBlocks() {
+        return indexBlocks;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many blocks of the sorted file share one index entry. The
+     * index is written next to the sorted file and costs 8 bytes per entry;
+     * a lookup reads up to this many blocks before reaching its key. There
+     * is no index unless one is asked for.
+     *
+     * @param indexBlocks
+     *            the blocks per index entry, 0 for no index
+     * @throws IllegalArgumentException
+     *             if the number is negative
+     */
+    public void setIndexBlocks(int indexBlocks) {
+        if (indexBlocks < 0) {
+            throw new IllegalArgumentException("Index blocks must not be "
+                + "negative: " + indexBlocks);
+        }
+        this.indexBlocks = indexBlocks;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the file the JSON metrics summary is written to.
+     *
+     * @return the path, or null for no summary
+     */
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the file the JSON metrics summary is written to when the sort is
+     * done. The metrics are published through JMX either way.
+     *
+     * @param metricsPath
+     *            the path, or null for no summary
+     */
+    public void setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns whether an interrupted sort is resumed.
+     *
+     * @return true to resume from the run manifest
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets whether an interrupted sort is resumed. A resumed sort reloads
+     * the run manifest next to the input and goes on from the last merge
+     * pass it finished; without a usable manifest it sorts from the start.
+     *
+     * @param resume
+     *            true to resume from the run manifest
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the codec the intermediate runs are encoded with.
+     *
+     * @return the codec, or null for raw runs
+     */
+    public BlockCodec getCodec() {
+        return codec;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the codec the intermediate runs are encoded with. Encoding costs
+     * CPU on every pass and only pays off when neighbouring records of a run
+     * are alike, such as close keys and sequential IDs, so runs stay raw by
+     * default. The sorted output is raw either way.
+     *
+     * @param codec
+     *            the codec, or null for raw runs
+     */
+    public void setCodec(BlockCodec codec) {
+        this.codec = codec;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many records with the smallest keys the sort keeps.
+     *
+     * @return the number of records, 0 for all of them
+     */
+    public long getTopK() {
+        return topK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many records with the smallest keys the sort keeps; the
+     * sorted output holds only those. When that many heap slots fit in the
+     * budget they are selected in one scan of the input. Otherwise the input
+     * is sorted into runs as usual and the merge stops after that many
+     * records. A top-K sort can not be resumed.
+     *
+     * @param topK
+     *            the number of records, 0 for all of them
+     * @throws IllegalArgumentException
+     *             if the number is negative
+     */
+    public void setTopK(long topK) {
+        if (topK < 0) {
+            throw new IllegalArgumentException("Top records must not be "
+                + "negative: " + topK);
+        }
+        this.topK = topK;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the layout giving the key the records are sorted by.
+     *
+     * @return the layout
+     */
+    public RecordLayout getLayout() {
+        return layout;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the layout giving the key the records are sorted by, the double
+     * after the record ID by default. The block index only knows the
+     * default key, so a sort by any other key writes no index.
+     *
+     * @param layout
+     *            the layout
+     */
+    public void setLayout(RecordLayout layout) {
+        this.layout = layout;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the combiner of records with equal keys.
+     *
+     * @return the combiner, or null to keep every record
+     */
+    public RecordCombiner getCombiner() {
+        return combiner;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the combiner of records with equal keys, which folds them into
+     * one record while runs are generated and merged, so the sorted output
+     * holds one record per key. The output is then shorter than the input
+     * and only known at the end, so the final merge runs on a single
+     * thread, the index is built from the sorted file afterwards and the
+     * sort can not be resumed. A combiner can not be used with a top-K sort.
+     * The combiner sees records with equal keys in the order of the input:
+     * runs are generated by the stable radix sorter and only consecutive
+     * runs are merged.
+     *
+     * @param combiner
+     *            the combiner, or null to keep every record
+     */
+    public void setCombiner(RecordCombiner combiner) {
+        this.combiner = combiner;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many files the sorted records are split between.
+     *
+     * @return the number of shards, 0 for a single sorted file
+     */
+    public int getShards() {
+        return shards;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many files the sorted records are split between. The last
+     * merge pass then writes every key range to a shard file of its own
+     * instead of sorting the input in place: each shard is sorted, every
+     * key of a shard is smaller than those of the shards after it, and
+     * records with equal keys share a shard. The ranges are balanced by a
+     * sample of the input keys. No index is written, and neither a top-K
+     * sort nor a stream sort can be sharded.
+     *
+     * The shards replace the input: once they are written, the input file
+     * is truncated to zero length, since it only holds the runs of the
+     * last merge pass. Keep a copy of the input if it is still needed.
+     *
+     * @param shards
+     *            the number of shards, 0 for a single sorted file
+     * @throws IllegalArgumentException
+     *             if the number is negative
+     */
+    public void setShards(int shards) {
+        if (shards < 0) {
+            throw new IllegalArgumentException("Shards must not be "
+                + "negative: " + shards);
+        }
+        this.shards = shards;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the path prefix of the shard files.
+     *
+     * @return the prefix
+     */
+    public String getShardPrefix() {
+        return shardPrefix;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the path prefix of the shard files, "out" by default, which
+     * names them out-000.bin, out-001.bin and so on.
+     *
+     * @param shardPrefix
+     *            the prefix, which may include a directory
+     */
+    public void setShardPrefix(String shardPrefix) {
+        this.shardPrefix = shardPrefix;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of a shard file.
+     *
+     * @param shard
+     *            the number of the shard, from 0
+     * @return the name, for example out-003.bin
+     */
+    public String getShardName(int shard) {
+        return String.format("%s-%03d.bin", shardPrefix, shard);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns how many worker processes generate the runs.
+     *
+     * @return the number of workers, 1 for none
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets how many worker processes generate the runs of a file sort (see
+     * SortCoordinator). Every worker is a JVM of its own with the whole
+     * memory budget, which sorts one slice of the input into a single run;
+     * this process then merges the runs of the workers.
+     *
+     * @param workers
+     *            the number of workers, 1 to generate the runs in this
+     *            process
+     * @throws IllegalArgumentException
+     *             if the number is below 1
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Workers must be at least 1: "
+                + workers);
+        }
+        this.workers = workers;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the command line options of the settings a stream sort uses,
+     * as parse() reads them: the memory budget, the I/O mode, the prefetch
+     * and write-behind depths, the sort algorithm, the codec, the top
+     * records, the key and the combiner.
+     *
+     * @return the options
+     */
+    public List<String> toStreamArguments() {
+        List<String> args = new ArrayList<>();
+        args.add(MEMORY_OPTION + budget.getTotalBytes());
+        args.add(IO_OPTION + ioMode.name().toLowerCase());
+        args.add(PREFETCH_OPTION + prefetchDepth);
+        args.add(WRITE_BEHIND_OPTION + writeBehindDepth);
+        args.add(SORTER_OPTION + sortAlgorithm.name().toLowerCase());
+        args.add(CODEC_OPTION + BlockCodec.nameOf(codec));
+        args.add(TOP_OPTION + topK);
+        args.add(KEY_OPTION + layout);
+        args.add(COMBINE_OPTION + RecordCombiner.nameOf(combiner));
+        return args;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the directory the scratch files of a stream sort are created
+     * in.
+     *
+     * @return the directory
+     */
+    public String getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the directory the scratch files of a stream sort are created in,
+     * the system temporary directory by default. A file sort keeps its
+     * scratch files where getRunFileName() and getMergeFileName() say.
+     *
+     * @param scratchDirectory
+     *            the directory
+     */
+    public void setScratchDirectory(String scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the file a file sort writes its runs to.
+     *
+     * @return the path of the run file
+     */
+    public String getRunFileName() {
+        return runFileName;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the file a file sort writes its runs to, intermediateRuns.bin in
+     * the working directory by default. It is renamed over the input after
+     * run generation, so it has to be on the same file system.
+     *
+     * @param runFileName
+     *            the path of the run file
+     */
+    public void setRunFileName(String runFileName) {
+        this.runFileName = runFileName;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the file a file sort writes merge passes to.
+     *
+     * @return the path of the merge file
+     */
+    public String getMergeFileName() {
+        return mergeFileName;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sets the file a file sort writes merge passes to, mergedResult.bin in
+     * the working directory by default.
+     *
+     * @param mergeFileName
+     *            the path of the merge file
+     */
+    public void setMergeFileName(String mergeFileName) {
+        this.mergeFileName = mergeFileName;
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// -------------------------------------------------------------------------
+/**
+ * SortWorker is the main class of a worker process started by a
+ * SortCoordinator. It sorts one slice of the input file into a single run,
+ * with ExternalSorter and scratch files of its own, and writes the run to
+ * the same span of the shared run file, where no other worker writes. It
+ * then reports the run on standard output as one line,
+ *
+ * <pre>
+ * run (start) (length)
+ * </pre>
+ *
+ * which is shorter than the slice when records were combined or only the
+ * top records kept. Log messages go to standard error. A worker that fails
+ * exits with status 1.
+ *
+ * The command line is the input file, the start and end of the slice, the
+ * run file and the options of the sort:
+ *
+ * <pre>
+ * java SortWorker input.bin 0 1048576 intermediateRuns.bin --mem=64m ...
+ * </pre>
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public final class SortWorker {
+
+    // -------------------------------------------------------------------------
+    /**
+     * A slice of a file read as a stream, with positional reads that leave
+     * the channel alone.
+     */
+    private static class SliceChannel implements ReadableByteChannel {
+        /**
+         * The file.
+         */
+        private FileChannel file;
+
+        /**
+         * Position of the next read.
+         */
+        private long position;
+
+        /**
+         * Position just past the slice.
+         */
+        private long end;
+
+        /**
+         * Creates a new SliceChannel object.
+         *
+         * @param file
+         *            the file
+         * @param start
+         *            the position of the slice
+         * @param end
+         *            the position just past the slice
+         */
+        SliceChannel(FileChannel file, long start, long end) {
+            this.file = file;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            ByteBuffer window = dst.slice();
+            window.limit((int)Math.min(window.remaining(), end - position));
+            int read = file.read(window, position);
+            if (read > 0) {
+                position += read;
+                dst.position(dst.position() + read);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return file.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Not instantiated.
+     */
+    private SortWorker() {
+        // Only static methods
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Sorts a slice of the input into the run file.
+     *
+     * @param args
+     *            the input file, the start and end of the slice, the run
+     *            file and the options of the sort
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length < 4) {
+                throw new IllegalArgumentException("Usage: SortWorker input "
+                    + "start end runFile [options]");
+            }
+            long start = Long.parseLong(args[1]);
+            long end = Long.parseLong(args[2]);
+            SortOptions options = SortOptions.parse(args, 4);
+            long length = sortSlice(args[0], start, end, args[3], options);
+            System.out.println("run " + start + " " + length);
+        }
+        catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sorts a slice of the input into the same span of the run file.
+     *
+     * @param input
+     *            the input file
+     * @param start
+     *            the position of the slice
+     * @param end
+     *            the position just past the slice
+     * @param runFile
+     *            the run file
+     * @param options
+     *            the options of the sort
+     * @return the length of the sorted run
+     * @throws IOException
+     *             if a file can not be read or written
+     */
+    public static long sortSlice(
+        String input,
+        long start,
+        long end,
+        String runFile,
+        SortOptions options)
+        throws IOException {
+        try (
+            FileChannel in = FileChannel.open(Paths.get(input),
+                StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(Paths.get(runFile),
+                StandardOpenOption.WRITE)) {
+            out.position(start);
+            ExternalSorter.sort(new SliceChannel(in, start, end), out,
+                options);
+            return out.position() - start;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// -------------------------------------------------------------------------
+/**
+ * SortedFileReader answers key lookups on a sorted file without scanning it.
+ * It binary-searches the file's BlockIndex for the last indexed block that
+ * starts below the key and reads forward from there, so a lookup reads at
+ * most the blocks between two index entries before it reaches the key, plus
+ * the blocks holding the answer.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class SortedFileReader {
+    // ~ Fields ................................................................
+    /**
+     * The sorted file.
+     */
+    private FileParser dataParser;
+
+    /**
+     * The index of the sorted file.
+     */
+    private BlockIndex index;
+
+    /**
+     * Buffer for reading one block.
+     */
+    private ByteBuffer scratch;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new SortedFileReader object for a sorted file and the index
+     * next to it.
+     *
+     * @param dataPath
+     *            the sorted file
+     * @throws IOException
+     *             if the file or its index can not be opened
+     */
+    public SortedFileReader(String dataPath) throws IOException {
+        this(dataPath, BlockIndex.read(dataPath + BlockIndex.SUFFIX));
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new SortedFileReader object for a sorted file and its index.
+     *
+     * @param dataPath
+     *            the sorted file
+     * @param index
+     *            the index of the file
+     * @throws IOException
+     *             if the file can not be opened or does not match the index
+     */
+    public SortedFileReader(String dataPath, BlockIndex index)
+        throws IOException {
+        this.dataParser = new FileParser(dataPath);
+        this.index = index;
+        this.scratch = ByteBuffer.allocate(ByteFile.BYTES_PER_BLOCK);
+        if (dataParser.getFile().length() != index.getDataLength()) {
+            dataParser.close();
+            throw new IOException("Index of " + dataPath + " is for a file of "
+                + index.getDataLength() + " bytes");
+        }
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Finds the first record whose key is not smaller than the given key.
+     *
+     * @param key
+     *            the key to look for
+     * @return the file position of that record, or the length of the file if
+     *         every key is smaller
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public long seekToKey(double key) throws IOException {
+        long position = index.scanStart(key);
+        long length = index.getDataLength();
+        while (position < length) {
+            ByteBuffer block = readBlock(position);
+            while (block.remaining() >= ByteFile.BYTES_PER_RECORD) {
+                // The key follows the 8 byte record ID
+                if (Double.compare(block.getDouble(block.position()
+                    + Long.BYTES), key) >= 0) {
+                    return position;
+                }
+                block.position(block.position() + ByteFile.BYTES_PER_RECORD);
+                position += ByteFile.BYTES_PER_RECORD;
+            }
+        }
+        return length;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns every record whose key lies between lo and hi, both included,
+     * in key order.
+     *
+     * @param lo
+     *            the smallest key wanted
+     * @param hi
+     *            the largest key wanted
+     * @return the records
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public List<Record> range(double lo, double hi) throws IOException {
+        List<Record> records = new ArrayList<>();
+        long position = seekToKey(lo);
+        long length = index.getDataLength();
+        while (position < length) {
+            ByteBuffer block = readBlock(position);
+            position += block.remaining();
+            while (block.remaining() >= ByteFile.BYTES_PER_RECORD) {
+                long recID = block.getLong();
+                double key = block.getDouble();
+                if (Double.compare(key, hi) > 0) {
+                    return records;
+                }
+                records.add(new Record(recID, key, -1));
+            }
+        }
+        return records;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Closes the sorted file.
+     *
+     * @throws IOException
+     *             if the file can not be closed
+     */
+    public void close() throws IOException {
+        dataParser.close();
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Reads from a position up to the end of its block.
+     *
+     * @param position
+     *            the position of a record
+     * @return the records from the position to the end of the block
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    private ByteBuffer readBlock(long position) throws IOException {
+        long blockEnd = (position / ByteFile.BYTES_PER_BLOCK + 1)
+            * ByteFile.BYTES_PER_BLOCK;
+        int bytes = (int)(Math.min(blockEnd, index.getDataLength())
+            - position);
+        ByteBuffer block = dataParser.readView(position, bytes, scratch);
+        if (block.remaining() < bytes) {
+            throw new IOException(dataParser.getFileName()
+                + " is shorter than its index");
+        }
+        return block;
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * Test class for the SortedFileReader and BlockIndex classes.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version 11/12/2024
+ */
+public class SortedFileReaderTest extends TestCase {
+    private Path directory;
+    private String dataPath;
+    private double[] keys;
+
+    /**
+     * Writes a sorted file with repeated keys and a short last block, and
+     * its index
+     *
+     * @throws IOException
+     */
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sortedFileReaderTest");
+        dataPath = directory.resolve("sorted.bin").toString();
+        keys = new double[9 * ByteFile.RECORDS_PER_BLOCK + 100];
+        Random rng = new Random(12);
+        for (int i = 0; i < keys.length; i++) {
+            // Few distinct keys, so runs of equal keys cross blocks
+            keys[i] = rng.nextInt(200) / 4.0;
+        }
+        Arrays.sort(keys);
+        ByteBuffer records = ByteBuffer.allocate(keys.length
+            * ByteFile.BYTES_PER_RECORD);
+        for (int i = 0; i < keys.length; i++) {
+            records.putLong(i);
+            records.putDouble(keys[i]);
+        }
+        Files.write(directory.resolve("sorted.bin"), records.array());
+
+        BlockIndex index = new BlockIndex(records.capacity(), 2);
+        index.record(records, 0);
+        index.write(dataPath + BlockIndex.SUFFIX);
+    }
+
+
+    /**
+     * Deletes the temporary directory
+     */
+    public void tearDown() {
+        for (File file : directory.toFile().listFiles()) {
+            file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+
+    /**
+     * Tests that the index reads back as it was written
+     *
+     * @throws IOException
+     */
+    public void testIndexRoundTrip() throws IOException {
+        BlockIndex index = BlockIndex.read(dataPath + BlockIndex.SUFFIX);
+        assertEquals(keys.length * ByteFile.BYTES_PER_RECORD, index
+            .getDataLength());
+        assertEquals(2 * ByteFile.BYTES_PER_BLOCK, index.getStride());
+        assertEquals(5, index.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(keys[i * 2 * ByteFile.RECORDS_PER_BLOCK], index
+                .getKey(i), 0.0);
+        }
+    }
+
+
+    /**
+     * Tests that every lookup and range finds what a scan of the whole file
+     * finds, for keys present, absent, below and above the file
+     *
+     * @throws IOException
+     */
+    public void testMatchesScan() throws IOException {
+        SortedFileReader reader = new SortedFileReader(dataPath);
+        try {
+            for (int k = -4; k <= 204; k++) {
+                double key = k / 4.0 - 0.125 * (k % 2);
+                assertEquals(scanFirst(key) * ByteFile.BYTES_PER_RECORD,
+                    reader.seekToKey(key));
+
+                double hi = key + 3;
+                List<Record> range = reader.range(key, hi);
+                int first = scanFirst(key);
+                int end = scanFirst(Math.nextUp(hi));
+                assertEquals(end - first, range.size());
+                for (int i = 0; i < range.size(); i++) {
+                    assertEquals(first + i, range.get(i).getID());
+                    assertEquals(keys[first + i], range.get(i).getKey(), 0.0);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+
+    /**
+     * Tests that an index for a file of another length is refused
+     *
+     * @throws IOException
+     */
+    public void testIndexOfOtherFile() throws IOException {
+        BlockIndex index = new BlockIndex(ByteFile.BYTES_PER_BLOCK, 1);
+        try {
+            new SortedFileReader(dataPath, index);
+            fail("accepted the index of another file");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("Index of"));
+        }
+    }
+
+
+    /**
+     * Finds the first record whose key is not smaller than the given key by
+     * scanning every key.
+     *
+     * @param key
+     *            the key
+     * @return the index of the record, or the number of records
+     */
+    private int scanFirst(double key) {
+        int i = 0;
+        while (i < keys.length && Double.compare(keys[i], key) < 0) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,63 @@
+// -------------------------------------------------------------------------
+/**
+ * StandardCombiner holds the combiners that can be chosen on the command
+ * line (see RecordCombiner).
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public enum StandardCombiner implements RecordCombiner {
+    /**
+     * Keeps the first record of every key in the input.
+     */
+    FIRST {
+        @Override
+        public long combine(long key, long earlier, long later) {
+            return earlier;
+        }
+    },
+
+    /**
+     * Keeps the last record of every key in the input.
+     */
+    LAST {
+        @Override
+        public long combine(long key, long earlier, long later) {
+            return later;
+        }
+
+
+        @Override
+        public long combineKeys(long earlier, long later) {
+            return later;
+        }
+    },
+
+    /**
+     * Counts the records of every key in the payload.
+     */
+    COUNT {
+        @Override
+        public long lift(long payload) {
+            return 1;
+        }
+
+
+        @Override
+        public long combine(long key, long earlier, long later) {
+            return earlier + later;
+        }
+    };
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of the combiner as given on the command line.
+     *
+     * @return the name, for example "count"
+     */
+    @Override
+    public String getName() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * TopKSelector finds the K records with the smallest keys in one scan of
+ * the input. It keeps the records in a bounded max-heap of K slots: once
+ * the heap is full, a record only goes in when its key is below the largest
+ * key held, replacing that record. Every record costs at most one sift of
+ * a heap of K, so selection takes O(N log K) time and K slots of memory,
+ * however long the input is.
+ *
+ * Records are written in key order by heapsorting the heap in place. Among
+ * records with the same key as the K-th smallest, which of them are kept is
+ * not defined.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class TopKSelector {
+    // ~ Fields ................................................................
+    /**
+     * Max-heap of the smallest records read so far.
+     */
+    private RecordHeap heap;
+
+    /**
+     * Layout splitting records into the keys and payloads of the heap.
+     */
+    private RecordLayout layout;
+
+    /**
+     * Number of records held, in key order, once sort() has run.
+     */
+    private int sorted;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new TopKSelector object.
+     *
+     * @param k
+     *            the number of records to keep
+     * @param layout
+     *            the layout of the records
+     */
+    public TopKSelector(int k, RecordLayout layout) {
+        this.heap = new RecordHeap(k, true);
+        this.layout = layout;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records kept.
+     *
+     * @return K
+     */
+    public int capacity() {
+        return heap.capacity();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Returns the number of records held.
+     *
+     * @return at most K
+     */
+    public int size() {
+        return Math.max(heap.heapSize(), sorted);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Offers a record, which is kept if it is among the K smallest so far.
+     *
+     * @param payload
+     *            the record payload
+     * @param key
+     *            the normalized record key
+     */
+    public void add(long payload, long key) {
+        if (heap.heapSize() < heap.capacity()) {
+            heap.insert(payload, key, -1);
+        }
+        else if (heap.capacity() > 0 && key < heap.getMinKey()) {
+            // The root is the largest key kept
+            heap.replaceMin(payload, key, -1);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Offers every record of a file or stream, from the given position to
+     * the end position or the end of the stream, whichever comes first.
+     *
+     * @param parser
+     *            the file or stream to read
+     * @param position
+     *            the position of the first record
+     * @param end
+     *            the position to stop at
+     * @param scratch
+     *            buffer for reading blocks
+     * @return the position of the first record not read
+     * @throws IOException
+     *             if an I/O error occurs during file operations
+     */
+    public long load(
+        RecordSource parser,
+        long position,
+        long end,
+        ByteBuffer scratch)
+        throws IOException {
+        while (position < end) {
+            int bytes = (int)Math.min(scratch.capacity(), end - position);
+            ByteBuffer view = parser.readView(position, bytes, scratch);
+            if (!view.hasRemaining()) {
+                return position; // The stream ended
+            }
+            position += view.remaining();
+            while (view.remaining() >= ByteFile.BYTES_PER_RECORD) {
+                long word0 = view.getLong();
+                long word1 = view.getLong();
+                add(layout.payload(word0, word1), layout.key(word0, word1));
+            }
+        }
+        return position;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Puts the records in key order. Removing the largest record of the
+     * max-heap leaves it just past the shrunken heap, so emptying the heap
+     * leaves the slots sorted. No records can be added afterwards.
+     */
+    public void sort() {
+        sorted = heap.heapSize();
+        while (heap.heapSize() > 0) {
+            heap.removeMin();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Hands every record, in key order after sort(), to a writer.
+     *
+     * @param writer
+     *            the writer
+     * @param position
+     *            the file position of the first record
+     * @return the position just past the last byte written
+     * @throws IOException
+     *             if a write fails
+     */
+    public long writeTo(BlockWriter writer, long position) throws IOException {
+        ByteBuffer out = writer.acquire();
+        for (int i = 0; i < sorted; i++) {
+            long key = heap.getKey(i);
+            out.putLong(layout.word0(key, heap.getPayload(i)));
+            out.putLong(layout.word1(key, heap.getPayload(i)));
+            if (!out.hasRemaining()) {
+                position += writer.submit(out, position);
+                out = writer.acquire();
+            }
+        }
+        return position + writer.submit(out, position);
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+// -------------------------------------------------------------------------
+/**
+ * VarintCodec stores every record as two variable-length integers of seven
+ * bits per byte, so small numbers take few bytes.
+ *
+ * Keys are stored relative to the key before in the block. In delta mode
+ * the difference of their order-preserving bits is stored, which is small
+ * and never negative in a sorted run. In XOR mode the XOR of the raw bits
+ * is stored instead, which is small when neighbouring keys share sign,
+ * exponent and leading mantissa bits. Record IDs are stored as the zigzag
+ * encoded difference to the ID before, so IDs that are close to each other
+ * in either direction take few bytes. Both use the raw bits of the key, so
+ * every key, NaNs included, comes back bit for bit.
+ *
+ * Random 64 bit IDs do not get any shorter this way; such blocks end up
+ * stored raw.
+ *
+ * @author Kyungwan Do, Jaeyoung Shin
+ * @version Nov 12, 2024
+ */
+public class VarintCodec implements BlockCodec {
+    // ~ Fields ................................................................
+    /**
+     * Name of the delta mode.
+     */
+    public static final String DELTA = "delta";
+
+    /**
+     * Name of the XOR mode.
+     */
+    public static final String XOR = "xor";
+
+    /**
+     * Whether keys are XORed instead of subtracted.
+     */
+    private boolean xorKeys;
+
+    // ~ Constructors ..........................................................
+    // ----------------------------------------------------------
+    /**
+     * Creates a new VarintCodec object.
+     *
+     * @param xorKeys
+     *            true to XOR keys, false to store deltas
+     */
+    public VarintCodec(boolean xorKeys) {
+        this.xorKeys = xorKeys;
+    }
+
+
+    // ~Public Methods ........................................................
+    // ----------------------------------------------------------
+    /**
+     * Returns the name of the codec.
+     *
+     * @return "xor" or "delta"
+     */
+    @Override
+    public String getName() {
+        return xorKeys ? XOR : DELTA;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Encodes records as varints.
+     *
+     * @param records
+     *            whole records
+     * @param out
+     *            the buffer the encoded bytes go to
+     * @return false if out was too small
+     */
+    @Override
+    public boolean encode(ByteBuffer records, ByteBuffer out) {
+        long previousID = 0;
+        long previousKey = 0;
+        try {
+            while (records.remaining() >= ByteFile.BYTES_PER_RECORD) {
+                long id = records.getLong();
+                long key = keyBits(records.getDouble());
+                putVarint(out, zigzag(id - previousID));
+                putVarint(out, xorKeys ? key ^ previousKey : key
+                    - previousKey);
+                previousID = id;
+                previousKey = key;
+            }
+        }
+        catch (BufferOverflowException e) {
+            return false;
+        }
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Decodes records stored as varints.
+     *
+     * @param in
+     *            the encoded bytes
+     * @param count
+     *            the number of records encoded
+     * @param out
+     *            the buffer the records go to
+     * @throws IOException
+     *             if the bytes end early or a varint is too long
+     */
+    @Override
+    public void decode(ByteBuffer in, int count, ByteBuffer out)
+        throws IOException {
+        long id = 0;
+        long key = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                long idDelta = getVarint(in);
+                id += (idDelta >>> 1) ^ -(idDelta & 1);
+                long keyDelta = getVarint(in);
+                key = xorKeys ? key ^ keyDelta : key + keyDelta;
+                out.putLong(id);
+                out.putDouble(keyValue(key));
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Encoded block ends before record "
+                + out.position() / ByteFile.BYTES_PER_RECORD, e);
+        }
+    }
+
+
+    // ~Private Methods .......................................................
+    // ----------------------------------------------------------
+    /**
+     * Turns a key into the bits that are stored relative to each other.
+     *
+     * @param key
+     *            the key
+     * @return its raw bits in XOR mode, otherwise bits that compare like the
+     *         keys as unsigned numbers
+     */
+    private long keyBits(double key) {
+        long bits = Double.doubleToRawLongBits(key);
+        return xorKeys ? bits : bits ^ ((bits >> (Long.SIZE - 1))
+            | Long.MIN_VALUE);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Turns bits from keyBits back into the key.
+     *
+     * @param bits
+     *            the bits
+     * @return the key
+     */
+    private double keyValue(long bits) {
+        return Double.longBitsToDouble(xorKeys ? bits : bits ^ ((~bits >> (
+            Long.SIZE - 1)) | Long.MIN_VALUE));
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Maps a signed number to an unsigned one, small magnitudes to small
+     * numbers: 0, -1, 1, -2 become 0, 1, 2, 3.
+     *
+     * @param value
+     *            the number
+     * @return the zigzag encoding
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> (Long.SIZE - 1));
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Writes an unsigned varint, seven bits per byte from the lowest, with
+     * the top bit set on every byte but the last.
+     *
+     * @param out
+     *            the buffer
+     * @param value
+     *            the value, read as unsigned
+     */
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte)value);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Reads an unsigned varint.
+     *
+     * @param in
+     *            the buffer
+     * @return the value
+     * @throws IOException
+     *             if the varint is longer than a long
+     */
+    private static long getVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint longer than " + Long.SIZE + " bits");
+    }
+}